@@ -28,3 +28,29 @@ function getFilteredTodos() {
     document.getElementById('jsonDump').innerHTML = syntaxHighlight(JSON.stringify(returned_json, null, 2));
   });
 }
+
+// Opens a server-sent event stream of the changes to todos matching the owner, category,
+// status and contains inputs, and lists each change as it arrives.
+var changeStream = null;
+
+function watchTodos() {
+  var url = "/api/todos/_changes?";
+  ["owner", "category", "status", "contains"].forEach(function(field) {
+    if(document.getElementById(field).value != "") {
+      url = url + "&" + field + "=" + encodeURIComponent(document.getElementById(field).value);
+    }
+  });
+
+  if (changeStream != null) {
+    changeStream.close();
+  }
+  document.getElementById("changesUrl").innerHTML = url;
+  document.getElementById("changes").innerHTML = "";
+  changeStream = new EventSource(url);
+  ["add", "update", "remove"].forEach(function(type) {
+    changeStream.addEventListener(type, function(event) {
+      document.getElementById("changes").innerHTML += type + ": " +
+        syntaxHighlight(JSON.stringify(JSON.parse(event.data))) + "\n";
+    });
+  });
+}
@@ -37,6 +37,33 @@ function get(aUrl, aCallback) {
     });
 }
 
+/**
+ * Offers autocomplete suggestions for a filter input. As the user types, the
+ * most common values starting with what they've typed are fetched from
+ * 'suggestUrl' (e.g., "/api/todos/_suggest?field=owner") and put in the
+ * input's datalist, whose ID is the input's ID followed by "Suggestions".
+ * Suggestions are only a convenience, so failures are ignored.
+ */
+function suggestValues(inputId, suggestUrl) {
+  var input = document.getElementById(inputId);
+  var suggestions = document.getElementById(inputId + "Suggestions");
+  input.addEventListener("input", function() {
+    fetch(suggestUrl + "&prefix=" + encodeURIComponent(input.value))
+      .then(status)
+      .then(json)
+      .then(function(values) {
+        suggestions.innerHTML = "";
+        values.forEach(function(suggestion) {
+          var option = document.createElement("option");
+          option.value = suggestion.value;
+          option.label = suggestion.value + " (" + suggestion.count + ")";
+          suggestions.appendChild(option);
+        });
+      })
+      .catch(function() {});
+  });
+}
+
 // Syntax highlighting for JSON
 // from https://stackoverflow.com/questions/4810841/how-can-i-pretty-print-json-using-javascript
 function syntaxHighlight(json) {
@@ -1,71 +1,200 @@
 package umm3601;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 
 import io.javalin.Javalin;
 import io.javalin.http.staticfiles.Location;
+import umm3601.limit.AdmissionController;
+import umm3601.limit.Deadline;
+import umm3601.limit.RateLimiter;
+import umm3601.limit.RequestCoalescer;
+import umm3601.user.DiskUserRepository;
 import umm3601.user.UserDatabase;
 import umm3601.user.UserController;
+import umm3601.user.UserRepository;
 
+import umm3601.todo.DiskToDoRepository;
 import umm3601.todo.ToDoDatabase;
 import umm3601.todo.ToDoController;
+import umm3601.todo.ToDoRepository;
+import umm3601.todo.ToDoShardRouter;
 
 public class Server {
 
   public static final String CLIENT_DIRECTORY = "../client";
   public static final String USER_DATA_FILE = "/users.json";
   public static final String TODO_DATA_FILE = "/todos.json";
-  private static UserDatabase userDatabase;
-  private static ToDoDatabase todoDatabase;
-
-  public static void main(String[] args) {
+  public static final int DEFAULT_PORT = 4567;
+  private static UserRepository userDatabase;
+  private static ToDoRepository todoDatabase;
+  private static Warmup warmup;
+
+  /**
+   * Start the server.
+   * <p>
+   * With no arguments the server holds all the todos itself. The todos can
+   * instead be split, by owner, over several servers:
+   * <ul>
+   * <li>`--shard 1/3 --port 4569` runs a server holding just the second of
+   * three shards of the todos</li>
+   * <li>`--router http://localhost:4568,http://localhost:4569,...` runs a
+   * server that answers todo requests by asking those shard servers</li>
+   * </ul>
+   * See `ServerSettings` for the options for tuning connections.
+   * <p>
+   * `--warmup 2000` has the server make that many requests of itself before it
+   * reports ready at `/ready`; add `--exit-after-warmup true` to stop once
+   * they're done (see the `cdsArchive` task in build.gradle).
+   *
+   * @param args the command line arguments
+   * @throws InterruptedException if interrupted waiting for the warm-up
+   */
+  public static void main(String[] args) throws InterruptedException {
+    ServerSettings settings = ServerSettings.fromArgs(args);
+    Javalin server = start(settings);
+    if (settings.exitAfterWarmup) {
+      warmup.await();
+      server.stop();
+    }
+  }
 
+  /**
+   * Start a server with the given settings.
+   *
+   * @param settings the settings for the server
+   * @return the running server
+   */
+  public static Javalin start(ServerSettings settings) {
     // Initialize dependencies
-    UserController userController = buildUserController();
-    ToDoController todoController = buildToDoController();
+    UserController userController = buildUserController(settings);
+    boolean isRouter = settings.shardUrls != null;
+    ToDoController todoController = isRouter ? null : buildToDoController(settings);
+    ToDoShardRouter todoRouter = isRouter ? new ToDoShardRouter(settings.shardUrls, userDatabase) : null;
 
     Javalin server = Javalin.create(config -> {
       // This tells the server where to look for static files,
       // like HTML and JavaScript.
       config.addStaticFiles(CLIENT_DIRECTORY, Location.EXTERNAL);
-      // The next line starts the server listening on port 4567.
-    }).start(4567);
+      // Use our own Jetty server so connections can be tuned
+      config.server(settings::createJettyServer);
+      // The next line starts the server listening on port 4567 (by default).
+    }).start(settings.port);
+
+    // Limit how fast each client can make API requests. A shard only sees the
+    // router, never the clients themselves, so clients are limited at the router
+    if (settings.rateLimit > 0 && settings.shardCount == 1) {
+      RateLimiter rateLimiter = new RateLimiter(settings.rateLimit, settings.rateBurst);
+      server.before("/api/*", ctx -> rateLimiter.handle(ctx));
+    }
+
+    // Only run as many expensive todo queries at once as the server can handle
+    AdmissionController admission = new AdmissionController(settings.admissionCapacity,
+        settings.admissionQueue, settings.admissionWait);
+    AdmissionController.CostEstimator todoCost = ctx -> todoDatabase.estimateCost(ctx.queryParamMap());
+
+    // Identical todo queries arriving together share one run, which waits for
+    // admission once on behalf of all of them, and is abandoned if it can't
+    // finish within the query timeout (including the wait)
+    RequestCoalescer coalescer = new RequestCoalescer();
 
     // Simple example route
     server.get("/hello", ctx -> ctx.result("Hello World"));
 
+    // Readiness check, which fails until the server has warmed up
+    warmup = new Warmup(settings.warmupRequests);
+    server.get("/ready", ctx -> warmup.checkReady(ctx));
+
     // Redirects to create simpler URLs
     server.get("/users", ctx -> ctx.redirect("/users.html"));
     server.get("/todos", ctx -> ctx.redirect("/todos.html"));
 
     // API endpoints
 
+    // Count users, filtered using query parameters
+    server.get("/api/users/_count", ctx -> userController.countUsers(ctx));
+
+    // Stream all users as newline-delimited JSON
+    server.get("/api/users/_export", ctx -> userController.exportUsers(ctx));
+
+    // Count users grouped by the fields in `by`, filtered using query parameters
+    server.get("/api/users/_facets", ctx -> userController.getUserFacets(ctx));
+
+    // Suggest values of a user field starting with `prefix`, most common first
+    server.get("/api/users/_suggest", ctx -> userController.getUserSuggestions(ctx));
+
     // Get specific user
     server.get("/api/users/:id", ctx -> userController.getUser(ctx));
 
     // List users, filtered using query parameters
     server.get("/api/users", ctx -> userController.getUsers(ctx));
 
-    // Get specific todo
-    server.get("/api/todos/:id", ctx -> todoController.getTodo(ctx));
+    if (isRouter) {
+      // Todo requests are answered by the shard servers
+      server.get("/api/todos/_count", ctx -> todoRouter.countTodos(ctx));
+      server.get("/api/todos/_export", ctx -> todoRouter.exportTodos(ctx));
+      server.get("/api/todos/_facets", ctx -> todoRouter.getTodoFacets(ctx));
+      server.get("/api/todos/_suggest", ctx -> todoRouter.getTodoSuggestions(ctx));
+      server.get("/api/todos/:id", ctx -> todoRouter.getTodo(ctx));
+      server.get("/api/todos", coalescer.coalesce(ctx -> todoRouter.getTodos(ctx)));
+    } else {
+      // Count todos, filtered using query parameters
+      server.get("/api/todos/_count",
+          coalescer.coalesce(Deadline.enforce(settings.queryTimeout,
+              admission.admit(todoCost, ctx -> todoController.countTodos(ctx)))));
+
+      // Count todos grouped by the fields in `by`, filtered using query parameters
+      server.get("/api/todos/_facets",
+          coalescer.coalesce(Deadline.enforce(settings.queryTimeout,
+              admission.admit(todoCost, ctx -> todoController.getTodoFacets(ctx)))));
+
+      // Suggest values of a todo field starting with `prefix`, most common first
+      server.get("/api/todos/_suggest", ctx -> todoController.getTodoSuggestions(ctx));
+
+      // Stream all todos as newline-delimited JSON
+      server.get("/api/todos/_export", ctx -> todoController.exportTodos(ctx));
+
+      // Stream changes to todos matching the query parameters, as server-sent events
+      server.sse("/api/todos/_changes", client -> todoController.streamChanges(client));
+
+      // Get specific todo
+      server.get("/api/todos/:id", ctx -> todoController.getTodo(ctx));
+
+      // Add, replace and remove todos
+      server.post("/api/todos", ctx -> todoController.addTodo(ctx));
+      server.put("/api/todos/:id", ctx -> todoController.updateTodo(ctx));
+      server.delete("/api/todos/:id", ctx -> todoController.deleteTodo(ctx));
+
+      // List todos, filtered using query parameters
+      server.get("/api/todos",
+          coalescer.coalesce(Deadline.enforce(settings.queryTimeout,
+              admission.admit(todoCost, ctx -> todoController.getTodos(ctx)))));
+    }
+
+    // Warm up once every route is in place
+    warmup.start("http://localhost:" + server.port());
 
-    // List todos, filtered using query parameters
-    server.get("/api/todos", ctx -> todoController.getTodos(ctx));
+    return server;
   }
 
   /***
    * Create a database using the json file, use it as data source for a new
-   * UserController
+   * UserController. If a store directory is set, the users are kept on disk
+   * there instead of in memory.
    *
    * Constructing the controller might throw an IOException if there are problems
    * reading from the JSON "database" file. If that happens we'll print out an
    * error message exit the program.
    */
-  private static UserController buildUserController() {
+  private static UserController buildUserController(ServerSettings settings) {
     UserController userController = null;
 
     try {
-      userDatabase = new UserDatabase(USER_DATA_FILE);
+      if (settings.storeDirectory != null) {
+        userDatabase = new DiskUserRepository(Paths.get(settings.storeDirectory), USER_DATA_FILE);
+      } else {
+        userDatabase = new UserDatabase(USER_DATA_FILE);
+      }
       userController = new UserController(userDatabase);
     } catch (IOException e) {
       System.err.println("The server failed to load the user data; shutting down.");
@@ -78,12 +207,23 @@ public class Server {
     return userController;
   }
 
-  private static ToDoController buildToDoController() {
+  /***
+   * Create a database holding the given shard of the todos in the json file,
+   * and use it as the data source for a new ToDoController. If a store
+   * directory is set, the shard's todos are kept on disk there instead of in
+   * memory.
+   */
+  private static ToDoController buildToDoController(ServerSettings settings) {
     ToDoController todoController = null;
 
     try {
-      todoDatabase = new ToDoDatabase(TODO_DATA_FILE);
-      todoController = new ToDoController(todoDatabase);
+      if (settings.storeDirectory != null) {
+        todoDatabase = new DiskToDoRepository(Paths.get(settings.storeDirectory), TODO_DATA_FILE, settings.shard,
+            settings.shardCount);
+      } else {
+        todoDatabase = new ToDoDatabase(TODO_DATA_FILE, settings.shard, settings.shardCount, settings.offHeapText);
+      }
+      todoController = new ToDoController(todoDatabase, userDatabase);
     } catch (IOException e) {
       System.err.println("The server failed to load the todo data; shutting down.");
       e.printStackTrace(System.err);
@@ -0,0 +1,178 @@
+package umm3601;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.ServerConnector;
+
+/**
+ * The settings the server is started with, normally taken from the command
+ * line, e.g., `--port 4568 --selectors 4 --h2c false`.
+ */
+public class ServerSettings {
+
+  public int port = Server.DEFAULT_PORT;
+
+  // Which shard of the todos to hold (see `ToDoDatabase.shardOf`)
+  public int shard = 0;
+  public int shardCount = 1;
+
+  // The shard servers to ask for todos, if this server is a router
+  public List<String> shardUrls = null;
+
+  // Keep the todos and users on disk in this directory, rather than in memory
+  public String storeDirectory = null;
+
+  // Keep the todos' IDs and bodies off the Java heap (see `OffHeapText`)
+  public boolean offHeapText = false;
+
+  // Jetty picks the number of acceptor and selector threads if these are -1
+  public int acceptors = -1;
+  public int selectors = -1;
+
+  // How long an idle (kept alive) connection is held open, in milliseconds
+  public long idleTimeout = 30000;
+  public boolean keepAlive = true;
+
+  public int requestHeaderSize = 8192;
+  public int responseHeaderSize = 8192;
+
+  // Accept cleartext HTTP/2 (h2c) alongside HTTP/1.1
+  public boolean http2 = true;
+
+  // Requests allowed per second from each client, and how many can come at
+  // once; 0 turns rate limiting off. Shards leave it to the router
+  public double rateLimit = 0;
+  public int rateBurst = 50;
+
+  // The most estimated query cost (see `ToDoQueryPlanner`) worked on at once,
+  // and how many queries, for how long, may wait when that is used up
+  public int admissionCapacity = Runtime.getRuntime().availableProcessors() * 1_000_000;
+  public int admissionQueue = 64;
+  public long admissionWait = 1000;
+
+  // How long a todo query may run for before it's abandoned with a 503 (see
+  // `Deadline`); requests can ask for less with `timeout`
+  public long queryTimeout = 10000;
+
+  // How many synthetic requests to warm the server up with before it reports
+  // ready (see `Warmup`), and whether to stop once that's done, as a training
+  // run for the class-data sharing archive does
+  public int warmupRequests = 0;
+  public boolean exitAfterWarmup = false;
+
+  /**
+   * Read settings from command line arguments. Each setting is given as an
+   * option followed by its value; settings that aren't given keep their
+   * defaults.
+   *
+   * @param args the command line arguments
+   * @return the settings
+   */
+  public static ServerSettings fromArgs(String[] args) {
+    ServerSettings settings = new ServerSettings();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      String value = args[i + 1];
+      switch (args[i]) {
+        case "--port":
+          settings.port = Integer.parseInt(value);
+          break;
+        case "--shard":
+          String[] shardSpec = value.split("/");
+          settings.shard = Integer.parseInt(shardSpec[0]);
+          settings.shardCount = Integer.parseInt(shardSpec[1]);
+          break;
+        case "--router":
+          settings.shardUrls = Arrays.asList(value.split(","));
+          break;
+        case "--store-dir":
+          settings.storeDirectory = value;
+          break;
+        case "--off-heap-text":
+          settings.offHeapText = Boolean.parseBoolean(value);
+          break;
+        case "--acceptors":
+          settings.acceptors = Integer.parseInt(value);
+          break;
+        case "--selectors":
+          settings.selectors = Integer.parseInt(value);
+          break;
+        case "--idle-timeout":
+          settings.idleTimeout = Long.parseLong(value);
+          break;
+        case "--keep-alive":
+          settings.keepAlive = Boolean.parseBoolean(value);
+          break;
+        case "--request-header-size":
+          settings.requestHeaderSize = Integer.parseInt(value);
+          break;
+        case "--response-header-size":
+          settings.responseHeaderSize = Integer.parseInt(value);
+          break;
+        case "--h2c":
+          settings.http2 = Boolean.parseBoolean(value);
+          break;
+        case "--rate-limit":
+          settings.rateLimit = Double.parseDouble(value);
+          break;
+        case "--rate-burst":
+          settings.rateBurst = Integer.parseInt(value);
+          break;
+        case "--admission-capacity":
+          settings.admissionCapacity = Integer.parseInt(value);
+          break;
+        case "--admission-queue":
+          settings.admissionQueue = Integer.parseInt(value);
+          break;
+        case "--admission-wait":
+          settings.admissionWait = Long.parseLong(value);
+          break;
+        case "--query-timeout":
+          settings.queryTimeout = Long.parseLong(value);
+          break;
+        case "--warmup":
+          settings.warmupRequests = Integer.parseInt(value);
+          break;
+        case "--exit-after-warmup":
+          settings.exitAfterWarmup = Boolean.parseBoolean(value);
+          break;
+        default:
+          System.err.println("Unknown option " + args[i] + "; ignoring it.");
+      }
+    }
+    return settings;
+  }
+
+  /**
+   * Build the Jetty server that Javalin runs in, with a single connector set up
+   * according to these settings.
+   *
+   * @return the Jetty server
+   */
+  public org.eclipse.jetty.server.Server createJettyServer() {
+    HttpConfiguration httpConfig = new HttpConfiguration();
+    httpConfig.setRequestHeaderSize(requestHeaderSize);
+    httpConfig.setResponseHeaderSize(responseHeaderSize);
+    httpConfig.setPersistentConnectionsEnabled(keepAlive);
+    httpConfig.setSendServerVersion(false);
+
+    ConnectionFactory[] factories;
+    if (http2) {
+      factories = new ConnectionFactory[] { new HttpConnectionFactory(httpConfig),
+          new HTTP2CServerConnectionFactory(httpConfig) };
+    } else {
+      factories = new ConnectionFactory[] { new HttpConnectionFactory(httpConfig) };
+    }
+
+    org.eclipse.jetty.server.Server server = new org.eclipse.jetty.server.Server();
+    ServerConnector connector = new ServerConnector(server, acceptors, selectors, factories);
+    connector.setPort(port);
+    connector.setIdleTimeout(idleTimeout);
+    server.addConnector(connector);
+    return server;
+  }
+}
@@ -0,0 +1,191 @@
+package umm3601;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.javalin.http.Context;
+import io.javalin.http.ServiceUnavailableResponse;
+import umm3601.json.ResponseFormat;
+import umm3601.todo.ToDoController;
+
+/**
+ * Runs a synthetic mix of API requests against a freshly started server, so
+ * that the query code, the serializers and the HTTP stack have been loaded and
+ * compiled by the JIT before real traffic arrives.
+ * <p>
+ * The mix is built from the values actually in the data (fetched with the
+ * `_facets` endpoints), and covers the filters, orderings, field projections
+ * and response formats the clients use. Until it has finished the readiness
+ * check (`GET /ready`) answers 503, so a load balancer holds traffic back in
+ * the meantime. A failed warm-up is reported but still counts as finished:
+ * a cold server is slower, not broken.
+ */
+public class Warmup {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(Warmup.class);
+
+  private static final Type FACETS = new TypeToken<Map<String, Map<String, Integer>>>() { }.getType();
+
+  /**
+   * Fetches an API path, e.g., `/api/todos?owner=Fry`, with the given Accept
+   * header, returning the response body.
+   */
+  public interface Fetcher {
+    String fetch(String path, String accept) throws IOException, InterruptedException;
+  }
+
+  private final int iterations;
+  private final CountDownLatch finished = new CountDownLatch(1);
+
+  /**
+   * @param iterations the number of requests to make; with 0 there is no
+   *                   warm-up and the server is ready straight away
+   */
+  public Warmup(int iterations) {
+    this.iterations = iterations;
+    if (iterations <= 0) {
+      finished.countDown();
+    }
+  }
+
+  /**
+   * Start warming up the server at the given URL, e.g.,
+   * `http://localhost:4567`, on a background thread.
+   *
+   * @param baseUrl the URL of the server
+   */
+  public void start(String baseUrl) {
+    if (isReady()) {
+      return;
+    }
+    HttpClient client = HttpClient.newHttpClient();
+    Fetcher fetcher = (path, accept) -> client.send(
+        HttpRequest.newBuilder(URI.create(baseUrl + path)).header("Accept", accept).build(),
+        HttpResponse.BodyHandlers.ofString()).body();
+    Thread thread = new Thread(() -> run(fetcher), "warmup");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Make the warm-up requests with the given fetcher, then mark the server
+   * ready.
+   *
+   * @param fetcher makes each request
+   */
+  void run(Fetcher fetcher) {
+    long start = System.nanoTime();
+    try {
+      Gson gson = new Gson();
+      Map<String, Map<String, Integer>> todoFacets = gson.fromJson(
+          fetcher.fetch("/api/todos/_facets?by=owner,category", ResponseFormat.JSON.contentType), FACETS);
+      Map<String, Map<String, Integer>> userFacets = gson.fromJson(
+          fetcher.fetch("/api/users/_facets?by=company,age", ResponseFormat.JSON.contentType), FACETS);
+      List<String> paths = queryMix(todoFacets, userFacets, new Random(iterations));
+
+      String[] accepts = { ResponseFormat.JSON.contentType, ResponseFormat.JSON.contentType,
+        ResponseFormat.CBOR.contentType, ResponseFormat.MESSAGE_PACK.contentType,
+        ToDoController.COLUMN_BATCH.contentType };
+      for (int i = 0; i < iterations; i++) {
+        fetcher.fetch(paths.get(i % paths.size()), accepts[i % accepts.length]);
+      }
+      LOGGER.info("Warmed up with {} requests in {} ms", iterations, (System.nanoTime() - start) / 1_000_000);
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("The server failed to warm up; carrying on without it.", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      finished.countDown();
+    }
+  }
+
+  /**
+   * Build the requests to warm up with: queries for each owner, category,
+   * company and age in the data, with a spread of the other parameters, in a
+   * shuffled order.
+   *
+   * @param todoFacets the todo counts by owner and category
+   * @param userFacets the user counts by company and age
+   * @param random     the source of the shuffle
+   * @return the API paths to request
+   */
+  static List<String> queryMix(Map<String, Map<String, Integer>> todoFacets,
+      Map<String, Map<String, Integer>> userFacets, Random random) {
+    String[] todoQueries = { "", "&status=complete", "&orderBy=body&limit=20", "&status=incomplete&contains=sit",
+      "&fields=_id,owner,status", "&orderBy=status" };
+    String[] userQueries = { "", "&fields=name,email", "&fields=_id,company,age" };
+
+    List<String> paths = new ArrayList<>();
+    int n = 0;
+    for (String field : new String[] { "owner", "category" }) {
+      for (String value : todoFacets.getOrDefault(field, Collections.emptyMap()).keySet()) {
+        paths.add("/api/todos?" + field + "=" + encode(value) + todoQueries[n++ % todoQueries.length]);
+        paths.add("/api/todos/_count?" + field + "=" + encode(value));
+      }
+    }
+    for (String field : new String[] { "company", "age" }) {
+      for (String value : userFacets.getOrDefault(field, Collections.emptyMap()).keySet()) {
+        paths.add("/api/users?" + field + "=" + encode(value) + userQueries[n++ % userQueries.length]);
+      }
+    }
+    paths.add("/api/todos?orderBy=owner&limit=50");
+    paths.add("/api/todos/_facets?by=category,status");
+    paths.add("/api/users/_facets?by=company");
+    paths.add("/api/users/_count");
+    paths.add("/api/todos/_suggest?field=owner&prefix=b");
+    paths.add("/api/users/_suggest?field=company&prefix=o");
+    Collections.shuffle(paths, random);
+    return paths;
+  }
+
+  private static String encode(String value) {
+    return URLEncoder.encode(value, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return whether the warm-up has finished (or there wasn't one)
+   */
+  public boolean isReady() {
+    return finished.getCount() == 0;
+  }
+
+  /**
+   * Wait for the warm-up to finish.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void await() throws InterruptedException {
+    finished.await();
+  }
+
+  /**
+   * Answer a readiness check: 200 once the warm-up has finished, 503 until
+   * then.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void checkReady(Context ctx) {
+    if (!isReady()) {
+      throw new ServiceUnavailableResponse("The server is still warming up");
+    }
+    ctx.json(Collections.singletonMap("ready", true));
+  }
+}
@@ -0,0 +1,318 @@
+package umm3601.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * An in-memory index over a single field of one of our fake "databases".
+ * <p>
+ * For every distinct value of the field we keep the positions of the records
+ * that hold that value, as a `RoaringBitmap`. The sizes of these posting lists
+ * double as the per-field statistics (distinct values, value frequencies) that
+ * the query planners use to estimate how selective a filter will be.
+ * <p>
+ * Anywhere a value is looked up, a pattern like `bla*` can be given instead
+ * (see `TermIndex`), standing for all the values it matches. A `ValueFilter`
+ * with several values, or excluded ones, is answered by combining their
+ * posting lists.
+ * <p>
+ * An index never changes once built. When records are added, changed or
+ * removed, `withAdded`, `withChanged` and `withoutRow` make a new index
+ * sharing the posting lists of every value the change doesn't touch (and the
+ * term dictionary, unless the distinct values change), rather than indexing
+ * every record again.
+ */
+public class FieldIndex {
+
+  private final String field;
+  private final int rowCount;
+  private final Map<String, RoaringBitmap> postings;
+  private final TermIndex terms;
+  private volatile Suggester suggester;
+
+  /**
+   * Build an index from the value of the field for each record.
+   *
+   * @param field  the name of the indexed field
+   * @param values the value of the field for each record, by position
+   */
+  public FieldIndex(String field, String[] values) {
+    this.field = field;
+    this.rowCount = values.length;
+
+    Map<String, List<Integer>> positions = new LinkedHashMap<>();
+    for (int row = 0; row < values.length; row++) {
+      positions.computeIfAbsent(values[row], value -> new ArrayList<>()).add(row);
+    }
+
+    this.postings = new LinkedHashMap<>();
+    for (Map.Entry<String, List<Integer>> entry : positions.entrySet()) {
+      postings.put(entry.getKey(), RoaringBitmap.of(entry.getValue().stream().mapToInt(Integer::intValue).toArray()));
+    }
+    this.terms = new TermIndex(postings.keySet());
+  }
+
+  /**
+   * @param terms the term dictionary of the previous index, if the distinct
+   *              values are the same, or null to build a new one
+   */
+  private FieldIndex(String field, int rowCount, Map<String, RoaringBitmap> postings, TermIndex terms) {
+    this.field = field;
+    this.rowCount = rowCount;
+    this.postings = postings;
+    this.terms = terms != null ? terms : new TermIndex(postings.keySet());
+  }
+
+  /**
+   * @param value the value of a record added after all the others
+   * @return the index with the record added
+   */
+  public FieldIndex withAdded(String value) {
+    Map<String, RoaringBitmap> changed = new LinkedHashMap<>(postings);
+    boolean newValue = !addRow(changed, value, rowCount);
+    return new FieldIndex(field, rowCount + 1, changed, newValue ? null : terms);
+  }
+
+  /**
+   * @param row    the position of a changed record
+   * @param before the record's value before the change
+   * @param after  the record's value after it
+   * @return the index with the record's value changed
+   */
+  public FieldIndex withChanged(int row, String before, String after) {
+    if (before.equals(after)) {
+      return this;
+    }
+    Map<String, RoaringBitmap> changed = new LinkedHashMap<>(postings);
+    RoaringBitmap rows = changed.get(before).andNot(RoaringBitmap.of(row));
+    boolean valuesChanged = rows.cardinality() == 0;
+    if (valuesChanged) {
+      changed.remove(before);
+    } else {
+      changed.put(before, rows);
+    }
+    valuesChanged |= !addRow(changed, after, row);
+    return new FieldIndex(field, rowCount, changed, valuesChanged ? null : terms);
+  }
+
+  /**
+   * @param row the position of a removed record; the records after it each
+   *            move down one place
+   * @return the index with the record removed
+   */
+  public FieldIndex withoutRow(int row) {
+    Map<String, RoaringBitmap> changed = new LinkedHashMap<>();
+    boolean valueGone = false;
+    for (Map.Entry<String, RoaringBitmap> entry : postings.entrySet()) {
+      RoaringBitmap rows = entry.getValue().withoutRow(row);
+      if (rows.cardinality() > 0) {
+        changed.put(entry.getKey(), rows);
+      } else {
+        valueGone = true;
+      }
+    }
+    return new FieldIndex(field, rowCount - 1, changed, valueGone ? null : terms);
+  }
+
+  /**
+   * @return whether the value already had a posting list
+   */
+  private static boolean addRow(Map<String, RoaringBitmap> postings, String value, int row) {
+    RoaringBitmap rows = postings.get(value);
+    postings.put(value, rows == null ? RoaringBitmap.of(row) : rows.or(RoaringBitmap.of(row)));
+    return rows != null;
+  }
+
+  /**
+   * @param other another index over the same field
+   * @return whether this index is known to have the same distinct values as
+   *         the other, because one was made from the other without changing
+   *         them
+   */
+  public boolean sameValuesAs(FieldIndex other) {
+    return terms == other.terms;
+  }
+
+  /**
+   * Build an index over the given records.
+   *
+   * @param field     the name of the indexed field
+   * @param records   the records to index
+   * @param extractor pulls the value of the field out of a record
+   * @return an index over the given field of the records
+   */
+  public static <T> FieldIndex build(String field, T[] records, Function<T, String> extractor) {
+    String[] values = new String[records.length];
+    for (int row = 0; row < records.length; row++) {
+      values[row] = extractor.apply(records[row]);
+    }
+    return new FieldIndex(field, values);
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  /**
+   * @return the number of records that were indexed
+   */
+  public int rowCount() {
+    return rowCount;
+  }
+
+  /**
+   * @return the number of distinct values of the field
+   */
+  public int distinctValues() {
+    return postings.size();
+  }
+
+  /**
+   * @param value the value (or pattern) to look for
+   * @return the number of records that have exactly that value
+   */
+  public int frequency(String value) {
+    if (TermIndex.isPattern(value)) {
+      int count = 0;
+      for (String match : terms.matching(value)) {
+        count += postings.get(match).cardinality();
+      }
+      return count;
+    }
+    return bitmap(value).cardinality();
+  }
+
+  /**
+   * @param filter the values to look for
+   * @return the number of records having a value the filter accepts
+   */
+  public int frequency(ValueFilter filter) {
+    String value = filter.singleValue();
+    return value != null ? frequency(value) : bitmap(filter).cardinality();
+  }
+
+  /**
+   * Get the positions of all the records having the given value.
+   *
+   * @param value the value (or pattern) to look for
+   * @return the (ascending) positions of the matching records
+   */
+  public int[] rows(String value) {
+    return bitmap(value).toArray();
+  }
+
+  /**
+   * Get the positions of all the records having the given value.
+   *
+   * @param value the value (or pattern) to look for
+   * @return the positions of the matching records
+   */
+  public RoaringBitmap bitmap(String value) {
+    if (TermIndex.isPattern(value)) {
+      RoaringBitmap rows = RoaringBitmap.EMPTY;
+      for (String match : terms.matching(value)) {
+        rows = rows.or(postings.get(match));
+      }
+      return rows;
+    }
+    return postings.getOrDefault(TermIndex.literal(value), RoaringBitmap.EMPTY);
+  }
+
+  /**
+   * Get the positions of all the records having a value the filter accepts:
+   * the union of the included values' posting lists (or every record, if none
+   * are included), less the union of the excluded values' posting lists.
+   *
+   * @param filter the values to look for
+   * @return the positions of the matching records
+   */
+  public RoaringBitmap bitmap(ValueFilter filter) {
+    RoaringBitmap rows;
+    if (filter.included().isEmpty()) {
+      rows = RoaringBitmap.range(rowCount);
+    } else {
+      rows = RoaringBitmap.EMPTY;
+      for (String value : filter.included()) {
+        rows = rows.or(bitmap(value));
+      }
+    }
+    for (String value : filter.excluded()) {
+      rows = rows.andNot(bitmap(value));
+    }
+    return rows;
+  }
+
+  /**
+   * Get the distinct values of the field that are the given value, or that
+   * match it if it is a pattern.
+   *
+   * @param value the value (or pattern) to look for
+   * @return the matching values
+   */
+  public List<String> values(String value) {
+    if (TermIndex.isPattern(value)) {
+      return terms.matching(value);
+    }
+    String literal = TermIndex.literal(value);
+    return postings.containsKey(literal) ? Collections.singletonList(literal) : Collections.emptyList();
+  }
+
+  /**
+   * Get the distinct values of the field that a filter accepts.
+   *
+   * @param filter the values to look for
+   * @return the accepted values, as they are kept in the index
+   */
+  public List<String> values(ValueFilter filter) {
+    Predicate<String> accepted = filter.matcher();
+    List<String> values = new ArrayList<>();
+    for (String value : postings.keySet()) {
+      if (accepted.test(value)) {
+        values.add(value);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * @return each distinct value of the field paired with the number of records
+   *         having that value, in the order the values first appear
+   */
+  public Map<String, Integer> frequencies() {
+    Map<String, Integer> counts = new LinkedHashMap<>();
+    for (Map.Entry<String, RoaringBitmap> entry : postings.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().cardinality());
+    }
+    return counts;
+  }
+
+  /**
+   * @param order the order of the field's values
+   * @return the rank of each distinct value of the field in that order
+   */
+  public ValueRanks ranks(Comparator<String> order) {
+    return new ValueRanks(postings.keySet(), order);
+  }
+
+  /**
+   * Get a suggester for the values of the field, building it the first time
+   * it's needed. Two threads may both build one at first, but they are the
+   * same and either will do.
+   *
+   * @return a suggester over the values of the field
+   */
+  public Suggester suggester() {
+    Suggester built = suggester;
+    if (built == null) {
+      built = new Suggester(frequencies());
+      suggester = built;
+    }
+    return built;
+  }
+}
@@ -0,0 +1,403 @@
+package umm3601.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compressed set of record positions, in the style of a Roaring bitmap.
+ * <p>
+ * Positions are split by their high 16 bits into chunks of 65536, and each
+ * chunk that has any positions in it is kept in whichever container is smaller:
+ * a sorted array of the low 16 bits of its positions when it has at most
+ * `ARRAY_MAX` of them, or a 65536 bit bitmap otherwise. Sparse sets then cost
+ * two bytes per position, dense ones one bit, and unions, intersections and
+ * differences work a chunk at a time, mostly 64 positions per instruction.
+ * <p>
+ * Bitmaps never change once built; each operation makes a new one, so they
+ * can be shared between threads and kept in indexes.
+ */
+public class RoaringBitmap {
+
+  static final int ARRAY_MAX = 4096;
+  private static final int WORDS = (1 << 16) / Long.SIZE;
+
+  /**
+   * The positions in one chunk.
+   */
+  private abstract static class Container {
+    abstract int cardinality();
+
+    abstract boolean contains(char low);
+
+    abstract long[] words();
+
+    /**
+     * Write the positions in this chunk to an array.
+     *
+     * @param high the high 16 bits of the positions in this chunk
+     * @param out  the array to write to
+     * @param from where in the array to start writing
+     */
+    abstract void copyTo(int high, int[] out, int from);
+  }
+
+  private static final class ArrayContainer extends Container {
+    final char[] values;
+
+    ArrayContainer(char[] values) {
+      this.values = values;
+    }
+
+    int cardinality() {
+      return values.length;
+    }
+
+    boolean contains(char low) {
+      return Arrays.binarySearch(values, low) >= 0;
+    }
+
+    long[] words() {
+      long[] words = new long[WORDS];
+      for (char value : values) {
+        words[value >>> 6] |= 1L << value;
+      }
+      return words;
+    }
+
+    void copyTo(int high, int[] out, int from) {
+      for (int i = 0; i < values.length; i++) {
+        out[from + i] = high << 16 | values[i];
+      }
+    }
+  }
+
+  private static final class BitmapContainer extends Container {
+    final long[] words;
+    final int cardinality;
+
+    BitmapContainer(long[] words, int cardinality) {
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    int cardinality() {
+      return cardinality;
+    }
+
+    boolean contains(char low) {
+      return (words[low >>> 6] & 1L << low) != 0;
+    }
+
+    long[] words() {
+      return words.clone();
+    }
+
+    void copyTo(int high, int[] out, int from) {
+      int i = from;
+      for (int w = 0; w < WORDS; w++) {
+        long word = words[w];
+        while (word != 0) {
+          out[i++] = high << 16 | w << 6 | Long.numberOfTrailingZeros(word);
+          word &= word - 1;
+        }
+      }
+    }
+  }
+
+  /**
+   * An empty bitmap.
+   */
+  public static final RoaringBitmap EMPTY = new RoaringBitmap(new char[0], new Container[0]);
+
+  // The high 16 bits of each non-empty chunk, ascending, and its container
+  private final char[] keys;
+  private final Container[] containers;
+  private final int cardinality;
+
+  private RoaringBitmap(char[] keys, Container[] containers) {
+    this.keys = keys;
+    this.containers = containers;
+    int total = 0;
+    for (Container container : containers) {
+      total += container.cardinality();
+    }
+    this.cardinality = total;
+  }
+
+  /**
+   * @param rows positions, in ascending order
+   * @return a bitmap of the positions
+   */
+  public static RoaringBitmap of(int... rows) {
+    Builder builder = new Builder();
+    int start = 0;
+    while (start < rows.length) {
+      int high = rows[start] >>> 16;
+      int end = start;
+      while (end < rows.length && rows[end] >>> 16 == high) {
+        end++;
+      }
+      char[] values = new char[end - start];
+      for (int i = start; i < end; i++) {
+        values[i - start] = (char) rows[i];
+      }
+      ArrayContainer array = new ArrayContainer(values);
+      builder.add(high, values.length <= ARRAY_MAX ? array : container(array.words()));
+      start = end;
+    }
+    return builder.build();
+  }
+
+  /**
+   * @param rowCount the number of positions
+   * @return a bitmap of every position from 0 up to `rowCount - 1`
+   */
+  public static RoaringBitmap range(int rowCount) {
+    Builder builder = new Builder();
+    for (int high = 0; high << 16 < rowCount; high++) {
+      int count = Math.min(1 << 16, rowCount - (high << 16));
+      long[] words = new long[WORDS];
+      Arrays.fill(words, 0, count >>> 6, -1L);
+      if ((count & 63) != 0) {
+        words[count >>> 6] = (1L << count) - 1;
+      }
+      builder.add(high, container(words));
+    }
+    return builder.build();
+  }
+
+  /**
+   * @return the number of positions in this bitmap
+   */
+  public int cardinality() {
+    return cardinality;
+  }
+
+  /**
+   * @param row a position
+   * @return whether the position is in this bitmap
+   */
+  public boolean contains(int row) {
+    int i = Arrays.binarySearch(keys, (char) (row >>> 16));
+    return i >= 0 && containers[i].contains((char) row);
+  }
+
+  /**
+   * @return the positions in this bitmap, in ascending order
+   */
+  public int[] toArray() {
+    int[] rows = new int[cardinality];
+    int from = 0;
+    for (int i = 0; i < keys.length; i++) {
+      containers[i].copyTo(keys[i], rows, from);
+      from += containers[i].cardinality();
+    }
+    return rows;
+  }
+
+  /**
+   * @param row a position being taken out of the records the bitmap is over
+   * @return the positions in this bitmap other than the given one, with those
+   *         after it moved down by one to close the gap
+   */
+  public RoaringBitmap withoutRow(int row) {
+    int[] rows = toArray();
+    int from = Arrays.binarySearch(rows, row);
+    int removed = from >= 0 ? 1 : 0;
+    from = from >= 0 ? from : -from - 1;
+    if (from == rows.length) {
+      // Every position is before the row
+      return this;
+    }
+    int[] shifted = new int[rows.length - removed];
+    System.arraycopy(rows, 0, shifted, 0, from);
+    for (int i = from + removed; i < rows.length; i++) {
+      shifted[i - removed] = rows[i] - 1;
+    }
+    return of(shifted);
+  }
+
+  /**
+   * @param other another bitmap
+   * @return the positions in either bitmap
+   */
+  public RoaringBitmap or(RoaringBitmap other) {
+    Builder builder = new Builder();
+    int i = 0;
+    int j = 0;
+    while (i < keys.length || j < other.keys.length) {
+      if (j == other.keys.length || i < keys.length && keys[i] < other.keys[j]) {
+        builder.add(keys[i], containers[i++]);
+      } else if (i == keys.length || other.keys[j] < keys[i]) {
+        builder.add(other.keys[j], other.containers[j++]);
+      } else {
+        builder.add(keys[i], or(containers[i++], other.containers[j++]));
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * @param other another bitmap
+   * @return the positions in both bitmaps
+   */
+  public RoaringBitmap and(RoaringBitmap other) {
+    Builder builder = new Builder();
+    int i = 0;
+    int j = 0;
+    while (i < keys.length && j < other.keys.length) {
+      if (keys[i] < other.keys[j]) {
+        i++;
+      } else if (other.keys[j] < keys[i]) {
+        j++;
+      } else {
+        builder.add(keys[i], and(containers[i++], other.containers[j++]));
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * @param other another bitmap
+   * @return the positions in this bitmap but not the other
+   */
+  public RoaringBitmap andNot(RoaringBitmap other) {
+    Builder builder = new Builder();
+    int j = 0;
+    for (int i = 0; i < keys.length; i++) {
+      while (j < other.keys.length && other.keys[j] < keys[i]) {
+        j++;
+      }
+      if (j < other.keys.length && other.keys[j] == keys[i]) {
+        builder.add(keys[i], andNot(containers[i], other.containers[j]));
+      } else {
+        builder.add(keys[i], containers[i]);
+      }
+    }
+    return builder.build();
+  }
+
+  private static Container or(Container first, Container second) {
+    if (first instanceof ArrayContainer && second instanceof ArrayContainer
+        && first.cardinality() + second.cardinality() <= ARRAY_MAX) {
+      char[] a = ((ArrayContainer) first).values;
+      char[] b = ((ArrayContainer) second).values;
+      char[] merged = new char[a.length + b.length];
+      int i = 0;
+      int j = 0;
+      int n = 0;
+      while (i < a.length || j < b.length) {
+        if (j == b.length || i < a.length && a[i] < b[j]) {
+          merged[n++] = a[i++];
+        } else if (i == a.length || b[j] < a[i]) {
+          merged[n++] = b[j++];
+        } else {
+          merged[n++] = a[i++];
+          j++;
+        }
+      }
+      return new ArrayContainer(Arrays.copyOf(merged, n));
+    }
+    long[] words = first.words();
+    long[] otherWords = second instanceof BitmapContainer ? ((BitmapContainer) second).words : second.words();
+    for (int w = 0; w < WORDS; w++) {
+      words[w] |= otherWords[w];
+    }
+    return container(words);
+  }
+
+  private static Container and(Container first, Container second) {
+    if (first instanceof ArrayContainer || second instanceof ArrayContainer) {
+      ArrayContainer array = (ArrayContainer) (first instanceof ArrayContainer ? first : second);
+      Container other = array == first ? second : first;
+      return filter(array, other, true);
+    }
+    long[] words = first.words();
+    long[] otherWords = ((BitmapContainer) second).words;
+    for (int w = 0; w < WORDS; w++) {
+      words[w] &= otherWords[w];
+    }
+    return container(words);
+  }
+
+  private static Container andNot(Container first, Container second) {
+    if (first instanceof ArrayContainer) {
+      return filter((ArrayContainer) first, second, false);
+    }
+    long[] words = first.words();
+    long[] otherWords = second instanceof BitmapContainer ? ((BitmapContainer) second).words : second.words();
+    for (int w = 0; w < WORDS; w++) {
+      words[w] &= ~otherWords[w];
+    }
+    return container(words);
+  }
+
+  /**
+   * @param array the positions to filter
+   * @param other the positions to test them against
+   * @param keep  whether to keep the positions in the other container, or the
+   *              ones not in it
+   * @return the kept positions, or null if there are none
+   */
+  private static Container filter(ArrayContainer array, Container other, boolean keep) {
+    char[] kept = new char[array.values.length];
+    int n = 0;
+    for (char value : array.values) {
+      if (other.contains(value) == keep) {
+        kept[n++] = value;
+      }
+    }
+    return n == 0 ? null : new ArrayContainer(Arrays.copyOf(kept, n));
+  }
+
+  /**
+   * @param words the bits of a chunk
+   * @return the smaller container for the bits, or null if none are set
+   */
+  private static Container container(long[] words) {
+    int cardinality = 0;
+    for (long word : words) {
+      cardinality += Long.bitCount(word);
+    }
+    if (cardinality == 0) {
+      return null;
+    }
+    if (cardinality > ARRAY_MAX) {
+      return new BitmapContainer(words, cardinality);
+    }
+    char[] values = new char[cardinality];
+    int n = 0;
+    for (int w = 0; w < WORDS; w++) {
+      long word = words[w];
+      while (word != 0) {
+        values[n++] = (char) (w << 6 | Long.numberOfTrailingZeros(word));
+        word &= word - 1;
+      }
+    }
+    return new ArrayContainer(values);
+  }
+
+  /**
+   * Collects the non-empty chunks of a new bitmap, in ascending order.
+   */
+  private static class Builder {
+    private final List<Character> keys = new ArrayList<>();
+    private final List<Container> containers = new ArrayList<>();
+
+    void add(int high, Container container) {
+      if (container != null) {
+        keys.add((char) high);
+        containers.add(container);
+      }
+    }
+
+    RoaringBitmap build() {
+      char[] keyArray = new char[keys.size()];
+      for (int i = 0; i < keyArray.length; i++) {
+        keyArray[i] = keys.get(i);
+      }
+      return new RoaringBitmap(keyArray, containers.toArray(new Container[0]));
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package umm3601.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * One of the fields in an `orderBy`, e.g., `orderBy=owner,-status,category`,
+ * along with whether it's descending (`-`).
+ * <p>
+ * Records are sorted by several keys at once by packing the ranks of their
+ * values (see `ValueRanks`) into a single `long` for each record, the first
+ * key in the highest bits, and the record's position in the lowest, so that
+ * records the keys can't tell apart keep their order. Sorting the packed keys
+ * is then a sort of primitive `long`s, with nothing allocated or looked up per
+ * comparison.
+ */
+public class SortKey {
+
+  public static final String DESCENDING = "-";
+
+  public final String field;
+  public final boolean descending;
+
+  public SortKey(String field, boolean descending) {
+    this.field = field;
+    this.descending = descending;
+  }
+
+  /**
+   * @param orderBy the fields to order by, most significant first, separated
+   *                by commas, each starting with `-` if it's descending
+   * @return the keys
+   */
+  public static List<SortKey> parse(String orderBy) {
+    List<SortKey> keys = new ArrayList<>();
+    for (String key : orderBy.split(",")) {
+      key = key.trim();
+      boolean descending = key.startsWith(DESCENDING);
+      keys.add(new SortKey(descending ? key.substring(DESCENDING.length()) : key, descending));
+    }
+    return keys;
+  }
+
+  /**
+   * Rank records by one field, for records that never change, so each one's
+   * rank can be kept by position.
+   *
+   * @param records the records to rank
+   * @param order   the order of the records by the field
+   * @return the rank of each record's value, by position; records the order
+   *         can't tell apart share a rank
+   */
+  public static <T> int[] ranks(T[] records, Comparator<? super T> order) {
+    Integer[] sorted = new Integer[records.length];
+    for (int i = 0; i < sorted.length; i++) {
+      sorted[i] = i;
+    }
+    Arrays.sort(sorted, (first, second) -> order.compare(records[first], records[second]));
+    int[] ranks = new int[records.length];
+    int rank = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (i > 0 && order.compare(records[sorted[i - 1]], records[sorted[i]]) != 0) {
+        rank++;
+      }
+      ranks[sorted[i]] = rank;
+    }
+    return ranks;
+  }
+
+  /**
+   * Work out the order of some records by the ranks of their values.
+   *
+   * @param keys   the keys to order by
+   * @param ranks  for each key, the number of ranks its values can have
+   * @param count  the number of records
+   * @param rankOf the rank of a record's value for a key, given the key's
+   *               index in `keys` and the record's position, or -1 if the
+   *               value has no rank
+   * @return the positions of the records in order, or null if the keys don't
+   *         fit in a `long` or a value has no rank
+   */
+  public static int[] order(List<SortKey> keys, int[] ranks, int count, IntBinaryOperator rankOf) {
+    int positionBits = bitsFor(count);
+    int[] bits = new int[keys.size()];
+    int totalBits = positionBits;
+    for (int k = 0; k < bits.length; k++) {
+      bits[k] = bitsFor(ranks[k]);
+      totalBits += bits[k];
+    }
+    if (totalBits > Long.SIZE - 1) {
+      return null;
+    }
+
+    long[] packed = new long[count];
+    for (int record = 0; record < count; record++) {
+      long key = 0;
+      for (int k = 0; k < bits.length; k++) {
+        int rank = rankOf.applyAsInt(k, record);
+        if (rank < 0) {
+          return null;
+        }
+        key = key << bits[k] | (keys.get(k).descending ? ranks[k] - 1 - rank : rank);
+      }
+      packed[record] = key << positionBits | record;
+    }
+    Arrays.sort(packed);
+
+    long positionMask = (1L << positionBits) - 1;
+    int[] order = new int[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = (int) (packed[i] & positionMask);
+    }
+    return order;
+  }
+
+  /**
+   * @param values the number of distinct values
+   * @return the number of bits needed to hold any of the values
+   */
+  private static int bitsFor(int values) {
+    return values <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(values - 1);
+  }
+
+  @Override
+  public String toString() {
+    return (descending ? DESCENDING : "") + field;
+  }
+}
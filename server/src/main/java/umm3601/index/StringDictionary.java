@@ -0,0 +1,87 @@
+package umm3601.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A load-time dictionary of the values of a low-cardinality field, such as a
+ * todo's owner or a user's company.
+ * <p>
+ * The JSON loaders create a separate `String` for every occurrence of a value,
+ * so a name shared by thousands of records is held thousands of times.
+ * Replacing each occurrence with the dictionary's single canonical copy lets
+ * the duplicates be garbage collected, and means two values from the same
+ * dictionary are equal exactly when they are the same object, so filters can
+ * compare them with `==` rather than `String.equals`.
+ * <p>
+ * Unlike `String.intern` the dictionary is private to one database, so it
+ * doesn't grow the JVM-wide string table and goes away with the database.
+ * Lookups may run alongside `intern`, but only one thread may intern at a time.
+ */
+public class StringDictionary {
+
+  /**
+   * Rough heap cost of a `String` beyond its characters: the object header and
+   * fields, plus the header of its byte array.
+   */
+  static final int STRING_OVERHEAD = 24 + 16;
+
+  private final ConcurrentMap<String, String> canonical = new ConcurrentHashMap<>();
+  private long duplicates;
+  private long duplicateBytes;
+
+  /**
+   * Get the canonical copy of a value, adding the value to the dictionary if
+   * it hasn't been seen before.
+   *
+   * @param value the value, which may be null
+   * @return the canonical copy of the value, or null if the value was null
+   */
+  public String intern(String value) {
+    if (value == null) {
+      return null;
+    }
+    String existing = canonical.putIfAbsent(value, value);
+    if (existing == null) {
+      return value;
+    }
+    if (existing != value) {
+      duplicates++;
+      duplicateBytes += STRING_OVERHEAD + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+    return existing;
+  }
+
+  /**
+   * Get the canonical copy of a value without adding it to the dictionary.
+   *
+   * @param value the value to look up
+   * @return the canonical copy of the value, or null if no record has it
+   */
+  public String lookup(String value) {
+    return value == null ? null : canonical.get(value);
+  }
+
+  /**
+   * @return the number of distinct values in the dictionary
+   */
+  public int size() {
+    return canonical.size();
+  }
+
+  /**
+   * @return the number of duplicate copies that were replaced by a canonical
+   *         copy
+   */
+  public long duplicates() {
+    return duplicates;
+  }
+
+  /**
+   * @return roughly how many bytes of heap the replaced duplicates took up
+   */
+  public long duplicateBytes() {
+    return duplicateBytes;
+  }
+}
@@ -0,0 +1,148 @@
+package umm3601.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.javalin.http.BadRequestResponse;
+
+/**
+ * Suggests the values of a field that start with what has been typed so far,
+ * most common first, for autocompleting filter inputs.
+ * <p>
+ * The values are kept in a trie over their normalized (lower cased, see
+ * `TermIndex`) form, and every node holds the top `MAX_SUGGESTIONS` values
+ * under it, ranked when the suggester is built. Answering a prefix is then
+ * just a walk down the trie, one step per character, whatever the number of
+ * values. A suggester never changes once built, so any number of threads can
+ * use it at once.
+ */
+public class Suggester {
+
+  /**
+   * The most suggestions given for a prefix.
+   */
+  public static final int MAX_SUGGESTIONS = 10;
+
+  /**
+   * A suggested value, and the number of records having it.
+   */
+  public static class Suggestion {
+    public final String value;
+    public final int count;
+
+    public Suggestion(String value, int count) {
+      this.value = value;
+      this.count = count;
+    }
+  }
+
+  /**
+   * Most common first, then alphabetically.
+   */
+  static final Comparator<Suggestion> RANKING = Comparator.comparingInt((Suggestion suggestion) -> suggestion.count)
+      .reversed().thenComparing(suggestion -> suggestion.value);
+
+  private static class Node {
+    final Map<Character, Node> children = new HashMap<>();
+    final List<Suggestion> values = new ArrayList<>();
+    List<Suggestion> top;
+  }
+
+  private final Node root = new Node();
+
+  /**
+   * @param frequencies each distinct value of the field, paired with the
+   *                    number of records having that value
+   */
+  public Suggester(Map<String, Integer> frequencies) {
+    for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+      Node node = root;
+      for (char c : TermIndex.normalize(entry.getKey()).toCharArray()) {
+        node = node.children.computeIfAbsent(c, key -> new Node());
+      }
+      node.values.add(new Suggestion(entry.getKey(), entry.getValue()));
+    }
+    rank(root);
+  }
+
+  /**
+   * Work out the top values under a node and each of its descendants.
+   *
+   * @param node the node to rank
+   * @return the top values under the node
+   */
+  private static List<Suggestion> rank(Node node) {
+    List<Suggestion> candidates = new ArrayList<>(node.values);
+    for (Node child : node.children.values()) {
+      candidates.addAll(rank(child));
+    }
+    candidates.sort(RANKING);
+    node.top = Collections.unmodifiableList(
+        new ArrayList<>(candidates.subList(0, Math.min(MAX_SUGGESTIONS, candidates.size()))));
+    return node.top;
+  }
+
+  /**
+   * Suggest the values starting with a prefix, ignoring case.
+   *
+   * @param prefix what has been typed so far
+   * @param limit  the most suggestions to give, at most `MAX_SUGGESTIONS`
+   * @return the most common values starting with the prefix, most common first
+   */
+  public List<Suggestion> suggest(String prefix, int limit) {
+    Node node = root;
+    for (char c : TermIndex.normalize(prefix).toCharArray()) {
+      node = node.children.get(c);
+      if (node == null) {
+        return Collections.emptyList();
+      }
+    }
+    return node.top.subList(0, Math.max(0, Math.min(limit, node.top.size())));
+  }
+
+  /**
+   * @param queryParams map of key-value pairs for a suggestion request
+   * @return the number of suggestions asked for with `limit`, or the most
+   *         there can be if it isn't given
+   * @throws BadRequestResponse if the limit isn't an integer
+   */
+  public static int requestedLimit(Map<String, List<String>> queryParams) {
+    if (!queryParams.containsKey("limit")) {
+      return MAX_SUGGESTIONS;
+    }
+    String limitParam = queryParams.get("limit").get(0);
+    try {
+      return Integer.parseInt(limitParam);
+    } catch (NumberFormatException e) {
+      throw new BadRequestResponse("Specified limit '" + limitParam + "' can't be parsed to an integer");
+    }
+  }
+
+  /**
+   * Combine suggestions made separately for different records, e.g., by each
+   * shard of the todos, adding up the counts of values suggested more than
+   * once.
+   *
+   * @param suggestionLists the suggestions to combine
+   * @param limit           the most suggestions to give
+   * @return the most common of the suggested values, most common first
+   */
+  public static List<Suggestion> merge(Collection<List<Suggestion>> suggestionLists, int limit) {
+    Map<String, Integer> counts = new LinkedHashMap<>();
+    for (List<Suggestion> suggestions : suggestionLists) {
+      for (Suggestion suggestion : suggestions) {
+        counts.merge(suggestion.value, suggestion.count, Integer::sum);
+      }
+    }
+    List<Suggestion> merged = new ArrayList<>();
+    counts.forEach((value, count) -> merged.add(new Suggestion(value, count)));
+    merged.sort(RANKING);
+    return merged.subList(0, Math.max(0, Math.min(limit, merged.size())));
+  }
+}
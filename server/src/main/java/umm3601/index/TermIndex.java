@@ -0,0 +1,113 @@
+package umm3601.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * A sorted dictionary of the distinct values of a field, for matching filter
+ * patterns like `owner=bla*`.
+ * <p>
+ * A value ending in `*` is a pattern matching, ignoring case, every value that
+ * starts with the rest of it. The values are kept lower cased and sorted, so
+ * the values with a given prefix are a run of neighbouring terms that is found
+ * with a binary search, rather than by lower casing and testing every record.
+ * <p>
+ * Values that aren't patterns are matched exactly, case and all, so that they
+ * can be looked up directly. A value starting with `\` is never a pattern (or,
+ * in a `ValueFilter`, an exclusion); it stands for the rest of it exactly, so
+ * `\Fry*` matches just the value `Fry*`, and `\!Dawn` just `!Dawn`.
+ */
+public class TermIndex {
+
+  private static final String WILDCARD = "*";
+  private static final String ESCAPE = "\\";
+
+  // The normalized values, in order, and the original values for each
+  private final String[] terms;
+  private final String[][] values;
+
+  /**
+   * @param distinctValues the distinct values of the field
+   */
+  public TermIndex(Collection<String> distinctValues) {
+    Map<String, List<String>> byTerm = new TreeMap<>();
+    for (String value : distinctValues) {
+      byTerm.computeIfAbsent(normalize(value), term -> new ArrayList<>()).add(value);
+    }
+    terms = byTerm.keySet().toArray(new String[0]);
+    values = byTerm.values().stream().map(originals -> originals.toArray(new String[0])).toArray(String[][]::new);
+  }
+
+  /**
+   * @param value a filter value
+   * @return whether the value is a prefix pattern rather than an exact value
+   */
+  public static boolean isPattern(String value) {
+    return value.endsWith(WILDCARD) && !value.startsWith(ESCAPE);
+  }
+
+  /**
+   * @param value a filter value that isn't a pattern
+   * @return the value it stands for exactly, without any leading `\`
+   */
+  public static String literal(String value) {
+    return value.startsWith(ESCAPE) ? value.substring(ESCAPE.length()) : value;
+  }
+
+  /**
+   * @param value a value of the field
+   * @return the form of the value that patterns are matched against
+   */
+  public static String normalize(String value) {
+    return value.toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Build a test for values matching a pattern, for when there's no index to
+   * look the pattern up in. This matches exactly the values `matching` finds.
+   *
+   * @param pattern the pattern, e.g., `bla*`
+   * @return a test for whether a value matches the pattern
+   */
+  public static Predicate<String> matcher(String pattern) {
+    String prefix = normalize(pattern.substring(0, pattern.length() - WILDCARD.length()));
+    return value -> normalize(value).startsWith(prefix);
+  }
+
+  /**
+   * @return the number of distinct normalized values
+   */
+  public int size() {
+    return terms.length;
+  }
+
+  /**
+   * Find the values matching a pattern.
+   *
+   * @param pattern the pattern, e.g., `bla*`
+   * @return the matching values, ordered by their normalized form
+   */
+  public List<String> matching(String pattern) {
+    String prefix = normalize(pattern.substring(0, pattern.length() - WILDCARD.length()));
+    List<String> matches = new ArrayList<>();
+    for (int i = firstAtLeast(prefix); i < terms.length && terms[i].startsWith(prefix); i++) {
+      matches.addAll(Arrays.asList(values[i]));
+    }
+    return matches;
+  }
+
+  /**
+   * @param term a normalized value
+   * @return the position of the first term that isn't before the given term
+   */
+  private int firstAtLeast(String term) {
+    int position = Arrays.binarySearch(terms, term);
+    return position >= 0 ? position : -position - 1;
+  }
+}
@@ -0,0 +1,108 @@
+package umm3601.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * The values a filter on one field accepts, from all the values of its query
+ * parameter, e.g., `owner=Blanche&owner=Fry&owner=!Dawn`.
+ * <p>
+ * A value starting with `!` is excluded; the others are included. A record
+ * matches if its value is any of the included ones (or there are none) and is
+ * none of the excluded ones. Any of the values may be a pattern like `bla*`
+ * (see `TermIndex`). A value starting with `\` is taken exactly as the rest
+ * of it, e.g., `\!Dawn` includes the value `!Dawn` rather than excluding
+ * `Dawn`.
+ */
+public class ValueFilter {
+
+  public static final String NOT = "!";
+
+  private final List<String> params;
+  private final List<String> included = new ArrayList<>();
+  private final List<String> excluded = new ArrayList<>();
+
+  /**
+   * @param params the values of the field's query parameter
+   */
+  public ValueFilter(List<String> params) {
+    this(params, value -> value);
+  }
+
+  /**
+   * @param params the values of the field's query parameter
+   * @param key    turns each value (without any `!`) into the form the field's
+   *               values are kept in, e.g., a status into "complete" or
+   *               "incomplete"
+   */
+  public ValueFilter(List<String> params, UnaryOperator<String> key) {
+    this.params = params;
+    for (String param : params) {
+      if (param.startsWith(NOT)) {
+        excluded.add(key.apply(param.substring(NOT.length())));
+      } else {
+        included.add(key.apply(param));
+      }
+    }
+  }
+
+  /**
+   * @return the included values; if there are none, every value not excluded
+   *         is accepted
+   */
+  public List<String> included() {
+    return Collections.unmodifiableList(included);
+  }
+
+  /**
+   * @return the excluded values
+   */
+  public List<String> excluded() {
+    return Collections.unmodifiableList(excluded);
+  }
+
+  /**
+   * @return the one value accepted, if the filter is a single exact value with
+   *         nothing excluded, as filters were before they could have more than
+   *         one value; null otherwise. This is still a filter value, so any
+   *         `\` escaping it is kept (see `TermIndex.literal`)
+   */
+  public String singleValue() {
+    if (included.size() == 1 && excluded.isEmpty() && !TermIndex.isPattern(included.get(0))) {
+      return included.get(0);
+    }
+    return null;
+  }
+
+  /**
+   * Build a test for the values the filter accepts, for when there's no index
+   * to look them up in.
+   *
+   * @return a test for whether a value is accepted
+   */
+  public Predicate<String> matcher() {
+    Predicate<String> isIncluded = included.isEmpty() ? value -> true : anyOf(included);
+    Predicate<String> isExcluded = anyOf(excluded);
+    return value -> isIncluded.test(value) && !isExcluded.test(value);
+  }
+
+  private static Predicate<String> anyOf(List<String> values) {
+    Predicate<String> any = value -> false;
+    for (String target : values) {
+      any = any.or(TermIndex.isPattern(target) ? TermIndex.matcher(target) : TermIndex.literal(target)::equals);
+    }
+    return any;
+  }
+
+  /**
+   * @return the filter as it was given, e.g., `Blanche,Fry,!Dawn`, for query
+   *         plans and profiling
+   */
+  @Override
+  public String toString() {
+    return String.join(",", params);
+  }
+}
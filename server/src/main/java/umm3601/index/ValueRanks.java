@@ -0,0 +1,55 @@
+package umm3601.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The distinct values of a field numbered in order, so that comparing two
+ * values' ranks compares the values.
+ * <p>
+ * Ranks are worked out once, when the values are loaded, so sorting by the
+ * field (see `SortKey`) compares small integers rather than strings.
+ */
+public class ValueRanks {
+
+  private final Map<String, Integer> ranks = new HashMap<>();
+  private final int size;
+
+  /**
+   * @param values the distinct values of the field
+   * @param order  the order of the values
+   */
+  public ValueRanks(Collection<String> values, Comparator<String> order) {
+    List<String> sorted = new ArrayList<>(values);
+    sorted.sort(order);
+    int rank = 0;
+    for (int i = 0; i < sorted.size(); i++) {
+      // Values the order can't tell apart share a rank
+      if (i > 0 && order.compare(sorted.get(i - 1), sorted.get(i)) != 0) {
+        rank++;
+      }
+      ranks.put(sorted.get(i), rank);
+    }
+    size = sorted.isEmpty() ? 0 : rank + 1;
+  }
+
+  /**
+   * @param value a value of the field
+   * @return the rank of the value, or -1 if it isn't one of the ranked values
+   */
+  public int rank(String value) {
+    Integer rank = ranks.get(value);
+    return rank == null ? -1 : rank;
+  }
+
+  /**
+   * @return one more than the highest rank
+   */
+  public int size() {
+    return size;
+  }
+}
@@ -0,0 +1,178 @@
+package umm3601.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes records column by column rather than record by record, in the style
+ * of an Apache Arrow record batch, for clients that analyse many records at
+ * once.
+ * <p>
+ * A batch is written as
+ *
+ * <pre>
+ * {"length": 3, "columns": [
+ *   {"name": "_id", "type": "utf8", "values": ["a", "b", "c"]},
+ *   {"name": "owner", "type": "dictionary", "dictionary": ["Fry", "Leela"], "indices": (bytes)},
+ *   {"name": "status", "type": "bool", "bits": (bytes)}]}
+ * </pre>
+ *
+ * Low-cardinality columns are dictionary encoded, with each record's entry in
+ * the dictionary given as a little-endian 32 bit integer, and booleans are
+ * packed eight to a byte, least significant bit first, as in Arrow. The
+ * `(bytes)` buffers are binary values in binary formats like CBOR, and base64
+ * strings in JSON.
+ *
+ * @param <T> the type of record being written
+ */
+public class ColumnBatch<T> {
+
+  /**
+   * Writes the values of one column of the records.
+   */
+  @FunctionalInterface
+  private interface ColumnWriter<T> {
+    void write(JsonGenerator out, T[] records) throws IOException;
+  }
+
+  private final Map<String, ColumnWriter<T>> columnWriters = new LinkedHashMap<>();
+
+  /**
+   * Add a column of strings.
+   *
+   * @param name   the name of the column
+   * @param values gets the value of the column from a record
+   * @return this batch, so calls can be chained
+   */
+  public ColumnBatch<T> utf8(String name, Function<T, String> values) {
+    columnWriters.put(name, (out, records) -> {
+      out.writeStringField("type", "utf8");
+      out.writeArrayFieldStart("values");
+      for (T record : records) {
+        out.writeString(values.apply(record));
+      }
+      out.writeEndArray();
+    });
+    return this;
+  }
+
+  /**
+   * Add a dictionary encoded column of strings, for fields with few distinct
+   * values.
+   *
+   * @param name   the name of the column
+   * @param values gets the value of the column from a record
+   * @return this batch, so calls can be chained
+   */
+  public ColumnBatch<T> dictionary(String name, Function<T, String> values) {
+    columnWriters.put(name, (out, records) -> {
+      Map<String, Integer> dictionary = new HashMap<>();
+      List<String> entries = new ArrayList<>();
+      ByteBuffer indices = ByteBuffer.allocate(records.length * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      for (T record : records) {
+        String value = values.apply(record);
+        Integer index = dictionary.get(value);
+        if (index == null) {
+          index = entries.size();
+          dictionary.put(value, index);
+          entries.add(value);
+        }
+        indices.putInt(index);
+      }
+
+      out.writeStringField("type", "dictionary");
+      out.writeArrayFieldStart("dictionary");
+      for (String entry : entries) {
+        out.writeString(entry);
+      }
+      out.writeEndArray();
+      out.writeFieldName("indices");
+      out.writeBinary(indices.array());
+    });
+    return this;
+  }
+
+  /**
+   * Add a column of booleans.
+   *
+   * @param name   the name of the column
+   * @param values gets the value of the column from a record
+   * @return this batch, so calls can be chained
+   */
+  public ColumnBatch<T> bool(String name, Predicate<T> values) {
+    columnWriters.put(name, (out, records) -> {
+      byte[] bits = new byte[(records.length + 7) / 8];
+      for (int i = 0; i < records.length; i++) {
+        if (values.test(records[i])) {
+          bits[i / 8] |= 1 << (i % 8);
+        }
+      }
+      out.writeStringField("type", "bool");
+      out.writeFieldName("bits");
+      out.writeBinary(bits);
+    });
+    return this;
+  }
+
+  /**
+   * @return the names of all the columns, in the order they were added
+   */
+  public List<String> columns() {
+    return new ArrayList<>(columnWriters.keySet());
+  }
+
+  /**
+   * Write the selected columns of the records as a batch.
+   *
+   * @param out     the generator to write to
+   * @param records the records to write
+   * @param columns the names of the columns to include, which must have been
+   *                added to this batch
+   * @throws IOException if the generator can't be written to
+   */
+  public void write(JsonGenerator out, T[] records, List<String> columns) throws IOException {
+    out.writeStartObject();
+    out.writeNumberField("length", records.length);
+    out.writeArrayFieldStart("columns");
+    for (String column : columns) {
+      out.writeStartObject();
+      out.writeStringField("name", column);
+      columnWriters.get(column).write(out, records);
+      out.writeEndObject();
+    }
+    out.writeEndArray();
+    out.writeEndObject();
+  }
+
+  /**
+   * Encode the selected columns of the records as a batch.
+   *
+   * @param records the records to write
+   * @param columns the names of the columns to include
+   * @param factory makes the generator for the format to write in
+   * @return the encoded batch
+   */
+  public byte[] encode(T[] records, List<String> columns, JsonFactory factory) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (JsonGenerator out = factory.createGenerator(bytes)) {
+      write(out, records, columns);
+    } catch (IOException e) {
+      // Writing to a ByteArrayOutputStream doesn't fail
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+}
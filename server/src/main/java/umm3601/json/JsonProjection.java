@@ -0,0 +1,166 @@
+package umm3601.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import io.javalin.http.BadRequestResponse;
+
+/**
+ * Writes just some of the fields of our records as JSON, or in one of the
+ * binary formats Jackson writes the same way.
+ * <p>
+ * Each field knows how to write its own value straight to a Jackson
+ * `JsonGenerator`, so a projected response is streamed field by field from the
+ * records themselves rather than by building smaller copies of every record
+ * and handing those to the usual JSON mapper.
+ *
+ * @param <T> the type of record being written
+ */
+public class JsonProjection<T> {
+
+  /**
+   * Writes the value of one field of a record.
+   */
+  @FunctionalInterface
+  public interface FieldWriter<T> {
+    void write(JsonGenerator json, T record) throws IOException;
+  }
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private final String recordName;
+  private final Map<String, FieldWriter<T>> fieldWriters = new LinkedHashMap<>();
+
+  /**
+   * @param recordName what the records are called, for error messages
+   */
+  public JsonProjection(String recordName) {
+    this.recordName = recordName;
+  }
+
+  /**
+   * Add a field that can be selected.
+   *
+   * @param name   the name of the field in the JSON output
+   * @param writer writes the value of the field
+   * @return this projection, so calls can be chained
+   */
+  public JsonProjection<T> field(String name, FieldWriter<T> writer) {
+    fieldWriters.put(name, writer);
+    return this;
+  }
+
+  /**
+   * Copy this projection, writing one of its fields differently, e.g., with
+   * a related record embedded in place of its name.
+   *
+   * @param name   the name of the field to replace
+   * @param writer writes the new value of the field
+   * @return the copy; this projection is left as it is
+   */
+  public JsonProjection<T> with(String name, FieldWriter<T> writer) {
+    JsonProjection<T> copy = new JsonProjection<>(recordName);
+    copy.fieldWriters.putAll(fieldWriters);
+    copy.fieldWriters.put(name, writer);
+    return copy;
+  }
+
+  /**
+   * @return the names of all the fields, in the order they were added
+   */
+  public List<String> fields() {
+    return new ArrayList<>(fieldWriters.keySet());
+  }
+
+  /**
+   * Parse a comma separated list of field names, e.g., `_id,owner,status`.
+   *
+   * @param fieldsParam the comma separated field names
+   * @return the selected field names, in the order they were given
+   */
+  public List<String> select(String fieldsParam) {
+    List<String> fields = new ArrayList<>();
+    for (String field : fieldsParam.split(",")) {
+      String name = field.trim();
+      if (!fieldWriters.containsKey(name)) {
+        throw new BadRequestResponse("Specified field '" + name + "' isn't a field of a " + recordName);
+      }
+      if (!fields.contains(name)) {
+        fields.add(name);
+      }
+    }
+    return fields;
+  }
+
+  /**
+   * Write the selected fields of a single record as a JSON object.
+   *
+   * @param json   the generator to write to
+   * @param record the record to write
+   * @param fields the names of the fields to include
+   * @throws IOException if the generator can't be written to
+   */
+  public void write(JsonGenerator json, T record, List<String> fields) throws IOException {
+    json.writeStartObject();
+    for (String field : fields) {
+      json.writeFieldName(field);
+      fieldWriters.get(field).write(json, record);
+    }
+    json.writeEndObject();
+  }
+
+  /**
+   * Get a JSON array holding the selected fields of each of the records.
+   *
+   * @param records the records to write
+   * @param fields  the names of the fields to include
+   * @return the JSON text
+   */
+  public String toJson(T[] records, List<String> fields) {
+    StringWriter out = new StringWriter();
+    try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+      json.writeStartArray();
+      for (T record : records) {
+        write(json, record, fields);
+      }
+      json.writeEndArray();
+    } catch (IOException e) {
+      // Writing to a StringWriter doesn't fail
+      throw new UncheckedIOException(e);
+    }
+    return out.toString();
+  }
+
+  /**
+   * Encode an array holding the selected fields of each of the records, in a
+   * format other than JSON text, e.g., CBOR.
+   *
+   * @param records the records to write
+   * @param fields  the names of the fields to include
+   * @param factory makes the generator for the format to write in
+   * @return the encoded records
+   */
+  public byte[] encode(T[] records, List<String> fields, JsonFactory factory) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (JsonGenerator out = factory.createGenerator(bytes)) {
+      out.writeStartArray();
+      for (T record : records) {
+        write(out, record, fields);
+      }
+      out.writeEndArray();
+    } catch (IOException e) {
+      // Writing to a ByteArrayOutputStream doesn't fail
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+}
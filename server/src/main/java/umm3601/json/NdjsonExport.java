@@ -0,0 +1,112 @@
+package umm3601.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import io.javalin.http.Context;
+
+/**
+ * Streams records to the client as newline-delimited JSON (one JSON object per
+ * line), for exporting whole data sets.
+ * <p>
+ * Records are written straight to the response as they are read, so the memory
+ * used doesn't depend on how many there are. Writes block while the client
+ * falls behind, which in turn holds up reading more records. The response is
+ * gzip compressed if the request's `Accept-Encoding` allows it.
+ */
+public class NdjsonExport {
+
+  public static final String CONTENT_TYPE = "application/x-ndjson";
+
+  // Jackson separates root values with a space by default, which would start
+  // every line after the first with one
+  private static final JsonFactory JSON_FACTORY = new JsonFactory().setRootValueSeparator(null);
+  private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+  private NdjsonExport() {
+  }
+
+  /**
+   * Stream the selected fields of the records as the response.
+   *
+   * @param ctx        a Javalin HTTP context
+   * @param records    the records to write
+   * @param projection writes the fields of a record
+   * @param fields     the names of the fields to include
+   * @throws IOException if the response can't be written, e.g., because the
+   *                     client went away
+   */
+  public static <T> void stream(Context ctx, Iterator<T> records, JsonProjection<T> projection, List<String> fields)
+      throws IOException {
+    write(open(ctx), records, projection, fields);
+  }
+
+  /**
+   * Write the selected fields of the records, one per line.
+   *
+   * @param out        the stream to write to, which is closed at the end
+   * @param records    the records to write
+   * @param projection writes the fields of a record
+   * @param fields     the names of the fields to include
+   * @throws IOException if the records can't be written
+   */
+  static <T> void write(OutputStream out, Iterator<T> records, JsonProjection<T> projection, List<String> fields)
+      throws IOException {
+    try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+      while (records.hasNext()) {
+        projection.write(json, records.next(), fields);
+        json.writeRaw('\n');
+      }
+    }
+  }
+
+  /**
+   * Start a newline-delimited JSON response.
+   *
+   * @param ctx a Javalin HTTP context
+   * @return the stream to write the lines to, which must be closed at the end
+   * @throws IOException if the response can't be written
+   */
+  public static OutputStream open(Context ctx) throws IOException {
+    ctx.contentType(CONTENT_TYPE);
+    boolean gzip = acceptsGzip(ctx.header("Accept-Encoding"));
+    if (gzip) {
+      ctx.header("Content-Encoding", "gzip");
+    }
+    return open(ctx.res.getOutputStream(), gzip);
+  }
+
+  /**
+   * @param out  the stream the response is written to
+   * @param gzip whether to compress the response
+   * @return the stream to write the lines to
+   * @throws IOException if the response can't be written
+   */
+  static OutputStream open(OutputStream out, boolean gzip) throws IOException {
+    return gzip ? new GZIPOutputStream(out, GZIP_BUFFER_SIZE) : out;
+  }
+
+  /**
+   * @param acceptEncoding the `Accept-Encoding` header of a request, which may
+   *                       be null
+   * @return whether the header allows a gzip compressed response
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.split(";");
+      if (parts[0].trim().equalsIgnoreCase("gzip")) {
+        return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+      }
+    }
+    return false;
+  }
+}
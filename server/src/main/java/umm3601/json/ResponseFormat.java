@@ -0,0 +1,108 @@
+package umm3601.json;
+
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+/**
+ * A format responses can be written in, and the Jackson factory for the
+ * generators that write it.
+ * <p>
+ * The binary formats are written with the same `JsonGenerator` calls as JSON,
+ * so anything that can write itself as JSON (e.g., a `JsonProjection`) can
+ * write itself in any of these formats.
+ */
+public class ResponseFormat {
+
+  public static final ResponseFormat JSON = new ResponseFormat("application/json", new JsonFactory());
+  public static final ResponseFormat CBOR = new ResponseFormat("application/cbor", new CBORFactory());
+  public static final ResponseFormat MESSAGE_PACK = new ResponseFormat("application/x-msgpack",
+      new MessagePackFactory());
+
+  public final String contentType;
+  public final JsonFactory factory;
+
+  public ResponseFormat(String contentType, JsonFactory factory) {
+    this.contentType = contentType;
+    this.factory = factory;
+  }
+
+  /**
+   * Pick the offered format the client most prefers, according to the
+   * request's `Accept` header, e.g., `application/cbor, application/json;q=0.5`.
+   * <p>
+   * If the client doesn't say, or accepts none of the offered formats, the first
+   * offered format is used rather than refusing the request.
+   *
+   * @param accept  the `Accept` header of the request, which may be null
+   * @param offered the formats that can be written, the default first
+   * @return the format to respond with
+   */
+  public static ResponseFormat negotiate(String accept, List<ResponseFormat> offered) {
+    ResponseFormat best = offered.get(0);
+    if (accept == null || accept.isEmpty()) {
+      return best;
+    }
+
+    double bestQuality = 0;
+    for (ResponseFormat format : offered) {
+      double quality = quality(accept, format.contentType);
+      // Ties go to the earlier format
+      if (quality > bestQuality) {
+        best = format;
+        bestQuality = quality;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * @param accept      an `Accept` header
+   * @param contentType a content type
+   * @return the quality the header gives the content type, from the most
+   *         specific media range matching it, or 0 if none matches
+   */
+  static double quality(String accept, String contentType) {
+    String type = contentType.substring(0, contentType.indexOf('/'));
+    int bestSpecificity = -1;
+    double quality = 0;
+
+    for (String range : accept.split(",")) {
+      String[] parts = range.split(";");
+      String mediaRange = parts[0].trim().toLowerCase();
+      int specificity;
+      if (mediaRange.equals(contentType)) {
+        specificity = 2;
+      } else if (mediaRange.equals(type + "/*")) {
+        specificity = 1;
+      } else if (mediaRange.equals("*/*")) {
+        specificity = 0;
+      } else {
+        continue;
+      }
+      if (specificity > bestSpecificity) {
+        bestSpecificity = specificity;
+        quality = qualityParam(parts);
+      }
+    }
+    return quality;
+  }
+
+  private static double qualityParam(String[] parts) {
+    for (int i = 1; i < parts.length; i++) {
+      String param = parts[i].trim();
+      if (param.startsWith("q=")) {
+        try {
+          return Double.parseDouble(param.substring(2));
+        } catch (NumberFormatException e) {
+          // Treat a malformed quality like a missing one
+          return 1;
+        }
+      }
+    }
+    return 1;
+  }
+}
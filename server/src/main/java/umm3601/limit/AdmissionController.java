@@ -0,0 +1,90 @@
+package umm3601.limit;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+
+/**
+ * Bounds the total estimated cost of the queries being worked on at once.
+ * <p>
+ * A query whose cost fits in what's left of the capacity runs straight away. If
+ * it doesn't fit, it waits (up to a maximum time) for running queries to
+ * finish, unless too many queries are already waiting, in which case it is shed
+ * with `429 Too Many Requests`. Cost is held as permits of a `Semaphore`, whose
+ * uncontended acquire and release are a single compare-and-set.
+ */
+public class AdmissionController {
+
+  /**
+   * Estimates the cost of the query in a request.
+   */
+  @FunctionalInterface
+  public interface CostEstimator {
+    long estimate(Context ctx);
+  }
+
+  private final int capacity;
+  private final int maxWaiting;
+  private final long maxWaitMillis;
+  private final Semaphore available;
+  private final AtomicInteger waiting = new AtomicInteger();
+
+  /**
+   * @param capacity      the most cost that may be worked on at once
+   * @param maxWaiting    the most queries that may wait to be admitted
+   * @param maxWaitMillis how long a query may wait to be admitted
+   */
+  public AdmissionController(int capacity, int maxWaiting, long maxWaitMillis) {
+    this.capacity = capacity;
+    this.maxWaiting = maxWaiting;
+    this.maxWaitMillis = maxWaitMillis;
+    this.available = new Semaphore(capacity);
+  }
+
+  /**
+   * Wrap a handler so it only runs once its query has been admitted.
+   *
+   * @param estimator estimates the cost of each request's query
+   * @param handler   the handler to run
+   * @return the wrapped handler
+   */
+  public Handler admit(CostEstimator estimator, Handler handler) {
+    return ctx -> {
+      // A query costing more than the capacity runs once it has the server to itself
+      int cost = (int) Math.max(1, Math.min(capacity, estimator.estimate(ctx)));
+      acquire(cost);
+      try {
+        handler.handle(ctx);
+      } finally {
+        available.release(cost);
+      }
+    };
+  }
+
+  private void acquire(int cost) throws InterruptedException {
+    if (available.tryAcquire(cost)) {
+      return;
+    }
+    if (waiting.incrementAndGet() > maxWaiting) {
+      waiting.decrementAndGet();
+      throw new TooManyRequestsResponse("The server is too busy to run this query; try again later");
+    }
+    try {
+      if (!available.tryAcquire(cost, maxWaitMillis, TimeUnit.MILLISECONDS)) {
+        throw new TooManyRequestsResponse("The server is too busy to run this query; try again later");
+      }
+    } finally {
+      waiting.decrementAndGet();
+    }
+  }
+
+  /**
+   * @return the cost of the queries being worked on right now
+   */
+  public int inUse() {
+    return capacity - available.availablePermits();
+  }
+}
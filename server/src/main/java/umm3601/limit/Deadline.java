@@ -0,0 +1,151 @@
+package umm3601.limit;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.jetty.server.Request;
+
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.ServiceUnavailableResponse;
+
+/**
+ * How long the query in a request may run for, checked cooperatively by the
+ * loops doing the work so that a query nobody is waiting for any more stops
+ * using the CPU.
+ * <p>
+ * A handler wrapped with `enforce` runs with a deadline of the server's
+ * default timeout, or the request's `timeout` parameter (in milliseconds) if
+ * that is shorter. The filter and sort loops call `check` on the current
+ * thread's deadline as they go; once the deadline has passed, or the client
+ * has disconnected, `check` throws `503 Service Unavailable` and the query is
+ * abandoned. Looking at the clock on every row would cost more than most rows
+ * do, so only every `CHECK_INTERVAL`th call does.
+ * <p>
+ * A deadline belongs to the thread running its request, and isn't safe to
+ * share with others. When identical requests are coalesced (see
+ * `RequestCoalescer`) the shared run keeps to the timeout of the request that
+ * started it, but is only abandoned once every request waiting for it has
+ * disconnected.
+ */
+public class Deadline {
+
+  /**
+   * No deadline, for work done outside of a request with one.
+   */
+  public static final Deadline NONE = new Deadline(Long.MAX_VALUE, () -> false);
+
+  static final int CHECK_INTERVAL = 1024;
+
+  /**
+   * The request attribute holding a `BooleanSupplier` that says whether a
+   * request's work has been abandoned, for when that's up to more than the
+   * request's own client.
+   */
+  public static final String ABANDONED = "umm3601.limit.Deadline.abandoned";
+
+  private static final ThreadLocal<Deadline> CURRENT = ThreadLocal.withInitial(() -> NONE);
+
+  private final long timeoutMillis;
+  private final long expiresAt;
+  private final BooleanSupplier abandoned;
+  private int untilNextCheck = CHECK_INTERVAL;
+
+  /**
+   * @param timeoutMillis how long from now the work may run for
+   * @param abandoned     whether the work's result is no longer wanted, e.g.,
+   *                      because the client has disconnected
+   */
+  public Deadline(long timeoutMillis, BooleanSupplier abandoned) {
+    this.timeoutMillis = timeoutMillis;
+    this.expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    this.abandoned = abandoned;
+  }
+
+  /**
+   * @return the deadline of the request being handled by this thread, or
+   *         `NONE` if there isn't one
+   */
+  public static Deadline current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Give up on the work if its deadline has passed or it has been abandoned.
+   * Call this often from within loops; it's cheap.
+   */
+  public void check() {
+    if (this == NONE || --untilNextCheck > 0) {
+      return;
+    }
+    untilNextCheck = CHECK_INTERVAL;
+    if (System.nanoTime() - expiresAt >= 0) {
+      throw new ServiceUnavailableResponse("The query didn't finish within its " + timeoutMillis
+          + " ms timeout; try narrowing it down");
+    }
+    if (abandoned.getAsBoolean()) {
+      throw new ServiceUnavailableResponse("The client has gone away");
+    }
+  }
+
+  /**
+   * Wrap a handler so it runs with a deadline.
+   *
+   * @param defaultMillis how long a request's query may run for, unless the
+   *                      request asks for less with `timeout`
+   * @param handler       the handler to run
+   * @return the wrapped handler
+   */
+  public static Handler enforce(long defaultMillis, Handler handler) {
+    return ctx -> {
+      BooleanSupplier abandoned = ctx.attribute(ABANDONED);
+      Deadline deadline = new Deadline(timeoutFor(ctx.queryParamMap(), defaultMillis),
+          abandoned != null ? abandoned : clientGone(ctx));
+      CURRENT.set(deadline);
+      try {
+        handler.handle(ctx);
+      } finally {
+        CURRENT.remove();
+      }
+    };
+  }
+
+  /**
+   * @param queryParams   map of key-value pairs for the query
+   * @param defaultMillis the server's timeout
+   * @return the timeout asked for with `timeout`, if it's shorter than the
+   *         server's
+   */
+  static long timeoutFor(Map<String, List<String>> queryParams, long defaultMillis) {
+    if (!queryParams.containsKey("timeout")) {
+      return defaultMillis;
+    }
+    String timeoutParam = queryParams.get("timeout").get(0);
+    try {
+      long timeout = Long.parseLong(timeoutParam);
+      if (timeout <= 0) {
+        throw new BadRequestResponse("Specified timeout '" + timeoutParam + "' must be positive");
+      }
+      return Math.min(timeout, defaultMillis);
+    } catch (NumberFormatException e) {
+      throw new BadRequestResponse("Specified timeout '" + timeoutParam + "' can't be parsed to an integer");
+    }
+  }
+
+  /**
+   * @param ctx a Javalin HTTP context
+   * @return whether the client's connection has been closed, as far as Jetty
+   *         knows
+   */
+  static BooleanSupplier clientGone(Context ctx) {
+    Request request = ctx.req == null ? null : Request.getBaseRequest(ctx.req);
+    if (request == null) {
+      // Not a request Jetty is serving, so there's no connection to watch
+      return () -> false;
+    }
+    return () -> !request.getHttpChannel().getEndPoint().isOpen();
+  }
+}
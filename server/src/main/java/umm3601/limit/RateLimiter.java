@@ -0,0 +1,100 @@
+package umm3601.limit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.javalin.http.Context;
+
+/**
+ * Limits the rate of requests from each client, using a `TokenBucket` per
+ * client IP address.
+ * <p>
+ * At most `MAX_CLIENTS` clients are tracked at once (give or take the requests
+ * racing to add one). Once there are that many, the buckets that have filled
+ * up again are dropped, since they belong to clients that have gone quiet; so
+ * as not to look at every bucket on every request, that's done at most once
+ * per time it takes an empty bucket to fill. If every tracked client is still
+ * busy, a new client is turned away until the next sweep rather than pushing
+ * out a busy client, whose limit would then start over.
+ */
+public class RateLimiter {
+
+  static final int MAX_CLIENTS = 10_000;
+
+  private final double ratePerSecond;
+  private final int burst;
+  private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+  // How long an empty bucket takes to fill, and when the full ones may next
+  // be dropped
+  private final long sweepIntervalNanos;
+  private final AtomicLong nextSweepAt = new AtomicLong(System.nanoTime());
+
+  /**
+   * @param ratePerSecond the sustained number of requests allowed from each
+   *                      client per second
+   * @param burst         the number of requests a client can make at once
+   */
+  public RateLimiter(double ratePerSecond, int burst) {
+    this.ratePerSecond = ratePerSecond;
+    this.burst = burst;
+    this.sweepIntervalNanos = (long) (1_000_000_000L / ratePerSecond) * burst;
+  }
+
+  /**
+   * Let the request through if its client has a token left, or else answer it
+   * with `429 Too Many Requests`. Meant to be used as a `before` handler.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void handle(Context ctx) {
+    long wait = tryAcquire(ctx.ip(), System.nanoTime());
+    if (wait > 0) {
+      ctx.header("Retry-After", Long.toString(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait))));
+      throw new TooManyRequestsResponse("Too many requests; slow down");
+    }
+  }
+
+  /**
+   * Take a token for the given client.
+   *
+   * @param client the client making a request
+   * @param now    the current `System.nanoTime()`
+   * @return 0 if the request may go ahead, or else how many nanoseconds the
+   *         client should wait
+   */
+  long tryAcquire(String client, long now) {
+    TokenBucket bucket = buckets.get(client);
+    if (bucket == null) {
+      if (buckets.size() >= MAX_CLIENTS) {
+        sweep(now);
+        if (buckets.size() >= MAX_CLIENTS) {
+          return Math.max(1, nextSweepAt.get() - now);
+        }
+      }
+      bucket = buckets.computeIfAbsent(client, key -> new TokenBucket(ratePerSecond, burst));
+    }
+    return bucket.tryTake(now);
+  }
+
+  /**
+   * Drop the full buckets, unless that was done too recently to be worth
+   * doing again. Only one thread sweeps at a time.
+   *
+   * @param now the current `System.nanoTime()`
+   */
+  private void sweep(long now) {
+    long due = nextSweepAt.get();
+    if (now - due < 0 || !nextSweepAt.compareAndSet(due, now + sweepIntervalNanos)) {
+      return;
+    }
+    buckets.values().removeIf(bucket -> bucket.isFull(now));
+  }
+
+  /**
+   * @return the number of clients being tracked
+   */
+  int clients() {
+    return buckets.size();
+  }
+}
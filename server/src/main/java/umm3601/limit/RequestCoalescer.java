@@ -0,0 +1,199 @@
+package umm3601.limit;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import javax.servlet.http.HttpServletResponse;
+
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+
+/**
+ * Answers identical requests that arrive at the same time with one run of
+ * their handler.
+ * <p>
+ * Requests are identical if they have the same path, query parameters
+ * (whatever order they are given in) and `Accept` header. While a request is being
+ * handled, identical requests wait for it and are sent the same status,
+ * headers and already serialized body, so a burst of clients asking for the
+ * same todos costs one query and one serialization rather than one each. If
+ * the handler gives up with an exception, identical requests are sent the
+ * headers it had set (e.g., `Retry-After`) and the same exception.
+ * <p>
+ * The shared run belongs to all the requests waiting for it, so its deadline
+ * (see `Deadline`) only gives up on it for a disconnected client once every
+ * one of them has disconnected.
+ */
+public class RequestCoalescer {
+
+  /**
+   * A response, as the handler left it.
+   */
+  static class Response {
+    final int status;
+    final String contentType;
+    final Map<String, List<String>> headers;
+    final byte[] body;
+    final Exception failure;
+
+    Response(int status, String contentType, Map<String, List<String>> headers, byte[] body, Exception failure) {
+      this.status = status;
+      this.contentType = contentType;
+      this.headers = headers;
+      this.body = body;
+      this.failure = failure;
+    }
+  }
+
+  /**
+   * The requests waiting for the same response.
+   */
+  static class Waiters {
+    private final List<BooleanSupplier> gone = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param clientGone whether the client of the waiting request has
+     *                   disconnected
+     */
+    void add(BooleanSupplier clientGone) {
+      gone.add(clientGone);
+    }
+
+    /**
+     * @param clientGone as given to `add`
+     * @return whether no requests are left waiting
+     */
+    boolean remove(BooleanSupplier clientGone) {
+      gone.remove(clientGone);
+      return gone.isEmpty();
+    }
+
+    /**
+     * @return whether the client of every waiting request has disconnected
+     */
+    boolean allGone() {
+      for (BooleanSupplier clientGone : gone) {
+        if (!clientGone.getAsBoolean()) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private final SingleFlight<String, Response> flights = new SingleFlight<>();
+  private final ConcurrentMap<String, Waiters> waiting = new ConcurrentHashMap<>();
+
+  /**
+   * Wrap a handler so identical concurrent requests share one run of it.
+   *
+   * @param handler the handler to run
+   * @return the wrapped handler
+   */
+  public Handler coalesce(Handler handler) {
+    return ctx -> {
+      boolean[] ran = { false };
+      String key = keyFor(ctx.path(), ctx.queryParamMap()) + " " + ctx.header("Accept");
+      BooleanSupplier clientGone = Deadline.clientGone(ctx);
+      Waiters waiters = waiting.compute(key, (k, w) -> {
+        w = w == null ? new Waiters() : w;
+        w.add(clientGone);
+        return w;
+      });
+      Response response;
+      try {
+        response = flights.run(key, () -> {
+          ran[0] = true;
+          ctx.attribute(Deadline.ABANDONED, (BooleanSupplier) waiters::allGone);
+          try {
+            handler.handle(ctx);
+          } catch (Exception e) {
+            return new Response(ctx.status(), ctx.res.getContentType(), headersOf(ctx.res), null, e);
+          }
+          // Reading the result uses it up, so put it back for this request
+          InputStream result = ctx.resultStream();
+          byte[] body = result == null ? null : result.readAllBytes();
+          if (body != null) {
+            ctx.result(new ByteArrayInputStream(body));
+          }
+          return new Response(ctx.status(), ctx.res.getContentType(), headersOf(ctx.res), body, null);
+        });
+      } finally {
+        waiting.computeIfPresent(key, (k, w) -> w.remove(clientGone) ? null : w);
+      }
+      if (!ran[0]) {
+        copyHeaders(response.headers, ctx.res);
+        ctx.status(response.status);
+        if (response.contentType != null) {
+          ctx.contentType(response.contentType);
+        }
+        if (response.body != null) {
+          ctx.result(new ByteArrayInputStream(response.body));
+        }
+      }
+      // Otherwise this request's handler ran, so its response is already in place
+      if (response.failure != null) {
+        throw response.failure;
+      }
+    };
+  }
+
+  /**
+   * @param res a response
+   * @return the headers set on the response so far, other than those Javalin
+   *         works out from the rest of the response
+   */
+  static Map<String, List<String>> headersOf(HttpServletResponse res) {
+    Map<String, List<String>> headers = new LinkedHashMap<>();
+    for (String name : res.getHeaderNames()) {
+      if (!name.equalsIgnoreCase("Content-Type") && !name.equalsIgnoreCase("Content-Length")) {
+        headers.put(name, new ArrayList<>(res.getHeaders(name)));
+      }
+    }
+    return headers;
+  }
+
+  /**
+   * @param headers the headers to set, as returned by `headersOf`
+   * @param res     the response to set them on
+   */
+  static void copyHeaders(Map<String, List<String>> headers, HttpServletResponse res) {
+    for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+      for (int i = 0; i < header.getValue().size(); i++) {
+        if (i == 0) {
+          res.setHeader(header.getKey(), header.getValue().get(i));
+        } else {
+          res.addHeader(header.getKey(), header.getValue().get(i));
+        }
+      }
+    }
+  }
+
+  /**
+   * @param path        the path of a request
+   * @param queryParams the query parameters of the request
+   * @return a key that is the same for requests with the same path and query
+   *         parameters, in any order
+   */
+  static String keyFor(String path, Map<String, List<String>> queryParams) {
+    // Each name and value is prefixed with its length, so no two different
+    // requests can run together into the same key
+    StringBuilder key = new StringBuilder().append(path.length()).append(':').append(path);
+    for (Map.Entry<String, List<String>> param : new TreeMap<>(queryParams).entrySet()) {
+      key.append('&').append(param.getKey().length()).append(':').append(param.getKey());
+      for (String value : param.getValue()) {
+        key.append('=').append(value.length()).append(':').append(value);
+      }
+    }
+    return key.toString();
+  }
+}
@@ -0,0 +1,69 @@
+package umm3601.limit;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Makes concurrent calls doing the same work share a single run of it.
+ * <p>
+ * The first call for a key does the work; any calls for the same key that
+ * arrive while it is running wait for it and get the same result (or the same
+ * exception). Once the work is done the key is forgotten, so nothing is cached:
+ * a call arriving after that does the work again.
+ *
+ * @param <K> the type of the keys identifying the work
+ * @param <V> the type of the result of the work
+ */
+public class SingleFlight<K, V> {
+
+  private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * Do the work for a key, or wait for the call already doing it.
+   *
+   * @param key  identifies the work; calls with equal keys share their result
+   * @param work the work to do
+   * @return the result of the work
+   * @throws Exception if the work threw an exception
+   */
+  public V run(K key, Callable<V> work) throws Exception {
+    CompletableFuture<V> mine = new CompletableFuture<>();
+    CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+    if (running != null) {
+      return await(running);
+    }
+
+    try {
+      V result = work.call();
+      mine.complete(result);
+      return result;
+    } catch (Exception | Error e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, mine);
+    }
+  }
+
+  /**
+   * @return the number of keys whose work is running right now
+   */
+  public int inFlight() {
+    return inFlight.size();
+  }
+
+  private V await(CompletableFuture<V> running) throws Exception {
+    try {
+      return running.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw (Error) cause;
+    }
+  }
+}
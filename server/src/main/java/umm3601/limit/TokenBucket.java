@@ -0,0 +1,59 @@
+package umm3601.limit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket that refills at a steady rate, up to a maximum burst.
+ * <p>
+ * Rather than counting tokens, the bucket keeps the single time at which it
+ * will next be completely full (the "generic cell rate algorithm"). Taking a
+ * token pushes that time later by one refill interval, and is allowed as long
+ * as the bucket wouldn't have to be more than `burst` tokens ahead. Since the
+ * whole state is one `long`, taking a token is a compare-and-set loop with no
+ * locking.
+ */
+public class TokenBucket {
+
+  private final long intervalNanos;
+  private final long toleranceNanos;
+  private final AtomicLong fullAt;
+
+  /**
+   * @param ratePerSecond the number of tokens added each second
+   * @param burst         the most tokens the bucket holds
+   */
+  public TokenBucket(double ratePerSecond, int burst) {
+    this.intervalNanos = (long) (1_000_000_000L / ratePerSecond);
+    this.toleranceNanos = intervalNanos * burst;
+    this.fullAt = new AtomicLong(System.nanoTime());
+  }
+
+  /**
+   * Take a token, if there is one.
+   *
+   * @param now the current `System.nanoTime()`
+   * @return 0 if a token was taken, or else how many nanoseconds it will be
+   *         until one is available
+   */
+  public long tryTake(long now) {
+    while (true) {
+      long current = fullAt.get();
+      long next = Math.max(current, now) + intervalNanos;
+      long wait = next - now - toleranceNanos;
+      if (wait > 0) {
+        return wait;
+      }
+      if (fullAt.compareAndSet(current, next)) {
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * @param now the current `System.nanoTime()`
+   * @return whether the bucket is full, so forgetting it loses nothing
+   */
+  public boolean isFull(long now) {
+    return fullAt.get() <= now;
+  }
+}
@@ -0,0 +1,20 @@
+package umm3601.limit;
+
+import java.util.Collections;
+
+import io.javalin.http.HttpResponseException;
+
+/**
+ * Thrown to answer a request with `429 Too Many Requests`, in the same way
+ * Javalin's `BadRequestResponse` answers with `400 Bad Request`.
+ */
+public class TooManyRequestsResponse extends HttpResponseException {
+
+  private static final long serialVersionUID = 1L;
+
+  public static final int TOO_MANY_REQUESTS = 429;
+
+  public TooManyRequestsResponse(String message) {
+    super(TOO_MANY_REQUESTS, message, Collections.emptyMap());
+  }
+}
@@ -0,0 +1,62 @@
+package umm3601.profiling;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The query parameters of a request, written out for profiling events.
+ * <p>
+ * The query is written in a normal form, with the parameters in alphabetical
+ * order, so the same query always reads the same, and as a shape, with the
+ * values left out, so queries that differ only in their values can be grouped
+ * together. Neither is worked out until an event that is actually being
+ * recorded asks for it, so describing a query costs next to nothing when
+ * nothing is recording.
+ */
+public class QueryDescription {
+
+  private final Map<String, List<String>> queryParams;
+  private String query;
+  private String shape;
+
+  /**
+   * @param queryParams map of key-value pairs for the query
+   */
+  public QueryDescription(Map<String, List<String>> queryParams) {
+    this.queryParams = queryParams;
+  }
+
+  /**
+   * @return the query, e.g., `owner=Fry&status=complete`
+   */
+  public String query() {
+    if (query == null) {
+      query = describe(true);
+    }
+    return query;
+  }
+
+  /**
+   * @return the shape of the query, e.g., `owner=?&status=?`
+   */
+  public String shape() {
+    if (shape == null) {
+      shape = describe(false);
+    }
+    return shape;
+  }
+
+  private String describe(boolean withValues) {
+    StringBuilder description = new StringBuilder();
+    for (Map.Entry<String, List<String>> param : new TreeMap<>(queryParams).entrySet()) {
+      for (String value : param.getValue()) {
+        if (description.length() > 0) {
+          description.append('&');
+        }
+        description.append(param.getKey()).append('=').append(withValues ? value : "?");
+      }
+    }
+    return description.toString();
+  }
+}
@@ -0,0 +1,75 @@
+package umm3601.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event covering the whole of one list query against a
+ * database. The `QueryStageEvent`s recorded during it, on the same thread,
+ * break it down.
+ * <p>
+ * Use it as `QueryEvent event = QueryEvent.start(); ...; event.end(...)`.
+ * When the event isn't being recorded `end` does nothing, so this costs next
+ * to nothing.
+ * <p>
+ * To record the events, start the server with, e.g.,
+ * `-XX:StartFlightRecording=filename=queries.jfr`, and look at them with
+ * `jfr print --categories umm3601 queries.jfr` or JDK Mission Control.
+ */
+@Name("umm3601.Query")
+@Label("Query")
+@Category({ "umm3601", "Queries" })
+@Description("A list query against the todos or users")
+public class QueryEvent extends Event {
+
+  @Label("Collection")
+  @Description("What was queried, todos or users")
+  String collection;
+
+  @Label("Query")
+  @Description("The query parameters, in alphabetical order")
+  String query;
+
+  @Label("Shape")
+  @Description("The query parameters without their values")
+  String shape;
+
+  @Label("Rows In")
+  int rowsIn;
+
+  @Label("Rows Out")
+  int rowsOut;
+
+  /**
+   * Start timing a query.
+   *
+   * @return the started event
+   */
+  public static QueryEvent start() {
+    QueryEvent event = new QueryEvent();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * Finish the event, and record it if it's being recorded.
+   *
+   * @param collection what was queried, e.g., `todos`
+   * @param query      the query
+   * @param rowsIn     the number of records queried
+   * @param rowsOut    the number of records in the answer
+   */
+  public void end(String collection, QueryDescription query, int rowsIn, int rowsOut) {
+    if (shouldCommit()) {
+      this.collection = collection;
+      this.query = query.query();
+      this.shape = query.shape();
+      this.rowsIn = rowsIn;
+      this.rowsOut = rowsOut;
+      commit();
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package umm3601.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event covering one stage of a query: planning it,
+ * one of its filters, sorting or limiting. Filters record the field and value
+ * they test and whether they looked the value up in an index or scanned, so a
+ * profile shows which filters are slow and for which queries.
+ * <p>
+ * The stage names the code that ran, so no stack trace is recorded.
+ */
+@Name("umm3601.QueryStage")
+@Label("Query Stage")
+@Category({ "umm3601", "Queries" })
+@Description("One stage in answering a query")
+@StackTrace(false)
+public class QueryStageEvent extends Event {
+
+  public static final String PLAN = "plan";
+  public static final String FILTER = "filter";
+  public static final String SORT = "sort";
+  public static final String LIMIT = "limit";
+
+  // How a filter finds its records, as `ToDoQueryPlan` calls it
+  public static final String INDEX = "index";
+  public static final String SCAN = "scan";
+
+  @Label("Collection")
+  String collection;
+
+  @Label("Query")
+  @Description("The query parameters, in alphabetical order")
+  String query;
+
+  @Label("Stage")
+  @Description("plan, filter, sort or limit")
+  String stage;
+
+  @Label("Field")
+  @Description("The field filtered or sorted by")
+  String field;
+
+  @Label("Value")
+  @Description("The value filtered by, or the limit")
+  String value;
+
+  @Label("Access")
+  @Description("How a filter found its records, by index lookup or by scanning")
+  String access;
+
+  @Label("Rows In")
+  int rowsIn;
+
+  @Label("Rows Out")
+  int rowsOut;
+
+  /**
+   * Start timing a stage.
+   *
+   * @return the started event
+   */
+  public static QueryStageEvent start() {
+    QueryStageEvent event = new QueryStageEvent();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * Finish the event, and record it if it's being recorded.
+   *
+   * @param collection what was queried, e.g., `todos`
+   * @param query      the query
+   * @param stage      the stage, e.g., `FILTER`
+   * @param field      the field filtered or sorted by, if any
+   * @param value      the value filtered by, or the limit, if any
+   * @param access     how a filter found its records, if this is a filter
+   * @param rowsIn     the number of records going in to the stage
+   * @param rowsOut    the number of records coming out of the stage
+   */
+  public void end(String collection, QueryDescription query, String stage, String field, String value,
+      String access, int rowsIn, int rowsOut) {
+    if (shouldCommit()) {
+      this.collection = collection;
+      this.query = query.query();
+      this.stage = stage;
+      this.field = field;
+      this.value = value;
+      this.access = access;
+      this.rowsIn = rowsIn;
+      this.rowsOut = rowsOut;
+      commit();
+    }
+  }
+}
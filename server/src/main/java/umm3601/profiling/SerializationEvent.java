@@ -0,0 +1,72 @@
+package umm3601.profiling;
+
+import java.util.List;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event covering writing the answer to a query in the
+ * response format the client asked for.
+ */
+@Name("umm3601.Serialization")
+@Label("Serialization")
+@Category({ "umm3601", "Queries" })
+@Description("Writing the records answering a query into the response")
+@StackTrace(false)
+public class SerializationEvent extends Event {
+
+  @Label("Collection")
+  String collection;
+
+  @Label("Query")
+  @Description("The query parameters, in alphabetical order")
+  String query;
+
+  @Label("Format")
+  @Description("The content type written")
+  String format;
+
+  @Label("Fields")
+  @Description("The fields written, or all of them")
+  String fields;
+
+  @Label("Records")
+  int records;
+
+  /**
+   * Start timing writing a response.
+   *
+   * @return the started event
+   */
+  public static SerializationEvent start() {
+    SerializationEvent event = new SerializationEvent();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * Finish the event, and record it if it's being recorded.
+   *
+   * @param collection what was queried, e.g., `todos`
+   * @param query      the query
+   * @param format     the content type written
+   * @param fields     the fields written, or null for all of them
+   * @param records    the number of records written
+   */
+  public void end(String collection, QueryDescription query, String format, List<String> fields,
+      int records) {
+    if (shouldCommit()) {
+      this.collection = collection;
+      this.query = query.query();
+      this.format = format;
+      this.fields = fields == null ? "all" : String.join(",", fields);
+      this.records = records;
+      commit();
+    }
+  }
+}
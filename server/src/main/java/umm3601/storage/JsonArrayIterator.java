@@ -0,0 +1,50 @@
+package umm3601.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Reads the records in a JSON array one at a time, so an array far bigger than
+ * the heap can be copied into a `RecordStore`.
+ *
+ * @param <T> the type of record in the array
+ */
+public class JsonArrayIterator<T> implements Iterator<T> {
+
+  private final Gson gson = new Gson();
+  private final JsonReader reader;
+  private final Class<T> type;
+
+  /**
+   * @param reader reads the JSON array
+   * @param type   the type of record in the array
+   * @throws IOException if the start of the array can't be read
+   */
+  public JsonArrayIterator(JsonReader reader, Class<T> type) throws IOException {
+    this.reader = reader;
+    this.type = type;
+    reader.beginArray();
+  }
+
+  @Override
+  public boolean hasNext() {
+    try {
+      return reader.hasNext();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return gson.fromJson(reader, type);
+  }
+}
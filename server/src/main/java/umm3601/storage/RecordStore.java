@@ -0,0 +1,584 @@
+package umm3601.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * A read-only store of records kept on disk, for data sets too big to hold in
+ * the heap.
+ * <p>
+ * A store is two files:
+ * <ul>
+ * <li>`name.data` holds the encoded records one after another, each preceded by
+ * its length. The file is split into fixed size segments that are memory
+ * mapped, so reading records leaves caching the file's pages to the operating
+ * system rather than the Java heap. A record never crosses a segment boundary;
+ * the rest of a segment is zero padded instead.</li>
+ * <li>`name.index` holds an entry for each record, sorted by ID, giving the
+ * record's position in the data file. Since the records never change, this is
+ * the leaf level of a bulk-loaded B+tree and is searched with a binary search
+ * over the memory mapped entries. An ID is kept as its UTF-8 bytes, zero padded
+ * to `ID_WIDTH`, followed by its length, so IDs that differ only by trailing
+ * zero bytes don't collide.</li>
+ * <li>`name.source` records what the store was built from (see `stamp`), so a
+ * store whose source has changed can be rebuilt. It is written last, so a
+ * store that was only partly written doesn't look complete.</li>
+ * </ul>
+ * Records found by ID are kept in a small LRU cache, so the heap used by a
+ * store is bounded by the size of that cache no matter how big the files are.
+ * Writing a store is bounded too: index entries are sorted in runs of at most
+ * `DEFAULT_RUN_ENTRIES`, spilled to temporary files, and merged.
+ *
+ * @param <T> the type of record being stored
+ */
+public class RecordStore<T> implements Iterable<T> {
+
+  /**
+   * Converts records to and from bytes.
+   */
+  public interface Codec<T> {
+    String idOf(T record);
+
+    void write(DataOutput out, T record) throws IOException;
+
+    T read(ByteBuffer in);
+  }
+
+  static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+  static final int ID_WIDTH = 32;
+  // An ID's padded bytes and its length
+  static final int KEY_WIDTH = ID_WIDTH + 1;
+  static final int ENTRY_SIZE = KEY_WIDTH + Long.BYTES;
+  static final int INDEX_HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES;
+  static final int ENTRIES_PER_INDEX_SEGMENT = 1 << 20;
+  static final int DEFAULT_RUN_ENTRIES = 1 << 18;
+  // The most sorted runs merged at once, to keep the number of open files down
+  static final int MERGE_WIDTH = 64;
+  private static final int MAGIC = 0x55_4D_4D_32;
+
+  private final Codec<T> codec;
+  private final int segmentSize;
+  private final long dataSize;
+  private final long count;
+  private final MappedByteBuffer[] dataSegments;
+  private final MappedByteBuffer[] indexSegments;
+  private final Map<String, T> cache;
+
+  private RecordStore(Path directory, String name, Codec<T> codec, int cacheSize) throws IOException {
+    this.codec = codec;
+
+    try (FileChannel index = FileChannel.open(indexFile(directory, name), StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+      index.read(header, 0);
+      header.flip();
+      if (header.getInt() != MAGIC) {
+        throw new IOException(indexFile(directory, name) + " isn't a record store index");
+      }
+      segmentSize = header.getInt();
+      count = header.getLong();
+
+      int segments = (int) ((count + ENTRIES_PER_INDEX_SEGMENT - 1) / ENTRIES_PER_INDEX_SEGMENT);
+      indexSegments = new MappedByteBuffer[segments];
+      for (int i = 0; i < segments; i++) {
+        long start = INDEX_HEADER_SIZE + (long) i * ENTRIES_PER_INDEX_SEGMENT * ENTRY_SIZE;
+        long entries = Math.min(ENTRIES_PER_INDEX_SEGMENT, count - (long) i * ENTRIES_PER_INDEX_SEGMENT);
+        indexSegments[i] = index.map(FileChannel.MapMode.READ_ONLY, start, entries * ENTRY_SIZE);
+      }
+    }
+
+    try (FileChannel data = FileChannel.open(dataFile(directory, name), StandardOpenOption.READ)) {
+      dataSize = data.size();
+      int segments = (int) ((dataSize + segmentSize - 1) / segmentSize);
+      dataSegments = new MappedByteBuffer[segments];
+      for (int i = 0; i < segments; i++) {
+        long start = (long) i * segmentSize;
+        dataSegments[i] = data.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, dataSize - start));
+      }
+    }
+
+    cache = new LinkedHashMap<String, T>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+   * Open an existing store.
+   *
+   * @param directory the directory holding the store's files
+   * @param name      the name of the store
+   * @param codec     converts the records from bytes
+   * @param cacheSize the most records to keep cached in the heap
+   * @return the store
+   * @throws IOException if the store's files can't be read
+   */
+  public static <T> RecordStore<T> open(Path directory, String name, Codec<T> codec, int cacheSize)
+      throws IOException {
+    return new RecordStore<>(directory, name, codec, cacheSize);
+  }
+
+  /**
+   * @param directory the directory that would hold the store's files
+   * @param name      the name of the store
+   * @return whether the store's files exist
+   */
+  public static boolean exists(Path directory, String name) {
+    return Files.exists(indexFile(directory, name)) && Files.exists(dataFile(directory, name))
+        && Files.exists(sourceFile(directory, name));
+  }
+
+  /**
+   * @param directory the directory that would hold the store's files
+   * @param name      the name of the store
+   * @return the stamp of the source the store was written from, or null if
+   *         there is no complete store
+   * @throws IOException if the store's files can't be read
+   */
+  public static String sourceOf(Path directory, String name) throws IOException {
+    if (!exists(directory, name)) {
+      return null;
+    }
+    return new String(Files.readAllBytes(sourceFile(directory, name)), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Get a stamp for the file records are loaded from, which changes whenever
+   * the file does, to compare with the `sourceOf` a store.
+   *
+   * @param source the file, e.g., a resource on the class path
+   * @return the file's size and modification time
+   * @throws IOException if the file can't be found or looked at
+   */
+  public static String stamp(URL source) throws IOException {
+    if (source == null) {
+      throw new IOException("The source of the records doesn't exist");
+    }
+    URLConnection connection = source.openConnection();
+    try {
+      return source + " " + connection.getContentLengthLong() + " " + connection.getLastModified();
+    } finally {
+      // Opening a connection to a file or jar entry may have opened the stream
+      connection.getInputStream().close();
+    }
+  }
+
+  /**
+   * Create a store holding the given records, replacing any existing store with
+   * the same name.
+   *
+   * @param directory the directory to put the store's files in
+   * @param name      the name of the store
+   * @param records   the records to store
+   * @param codec     converts the records to bytes
+   * @throws IOException if the store's files can't be written
+   */
+  public static <T> void write(Path directory, String name, Iterator<T> records, Codec<T> codec)
+      throws IOException {
+    write(directory, name, records, codec, "");
+  }
+
+  /**
+   * Create a store holding the given records, replacing any existing store with
+   * the same name.
+   *
+   * @param directory the directory to put the store's files in
+   * @param name      the name of the store
+   * @param records   the records to store
+   * @param codec     converts the records to bytes
+   * @param source    the stamp of what the records came from, see `stamp`
+   * @throws IOException if the store's files can't be written
+   */
+  public static <T> void write(Path directory, String name, Iterator<T> records, Codec<T> codec, String source)
+      throws IOException {
+    write(directory, name, records, codec, DEFAULT_SEGMENT_SIZE, DEFAULT_RUN_ENTRIES, source);
+  }
+
+  static <T> void write(Path directory, String name, Iterator<T> records, Codec<T> codec, int segmentSize)
+      throws IOException {
+    write(directory, name, records, codec, segmentSize, DEFAULT_RUN_ENTRIES, "");
+  }
+
+  static <T> void write(Path directory, String name, Iterator<T> records, Codec<T> codec, int segmentSize,
+      int runEntries, String source) throws IOException {
+    Files.createDirectories(directory);
+    Files.deleteIfExists(sourceFile(directory, name));
+
+    // Only one run of index entries is kept in memory at a time while writing
+    List<byte[]> run = new ArrayList<>();
+    List<Path> runs = new ArrayList<>();
+    long count = 0;
+    try {
+      try (DataOutputStream data = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(dataFile(directory, name))))) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        long position = 0;
+        while (records.hasNext()) {
+          T record = records.next();
+          buffer.reset();
+          codec.write(new DataOutputStream(buffer), record);
+
+          int length = Integer.BYTES + buffer.size();
+          if (length > segmentSize) {
+            throw new IOException("Record " + codec.idOf(record) + " is too big to store");
+          }
+          long segmentLeft = segmentSize - position % segmentSize;
+          if (length > segmentLeft) {
+            data.write(new byte[(int) segmentLeft]);
+            position += segmentLeft;
+          }
+
+          run.add(ByteBuffer.allocate(ENTRY_SIZE).put(key(codec.idOf(record))).putLong(position).array());
+          if (run.size() == runEntries) {
+            runs.add(writeRun(directory, name, run));
+            run.clear();
+          }
+          count++;
+          data.writeInt(buffer.size());
+          buffer.writeTo(data);
+          position += length;
+        }
+      }
+
+      try (DataOutputStream index = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(indexFile(directory, name))))) {
+        index.writeInt(MAGIC);
+        index.writeInt(segmentSize);
+        index.writeLong(count);
+        if (runs.isEmpty()) {
+          run.sort(RecordStore::compareEntries);
+          for (byte[] entry : run) {
+            index.write(entry);
+          }
+        } else {
+          if (!run.isEmpty()) {
+            runs.add(writeRun(directory, name, run));
+          }
+          while (runs.size() > MERGE_WIDTH) {
+            List<Path> merged = new ArrayList<>();
+            for (int i = 0; i < runs.size(); i += MERGE_WIDTH) {
+              List<Path> group = runs.subList(i, Math.min(runs.size(), i + MERGE_WIDTH));
+              Path out = Files.createTempFile(directory, name, ".run");
+              try (OutputStream mergedRun = new BufferedOutputStream(Files.newOutputStream(out))) {
+                merge(group, mergedRun);
+              }
+              for (Path done : group) {
+                Files.delete(done);
+              }
+              merged.add(out);
+            }
+            runs = merged;
+          }
+          merge(runs, index);
+        }
+      }
+    } finally {
+      for (Path leftover : runs) {
+        Files.deleteIfExists(leftover);
+      }
+    }
+
+    Files.write(sourceFile(directory, name), source.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Sort a run of index entries and spill it to a temporary file.
+   *
+   * @return the file holding the sorted run
+   */
+  private static Path writeRun(Path directory, String name, List<byte[]> run) throws IOException {
+    run.sort(RecordStore::compareEntries);
+    Path file = Files.createTempFile(directory, name, ".run");
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+      for (byte[] entry : run) {
+        out.write(entry);
+      }
+    }
+    return file;
+  }
+
+  /**
+   * Merge sorted runs of index entries.
+   *
+   * @param runs the files holding the runs
+   * @param out  where to write the merged entries
+   */
+  private static void merge(List<Path> runs, OutputStream out) throws IOException {
+    List<DataInputStream> inputs = new ArrayList<>();
+    try {
+      // Each head is the next entry of a run, followed by the run's number
+      PriorityQueue<byte[]> heads = new PriorityQueue<>(RecordStore::compareEntries);
+      for (Path run : runs) {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)));
+        inputs.add(in);
+        readHead(in, inputs.size() - 1, heads);
+      }
+      while (!heads.isEmpty()) {
+        byte[] head = heads.poll();
+        out.write(head, 0, ENTRY_SIZE);
+        int run = ByteBuffer.wrap(head).getInt(ENTRY_SIZE);
+        readHead(inputs.get(run), run, heads);
+      }
+    } finally {
+      for (DataInputStream in : inputs) {
+        in.close();
+      }
+    }
+  }
+
+  private static void readHead(DataInputStream in, int run, PriorityQueue<byte[]> heads) throws IOException {
+    byte[] head = new byte[ENTRY_SIZE + Integer.BYTES];
+    try {
+      in.readFully(head, 0, ENTRY_SIZE);
+    } catch (EOFException e) {
+      // The run is used up
+      return;
+    }
+    ByteBuffer.wrap(head).putInt(ENTRY_SIZE, run);
+    heads.add(head);
+  }
+
+  private static int compareEntries(byte[] first, byte[] second) {
+    return Arrays.compareUnsigned(first, 0, KEY_WIDTH, second, 0, KEY_WIDTH);
+  }
+
+  /**
+   * @return the number of records in the store
+   */
+  public int size() {
+    return (int) count;
+  }
+
+  /**
+   * Find a record by its ID.
+   *
+   * @param id the ID of the record
+   * @return the record, or null if there's no record with that ID
+   */
+  public T get(String id) {
+    synchronized (cache) {
+      T cached = cache.get(id);
+      if (cached != null) {
+        return cached;
+      }
+    }
+
+    long position = positionOf(id);
+    if (position < 0) {
+      return null;
+    }
+    T record = read(position);
+    synchronized (cache) {
+      cache.put(id, record);
+    }
+    return record;
+  }
+
+  /**
+   * Find where a record is in the data file, by binary search of the index.
+   *
+   * @param id the ID of the record
+   * @return the position of the record, or -1 if there's no record with that ID
+   */
+  private long positionOf(String id) {
+    byte[] key;
+    try {
+      key = key(id);
+    } catch (IOException e) {
+      // Too long to be the ID of any record
+      return -1;
+    }
+
+    long low = 0;
+    long high = count - 1;
+    byte[] entryKey = new byte[KEY_WIDTH];
+    while (low <= high) {
+      long middle = (low + high) >>> 1;
+      ByteBuffer entry = entry(middle);
+      entry.get(entryKey);
+      int comparison = Arrays.compareUnsigned(entryKey, key);
+      if (comparison < 0) {
+        low = middle + 1;
+      } else if (comparison > 0) {
+        high = middle - 1;
+      } else {
+        return entry.getLong();
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Read every record, in the order they were written. Records read this way
+   * aren't cached.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return iteratorFrom(0);
+  }
+
+  /**
+   * Read the records written after the one with the given ID, in the order
+   * they were written, e.g., to carry on from where an earlier read stopped.
+   *
+   * @param id the ID of the last record not to read
+   * @return the records after that one, or null if there's no record with
+   *         that ID
+   */
+  public Iterator<T> iteratorAfter(String id) {
+    long position = positionOf(id);
+    if (position < 0) {
+      return null;
+    }
+    return iteratorFrom(position + Integer.BYTES + recordLength(position));
+  }
+
+  private Iterator<T> iteratorFrom(long start) {
+    return new Iterator<T>() {
+      private long position = nextRecord(start);
+
+      @Override
+      public boolean hasNext() {
+        return position < dataSize;
+      }
+
+      @Override
+      public T next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        T record = read(position);
+        position = nextRecord(position + Integer.BYTES + recordLength(position));
+        return record;
+      }
+    };
+  }
+
+  /**
+   * Skip over any padding at the end of a segment.
+   *
+   * @param position a position in the data file
+   * @return the position of the next record at or after that position
+   */
+  private long nextRecord(long position) {
+    long offset = position % segmentSize;
+    if (position < dataSize && (segmentSize - offset < Integer.BYTES
+        || dataSegments[(int) (position / segmentSize)].getInt((int) offset) == 0)) {
+      return Math.min(dataSize, position - offset + segmentSize);
+    }
+    return position;
+  }
+
+  private int recordLength(long position) {
+    return dataSegments[(int) (position / segmentSize)].getInt((int) (position % segmentSize));
+  }
+
+  private T read(long position) {
+    return codec.read(segmentAt(position));
+  }
+
+  /**
+   * @param position the position of a record in the data file
+   * @return a view of the segment holding the record, positioned at the start
+   *         of the encoded record (just after its length)
+   */
+  private ByteBuffer segmentAt(long position) {
+    ByteBuffer segment = dataSegments[(int) (position / segmentSize)].duplicate();
+    segment.position((int) (position % segmentSize) + Integer.BYTES);
+    return segment;
+  }
+
+  private ByteBuffer entry(long entry) {
+    ByteBuffer segment = indexSegments[(int) (entry / ENTRIES_PER_INDEX_SEGMENT)].duplicate();
+    segment.position((int) (entry % ENTRIES_PER_INDEX_SEGMENT) * ENTRY_SIZE);
+    return segment;
+  }
+
+  /**
+   * @param id the ID of a record
+   * @return the ID as it's kept in the index: its bytes, zero padded, then its
+   *         length
+   * @throws IOException if the ID is too long to be kept
+   */
+  private static byte[] key(String id) throws IOException {
+    byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > ID_WIDTH) {
+      throw new IOException("ID " + id + " is longer than " + ID_WIDTH + " bytes");
+    }
+    byte[] key = Arrays.copyOf(bytes, KEY_WIDTH);
+    key[ID_WIDTH] = (byte) bytes.length;
+    return key;
+  }
+
+  private static Path dataFile(Path directory, String name) {
+    return directory.resolve(name + ".data");
+  }
+
+  private static Path indexFile(Path directory, String name) {
+    return directory.resolve(name + ".index");
+  }
+
+  private static Path sourceFile(Path directory, String name) {
+    return directory.resolve(name + ".source");
+  }
+
+  /**
+   * Write a string so it can be read back with `readString`.
+   *
+   * @param out   where to write the string
+   * @param value the string, which may be null
+   * @throws IOException if the string can't be written
+   */
+  public static void writeString(DataOutput out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Read a string written with `writeString`.
+   *
+   * @param in the buffer to read from
+   * @return the string, which may be null
+   */
+  public static String readString(ByteBuffer in) {
+    int length = in.getInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,214 @@
+package umm3601.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Strings kept as UTF-8 outside of the Java heap, in direct `ByteBuffer`s, for
+ * large text that is written once and rarely read back in full.
+ * <p>
+ * Text is appended to fixed size segments, each string preceded by its length
+ * in bytes, and is addressed by a `long` reference holding the segment and the
+ * offset within it. A string never crosses a segment boundary; one too long
+ * for a segment gets a segment of its own. The garbage collector sees one
+ * small object per segment, however many strings are stored.
+ * <p>
+ * Strings can be searched and compared without decoding them: UTF-8 is self
+ * synchronizing, so a string contains another exactly when its bytes contain
+ * the other's bytes, and comparing the bytes orders strings by code point.
+ * <p>
+ * Appending must be done by one thread at a time, but any number of threads
+ * may read at once, including while a string is being appended. Nothing is
+ * ever removed; the space used by a string is only given back when the whole
+ * arena is, so an owner whose strings change copies the ones it still needs
+ * into a new arena (see `copy`) once enough of the old one is unused.
+ */
+public class TextArena {
+
+  static final int DEFAULT_SEGMENT_SIZE = 1 << 20;
+
+  private final int segmentSize;
+  private volatile ByteBuffer[] segments = new ByteBuffer[0];
+  private int segmentUsed;
+  private long bytesUsed;
+
+  public TextArena() {
+    this(DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * @param segmentSize the size of each segment, in bytes
+   */
+  TextArena(int segmentSize) {
+    this.segmentSize = segmentSize;
+  }
+
+  /**
+   * @param text a string
+   * @return the UTF-8 bytes of the string, to search for or compare against
+   */
+  public static byte[] utf8(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Store a string.
+   *
+   * @param text the string to store
+   * @return the reference to the stored string
+   */
+  public long add(String text) {
+    return add(utf8(text));
+  }
+
+  /**
+   * Store a string copied from another arena, without decoding it.
+   *
+   * @param from the arena holding the string
+   * @param ref  the reference to the string in that arena
+   * @return the reference to the string in this arena
+   */
+  public long copy(TextArena from, long ref) {
+    ByteBuffer buffer = from.segment(ref).duplicate();
+    int offset = offset(ref);
+    byte[] bytes = new byte[buffer.getInt(offset)];
+    buffer.position(offset + Integer.BYTES);
+    buffer.get(bytes);
+    return add(bytes);
+  }
+
+  private synchronized long add(byte[] bytes) {
+    int size = Integer.BYTES + bytes.length;
+    ByteBuffer[] current = segments;
+    if (current.length == 0 || segmentUsed + size > current[current.length - 1].capacity()) {
+      current = Arrays.copyOf(current, current.length + 1);
+      current[current.length - 1] = ByteBuffer.allocateDirect(Math.max(segmentSize, size));
+      segmentUsed = 0;
+    }
+    int segment = current.length - 1;
+    int offset = segmentUsed;
+    ByteBuffer buffer = current[segment].duplicate();
+    buffer.position(offset);
+    buffer.putInt(bytes.length);
+    buffer.put(bytes);
+    segmentUsed += size;
+    bytesUsed += size;
+    // Publish the new segment, if there is one, after it has been written
+    segments = current;
+    return (long) segment << 32 | offset;
+  }
+
+  /**
+   * Decode a stored string.
+   *
+   * @param ref the reference to the string
+   * @return the string
+   */
+  public String get(long ref) {
+    ByteBuffer buffer = segment(ref).duplicate();
+    int offset = offset(ref);
+    byte[] bytes = new byte[buffer.getInt(offset)];
+    buffer.position(offset + Integer.BYTES);
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @param ref the reference to a stored string
+   * @param utf8 the UTF-8 bytes of a string, see `utf8`
+   * @return whether the stored string is the given string
+   */
+  public boolean equals(long ref, byte[] utf8) {
+    ByteBuffer buffer = segment(ref);
+    int start = offset(ref) + Integer.BYTES;
+    if (buffer.getInt(offset(ref)) != utf8.length) {
+      return false;
+    }
+    for (int i = 0; i < utf8.length; i++) {
+      if (buffer.get(start + i) != utf8[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param ref    the reference to a stored string
+   * @param needle the UTF-8 bytes of a string, see `utf8`
+   * @return whether the stored string contains the given string
+   */
+  public boolean contains(long ref, byte[] needle) {
+    ByteBuffer buffer = segment(ref);
+    int start = offset(ref) + Integer.BYTES;
+    int last = start + buffer.getInt(offset(ref)) - needle.length;
+    if (needle.length == 0) {
+      return true;
+    }
+    byte first = needle[0];
+    for (int i = start; i <= last; i++) {
+      if (buffer.get(i) != first) {
+        continue;
+      }
+      int j = 1;
+      while (j < needle.length && buffer.get(i + j) == needle[j]) {
+        j++;
+      }
+      if (j == needle.length) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Compare two stored strings by code point, which is the same order as
+   * `String.compareTo` unless the strings have characters from beyond the
+   * Basic Multilingual Plane.
+   *
+   * @param first  the reference to one stored string
+   * @param second the reference to the other
+   * @return less than, equal to or greater than zero as the first string is
+   *         before, the same as or after the second
+   */
+  public int compare(long first, long second) {
+    ByteBuffer firstBuffer = segment(first);
+    ByteBuffer secondBuffer = segment(second);
+    int firstStart = offset(first) + Integer.BYTES;
+    int secondStart = offset(second) + Integer.BYTES;
+    int firstLength = firstBuffer.getInt(offset(first));
+    int secondLength = secondBuffer.getInt(offset(second));
+    int length = Math.min(firstLength, secondLength);
+    for (int i = 0; i < length; i++) {
+      int difference = Byte.toUnsignedInt(firstBuffer.get(firstStart + i))
+          - Byte.toUnsignedInt(secondBuffer.get(secondStart + i));
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return firstLength - secondLength;
+  }
+
+  /**
+   * @param ref the reference to a stored string
+   * @return the number of bytes the string takes up in the arena
+   */
+  public int sizeOf(long ref) {
+    return Integer.BYTES + segment(ref).getInt(offset(ref));
+  }
+
+  /**
+   * @return the number of bytes the stored strings take up
+   */
+  public synchronized long bytesUsed() {
+    return bytesUsed;
+  }
+
+  private ByteBuffer segment(long ref) {
+    return segments[(int) (ref >>> 32)];
+  }
+
+  private static int offset(long ref) {
+    return (int) ref;
+  }
+}
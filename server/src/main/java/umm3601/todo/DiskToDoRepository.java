@@ -0,0 +1,310 @@
+package umm3601.todo;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.StreamSupport;
+
+import com.google.gson.stream.JsonReader;
+
+import io.javalin.http.BadRequestResponse;
+import umm3601.index.Suggester;
+import umm3601.index.ValueFilter;
+import umm3601.limit.Deadline;
+import umm3601.storage.JsonArrayIterator;
+import umm3601.storage.RecordStore;
+
+/**
+ * Todos kept on disk in a `RecordStore`, for when there are too many of them to
+ * hold in the heap.
+ * <p>
+ * Queries are answered by streaming through the stored todos, so the memory
+ * used is bounded by the size of the answer (or by `limit`, when the todos are
+ * ordered) rather than by the number of todos.
+ */
+public class DiskToDoRepository implements ToDoRepository {
+
+  static final String STORE_NAME = "todos";
+  static final int CACHE_SIZE = 1024;
+
+  static final RecordStore.Codec<ToDo> CODEC = new RecordStore.Codec<ToDo>() {
+    @Override
+    public String idOf(ToDo todo) {
+      return todo._id;
+    }
+
+    @Override
+    public void write(DataOutput out, ToDo todo) throws IOException {
+      RecordStore.writeString(out, todo._id);
+      RecordStore.writeString(out, todo.owner);
+      out.writeBoolean(todo.status);
+      RecordStore.writeString(out, todo.body);
+      RecordStore.writeString(out, todo.category);
+    }
+
+    @Override
+    public ToDo read(ByteBuffer in) {
+      ToDo todo = new ToDo();
+      todo._id = RecordStore.readString(in);
+      todo.owner = RecordStore.readString(in);
+      todo.status = in.get() != 0;
+      todo.body = RecordStore.readString(in);
+      todo.category = RecordStore.readString(in);
+      return todo;
+    }
+  };
+
+  private final RecordStore<ToDo> store;
+  // The store is read-only, so nothing is ever published to this
+  private final ToDoChangeFeed changes = new ToDoChangeFeed(Runnable::run);
+  private final Map<String, Suggester> suggesters = new ConcurrentHashMap<>();
+
+  /**
+   * Open the todo store in the given directory, first creating it from the
+   * JSON data file if it doesn't exist yet or the data file has changed
+   * since it was created.
+   *
+   * @param directory    the directory holding the store
+   * @param todoDataFile the JSON file to create the store from
+   * @throws IOException if the store can't be created or read
+   */
+  public DiskToDoRepository(Path directory, String todoDataFile) throws IOException {
+    this(directory, todoDataFile, 0, 1);
+  }
+
+  /**
+   * Open the store of one shard of the todos in the given directory, first
+   * creating it from the JSON data file if it doesn't exist yet, or if the
+   * data file or the shard has changed since it was created. The todos are
+   * split between shards by owner, just as `ToDoDatabase` splits them.
+   *
+   * @param directory    the directory holding the store
+   * @param todoDataFile the JSON file to create the store from
+   * @param shard        which shard this repository holds, from 0 up to
+   *                     `shardCount - 1`
+   * @param shardCount   the number of shards the todos are split into
+   * @throws IOException if the store can't be created or read
+   */
+  public DiskToDoRepository(Path directory, String todoDataFile, int shard, int shardCount) throws IOException {
+    String source = RecordStore.stamp(getClass().getResource(todoDataFile));
+    if (shardCount > 1) {
+      source += " shard " + shard + "/" + shardCount;
+    }
+    if (!source.equals(RecordStore.sourceOf(directory, STORE_NAME))) {
+      try (JsonReader reader = new JsonReader(new InputStreamReader(getClass().getResourceAsStream(todoDataFile)))) {
+        Iterator<ToDo> todos = new JsonArrayIterator<>(reader, ToDo.class);
+        if (shardCount > 1) {
+          todos = StreamSupport.stream(Spliterators.spliteratorUnknownSize(todos, Spliterator.ORDERED), false)
+              .filter(todo -> ToDoDatabase.shardOf(todo.owner, shardCount) == shard).iterator();
+        }
+        RecordStore.write(directory, STORE_NAME, todos, CODEC, source);
+      }
+    }
+    store = RecordStore.open(directory, STORE_NAME, CODEC, CACHE_SIZE);
+  }
+
+  public int size() {
+    return store.size();
+  }
+
+  public ToDo getToDo(String id) {
+    return store.get(id);
+  }
+
+  public Iterator<ToDo> exportTodos(String afterId) {
+    return afterId == null ? store.iterator() : store.iteratorAfter(afterId);
+  }
+
+  public ToDo[] listTodos(Map<String, List<String>> queryParams) {
+    Predicate<ToDo> filter = filterFor(queryParams);
+    Comparator<ToDo> order = null;
+    if (queryParams.containsKey("orderBy")) {
+      order = ToDoDatabase.todoOrder(queryParams.get("orderBy").get(0));
+    }
+    int limit = limitFor(queryParams);
+
+    if (order == null) {
+      // Without an ordering the first `limit` matches are the answer
+      List<ToDo> todos = new ArrayList<>();
+      for (ToDo todo : store) {
+        if (todos.size() >= limit) {
+          break;
+        }
+        if (filter.test(todo)) {
+          todos.add(todo);
+        }
+      }
+      return todos.toArray(new ToDo[0]);
+    }
+
+    // Keep the first `limit` matches in order, ties going to the todo that was
+    // stored first, in a heap whose head is the one to drop next
+    Comparator<Ranked> ranking = Comparator.comparing((Ranked ranked) -> ranked.todo, order)
+        .thenComparingLong(ranked -> ranked.sequence);
+    PriorityQueue<Ranked> best = new PriorityQueue<>(ranking.reversed());
+    long sequence = 0;
+    for (ToDo todo : store) {
+      if (filter.test(todo)) {
+        best.add(new Ranked(todo, sequence++));
+        if (best.size() > limit) {
+          best.poll();
+        }
+      }
+    }
+    return best.stream().sorted(ranking).map(ranked -> ranked.todo).toArray(ToDo[]::new);
+  }
+
+  /**
+   * Query plans come from the statistics kept by the in-memory `ToDoDatabase`,
+   * which todos on disk don't have.
+   */
+  public ToDoQueryPlan explainTodos(Map<String, List<String>> queryParams) {
+    throw new BadRequestResponse("Query plans aren't available for todos stored on disk");
+  }
+
+  /**
+   * Every query reads every stored todo, so the cost is mostly the number of
+   * todos, plus sorting whatever is kept.
+   */
+  public long estimateCost(Map<String, List<String>> queryParams) {
+    long cost = store.size();
+    if (queryParams.containsKey("contains")) {
+      cost *= ToDoQueryPlanner.CONTAINS_COST;
+    }
+    if (queryParams.containsKey("orderBy")) {
+      long kept = Math.min(store.size(), limitFor(queryParams));
+      cost += (long) (kept * Math.max(1, Math.log(kept) / Math.log(2)));
+    }
+    return cost;
+  }
+
+  public int countTodos(Map<String, List<String>> queryParams) {
+    Predicate<ToDo> filter = filterFor(queryParams);
+    int count = 0;
+    for (ToDo todo : store) {
+      if (filter.test(todo)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public Map<String, Map<String, Integer>> facetTodos(Map<String, List<String>> queryParams, List<String> fields) {
+    Map<String, Map<String, Integer>> facets = new LinkedHashMap<>();
+    for (String field : fields) {
+      if (!ToDoDatabase.FIELDS.containsKey(field)) {
+        throw new BadRequestResponse("Can't group todos by '" + field + "'");
+      }
+      facets.put(field, new LinkedHashMap<>());
+    }
+
+    Predicate<ToDo> filter = filterFor(queryParams);
+    for (ToDo todo : store) {
+      if (filter.test(todo)) {
+        for (String field : fields) {
+          facets.get(field).merge(ToDoDatabase.FIELDS.get(field).apply(todo), 1, Integer::sum);
+        }
+      }
+    }
+    return facets;
+  }
+
+  /**
+   * The stored todos never change, so each field's suggester is built from
+   * one pass over them the first time it's asked for, and then kept.
+   */
+  public List<Suggester.Suggestion> suggestTodos(String field, String prefix, int limit) {
+    if (!ToDoDatabase.FIELDS.containsKey(field)) {
+      throw new BadRequestResponse("Can't suggest values of '" + field + "'");
+    }
+    Suggester suggester = suggesters.computeIfAbsent(field,
+        key -> new Suggester(facetTodos(Collections.emptyMap(), Collections.singletonList(key)).get(key)));
+    return suggester.suggest(prefix, limit);
+  }
+
+  public ToDo addTodo(ToDo todo) {
+    throw new BadRequestResponse("Todos stored on disk can't be changed");
+  }
+
+  public ToDo updateTodo(ToDo todo) {
+    throw new BadRequestResponse("Todos stored on disk can't be changed");
+  }
+
+  public ToDo removeTodo(String id) {
+    throw new BadRequestResponse("Todos stored on disk can't be changed");
+  }
+
+  public ToDoChangeFeed changes() {
+    return changes;
+  }
+
+  /**
+   * Build a test for the filters in the params, matching todos the same way as
+   * `ToDoDatabase` does. Every scan of the store goes through this test, so it
+   * also checks the request's deadline.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return a test for whether a todo satisfies every filter
+   */
+  private static Predicate<ToDo> filterFor(Map<String, List<String>> queryParams) {
+    Deadline deadline = Deadline.current();
+    Predicate<ToDo> filter = todo -> {
+      deadline.check();
+      return true;
+    };
+    for (String field : ToDoDatabase.FIELDS.keySet()) {
+      if (queryParams.containsKey(field)) {
+        Predicate<String> matcher = "status".equals(field)
+            ? new ValueFilter(queryParams.get(field), ToDoQueryPlanner::statusKey).matcher()
+            : new ValueFilter(queryParams.get(field)).matcher();
+        Function<ToDo, String> getter = ToDoDatabase.FIELDS.get(field);
+        filter = filter.and(todo -> matcher.test(getter.apply(todo)));
+      }
+    }
+    if (queryParams.containsKey("contains")) {
+      String targetString = queryParams.get("contains").get(0);
+      filter = filter.and(todo -> todo.body.contains(targetString));
+    }
+    return filter;
+  }
+
+  private static int limitFor(Map<String, List<String>> queryParams) {
+    if (!queryParams.containsKey("limit")) {
+      return Integer.MAX_VALUE;
+    }
+    String limitParam = queryParams.get("limit").get(0);
+    try {
+      return Math.max(0, Integer.parseInt(limitParam));
+    } catch (NumberFormatException e) {
+      throw new BadRequestResponse("Specified limit '" + limitParam + "' can't be parsed to an integer");
+    }
+  }
+
+  /**
+   * A todo along with the order it was found in.
+   */
+  private static class Ranked {
+    final ToDo todo;
+    final long sequence;
+
+    Ranked(ToDo todo, long sequence) {
+      this.todo = todo;
+      this.sequence = sequence;
+    }
+  }
+}
@@ -0,0 +1,186 @@
+package umm3601.todo;
+
+import java.util.Comparator;
+import java.util.function.Predicate;
+
+import umm3601.storage.TextArena;
+
+/**
+ * Keeps the IDs and bodies of the todos in a `ToDoDatabase` in a `TextArena`,
+ * outside of the Java heap.
+ * <p>
+ * Bodies are most of the memory taken by the todos, and since they rarely
+ * change once loaded they would otherwise sit in the old generation, making
+ * every full collection longer. A todo kept here is a `Stored` todo, with
+ * references into the arena in place of its `_id` and `body` strings. Filtering
+ * and ordering by body work on the bytes in the arena; the strings are only
+ * decoded, by `load`, for the todos that are actually being returned.
+ * <p>
+ * The text of an updated or removed todo can't be freed on its own, so once
+ * more of the arena is unused than used, `compact` moves the text still in use
+ * to a new arena. The old arena is freed along with the last snapshot whose
+ * todos refer to it, so queries already running on it are unaffected. Each
+ * byte of text is copied at most once per unused byte, so compacting adds a
+ * constant amount of work per write.
+ */
+class OffHeapText {
+
+  /**
+   * A todo whose ID and body are in the arena. Its `_id` and `body` fields are
+   * null, so it must be loaded before it leaves the database.
+   */
+  static class Stored extends ToDo {
+    final TextArena arena;
+    final long idRef;
+    final long bodyRef;
+
+    Stored(ToDo todo, TextArena arena, long idRef, long bodyRef) {
+      this.owner = todo.owner;
+      this.status = todo.status;
+      this.category = todo.category;
+      this.arena = arena;
+      this.idRef = idRef;
+      this.bodyRef = bodyRef;
+    }
+  }
+
+  /**
+   * The least unused text worth compacting the arena for, in bytes.
+   */
+  static final long MIN_COMPACTION = 1 << 20;
+
+  // The arena new text goes in, and how much of it no todo refers to any more;
+  // only the database's writer changes these
+  private TextArena arena = new TextArena();
+  private long unused;
+
+  /**
+   * Move the ID and body of a todo into the arena.
+   *
+   * @param todo the todo to store
+   * @return the stored version of the todo
+   */
+  Stored store(ToDo todo) {
+    return new Stored(todo, arena, arena.add(todo._id), arena.add(todo.body));
+  }
+
+  /**
+   * Note that a todo has been updated or removed, so its text is no longer
+   * needed by the database (though it may still be read by queries running on
+   * an older snapshot).
+   *
+   * @param todo the todo, stored or not
+   */
+  void release(ToDo todo) {
+    if (todo instanceof Stored && ((Stored) todo).arena == arena) {
+      Stored stored = (Stored) todo;
+      unused += arena.sizeOf(stored.idRef) + arena.sizeOf(stored.bodyRef);
+    }
+  }
+
+  /**
+   * Move the text of the todos into a new arena, if enough of the current one
+   * is unused.
+   *
+   * @param todos all the todos in the database
+   * @return the todos, with their text in the new arena, or the given todos if
+   *         the arena wasn't compacted
+   */
+  ToDo[] compact(ToDo[] todos) {
+    if (unused < MIN_COMPACTION || unused * 2 < arena.bytesUsed()) {
+      return todos;
+    }
+    TextArena compacted = new TextArena();
+    ToDo[] moved = new ToDo[todos.length];
+    for (int i = 0; i < todos.length; i++) {
+      if (todos[i] instanceof Stored) {
+        Stored stored = (Stored) todos[i];
+        moved[i] = new Stored(stored, compacted, compacted.copy(stored.arena, stored.idRef),
+            compacted.copy(stored.arena, stored.bodyRef));
+      } else {
+        moved[i] = todos[i];
+      }
+    }
+    arena = compacted;
+    unused = 0;
+    return moved;
+  }
+
+  /**
+   * Get a todo as an ordinary todo, decoding its ID and body if it was stored
+   * in the arena.
+   *
+   * @param todo a todo, stored or not
+   * @return the todo, with its ID and body
+   */
+  ToDo load(ToDo todo) {
+    if (!(todo instanceof Stored)) {
+      return todo;
+    }
+    Stored stored = (Stored) todo;
+    ToDo loaded = new ToDo();
+    loaded._id = stored.arena.get(stored.idRef);
+    loaded.owner = stored.owner;
+    loaded.status = stored.status;
+    loaded.body = stored.arena.get(stored.bodyRef);
+    loaded.category = stored.category;
+    return loaded;
+  }
+
+  /**
+   * @param todos todos, stored or not
+   * @return a new array holding each of the todos, loaded
+   */
+  ToDo[] load(ToDo[] todos) {
+    ToDo[] loaded = new ToDo[todos.length];
+    for (int i = 0; i < todos.length; i++) {
+      loaded[i] = load(todos[i]);
+    }
+    return loaded;
+  }
+
+  /**
+   * @param id the ID to look for
+   * @return a test for todos having the ID
+   */
+  Predicate<ToDo> hasId(String id) {
+    byte[] utf8 = TextArena.utf8(id);
+    return todo -> todo instanceof Stored
+        ? ((Stored) todo).arena.equals(((Stored) todo).idRef, utf8)
+        : todo._id.equals(id);
+  }
+
+  /**
+   * @param targetString the string to look for
+   * @return a test for todos having the string in their body
+   */
+  Predicate<ToDo> bodyContains(String targetString) {
+    byte[] needle = TextArena.utf8(targetString);
+    return todo -> todo instanceof Stored
+        ? ((Stored) todo).arena.contains(((Stored) todo).bodyRef, needle)
+        : todo.body.contains(targetString);
+  }
+
+  /**
+   * The order of todos by body. Stored todos are compared by code point
+   * rather than by the UTF-16 units `String.compareTo` uses, which only
+   * differs for characters beyond the Basic Multilingual Plane.
+   *
+   * @return the ordering
+   */
+  Comparator<ToDo> bodyOrder() {
+    // The todos of a snapshot all have their text in the same arena
+    return (first, second) -> first instanceof Stored && second instanceof Stored
+        && ((Stored) first).arena == ((Stored) second).arena
+        ? ((Stored) first).arena.compare(((Stored) first).bodyRef, ((Stored) second).bodyRef)
+        : load(first).body.compareTo(load(second).body);
+  }
+
+  /**
+   * @return the number of bytes of text in the arena new text goes in, used
+   *         or not
+   */
+  long bytesUsed() {
+    return arena.bytesUsed();
+  }
+}
@@ -0,0 +1,24 @@
+package umm3601.todo;
+
+/**
+ * A change to the todos matching a subscriber's filters, as sent by the
+ * `ToDoChangeFeed`.
+ */
+public class ToDoChange {
+
+  public static final String ADD = "add";
+  public static final String UPDATE = "update";
+  public static final String REMOVE = "remove";
+
+  // Numbers the changes to the database in the order they were made
+  public long sequence;
+  public String type;
+  // The todo after an add or update, or before a remove
+  public ToDo todo;
+
+  public ToDoChange(long sequence, String type, ToDo todo) {
+    this.sequence = sequence;
+    this.type = type;
+    this.todo = todo;
+  }
+}
@@ -0,0 +1,309 @@
+package umm3601.todo;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import umm3601.index.TermIndex;
+import umm3601.index.ValueFilter;
+
+/**
+ * Tells subscribers about changes to the todos matching their filters.
+ * <p>
+ * A subscriber registers the same filters `listTodos` accepts (owner,
+ * category, status and contains) and is then sent a `ToDoChange` whenever a
+ * todo starts matching them (an add), changes while still matching them (an
+ * update) or stops matching them (a remove). Ordering and limits don't apply.
+ * <p>
+ * So that a change doesn't have to be tested against every subscriber, each
+ * subscription is filed under the value of one of its equality filters that
+ * accepts exactly one value (owner if it has one, otherwise category, otherwise
+ * status). A change is only tested against the subscriptions filed under the
+ * old and new todo's own values, plus those with no such filter at all.
+ * <p>
+ * Each subscriber has a bounded backlog of changes waiting to be sent to it,
+ * which are sent in order by one task at a time, so a slow subscriber only
+ * holds up itself. A subscriber whose backlog fills up is dropped, and told so
+ * that it can close its connection.
+ */
+public class ToDoChangeFeed {
+
+  /**
+   * The equality filters subscriptions can be filed under, most selective
+   * first.
+   */
+  private static final String[] ANCHORS = { "owner", "category", "status" };
+
+  /**
+   * How many changes may be waiting to be sent to a subscriber before it is
+   * dropped, by default.
+   */
+  public static final int DEFAULT_BACKLOG = 1024;
+
+  /**
+   * A subscriber's filters, and where to send its changes.
+   */
+  public static class Subscription {
+    // The test for each equality filter's field, in the order of `ANCHORS`
+    final Map<String, Predicate<String>> matchers = new LinkedHashMap<>();
+    final String contains;
+    final Consumer<ToDoChange> listener;
+    final Runnable onDropped;
+    final String anchor;
+    final String anchorValue;
+    // The changes waiting to be sent, and whether a task is sending them
+    final BlockingQueue<ToDoChange> backlog;
+    final AtomicBoolean sending = new AtomicBoolean();
+    final AtomicBoolean dropped = new AtomicBoolean();
+
+    Subscription(Map<String, List<String>> queryParams, Consumer<ToDoChange> listener, Runnable onDropped,
+        int backlog) {
+      this.contains = queryParams.containsKey("contains") ? queryParams.get("contains").get(0) : null;
+      this.listener = listener;
+      this.onDropped = onDropped;
+      this.backlog = new ArrayBlockingQueue<>(backlog);
+
+      // Only a filter for exactly one value can be filed under that value
+      String firstAnchor = null;
+      String firstValue = null;
+      for (String field : ANCHORS) {
+        if (queryParams.containsKey(field)) {
+          // Anything other than "complete" means incomplete, just like `filterTodosByStatus`
+          ValueFilter filter = "status".equals(field)
+              ? new ValueFilter(queryParams.get(field), ToDoQueryPlanner::statusKey)
+              : new ValueFilter(queryParams.get(field));
+          matchers.put(field, filter.matcher());
+          if (firstAnchor == null && filter.singleValue() != null) {
+            firstAnchor = field;
+            firstValue = TermIndex.literal(filter.singleValue());
+          }
+        }
+      }
+      this.anchor = firstAnchor;
+      this.anchorValue = firstValue;
+    }
+
+    boolean matches(ToDo todo) {
+      if (todo == null) {
+        return false;
+      }
+      for (Map.Entry<String, Predicate<String>> matcher : matchers.entrySet()) {
+        if (!matcher.getValue().test(ToDoDatabase.FIELDS.get(matcher.getKey()).apply(todo))) {
+          return false;
+        }
+      }
+      return contains == null || todo.body.contains(contains);
+    }
+  }
+
+  // Subscriptions by anchor field, then by the value they want for that field
+  private final Map<String, ConcurrentMap<String, Set<Subscription>>> anchored = new ConcurrentHashMap<>();
+  private final Set<Subscription> unanchored = ConcurrentHashMap.newKeySet();
+  private final Executor delivery;
+  private final int backlog;
+  private long sequence;
+
+  /**
+   * Construct a feed that sends changes to subscribers on threads of its own,
+   * so a slow subscriber doesn't hold up changes to the database.
+   */
+  public ToDoChangeFeed() {
+    this(Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "todo-changes");
+      thread.setDaemon(true);
+      return thread;
+    }));
+  }
+
+  /**
+   * @param delivery runs the sending of changes to subscribers
+   */
+  public ToDoChangeFeed(Executor delivery) {
+    this(delivery, DEFAULT_BACKLOG);
+  }
+
+  /**
+   * @param delivery runs the sending of changes to subscribers
+   * @param backlog  how many changes may be waiting to be sent to a subscriber
+   *                 before it is dropped
+   */
+  public ToDoChangeFeed(Executor delivery, int backlog) {
+    this.delivery = delivery;
+    this.backlog = backlog;
+    for (String anchor : ANCHORS) {
+      anchored.put(anchor, new ConcurrentHashMap<>());
+    }
+  }
+
+  /**
+   * Start sending changes to the todos matching the filters in the params.
+   *
+   * @param queryParams the filters, as given to `listTodos`
+   * @param listener    where to send the changes
+   * @return the subscription, for unsubscribing later
+   */
+  public Subscription subscribe(Map<String, List<String>> queryParams, Consumer<ToDoChange> listener) {
+    return subscribe(queryParams, listener, () -> {
+    });
+  }
+
+  /**
+   * Start sending changes to the todos matching the filters in the params.
+   *
+   * @param queryParams the filters, as given to `listTodos`
+   * @param listener    where to send the changes
+   * @param onDropped   run if the subscriber is dropped for falling too far
+   *                    behind
+   * @return the subscription, for unsubscribing later
+   */
+  public Subscription subscribe(Map<String, List<String>> queryParams, Consumer<ToDoChange> listener,
+      Runnable onDropped) {
+    Subscription subscription = new Subscription(queryParams, listener, onDropped, backlog);
+    if (subscription.anchor == null) {
+      unanchored.add(subscription);
+    } else {
+      anchored.get(subscription.anchor).compute(subscription.anchorValue, (value, subscriptions) -> {
+        subscriptions = subscriptions == null ? ConcurrentHashMap.newKeySet() : subscriptions;
+        subscriptions.add(subscription);
+        return subscriptions;
+      });
+    }
+    return subscription;
+  }
+
+  /**
+   * Stop sending changes to a subscriber.
+   *
+   * @param subscription the subscription returned by `subscribe`
+   */
+  public void unsubscribe(Subscription subscription) {
+    if (subscription.anchor == null) {
+      unanchored.remove(subscription);
+    } else {
+      // Forget the value once nobody is subscribed to it
+      anchored.get(subscription.anchor).computeIfPresent(subscription.anchorValue, (value, subscriptions) -> {
+        subscriptions.remove(subscription);
+        return subscriptions.isEmpty() ? null : subscriptions;
+      });
+    }
+  }
+
+  /**
+   * @return the number of values subscriptions are filed under
+   */
+  int anchorValues() {
+    int count = 0;
+    for (Map<String, Set<Subscription>> byValue : anchored.values()) {
+      count += byValue.size();
+    }
+    return count;
+  }
+
+  /**
+   * @return the number of subscribers
+   */
+  public int subscribers() {
+    int count = unanchored.size();
+    for (Map<String, Set<Subscription>> byValue : anchored.values()) {
+      for (Set<Subscription> subscriptions : byValue.values()) {
+        count += subscriptions.size();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Tell the subscribers about a change to a todo. The database calls this
+   * while it holds its lock, so changes are numbered and sent in the order they
+   * were made.
+   *
+   * @param before the todo before the change, or null if it was added
+   * @param after  the todo after the change, or null if it was removed
+   */
+  synchronized void publish(ToDo before, ToDo after) {
+    long changeSequence = ++sequence;
+
+    Set<Subscription> candidates = new LinkedHashSet<>(unanchored);
+    for (ToDo todo : new ToDo[] { before, after }) {
+      if (todo == null) {
+        continue;
+      }
+      for (String anchor : ANCHORS) {
+        Set<Subscription> subscriptions = anchored.get(anchor).get(ToDoDatabase.FIELDS.get(anchor).apply(todo));
+        if (subscriptions != null) {
+          candidates.addAll(subscriptions);
+        }
+      }
+    }
+
+    for (Subscription subscription : candidates) {
+      boolean matched = subscription.matches(before);
+      boolean matches = subscription.matches(after);
+      ToDoChange change;
+      if (matched && matches) {
+        change = new ToDoChange(changeSequence, ToDoChange.UPDATE, after);
+      } else if (matches) {
+        change = new ToDoChange(changeSequence, ToDoChange.ADD, after);
+      } else if (matched) {
+        change = new ToDoChange(changeSequence, ToDoChange.REMOVE, before);
+      } else {
+        continue;
+      }
+      send(subscription, change);
+    }
+  }
+
+  private void send(Subscription subscription, ToDoChange change) {
+    if (subscription.dropped.get()) {
+      return;
+    }
+    if (!subscription.backlog.offer(change)) {
+      drop(subscription);
+      return;
+    }
+    if (subscription.sending.compareAndSet(false, true)) {
+      delivery.execute(() -> drain(subscription));
+    }
+  }
+
+  /**
+   * Send a subscriber the changes in its backlog, until there are none left.
+   */
+  private void drain(Subscription subscription) {
+    do {
+      try {
+        ToDoChange change;
+        while (!subscription.dropped.get() && (change = subscription.backlog.poll()) != null) {
+          subscription.listener.accept(change);
+        }
+      } catch (RuntimeException e) {
+        // The subscriber can't be sent changes any more
+        drop(subscription);
+      }
+      subscription.sending.set(false);
+      // A change may have arrived after the backlog was found empty but before
+      // `sending` was cleared, in which case nobody else will send it
+    } while (!subscription.dropped.get() && !subscription.backlog.isEmpty()
+        && subscription.sending.compareAndSet(false, true));
+  }
+
+  private void drop(Subscription subscription) {
+    if (!subscription.dropped.compareAndSet(false, true)) {
+      return;
+    }
+    unsubscribe(subscription);
+    subscription.backlog.clear();
+    delivery.execute(subscription.onDropped);
+  }
+}
@@ -1,14 +1,78 @@
 package umm3601.todo;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import io.javalin.http.BadRequestResponse;
 import io.javalin.http.Context;
 import io.javalin.http.NotFoundResponse;
+import io.javalin.http.sse.SseClient;
+import io.javalin.plugin.json.JavalinJson;
+import umm3601.index.Suggester;
+import umm3601.json.ColumnBatch;
+import umm3601.json.JsonProjection;
+import umm3601.json.NdjsonExport;
+import umm3601.json.ResponseFormat;
+import umm3601.profiling.QueryDescription;
+import umm3601.profiling.SerializationEvent;
+import umm3601.user.User;
+import umm3601.user.UserController;
+import umm3601.user.UserRepository;
 
 /**
  * Controller that manages requests for info about todos.
  */
 public class ToDoController {
 
-  private ToDoDatabase database;
+  /**
+   * The fields of a todo that can be picked with the `fields` query parameter.
+   */
+  static final JsonProjection<ToDo> PROJECTION = new JsonProjection<ToDo>("todo")
+      .field("_id", (json, todo) -> json.writeString(todo._id))
+      .field("owner", (json, todo) -> json.writeString(todo.owner))
+      .field("status", (json, todo) -> json.writeBoolean(todo.status))
+      .field("body", (json, todo) -> json.writeString(todo.body))
+      .field("category", (json, todo) -> json.writeString(todo.category));
+
+  /**
+   * The columns of a todo that can be picked for a column batch.
+   */
+  static final ColumnBatch<ToDo> COLUMNS = new ColumnBatch<ToDo>()
+      .utf8("_id", todo -> todo._id)
+      .dictionary("owner", todo -> todo.owner)
+      .bool("status", todo -> todo.status)
+      .utf8("body", todo -> todo.body)
+      .dictionary("category", todo -> todo.category);
+
+  /**
+   * Todos written as a CBOR encoded `ColumnBatch`, for bulk analytics.
+   */
+  public static final ResponseFormat COLUMN_BATCH = new ResponseFormat("application/vnd.umm3601.columns+cbor",
+      ResponseFormat.CBOR.factory);
+
+  static final List<ResponseFormat> FORMATS = Arrays.asList(ResponseFormat.JSON, ResponseFormat.CBOR,
+      ResponseFormat.MESSAGE_PACK, COLUMN_BATCH);
+
+  // The fields of an owner embedded with `expand=owner`
+  private static final List<String> OWNER_FIELDS = UserController.PROJECTION.fields();
+
+  private ToDoRepository database;
+  private UserRepository users;
+
+  /**
+   * Construct a controller for todos, without the users to expand their owners
+   * from.
+   *
+   * @param database the `ToDoRepository` containing todo data
+   */
+  public ToDoController(ToDoRepository database) {
+    this(database, null);
+  }
 
   /**
    * Construct a controller for todos.
@@ -17,10 +81,13 @@ public class ToDoController {
    * internally so that (subsets of) todos can be returned in response to
    * requests.
    *
-   * @param database the `Database` containing todo data
+   * @param database the `ToDoRepository` containing todo data
+   * @param users    the users that `expand=owner` looks owners up in, or null
+   *                 if owners can't be expanded
    */
-  public ToDoController(ToDoDatabase database) {
+  public ToDoController(ToDoRepository database, UserRepository users) {
     this.database = database;
+    this.users = users;
   }
 
   /**
@@ -41,12 +108,252 @@ public class ToDoController {
 
   /**
    * Get a JSON response with a list of all the todos in the "database".
+   * <p>
+   * The `owner`, `category` and `status` filters may each be given more than
+   * once, matching todos with any of the values, and a value starting with `!`
+   * excludes todos with it, e.g., `owner=Fry&owner=Blanche&category=!homework`.
+   * A value ending in `*` matches every value starting with the rest of it,
+   * ignoring case, e.g., `owner=bla*`; any other value must match exactly,
+   * case and all. A value starting with `\` is taken exactly as the rest of
+   * it, e.g., `owner=\!Dawn` or `owner=\Fry*`.
+   * <p>
+   * If the request has `orderBy`, e.g., `orderBy=owner,-status,category`, the
+   * todos are ordered by each of those fields in turn, descending if the field
+   * starts with `-`.
+   * <p>
+   * If the request has `explain=true`, respond with the query plan that was
+   * used instead, including the estimated and actual number of todos at each
+   * step.
+   * <p>
+   * If the request has `fields`, e.g., `fields=_id,owner,status`, only those
+   * fields of each todo are included in the response.
+   * <p>
+   * If the request has `expand=owner`, the owner of each todo is written as the
+   * user with that name, e.g., `"owner": {"_id": "...", "name": "Fry", ...}`,
+   * or as just `{"name": "Fry"}` if there is no such user.
+   * <p>
+   * The response is JSON unless the request's `Accept` header prefers CBOR
+   * (`application/cbor`), MessagePack (`application/x-msgpack`) or a column
+   * batch (`application/vnd.umm3601.columns+cbor`).
    *
    * @param ctx a Javalin HTTP context
    */
   public void getTodos(Context ctx) {
-    ToDo[] todos = database.listTodos(ctx.queryParamMap());
-    ctx.json(todos);
+    Map<String, List<String>> queryParams = ctx.queryParamMap();
+    if (queryParams.containsKey("explain") && "true".equals(queryParams.get("explain").get(0))) {
+      ctx.json(database.explainTodos(queryParams));
+      return;
+    }
+    JsonProjection<ToDo> projection = projectionFor(queryParams, users);
+    List<String> fields = null;
+    if (queryParams.containsKey("fields")) {
+      fields = projection.select(queryParams.get("fields").get(0));
+    }
+    ToDo[] todos = database.listTodos(queryParams);
+    respond(ctx, todos, projection, fields);
+  }
+
+  /**
+   * Get the projection to write todos with, expanding their owners if the
+   * `expand` parameter asks for it.
+   * <p>
+   * An expanded owner is looked up by name in the users' hash index and
+   * written straight into the todo's JSON, so the join happens as the response
+   * is written, in the same single pass over the todos.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @param users       the users to look owners up in, or null if there are
+   *                    none
+   * @return the projection to write todos with
+   */
+  static JsonProjection<ToDo> projectionFor(Map<String, List<String>> queryParams, UserRepository users) {
+    if (!queryParams.containsKey("expand")) {
+      return PROJECTION;
+    }
+    String expandParam = queryParams.get("expand").get(0);
+    if (!"owner".equals(expandParam)) {
+      throw new BadRequestResponse("Can't expand '" + expandParam + "'; only 'owner' can be expanded");
+    }
+    if (users == null) {
+      throw new BadRequestResponse("Owners can't be expanded by this server");
+    }
+    return PROJECTION.with("owner", (json, todo) -> {
+      User owner = users.getUserByName(todo.owner);
+      if (owner != null) {
+        UserController.PROJECTION.write(json, owner, OWNER_FIELDS);
+      } else {
+        json.writeStartObject();
+        json.writeStringField("name", todo.owner);
+        json.writeEndObject();
+      }
+    });
+  }
+
+  /**
+   * Respond with the given todos, in the format the request's `Accept` header
+   * prefers.
+   *
+   * @param ctx        a Javalin HTTP context
+   * @param todos      the todos to respond with
+   * @param projection writes the todos, see `projectionFor`
+   * @param fields     the fields of the todos to include, or null for all of
+   *                   them
+   */
+  static void respond(Context ctx, ToDo[] todos, JsonProjection<ToDo> projection, List<String> fields) {
+    SerializationEvent event = SerializationEvent.start();
+    ResponseFormat format = ResponseFormat.negotiate(ctx.header("Accept"), FORMATS);
+    if (format == COLUMN_BATCH) {
+      if (projection != PROJECTION) {
+        throw new BadRequestResponse("Owners can't be expanded in a column batch");
+      }
+      ctx.contentType(format.contentType);
+      ctx.result(new ByteArrayInputStream(COLUMNS.encode(todos, fields != null ? fields : COLUMNS.columns(),
+          format.factory)));
+    } else if (format != ResponseFormat.JSON) {
+      ctx.contentType(format.contentType);
+      ctx.result(new ByteArrayInputStream(projection.encode(todos, fields != null ? fields : projection.fields(),
+          format.factory)));
+    } else if (fields != null || projection != PROJECTION) {
+      ctx.contentType("application/json");
+      ctx.result(projection.toJson(todos, fields != null ? fields : projection.fields()));
+    } else {
+      ctx.json(todos);
+    }
+    event.end("todos", new QueryDescription(ctx.queryParamMap()), format.contentType, fields, todos.length);
+  }
+
+  /**
+   * Get a JSON response with the number of todos satisfying the filters in the
+   * request, e.g., `{"count": 12}`.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void countTodos(Context ctx) {
+    int count = database.countTodos(ctx.queryParamMap());
+    ctx.json(Collections.singletonMap("count", count));
+  }
+
+  /**
+   * Get a JSON response with the number of todos satisfying the filters in the
+   * request, grouped by each of the comma separated fields in the `by`
+   * parameter, e.g., `by=category,status`.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getTodoFacets(Context ctx) {
+    Map<String, List<String>> queryParams = ctx.queryParamMap();
+    if (!queryParams.containsKey("by")) {
+      throw new BadRequestResponse("Specify the fields to group todos by with the 'by' parameter");
+    }
+    List<String> fields = Arrays.asList(queryParams.get("by").get(0).split(","));
+    ctx.json(database.facetTodos(queryParams, fields));
+  }
+
+  /**
+   * Get a JSON response with the values of the `field` parameter starting with
+   * `prefix`, ignoring case, most common first, for autocompleting filter
+   * inputs, e.g., `field=owner&prefix=bl` gives
+   * `[{"value": "...", "count": 43}, ...]`. `limit` is the most values to give,
+   * up to {@value Suggester#MAX_SUGGESTIONS}.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getTodoSuggestions(Context ctx) {
+    Map<String, List<String>> queryParams = ctx.queryParamMap();
+    if (!queryParams.containsKey("field")) {
+      throw new BadRequestResponse("Specify the field to suggest values of with the 'field' parameter");
+    }
+    String prefix = queryParams.containsKey("prefix") ? queryParams.get("prefix").get(0) : "";
+    ctx.json(database.suggestTodos(queryParams.get("field").get(0), prefix, Suggester.requestedLimit(queryParams)));
+  }
+
+  /**
+   * Add the todo in the request body, responding with the added todo
+   * (including its new ID).
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void addTodo(Context ctx) {
+    ToDo todo = validTodo(ctx);
+    ctx.json(database.addTodo(todo));
+    ctx.status(201);
+  }
+
+  /**
+   * Replace the todo specified by the `id` parameter in the request with the
+   * todo in the request body.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void updateTodo(Context ctx) {
+    String id = ctx.pathParam("id", String.class).get();
+    ToDo todo = validTodo(ctx);
+    todo._id = id;
+    if (database.updateTodo(todo) == null) {
+      throw new NotFoundResponse("No todo with id " + id + " was found.");
+    }
+    ctx.json(todo);
+  }
+
+  /**
+   * Remove the todo specified by the `id` parameter in the request.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void deleteTodo(Context ctx) {
+    String id = ctx.pathParam("id", String.class).get();
+    ToDo removed = database.removeTodo(id);
+    if (removed == null) {
+      throw new NotFoundResponse("No todo with id " + id + " was found.");
+    }
+    ctx.json(removed);
+  }
+
+  /**
+   * Send a server-sent event to the client whenever a todo matching the filters
+   * in the request is added, updated or removed, until the client goes away.
+   * Each event is named after the kind of change, and its data is the todo. A
+   * client that falls too far behind is disconnected.
+   *
+   * @param client a Javalin server-sent event client
+   */
+  public void streamChanges(SseClient client) {
+    ToDoChangeFeed changes = database.changes();
+    ToDoChangeFeed.Subscription subscription = changes.subscribe(client.ctx.queryParamMap(),
+        change -> client.sendEvent(change.type, JavalinJson.toJson(change.todo), Long.toString(change.sequence)),
+        () -> client.ctx.req.getAsyncContext().complete());
+    client.onClose(() -> changes.unsubscribe(subscription));
+  }
+
+  private ToDo validTodo(Context ctx) {
+    ToDo todo = ctx.bodyAsClass(ToDo.class);
+    if (todo == null || todo.owner == null || todo.category == null || todo.body == null) {
+      throw new BadRequestResponse("A todo needs an owner, a category and a body");
+    }
+    return todo;
+  }
+
+  /**
+   * Stream every todo as newline-delimited JSON, gzip compressed if the client
+   * accepts it. With `after`, e.g., `after=588935f57546a2daea44de7c`, the export
+   * resumes after the todo with that ID; `fields` picks the fields of each
+   * todo.
+   *
+   * @param ctx a Javalin HTTP context
+   * @throws IOException if the response can't be written
+   */
+  public void exportTodos(Context ctx) throws IOException {
+    Map<String, List<String>> queryParams = ctx.queryParamMap();
+    List<String> fields = PROJECTION.fields();
+    if (queryParams.containsKey("fields")) {
+      fields = PROJECTION.select(queryParams.get("fields").get(0));
+    }
+    String after = queryParams.containsKey("after") ? queryParams.get("after").get(0) : null;
+    Iterator<ToDo> todos = database.exportTodos(after);
+    if (todos == null) {
+      throw new NotFoundResponse("No todo with id " + after + " was found.");
+    }
+    NdjsonExport.stream(ctx, todos, PROJECTION, fields);
   }
 
 }
@@ -2,13 +2,36 @@ package umm3601.todo;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 import com.google.gson.Gson;
 
 import io.javalin.http.BadRequestResponse;
+import umm3601.index.FieldIndex;
+import umm3601.index.RoaringBitmap;
+import umm3601.index.SortKey;
+import umm3601.index.StringDictionary;
+import umm3601.index.Suggester;
+import umm3601.index.TermIndex;
+import umm3601.index.ValueFilter;
+import umm3601.index.ValueRanks;
+import umm3601.limit.Deadline;
+import umm3601.profiling.QueryDescription;
+import umm3601.profiling.QueryEvent;
+import umm3601.profiling.QueryStageEvent;
 
 /**
  * A fake "database" of ToDo info
@@ -18,18 +41,175 @@ import io.javalin.http.BadRequestResponse;
  * then provide various database-like methods that allow the `ToDoController` to
  * "query" the "database".
  */
-public class ToDoDatabase {
+public class ToDoDatabase implements ToDoRepository {
 
-  private ToDo[] allTodos;
+  /**
+   * The fields todos can be indexed, counted and grouped by, along with how to
+   * get the value of that field from a todo.
+   */
+  static final Map<String, Function<ToDo, String>> FIELDS = new LinkedHashMap<>();
+  static {
+    FIELDS.put("owner", todo -> todo.owner);
+    FIELDS.put("category", todo -> todo.category);
+    FIELDS.put("status", todo -> todo.status ? "complete" : "incomplete");
+  }
+
+  /**
+   * The order of the values of each field in `FIELDS`, the same order
+   * `todoOrder` sorts todos in, for ranking them: incomplete before complete,
+   * as `false` is before `true`.
+   */
+  private static final Map<String, Comparator<String>> VALUE_ORDERS = new HashMap<>();
+  static {
+    VALUE_ORDERS.put("owner", Comparator.naturalOrder());
+    VALUE_ORDERS.put("category", Comparator.naturalOrder());
+    VALUE_ORDERS.put("status", Comparator.comparing("complete"::equals));
+  }
+
+  /**
+   * The todos, along with the indexes and planner built over them. A change to
+   * the todos replaces the whole snapshot, so a query always sees the indexes
+   * that go with the todos it is reading. The new snapshot is made from the
+   * old one, changing only the posting lists (and, if a field's distinct values
+   * change, the ranks) that the change touches.
+   */
+  private static class Snapshot {
+    final ToDo[] todos;
+    final Map<String, FieldIndex> indexes = new HashMap<>();
+    final Map<String, ValueRanks> ranks = new HashMap<>();
+    final ToDoQueryPlanner planner;
+
+    Snapshot(ToDo[] todos) {
+      this.todos = todos;
+      // Collect per-field statistics and indexes for the query planner, and
+      // rank each field's values for sorting by them
+      for (Map.Entry<String, Function<ToDo, String>> field : FIELDS.entrySet()) {
+        FieldIndex index = FieldIndex.build(field.getKey(), todos, field.getValue());
+        indexes.put(field.getKey(), index);
+        ranks.put(field.getKey(), index.ranks(VALUE_ORDERS.get(field.getKey())));
+      }
+      planner = new ToDoQueryPlanner(todos.length, indexes);
+    }
+
+    private Snapshot(ToDo[] todos, Snapshot previous, Map<String, FieldIndex> changedIndexes) {
+      this.todos = todos;
+      for (Map.Entry<String, FieldIndex> field : changedIndexes.entrySet()) {
+        FieldIndex index = field.getValue();
+        indexes.put(field.getKey(), index);
+        ranks.put(field.getKey(), index.sameValuesAs(previous.indexes.get(field.getKey()))
+            ? previous.ranks.get(field.getKey())
+            : index.ranks(VALUE_ORDERS.get(field.getKey())));
+      }
+      planner = new ToDoQueryPlanner(todos.length, indexes);
+    }
+
+    /**
+     * @param changed the todos, with one added at the end
+     * @return a snapshot of the todos
+     */
+    Snapshot withAdded(ToDo[] changed) {
+      ToDo added = changed[changed.length - 1];
+      Map<String, FieldIndex> changedIndexes = new HashMap<>();
+      for (Map.Entry<String, Function<ToDo, String>> field : FIELDS.entrySet()) {
+        changedIndexes.put(field.getKey(), indexes.get(field.getKey()).withAdded(field.getValue().apply(added)));
+      }
+      return new Snapshot(changed, this, changedIndexes);
+    }
+
+    /**
+     * @param changed  the todos, with one replaced
+     * @param position the position of the replaced todo
+     * @return a snapshot of the todos
+     */
+    Snapshot withChanged(ToDo[] changed, int position) {
+      Map<String, FieldIndex> changedIndexes = new HashMap<>();
+      for (Map.Entry<String, Function<ToDo, String>> field : FIELDS.entrySet()) {
+        changedIndexes.put(field.getKey(), indexes.get(field.getKey()).withChanged(position,
+            field.getValue().apply(todos[position]), field.getValue().apply(changed[position])));
+      }
+      return new Snapshot(changed, this, changedIndexes);
+    }
+
+    /**
+     * @param changed  the todos, with one removed
+     * @param position the position the removed todo was at
+     * @return a snapshot of the todos
+     */
+    Snapshot withoutRow(ToDo[] changed, int position) {
+      Map<String, FieldIndex> changedIndexes = new HashMap<>();
+      for (String field : FIELDS.keySet()) {
+        changedIndexes.put(field, indexes.get(field).withoutRow(position));
+      }
+      return new Snapshot(changed, this, changedIndexes);
+    }
+  }
+
+  // What todos are called in profiling events
+  private static final String COLLECTION = "todos";
+
+  private volatile Snapshot snapshot;
+  private final ToDoChangeFeed changes = new ToDoChangeFeed();
+  private StringDictionary owners = new StringDictionary();
+  private StringDictionary categories = new StringDictionary();
+  // Where the todos' IDs and bodies are kept, if not on the heap
+  private final OffHeapText text;
 
   public ToDoDatabase(String todoDataFile) throws IOException {
+    this(todoDataFile, 0, 1);
+  }
+
+  public ToDoDatabase(String todoDataFile, int shard, int shardCount) throws IOException {
+    this(todoDataFile, shard, shardCount, false);
+  }
+
+  /**
+   * Construct a database holding just one shard of the todos in the data file.
+   * <p>
+   * Todos are partitioned by hashing their owner, so all of an owner's todos
+   * end up in the same shard.
+   *
+   * @param todoDataFile the JSON file holding all the todos
+   * @param shard        which shard this database holds, from 0 up to
+   *                     `shardCount - 1`
+   * @param shardCount   the number of shards the todos are split into
+   * @param offHeapText  whether to keep the todos' IDs and bodies off the heap
+   *                     (see `OffHeapText`)
+   * @throws IOException if the data file can't be read
+   */
+  public ToDoDatabase(String todoDataFile, int shard, int shardCount, boolean offHeapText) throws IOException {
     Gson gson = new Gson();
     InputStreamReader reader = new InputStreamReader(getClass().getResourceAsStream(todoDataFile));
-    allTodos = gson.fromJson(reader, ToDo[].class);
+    ToDo[] allTodos = gson.fromJson(reader, ToDo[].class);
+    if (shardCount > 1) {
+      allTodos = Arrays.stream(allTodos).filter(x -> shardOf(x.owner, shardCount) == shard).toArray(ToDo[]::new);
+    }
+
+    // Share one copy of each owner and category between all their todos
+    for (ToDo todo : allTodos) {
+      intern(todo);
+    }
+
+    text = offHeapText ? new OffHeapText() : null;
+    for (int i = 0; i < allTodos.length; i++) {
+      allTodos[i] = store(allTodos[i]);
+    }
+
+    snapshot = new Snapshot(allTodos);
+  }
+
+  /**
+   * Get the shard holding the todos of the given owner.
+   *
+   * @param owner      the owner of the todos
+   * @param shardCount the number of shards the todos are split into
+   * @return the shard, from 0 up to `shardCount - 1`
+   */
+  public static int shardOf(String owner, int shardCount) {
+    return Math.floorMod(owner.hashCode(), shardCount);
   }
 
   public int size() {
-    return allTodos.length;
+    return snapshot.todos.length;
   }
 
   /**
@@ -40,7 +220,9 @@ public class ToDoDatabase {
    * @return the ToDo with the given ID, or null if there is no ToDo with that ID
    */
   public ToDo getToDo(String id) {
-    return Arrays.stream(allTodos).filter(x -> x._id.equals(id)).findFirst().orElse(null);
+    ToDo[] todos = snapshot.todos;
+    int position = indexOf(todos, id);
+    return position < 0 ? null : load(todos[position]);
   }
 
   /**
@@ -50,87 +232,544 @@ public class ToDoDatabase {
    * @return an array of all the Todos matching the given criteria
    */
   public ToDo[] listTodos(Map<String, List<String>> queryParams) {
-    ToDo[] filteredTodos = allTodos;
+    QueryEvent event = QueryEvent.start();
+    QueryDescription query = new QueryDescription(queryParams);
+    Snapshot current = snapshot;
+    ToDo[] todos = execute(current, plan(current, query, queryParams), query);
+    event.end(COLLECTION, query, current.todos.length, todos.length);
+    return text == null ? todos : text.load(todos);
+  }
+
+  /**
+   * Run the query in the params and report the plan that was used, along with
+   * the estimated and actual number of todos coming out of each step.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the executed plan for the query
+   */
+  public ToDoQueryPlan explainTodos(Map<String, List<String>> queryParams) {
+    QueryDescription query = new QueryDescription(queryParams);
+    Snapshot current = snapshot;
+    ToDoQueryPlan plan = plan(current, query, queryParams);
+    execute(current, plan, query);
+    return plan;
+  }
+
+  /**
+   * Plan the query in the params.
+   *
+   * @param current     the todos the plan will run over
+   * @param query       the query, for profiling
+   * @param queryParams map of key-value pairs for the query
+   * @return the plan for the query
+   */
+  private static ToDoQueryPlan plan(Snapshot current, QueryDescription query, Map<String, List<String>> queryParams) {
+    QueryStageEvent event = QueryStageEvent.start();
+    ToDoQueryPlan plan = current.planner.plan(queryParams);
+    event.end(COLLECTION, query, QueryStageEvent.PLAN, null, null, null, current.todos.length, plan.estimatedRows);
+    return plan;
+  }
+
+  /**
+   * Estimate how much work answering the query in the params would be, using
+   * the plan the planner would choose for it.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the estimated cost of the query
+   */
+  public long estimateCost(Map<String, List<String>> queryParams) {
+    return snapshot.planner.plan(queryParams).estimatedCost;
+  }
+
+  /**
+   * Evaluate a query plan, recording the actual number of todos produced by each
+   * step in the plan.
+   *
+   * @param current the todos to run the plan over
+   * @param plan    the plan to evaluate
+   * @param query   the query being answered, for profiling
+   * @return an array of all the Todos matching the plan
+   */
+  private ToDo[] execute(Snapshot current, ToDoQueryPlan plan, QueryDescription query) {
+    ToDo[] filteredTodos = applyFilters(current, plan, query);
 
-    // Filter owner if defined
-    if (queryParams.containsKey("owner")) {
-      String targetString = queryParams.get("owner").get(0);
-      filteredTodos = filterTodosByOwner(filteredTodos, targetString);
+    // Order by desired order, without reordering the database itself
+    if (plan.orderBy != null) {
+      QueryStageEvent event = QueryStageEvent.start();
+      if (filteredTodos == current.todos) {
+        filteredTodos = current.todos.clone();
+      }
+      filteredTodos = sortTodosBy(current, filteredTodos, plan.orderBy);
+      event.end(COLLECTION, query, QueryStageEvent.SORT, plan.orderBy, null, null, filteredTodos.length,
+          filteredTodos.length);
     }
 
-    // Filter category if defined
-    if (queryParams.containsKey("category")) {
-      String targetString = queryParams.get("category").get(0);
-      filteredTodos = filterTodosByCategory(filteredTodos, targetString);
+    //Limit number of todos shown if defined
+    if (plan.limit != null) {
+      QueryStageEvent event = QueryStageEvent.start();
+      int rowsIn = filteredTodos.length;
+      filteredTodos = limitTodos(filteredTodos, plan.limit);
+      event.end(COLLECTION, query, QueryStageEvent.LIMIT, null, plan.limit.toString(), null, rowsIn,
+          filteredTodos.length);
     }
 
-    // Filter body if defined
-    if (queryParams.containsKey("contains")) {
-      String targetString = queryParams.get("contains").get(0);
-      filteredTodos = filterTodosByBody(filteredTodos, targetString);
+    plan.actualRows = filteredTodos.length;
+    return filteredTodos;
+  }
+
+  /**
+   * Evaluate just the filter steps of a query plan.
+   *
+   * @param current the todos to run the plan over
+   * @param plan    the plan to evaluate
+   * @param query   the query being answered, for profiling
+   * @return an array of all the Todos passing the plan's filters
+   */
+  private ToDo[] applyFilters(Snapshot current, ToDoQueryPlan plan, QueryDescription query) {
+    ToDo[] filteredTodos = current.todos;
+
+    for (ToDoQueryPlan.Step step : plan.steps) {
+      QueryStageEvent event = QueryStageEvent.start();
+      int rowsIn = filteredTodos.length;
+      if (ToDoQueryPlan.INDEX_LOOKUP.equals(step.access)) {
+        filteredTodos = lookupTodos(current, current.indexes.get(step.field).bitmap(ToDoQueryPlanner.filter(step)));
+      } else {
+        filteredTodos = filterTodos(current, filteredTodos, step);
+      }
+      step.actualRows = filteredTodos.length;
+      event.end(COLLECTION, query, QueryStageEvent.FILTER, step.field, step.value, step.access, rowsIn,
+          step.actualRows);
     }
+    return filteredTodos;
+  }
 
-    // Filter status if defined
-    if (queryParams.containsKey("status")) {
-      String targetString = queryParams.get("status").get(0);
-      filteredTodos = filterTodosByStatus(filteredTodos, targetString);
+  /**
+   * Count the todos satisfying the filters in the params. Ordering and limits
+   * are ignored.
+   * <p>
+   * When there is at most one equality filter the count comes straight from
+   * the size of the index's posting list, without looking at any todos.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the number of todos matching the given criteria
+   */
+  public int countTodos(Map<String, List<String>> queryParams) {
+    QueryDescription query = new QueryDescription(queryParams);
+    Snapshot current = snapshot;
+    ToDoQueryPlan plan = plan(current, query, queryParams);
+    if (plan.steps.isEmpty()) {
+      return current.todos.length;
     }
+    ToDoQueryPlan.Step step = plan.steps.get(0);
+    if (plan.steps.size() == 1 && current.indexes.containsKey(step.field)) {
+      return current.indexes.get(step.field).frequency(ToDoQueryPlanner.filter(step));
+    }
+    return applyFilters(current, plan, query).length;
+  }
 
-    // Order by desired order
-    if (queryParams.containsKey("orderBy")) {
-      String targetString = queryParams.get("orderBy").get(0);
-      filteredTodos = sortTodosBy(filteredTodos, targetString);
+  /**
+   * Count the todos satisfying the filters in the params, grouped by the value
+   * of each of the given fields. Ordering and limits are ignored.
+   * <p>
+   * Without any filters the counts come straight from the sizes of the
+   * indexes' posting lists, without looking at any todos.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @param fields      the fields to group by
+   * @return for each field, each of its values mapped to the number of matching
+   *         todos with that value
+   */
+  public Map<String, Map<String, Integer>> facetTodos(Map<String, List<String>> queryParams, List<String> fields) {
+    for (String field : fields) {
+      if (!FIELDS.containsKey(field)) {
+        throw new BadRequestResponse("Can't group todos by '" + field + "'");
+      }
     }
 
-    //Limit number of todos shown if defined
-    if (queryParams.containsKey("limit")) {
-      String todoParam = queryParams.get("limit").get(0);
-      try {
-        int targetAge = Integer.parseInt(todoParam);
-        filteredTodos = limitTodos(filteredTodos, targetAge);
-      } catch (NumberFormatException e) {
-        throw new BadRequestResponse("Specified limit '" + todoParam + "' can't be parsed to an integer");
+    QueryDescription query = new QueryDescription(queryParams);
+    Snapshot current = snapshot;
+    ToDoQueryPlan plan = plan(current, query, queryParams);
+    ToDo[] filteredTodos = plan.steps.isEmpty() ? null : applyFilters(current, plan, query);
+
+    Map<String, Map<String, Integer>> facets = new LinkedHashMap<>();
+    for (String field : fields) {
+      if (filteredTodos == null) {
+        facets.put(field, current.indexes.get(field).frequencies());
+      } else {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (ToDo todo : filteredTodos) {
+          counts.merge(FIELDS.get(field).apply(todo), 1, Integer::sum);
+        }
+        facets.put(field, counts);
       }
     }
+    return facets;
+  }
 
+  /**
+   * Suggest the values of a field starting with a prefix, ignoring case, most
+   * common first. The suggestions come from a suggester kept with the field's
+   * index, so they are rebuilt only after the todos change.
+   *
+   * @param field  the field to suggest values of
+   * @param prefix the start of the values
+   * @param limit  the most values to suggest
+   * @return the suggested values, each with the number of todos having it
+   */
+  public List<Suggester.Suggestion> suggestTodos(String field, String prefix, int limit) {
+    if (!FIELDS.containsKey(field)) {
+      throw new BadRequestResponse("Can't suggest values of '" + field + "'");
+    }
+    return snapshot.indexes.get(field).suggester().suggest(prefix, limit);
+  }
 
-    return filteredTodos;
+  /**
+   * Get every todo, in the order they are stored, for exporting. The export
+   * sees the todos as they were when it started.
+   *
+   * @param afterId the ID of the todo to start after, or null to start at the
+   *                beginning
+   * @return the todos, or null if there is no todo with the given ID
+   */
+  public Iterator<ToDo> exportTodos(String afterId) {
+    ToDo[] todos = snapshot.todos;
+    int start = 0;
+    if (afterId != null) {
+      start = indexOf(todos, afterId) + 1;
+      if (start == 0) {
+        return null;
+      }
+    }
+    Iterator<ToDo> stored = Arrays.asList(todos).subList(start, todos.length).iterator();
+    if (text == null) {
+      return stored;
+    }
+    return new Iterator<ToDo>() {
+      public boolean hasNext() {
+        return stored.hasNext();
+      }
+
+      public ToDo next() {
+        return text.load(stored.next());
+      }
+    };
+  }
+
+  /**
+   * Add a new todo, giving it a new ID if it doesn't have one.
+   *
+   * @param todo the todo to add
+   * @return the added todo
+   */
+  public synchronized ToDo addTodo(ToDo todo) {
+    ToDo[] todos = snapshot.todos;
+    if (todo._id == null) {
+      todo._id = newId();
+    } else if (indexOf(todos, todo._id) >= 0) {
+      throw new BadRequestResponse("There is already a todo with id " + todo._id);
+    }
+    intern(todo);
+
+    ToDo[] changed = Arrays.copyOf(todos, todos.length + 1);
+    changed[todos.length] = store(todo);
+    snapshot = snapshot.withAdded(compact(changed));
+    changes.publish(null, todo);
+    return todo;
+  }
+
+  /**
+   * Replace the todo having the same ID as the given todo.
+   *
+   * @param todo the new version of the todo
+   * @return the version of the todo that was replaced, or null if there is no
+   *         todo with that ID
+   */
+  public synchronized ToDo updateTodo(ToDo todo) {
+    ToDo[] todos = snapshot.todos;
+    int position = indexOf(todos, todo._id);
+    if (position < 0) {
+      return null;
+    }
+    intern(todo);
+
+    ToDo previous = load(todos[position]);
+    release(todos[position]);
+    ToDo[] changed = todos.clone();
+    changed[position] = store(todo);
+    snapshot = snapshot.withChanged(compact(changed), position);
+    changes.publish(previous, todo);
+    return previous;
+  }
+
+  /**
+   * Remove the todo with the given ID.
+   *
+   * @param id the ID of the todo to remove
+   * @return the removed todo, or null if there is no todo with that ID
+   */
+  public synchronized ToDo removeTodo(String id) {
+    ToDo[] todos = snapshot.todos;
+    int position = indexOf(todos, id);
+    if (position < 0) {
+      return null;
+    }
+
+    ToDo removed = load(todos[position]);
+    release(todos[position]);
+    ToDo[] changed = new ToDo[todos.length - 1];
+    System.arraycopy(todos, 0, changed, 0, position);
+    System.arraycopy(todos, position + 1, changed, position, changed.length - position);
+    snapshot = snapshot.withoutRow(compact(changed), position);
+    changes.publish(removed, null);
+    return removed;
+  }
+
+  public ToDoChangeFeed changes() {
+    return changes;
+  }
+
+  private void intern(ToDo todo) {
+    todo.owner = owners.intern(todo.owner);
+    todo.category = categories.intern(todo.category);
+  }
+
+  /**
+   * @param todo a todo being added to the database
+   * @return the todo to keep in the database: the todo itself, or a copy with
+   *         its text off the heap
+   */
+  private ToDo store(ToDo todo) {
+    return text == null ? todo : text.store(todo);
+  }
+
+  /**
+   * @param todo a todo that is no longer kept in the database
+   */
+  private void release(ToDo todo) {
+    if (text != null) {
+      text.release(todo);
+    }
+  }
+
+  /**
+   * @param todos all the todos to be kept in the database
+   * @return the todos, with any text kept off the heap compacted if it's due
+   */
+  private ToDo[] compact(ToDo[] todos) {
+    return text == null ? todos : text.compact(todos);
+  }
+
+  /**
+   * @return the number of bytes of text kept off the heap, used or not
+   */
+  long offHeapTextBytes() {
+    return text == null ? 0 : text.bytesUsed();
+  }
+
+  /**
+   * @param todo a todo kept in the database
+   * @return the todo as it is given out, with its text
+   */
+  private ToDo load(ToDo todo) {
+    return text == null ? todo : text.load(todo);
+  }
+
+  private int indexOf(ToDo[] todos, String id) {
+    Predicate<ToDo> hasId = text == null ? todo -> todo._id.equals(id) : text.hasId(id);
+    for (int i = 0; i < todos.length; i++) {
+      if (hasId.test(todos[i])) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return a new random ID, in the same 24 hex digit form as the IDs in the
+   *         data file
+   */
+  private String newId() {
+    String id;
+    do {
+      id = String.format("%08x%016x", ThreadLocalRandom.current().nextInt(), ThreadLocalRandom.current().nextLong());
+    } while (indexOf(snapshot.todos, id) >= 0);
+    return id;
+  }
+
+  private ToDo[] lookupTodos(Snapshot current, RoaringBitmap bitmap) {
+    int[] rows = bitmap.toArray();
+    ToDo[] todos = new ToDo[rows.length];
+    for (int i = 0; i < rows.length; i++) {
+      todos[i] = current.todos[rows[i]];
+    }
+    return todos;
+  }
+
+  private ToDo[] filterTodos(Snapshot current, ToDo[] todos, ToDoQueryPlan.Step step) {
+    if (FIELDS.containsKey(step.field) && ToDoQueryPlanner.filter(step).singleValue() == null) {
+      // Several values, exclusions or a pattern, looked up in the snapshot the
+      // todos came from; a newer one may not have all of their values
+      return filterTodosByAnyOf(current, todos, step.field, ToDoQueryPlanner.filter(step));
+    }
+    switch (step.field) {
+      case "owner":
+        return filterTodosByOwner(todos, step.value);
+      case "category":
+        return filterTodosByCategory(todos, step.value);
+      case "status":
+        return filterTodosByStatus(todos, step.value);
+      case "contains":
+        return filterTodosByBody(todos, step.value);
+      default:
+        throw new IllegalArgumentException("Can't filter todos by " + step.field);
+    }
+  }
+
+  /**
+   * Get the todos passing a test, checking the request's deadline as it goes.
+   *
+   * @param todos the list of todos to filter
+   * @param test  the test for the todos to keep
+   * @return an array of the todos from the given list that pass the test
+   */
+  private static ToDo[] filter(ToDo[] todos, Predicate<ToDo> test) {
+    Deadline deadline = Deadline.current();
+    return Arrays.stream(todos).filter(x -> {
+      deadline.check();
+      return test.test(x);
+    }).toArray(ToDo[]::new);
   }
 
   /**
    * Get an array of all the todos ordered a specific way.
+   * <p>
+   * Todos can be ordered by several fields, most significant first, each
+   * ascending or, starting with `-`, descending, e.g., `owner,-status`. Todos
+   * the fields can't tell apart stay in the order they were given in. Unless
+   * one of the fields is `body`, the todos are sorted by the ranks of their
+   * values, packed into one `long` per todo (see `SortKey`), rather than by
+   * comparing the values themselves.
    *
    * @param todos        the list of todos to order
-   * @param targetString the target way you want it ordered by
+   * @param targetString the fields you want them ordered by
    * @return an array of all the todos in order
    */
   public ToDo[] sortTodosBy(ToDo[] todos, String targetString) {
+    return sortTodosBy(snapshot, todos, targetString);
+  }
 
-    if("owner".equals(targetString)){
-      Arrays.sort(todos, (first, second) -> {
-        return first.owner.compareTo(second.owner);
-      });
+  private ToDo[] sortTodosBy(Snapshot current, ToDo[] todos, String targetString) {
+    List<SortKey> keys = orderKeys(targetString);
+    int[] ranked = rankedOrder(current, todos, keys);
+    if (ranked != null) {
+      ToDo[] unsorted = todos.clone();
+      for (int i = 0; i < ranked.length; i++) {
+        todos[i] = unsorted[ranked[i]];
+      }
+      return todos;
     }
-    if("category".equals(targetString)){
-      Arrays.sort(todos, (first, second) -> {
-        return first.category.compareTo(second.category);
-      });
+
+    Comparator<ToDo> order = todoOrder(keys, text == null ? null : text.bodyOrder());
+    // Sorting many todos by body is slow, so it keeps to the deadline too
+    Deadline deadline = Deadline.current();
+    Arrays.sort(todos, deadline == Deadline.NONE ? order : (first, second) -> {
+      deadline.check();
+      return order.compare(first, second);
+    });
+    return todos;
+  }
+
+  /**
+   * @param current the todos were ranked in
+   * @param todos   the todos to order
+   * @param keys    the fields to order them by
+   * @return the positions of the todos in order, or null if they can't be
+   *         ordered by rank
+   */
+  private static int[] rankedOrder(Snapshot current, ToDo[] todos, List<SortKey> keys) {
+    List<ValueRanks> ranks = new ArrayList<>();
+    List<Function<ToDo, String>> getters = new ArrayList<>();
+    int[] sizes = new int[keys.size()];
+    for (SortKey key : keys) {
+      if (!current.ranks.containsKey(key.field)) {
+        // Bodies are all different, so they aren't ranked
+        return null;
+      }
+      sizes[ranks.size()] = current.ranks.get(key.field).size();
+      ranks.add(current.ranks.get(key.field));
+      getters.add(FIELDS.get(key.field));
     }
-    if("body".equals(targetString)){
-      Arrays.sort(todos, (first, second) -> {
-        return first.body.compareTo(second.body);
-      });
+    Deadline deadline = Deadline.current();
+    return SortKey.order(keys, sizes, todos.length, (key, row) -> {
+      deadline.check();
+      return ranks.get(key).rank(getters.get(key).apply(todos[row]));
+    });
+  }
+
+  /**
+   * @param targetString the fields to order by, e.g., `owner,-status`
+   * @return the fields, checked
+   */
+  static List<SortKey> orderKeys(String targetString) {
+    List<SortKey> keys = SortKey.parse(targetString);
+    for (SortKey key : keys) {
+      if (fieldOrder(key.field, null) == null) {
+        throw new BadRequestResponse("Can't order todos by '" + key.field + "'");
+      }
     }
-    if("status".equals(targetString)){
-      Arrays.sort(todos, (first, second) -> {
-        return Boolean.toString(first.status).compareTo(Boolean.toString(second.status));
-      });
+    return keys;
+  }
+
+  /**
+   * Get the ordering used for the given `orderBy` fields.
+   *
+   * @param targetString the fields you want todos ordered by, e.g.,
+   *                     `owner,-status`, or null
+   * @return the ordering, or null if no fields were given
+   */
+  public static Comparator<ToDo> todoOrder(String targetString) {
+    return targetString == null ? null : todoOrder(orderKeys(targetString), null);
+  }
+
+  private static Comparator<ToDo> todoOrder(List<SortKey> keys, Comparator<ToDo> bodyOrder) {
+    Comparator<ToDo> order = null;
+    for (SortKey key : keys) {
+      Comparator<ToDo> byField = fieldOrder(key.field, bodyOrder);
+      if (key.descending) {
+        byField = byField.reversed();
+      }
+      order = order == null ? byField : order.thenComparing(byField);
     }
-    return todos;
-}
+    return order;
+  }
+
+  /**
+   * @param field     the field to order by
+   * @param bodyOrder the ordering of bodies, or null to compare them as strings
+   * @return the ordering, or null if todos can't be ordered by that field
+   */
+  private static Comparator<ToDo> fieldOrder(String field, Comparator<ToDo> bodyOrder) {
+    switch (field) {
+      case "owner":
+        return (first, second) -> first.owner.compareTo(second.owner);
+      case "category":
+        return (first, second) -> first.category.compareTo(second.category);
+      case "body":
+        return bodyOrder != null ? bodyOrder : (first, second) -> first.body.compareTo(second.body);
+      case "status":
+        return (first, second) -> Boolean.compare(first.status, second.status);
+      default:
+        return null;
+    }
+  }
 
   /**
    * Get an array of all the todos with a specific owner.
+   * <p>
+   * The todos' owners are canonical copies from this database's dictionary, so
+   * they are compared by reference; the todos must come from this database.
+   * A pattern like `bla*` matches every owner starting with `bla`, ignoring
+   * case.
    *
    * @param todos        the list of todos to filter by owner
    * @param targetOwner the target owner to look for
@@ -138,11 +777,22 @@ public class ToDoDatabase {
    *         string
    */
   public ToDo[] filterTodosByOwner(ToDo[] todos, String targetOwner) {
-    return Arrays.stream(todos).filter(x -> x.owner.equals(targetOwner)).toArray(ToDo[]::new);
+    if (TermIndex.isPattern(targetOwner)) {
+      return filterTodosByAnyOf(todos, "owner", snapshot.indexes.get("owner").values(targetOwner));
+    }
+    String owner = owners.lookup(TermIndex.literal(targetOwner));
+    if (owner == null) {
+      // No todo in this database has that owner
+      return new ToDo[0];
+    }
+    return filter(todos, x -> x.owner == owner);
   }
 
   /**
    * Get an array of all the todos with a specific category.
+   * <p>
+   * Like owners, categories are compared by reference, and may be matched
+   * with a pattern.
    *
    * @param todos        the list of todos to filter by category
    * @param targetCategory the target category to look for
@@ -150,7 +800,40 @@ public class ToDoDatabase {
    *         string
    */
   public ToDo[] filterTodosByCategory(ToDo[] todos, String targetCategory) {
-    return Arrays.stream(todos).filter(x -> x.category.equals(targetCategory)).toArray(ToDo[]::new);
+    if (TermIndex.isPattern(targetCategory)) {
+      return filterTodosByAnyOf(todos, "category", snapshot.indexes.get("category").values(targetCategory));
+    }
+    String category = categories.lookup(TermIndex.literal(targetCategory));
+    if (category == null) {
+      // No todo in this database has that category
+      return new ToDo[0];
+    }
+    return filter(todos, x -> x.category == category);
+  }
+
+  /**
+   * Get the todos whose value of a field is accepted by a filter, e.g.,
+   * `owner=Blanche&owner=Fry` or `category=!homework`. The field's index finds
+   * the accepted values, which are then compared by reference.
+   *
+   * @param todos  the list of todos to filter
+   * @param field  the field to match
+   * @param filter the values to accept
+   * @return an array of all the todos from the given list that match
+   */
+  public ToDo[] filterTodosByAnyOf(ToDo[] todos, String field, ValueFilter filter) {
+    return filterTodosByAnyOf(snapshot, todos, field, filter);
+  }
+
+  private static ToDo[] filterTodosByAnyOf(Snapshot current, ToDo[] todos, String field, ValueFilter filter) {
+    return filterTodosByAnyOf(todos, field, current.indexes.get(field).values(filter));
+  }
+
+  private static ToDo[] filterTodosByAnyOf(ToDo[] todos, String field, List<String> accepted) {
+    Set<String> values = Collections.newSetFromMap(new IdentityHashMap<>());
+    values.addAll(accepted);
+    Function<ToDo, String> getter = FIELDS.get(field);
+    return filter(todos, x -> values.contains(getter.apply(x)));
   }
 
   /**
@@ -162,7 +845,7 @@ public class ToDoDatabase {
    *         string
    */
   public ToDo[] filterTodosByBody(ToDo[] todos, String targetString) {
-    return Arrays.stream(todos).filter(x -> x.body.contains(targetString)).toArray(ToDo[]::new);
+    return filter(todos, text == null ? x -> x.body.contains(targetString) : text.bodyContains(targetString));
   }
 
   /**
@@ -176,10 +859,10 @@ public class ToDoDatabase {
   public ToDo[] filterTodosByStatus(ToDo[] todos, String targetString) {
     ToDo[] status = null;
     if ("complete".equals(targetString)){
-      status = Arrays.stream(todos).filter(x -> (Boolean.toString(x.status)).contains("true")).toArray(ToDo[]::new);
+      status = filter(todos, x -> (Boolean.toString(x.status)).contains("true"));
     }
     else{
-      status = Arrays.stream(todos).filter(x -> Boolean.toString(x.status).contains("false")).toArray(ToDo[]::new);
+      status = filter(todos, x -> Boolean.toString(x.status).contains("false"));
     }
     return status;
   }
@@ -0,0 +1,51 @@
+package umm3601.todo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The plan the `ToDoQueryPlanner` chose for a single `listTodos` query.
+ * <p>
+ * The filter steps are listed in the order they will be evaluated. Once the
+ * plan has been executed each step (and the plan as a whole) also records how
+ * many todos actually came out of it, which is what `explain=true` reports
+ * back to the client.
+ */
+public class ToDoQueryPlan {
+
+  public static final String INDEX_LOOKUP = "index";
+  public static final String SCAN = "scan";
+
+  /**
+   * One filter in the plan. A filter on an indexed field can have several
+   * values (see `ValueFilter`); `value` then lists them all.
+   */
+  public static class Step {
+    public String field;
+    public String value;
+    public List<String> values;
+    public String access;
+    public int estimatedRows;
+    public int actualRows;
+
+    public Step(String field, String value) {
+      this(field, Collections.singletonList(value));
+    }
+
+    public Step(String field, List<String> values) {
+      this.field = field;
+      this.value = String.join(",", values);
+      this.values = values;
+      this.access = SCAN;
+    }
+  }
+
+  public List<Step> steps = new ArrayList<>();
+  public String orderBy;
+  public Integer limit;
+  public int estimatedRows;
+  public int actualRows;
+  public long estimatedCost;
+
+}
@@ -0,0 +1,170 @@
+package umm3601.todo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import io.javalin.http.BadRequestResponse;
+import umm3601.index.FieldIndex;
+import umm3601.index.SortKey;
+import umm3601.index.ValueFilter;
+
+/**
+ * Decides how a `listTodos` query should be evaluated.
+ * <p>
+ * Equality filters (owner, category, status), each of which may have several
+ * values or exclude some (see `ValueFilter`), are ordered so that the most
+ * selective one, according to the value frequencies collected when the data
+ * was loaded, runs first. If that first filter is selective enough it is
+ * answered with an index lookup rather than a scan of every todo. The
+ * `contains` filter has no statistics and is the most expensive test per todo,
+ * so it always runs last, over whatever is left.
+ * <p>
+ * The plan also estimates the cost of the query, in rough units of string
+ * comparisons, which is used to decide whether to admit it when the server is
+ * busy.
+ */
+public class ToDoQueryPlanner {
+
+  /**
+   * Fraction of the todos we assume a `contains` filter keeps.
+   */
+  static final double CONTAINS_SELECTIVITY = 0.25;
+
+  /**
+   * An index lookup is only used when the filter keeps at most this fraction of
+   * the todos; otherwise it's just as cheap to scan.
+   */
+  static final double INDEX_SELECTIVITY_THRESHOLD = 0.5;
+
+  /**
+   * Relative costs of the work a query does, per todo; comparing two strings
+   * for equality is 1.
+   */
+  static final double CONTAINS_COST = 4;
+  static final double COMPARE_COST = 1;
+  static final double COMPARE_BODY_COST = 4;
+
+  private final int totalRows;
+  private final Map<String, FieldIndex> indexes;
+
+  /**
+   * @param totalRows the number of todos in the database
+   * @param indexes   the indexes available for lookups, keyed by field name
+   */
+  public ToDoQueryPlanner(int totalRows, Map<String, FieldIndex> indexes) {
+    this.totalRows = totalRows;
+    this.indexes = indexes;
+  }
+
+  /**
+   * Build a plan for the queries in the params.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the plan for evaluating the query
+   */
+  public ToDoQueryPlan plan(Map<String, List<String>> queryParams) {
+    ToDoQueryPlan plan = new ToDoQueryPlan();
+
+    List<ToDoQueryPlan.Step> equalitySteps = new ArrayList<>();
+    for (String field : new String[] { "owner", "category", "status" }) {
+      if (queryParams.containsKey(field)) {
+        equalitySteps.add(new ToDoQueryPlan.Step(field, queryParams.get(field)));
+      }
+    }
+    equalitySteps.sort(Comparator.comparingInt(this::frequency));
+    plan.steps.addAll(equalitySteps);
+
+    if (queryParams.containsKey("contains")) {
+      plan.steps.add(new ToDoQueryPlan.Step("contains", queryParams.get("contains").get(0)));
+    }
+
+    if (!plan.steps.isEmpty()) {
+      ToDoQueryPlan.Step first = plan.steps.get(0);
+      if (indexes.containsKey(first.field) && selectivity(first) <= INDEX_SELECTIVITY_THRESHOLD) {
+        first.access = ToDoQueryPlan.INDEX_LOOKUP;
+      }
+    }
+
+    double rows = totalRows;
+    double cost = 0;
+    for (ToDoQueryPlan.Step step : plan.steps) {
+      double rowsIn = rows;
+      rows = rows * selectivity(step);
+      step.estimatedRows = (int) Math.ceil(rows);
+      if (ToDoQueryPlan.INDEX_LOOKUP.equals(step.access)) {
+        cost += rows;
+      } else {
+        cost += rowsIn * ("contains".equals(step.field) ? CONTAINS_COST : 1);
+      }
+    }
+    plan.estimatedRows = (int) Math.ceil(rows);
+
+    if (queryParams.containsKey("orderBy")) {
+      plan.orderBy = queryParams.get("orderBy").get(0);
+      // Todos are sorted by packed ranks unless they're ordered by body
+      double compareCost = COMPARE_COST;
+      for (SortKey key : ToDoDatabase.orderKeys(plan.orderBy)) {
+        if (key.field.equals("body")) {
+          compareCost = COMPARE_BODY_COST;
+        }
+      }
+      cost += rows * Math.max(1, Math.log(rows) / Math.log(2)) * compareCost;
+    }
+    plan.estimatedCost = (long) Math.ceil(cost);
+
+    if (queryParams.containsKey("limit")) {
+      String limitParam = queryParams.get("limit").get(0);
+      try {
+        plan.limit = Integer.parseInt(limitParam);
+        plan.estimatedRows = Math.min(plan.estimatedRows, Math.max(plan.limit, 0));
+      } catch (NumberFormatException e) {
+        throw new BadRequestResponse("Specified limit '" + limitParam + "' can't be parsed to an integer");
+      }
+    }
+
+    return plan;
+  }
+
+  /**
+   * The values an equality filter step accepts, as they are kept in its
+   * field's index.
+   *
+   * @param step the filter step
+   * @return the filter for the step's values
+   */
+  static ValueFilter filter(ToDoQueryPlan.Step step) {
+    if ("status".equals(step.field)) {
+      return new ValueFilter(step.values, ToDoQueryPlanner::statusKey);
+    }
+    return new ValueFilter(step.values);
+  }
+
+  /**
+   * Statuses are indexed as "complete"/"incomplete", and anything other than
+   * "complete" is treated as "incomplete", just like `filterTodosByStatus`
+   * does.
+   *
+   * @param status a status filter value
+   * @return the index key for the value
+   */
+  static String statusKey(String status) {
+    return "complete".equals(status) ? "complete" : "incomplete";
+  }
+
+  private int frequency(ToDoQueryPlan.Step step) {
+    FieldIndex index = indexes.get(step.field);
+    return index == null ? totalRows : index.frequency(filter(step));
+  }
+
+  private double selectivity(ToDoQueryPlan.Step step) {
+    if (totalRows == 0) {
+      return 0;
+    }
+    if ("contains".equals(step.field)) {
+      return CONTAINS_SELECTIVITY;
+    }
+    return (double) frequency(step) / totalRows;
+  }
+}
@@ -0,0 +1,124 @@
+package umm3601.todo;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import umm3601.index.Suggester;
+
+/**
+ * Somewhere todos are kept and can be queried, either in memory
+ * (`ToDoDatabase`) or on disk (`DiskToDoRepository`). Only the in-memory
+ * todos can be changed.
+ */
+public interface ToDoRepository {
+
+  /**
+   * @return the number of todos
+   */
+  int size();
+
+  /**
+   * Get the single ToDo specified by the given ID.
+   *
+   * @param id the ID of the desired ToDo
+   * @return the ToDo with the given ID, or null if there is no ToDo with that ID
+   */
+  ToDo getToDo(String id);
+
+  /**
+   * Get an array of all the Todos satisfying the queries in the params.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return an array of all the Todos matching the given criteria
+   */
+  ToDo[] listTodos(Map<String, List<String>> queryParams);
+
+  /**
+   * Run the query in the params and report the plan that was used.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the executed plan for the query
+   */
+  ToDoQueryPlan explainTodos(Map<String, List<String>> queryParams);
+
+  /**
+   * Estimate how much work answering the query in the params would be, in
+   * rough units of string comparisons.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the estimated cost of the query
+   */
+  long estimateCost(Map<String, List<String>> queryParams);
+
+  /**
+   * Count the todos satisfying the filters in the params.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the number of todos matching the given criteria
+   */
+  int countTodos(Map<String, List<String>> queryParams);
+
+  /**
+   * Count the todos satisfying the filters in the params, grouped by the value
+   * of each of the given fields.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @param fields      the fields to group by
+   * @return for each field, each of its values mapped to the number of matching
+   *         todos with that value
+   */
+  Map<String, Map<String, Integer>> facetTodos(Map<String, List<String>> queryParams, List<String> fields);
+
+  /**
+   * Suggest the values of a field starting with a prefix, ignoring case, most
+   * common first.
+   *
+   * @param field  the field to suggest values of
+   * @param prefix the start of the values
+   * @param limit  the most values to suggest
+   * @return the suggested values, each with the number of todos having it
+   */
+  List<Suggester.Suggestion> suggestTodos(String field, String prefix, int limit);
+
+  /**
+   * Add a new todo, giving it a new ID if it doesn't have one.
+   *
+   * @param todo the todo to add
+   * @return the added todo
+   */
+  ToDo addTodo(ToDo todo);
+
+  /**
+   * Replace the todo having the same ID as the given todo.
+   *
+   * @param todo the new version of the todo
+   * @return the version of the todo that was replaced, or null if there is no
+   *         todo with that ID
+   */
+  ToDo updateTodo(ToDo todo);
+
+  /**
+   * Remove the todo with the given ID.
+   *
+   * @param id the ID of the todo to remove
+   * @return the removed todo, or null if there is no todo with that ID
+   */
+  ToDo removeTodo(String id);
+
+  /**
+   * @return the feed of changes to the todos
+   */
+  ToDoChangeFeed changes();
+
+  /**
+   * Get every todo, in the order they are stored, for exporting. Todos are read
+   * as the iterator is advanced rather than all at once.
+   *
+   * @param afterId the ID of the todo to start after, to resume an earlier
+   *                export, or null to start at the beginning
+   * @return the todos, or null if there is no todo with the given ID
+   */
+  Iterator<ToDo> exportTodos(String afterId);
+
+}
@@ -0,0 +1,463 @@
+package umm3601.todo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.Gson;
+
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import io.javalin.http.NotFoundResponse;
+import io.javalin.http.ServiceUnavailableResponse;
+import umm3601.index.Suggester;
+import umm3601.index.TermIndex;
+import umm3601.index.ValueFilter;
+import umm3601.json.JsonProjection;
+import umm3601.json.NdjsonExport;
+import umm3601.json.ResponseFormat;
+import umm3601.limit.TooManyRequestsResponse;
+import umm3601.user.UserRepository;
+
+/**
+ * Answers todo requests by forwarding them to a set of shard servers, each of
+ * which holds the todos of some of the owners (see `ToDoDatabase.shardOf`).
+ * <p>
+ * Queries for a single owner, and lookups of a single todo, go to the one shard
+ * holding that todo. Other list queries are sent to every shard at once; each
+ * shard filters, orders and limits its own todos, and the router merges the
+ * already ordered results, keeping only the first `limit` of them.
+ * <p>
+ * A shard that is too busy to answer (`429 Too Many Requests`) is passed on to
+ * the client as it is, along with its `Retry-After`; other failing shards make
+ * the router answer `503 Service Unavailable`.
+ */
+public class ToDoShardRouter {
+
+  private final List<String> shards;
+  private final UserRepository users;
+  private final HttpClient client = HttpClient.newHttpClient();
+  private final Gson gson = new Gson();
+
+  // The shard holding each todo that has been looked up by ID
+  private final Map<String, Integer> shardOfId = new ConcurrentHashMap<>();
+
+  /**
+   * Construct a router for the given shards, without the users to expand
+   * todos' owners from.
+   *
+   * @param shards the base URL of each shard server, e.g.,
+   *               `http://localhost:4568`, in shard order
+   */
+  public ToDoShardRouter(List<String> shards) {
+    this(shards, null);
+  }
+
+  /**
+   * Construct a router for the given shards.
+   *
+   * @param shards the base URL of each shard server, e.g.,
+   *               `http://localhost:4568`, in shard order
+   * @param users  the users that `expand=owner` looks owners up in, or null
+   *               if owners can't be expanded
+   */
+  public ToDoShardRouter(List<String> shards, UserRepository users) {
+    this.shards = shards;
+    this.users = users;
+  }
+
+  /**
+   * Get the single todo specified by the `id` parameter in the request from the
+   * shard holding it.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getTodo(Context ctx) {
+    String id = ctx.pathParam("id", String.class).get();
+    int shard = shardOfId(ctx, id);
+    String body;
+    try {
+      body = fetch(ctx, shard, "/api/todos/" + encode(id), Collections.emptyMap());
+    } catch (NotFoundResponse e) {
+      // The todo has gone from its shard since we found it
+      shardOfId.remove(id, shard);
+      throw e;
+    }
+    ctx.contentType("application/json");
+    ctx.result(body);
+    ctx.status(201);
+  }
+
+  /**
+   * Get a JSON response with a list of all the todos, from all the shards,
+   * satisfying the query parameters.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getTodos(Context ctx) {
+    Map<String, List<String>> queryParams = ctx.queryParamMap();
+    boolean singleShard = isSingleOwner(queryParams);
+    if (singleShard && (queryParams.containsKey("explain")
+        || ResponseFormat.negotiate(ctx.header("Accept"), ToDoController.FORMATS) == ResponseFormat.JSON)) {
+      // The shard's response can be passed on as it is
+      ctx.contentType("application/json");
+      ctx.result(fetch(ctx, ownerShard(queryParams), "/api/todos", queryParams));
+      return;
+    }
+    if (queryParams.containsKey("explain")) {
+      throw new BadRequestResponse("Queries without an owner run on every shard and can't be explained");
+    }
+
+    JsonProjection<ToDo> projection = ToDoController.projectionFor(queryParams, users);
+    List<String> fields = null;
+    if (queryParams.containsKey("fields")) {
+      fields = projection.select(queryParams.get("fields").get(0));
+    }
+    String orderBy = queryParams.containsKey("orderBy") ? queryParams.get("orderBy").get(0) : null;
+    Integer limit = null;
+    if (queryParams.containsKey("limit")) {
+      String limitParam = queryParams.get("limit").get(0);
+      try {
+        limit = Integer.parseInt(limitParam);
+      } catch (NumberFormatException e) {
+        throw new BadRequestResponse("Specified limit '" + limitParam + "' can't be parsed to an integer");
+      }
+    }
+
+    // The shards need every field to order the todos; we project, and expand
+    // owners, after merging
+    Map<String, List<String>> shardParams = new HashMap<>(queryParams);
+    shardParams.remove("fields");
+    shardParams.remove("expand");
+    List<ToDo[]> shardResults = new ArrayList<>();
+    List<String> bodies = singleShard
+        ? Collections.singletonList(fetch(ctx, ownerShard(queryParams), "/api/todos", shardParams))
+        : fetchAll(ctx, "/api/todos", shardParams);
+    for (String body : bodies) {
+      shardResults.add(gson.fromJson(body, ToDo[].class));
+    }
+
+    ToDo[] todos = merge(shardResults, ToDoDatabase.todoOrder(orderBy), limit);
+    ToDoController.respond(ctx, todos, projection, fields);
+  }
+
+  /**
+   * Stream every todo, shard by shard, as newline-delimited JSON. Each shard's
+   * export is passed on as it arrives, so the router holds no more than a
+   * buffer of it at a time. With `after` the export resumes after that todo, in
+   * the shard holding it.
+   *
+   * @param ctx a Javalin HTTP context
+   * @throws IOException if the response can't be written
+   */
+  public void exportTodos(Context ctx) throws IOException {
+    Map<String, List<String>> queryParams = ctx.queryParamMap();
+    if (queryParams.containsKey("fields")) {
+      // Check the fields before starting, rather than on the first shard
+      ToDoController.PROJECTION.select(queryParams.get("fields").get(0));
+    }
+    int firstShard = 0;
+    if (queryParams.containsKey("after")) {
+      firstShard = shardOfId(ctx, queryParams.get("after").get(0));
+    }
+
+    // Only the first shard resumes part way through
+    Map<String, List<String>> shardParams = new HashMap<>(queryParams);
+    HttpResponse<InputStream> first = join(ctx, firstShard,
+        send(firstShard, "/api/todos/_export", shardParams, HttpResponse.BodyHandlers.ofInputStream()));
+    shardParams.remove("after");
+    try (OutputStream out = NdjsonExport.open(ctx)) {
+      for (int shard = firstShard; shard < shards.size(); shard++) {
+        HttpResponse<InputStream> response = shard == firstShard ? first
+            : join(ctx, shard, send(shard, "/api/todos/_export", shardParams, HttpResponse.BodyHandlers.ofInputStream()));
+        try (InputStream in = response.body()) {
+          in.transferTo(out);
+        }
+      }
+    }
+  }
+
+  /**
+   * Get a JSON response with the number of todos, over all the shards,
+   * satisfying the filters in the request.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void countTodos(Context ctx) {
+    Map<String, List<String>> queryParams = ctx.queryParamMap();
+    if (isSingleOwner(queryParams)) {
+      ctx.contentType("application/json");
+      ctx.result(fetch(ctx, ownerShard(queryParams), "/api/todos/_count", queryParams));
+      return;
+    }
+
+    int count = 0;
+    for (String body : fetchAll(ctx, "/api/todos/_count", queryParams)) {
+      count += ((Number) gson.fromJson(body, Map.class).get("count")).intValue();
+    }
+    ctx.json(Collections.singletonMap("count", count));
+  }
+
+  /**
+   * Get a JSON response with suggested values of a field, combining the
+   * suggestions from every shard. Each shard is asked for as many suggestions
+   * as it will give, as a value that is common overall may be further down the
+   * list on each of the shards it's on. An owner is only ever on one shard, so
+   * owners' counts are always exact.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getTodoSuggestions(Context ctx) {
+    Map<String, List<String>> queryParams = ctx.queryParamMap();
+    if (!queryParams.containsKey("field")) {
+      throw new BadRequestResponse("Specify the field to suggest values of with the 'field' parameter");
+    }
+    String field = queryParams.get("field").get(0);
+    if (!ToDoDatabase.FIELDS.containsKey(field)) {
+      throw new BadRequestResponse("Can't suggest values of '" + field + "'");
+    }
+    int limit = Suggester.requestedLimit(queryParams);
+
+    Map<String, List<String>> shardParams = new HashMap<>(queryParams);
+    shardParams.put("limit", Collections.singletonList(Integer.toString(Suggester.MAX_SUGGESTIONS)));
+    List<List<Suggester.Suggestion>> shardSuggestions = new ArrayList<>();
+    for (String body : fetchAll(ctx, "/api/todos/_suggest", shardParams)) {
+      shardSuggestions.add(Arrays.asList(gson.fromJson(body, Suggester.Suggestion[].class)));
+    }
+    ctx.json(Suggester.merge(shardSuggestions, limit));
+  }
+
+  /**
+   * Get a JSON response with the number of todos, over all the shards,
+   * satisfying the filters in the request, grouped by each of the comma
+   * separated fields in the `by` parameter.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getTodoFacets(Context ctx) {
+    Map<String, List<String>> queryParams = ctx.queryParamMap();
+    if (isSingleOwner(queryParams)) {
+      ctx.contentType("application/json");
+      ctx.result(fetch(ctx, ownerShard(queryParams), "/api/todos/_facets", queryParams));
+      return;
+    }
+
+    Map<String, Map<String, Integer>> facets = new LinkedHashMap<>();
+    for (String body : fetchAll(ctx, "/api/todos/_facets", queryParams)) {
+      Map<?, ?> shardFacets = gson.fromJson(body, Map.class);
+      for (Map.Entry<?, ?> facet : shardFacets.entrySet()) {
+        Map<String, Integer> counts = facets.computeIfAbsent((String) facet.getKey(), field -> new LinkedHashMap<>());
+        for (Map.Entry<?, ?> count : ((Map<?, ?>) facet.getValue()).entrySet()) {
+          counts.merge((String) count.getKey(), ((Number) count.getValue()).intValue(), Integer::sum);
+        }
+      }
+    }
+    ctx.json(facets);
+  }
+
+  /**
+   * Merge the ordered results from each shard, keeping at most `limit` todos.
+   * <p>
+   * Todos that are tied in the ordering are taken from the lower numbered shard
+   * first. Without an ordering, the results are simply taken shard by shard.
+   *
+   * @param shardResults the todos from each shard, each already ordered
+   * @param order        the order the todos are in, or null if there is none
+   * @param limit        the maximum number of todos to keep, or null for all
+   * @return the merged todos
+   */
+  static ToDo[] merge(List<ToDo[]> shardResults, Comparator<ToDo> order, Integer limit) {
+    int total = shardResults.stream().mapToInt(todos -> todos.length).sum();
+    ToDo[] merged = new ToDo[limit == null ? total : Math.max(0, Math.min(total, limit))];
+
+    if (order == null) {
+      int position = 0;
+      for (ToDo[] todos : shardResults) {
+        int count = Math.min(todos.length, merged.length - position);
+        System.arraycopy(todos, 0, merged, position, count);
+        position += count;
+      }
+      return merged;
+    }
+
+    // Each cursor is a {shard, position} pair pointing at that shard's next todo
+    PriorityQueue<int[]> cursors = new PriorityQueue<>((first, second) -> {
+      int result = order.compare(shardResults.get(first[0])[first[1]], shardResults.get(second[0])[second[1]]);
+      return result != 0 ? result : Integer.compare(first[0], second[0]);
+    });
+    for (int shard = 0; shard < shardResults.size(); shard++) {
+      if (shardResults.get(shard).length > 0) {
+        cursors.add(new int[] { shard, 0 });
+      }
+    }
+    for (int i = 0; i < merged.length; i++) {
+      int[] cursor = cursors.poll();
+      merged[i] = shardResults.get(cursor[0])[cursor[1]];
+      if (++cursor[1] < shardResults.get(cursor[0]).length) {
+        cursors.add(cursor);
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * @param queryParams map of key-value pairs for the query
+   * @return whether the query is for just one owner, whose todos are all on
+   *         one shard; an owner pattern like `bla*`, several owners or an
+   *         excluded owner may match owners on any shard
+   */
+  private static boolean isSingleOwner(Map<String, List<String>> queryParams) {
+    return queryParams.containsKey("owner") && new ValueFilter(queryParams.get("owner")).singleValue() != null;
+  }
+
+  private int ownerShard(Map<String, List<String>> queryParams) {
+    return ToDoDatabase.shardOf(TermIndex.literal(queryParams.get("owner").get(0)), shards.size());
+  }
+
+  /**
+   * Find out which shard holds a todo. Todos are placed by their owner, so the
+   * ID alone doesn't say; the first time a todo is looked up every shard is
+   * asked for it at once, and the one that has it is remembered. An ID no
+   * shard has costs one small request per shard, and nothing is remembered
+   * for it.
+   *
+   * @param ctx the request being answered, which a busy shard's `Retry-After`
+   *            is passed on to
+   * @param id  the ID of the todo
+   * @return the shard holding the todo
+   * @throws NotFoundResponse        if no shard has the todo
+   * @throws TooManyRequestsResponse if no shard that answered has the todo,
+   *                                 and one was too busy to answer
+   */
+  private int shardOfId(Context ctx, String id) {
+    Integer known = shardOfId.get(id);
+    if (known != null) {
+      return known;
+    }
+    List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+    for (int shard = 0; shard < shards.size(); shard++) {
+      responses.add(send(shard, "/api/todos/" + encode(id), Collections.emptyMap(),
+          HttpResponse.BodyHandlers.ofString()));
+    }
+    boolean unreachable = false;
+    HttpResponse<String> busy = null;
+    int busyShard = 0;
+    for (int shard = 0; shard < shards.size(); shard++) {
+      try {
+        HttpResponse<String> response = responses.get(shard).join();
+        int status = response.statusCode();
+        if (status >= 200 && status < 300) {
+          shardOfId.put(id, shard);
+          return shard;
+        } else if (status == TooManyRequestsResponse.TOO_MANY_REQUESTS && busy == null) {
+          busy = response;
+          busyShard = shard;
+        }
+      } catch (CompletionException e) {
+        unreachable = true;
+      }
+    }
+    if (busy != null) {
+      // The shard that was too busy to answer may be the one holding the todo
+      join(ctx, busyShard, CompletableFuture.completedFuture(busy));
+    }
+    if (unreachable) {
+      throw new ServiceUnavailableResponse("Not every shard could be reached to look for todo " + id);
+    }
+    throw new NotFoundResponse("No todo with id " + id + " was found.");
+  }
+
+  private String fetch(Context ctx, int shard, String path, Map<String, List<String>> queryParams) {
+    return join(ctx, shard, send(shard, path, queryParams, HttpResponse.BodyHandlers.ofString())).body();
+  }
+
+  private List<String> fetchAll(Context ctx, String path, Map<String, List<String>> queryParams) {
+    List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+    for (int shard = 0; shard < shards.size(); shard++) {
+      responses.add(send(shard, path, queryParams, HttpResponse.BodyHandlers.ofString()));
+    }
+    List<String> bodies = new ArrayList<>();
+    for (int shard = 0; shard < shards.size(); shard++) {
+      bodies.add(join(ctx, shard, responses.get(shard)).body());
+    }
+    return bodies;
+  }
+
+  private <T> CompletableFuture<HttpResponse<T>> send(int shard, String path, Map<String, List<String>> queryParams,
+      HttpResponse.BodyHandler<T> bodyHandler) {
+    StringBuilder uri = new StringBuilder(shards.get(shard)).append(path);
+    char separator = '?';
+    for (Map.Entry<String, List<String>> param : queryParams.entrySet()) {
+      for (String value : param.getValue()) {
+        uri.append(separator).append(encode(param.getKey())).append('=').append(encode(value));
+        separator = '&';
+      }
+    }
+    HttpRequest request = HttpRequest.newBuilder(URI.create(uri.toString())).GET().build();
+    return client.sendAsync(request, bodyHandler);
+  }
+
+  private <T> HttpResponse<T> join(Context ctx, int shard, CompletableFuture<HttpResponse<T>> pending) {
+    HttpResponse<T> response;
+    try {
+      response = pending.join();
+    } catch (CompletionException e) {
+      throw new ServiceUnavailableResponse("Shard " + shards.get(shard) + " couldn't be reached");
+    }
+
+    int status = response.statusCode();
+    if (status == 400) {
+      throw new BadRequestResponse(bodyText(response));
+    } else if (status == 404) {
+      throw new NotFoundResponse(bodyText(response));
+    } else if (status == TooManyRequestsResponse.TOO_MANY_REQUESTS) {
+      // The shard is too busy to take the query; the client should wait as
+      // long as the shard asks before trying again
+      response.headers().firstValue("Retry-After").ifPresent(retryAfter -> ctx.header("Retry-After", retryAfter));
+      throw new TooManyRequestsResponse(bodyText(response));
+    } else if (status < 200 || status >= 300) {
+      throw new ServiceUnavailableResponse("Shard " + shards.get(shard) + " responded with status " + status);
+    }
+    return response;
+  }
+
+  private static String bodyText(HttpResponse<?> response) {
+    Object body = response.body();
+    if (body instanceof InputStream) {
+      try (InputStream in = (InputStream) body) {
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        return "";
+      }
+    }
+    return String.valueOf(body);
+  }
+
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      // Every JVM supports UTF-8
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,200 @@
+package umm3601.user;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.google.gson.stream.JsonReader;
+
+import io.javalin.http.BadRequestResponse;
+import umm3601.index.Suggester;
+import umm3601.storage.JsonArrayIterator;
+import umm3601.storage.RecordStore;
+
+/**
+ * Users kept on disk in a `RecordStore`, for when there are too many of them to
+ * hold in the heap.
+ * <p>
+ * Queries are answered by streaming through the stored users, so the memory
+ * used is bounded by the size of the answer rather than by the number of
+ * users.
+ */
+public class DiskUserRepository implements UserRepository {
+
+  static final String STORE_NAME = "users";
+  static final int CACHE_SIZE = 1024;
+
+  static final RecordStore.Codec<User> CODEC = new RecordStore.Codec<User>() {
+    @Override
+    public String idOf(User user) {
+      return user._id;
+    }
+
+    @Override
+    public void write(DataOutput out, User user) throws IOException {
+      RecordStore.writeString(out, user._id);
+      RecordStore.writeString(out, user.name);
+      out.writeInt(user.age);
+      RecordStore.writeString(out, user.company);
+      RecordStore.writeString(out, user.email);
+    }
+
+    @Override
+    public User read(ByteBuffer in) {
+      User user = new User();
+      user._id = RecordStore.readString(in);
+      user.name = RecordStore.readString(in);
+      user.age = in.getInt();
+      user.company = RecordStore.readString(in);
+      user.email = RecordStore.readString(in);
+      return user;
+    }
+  };
+
+  private final RecordStore<User> store;
+  private final Map<String, Suggester> suggesters = new ConcurrentHashMap<>();
+  private volatile Map<String, String> idsByName;
+
+  /**
+   * Open the user store in the given directory, first creating it from the
+   * JSON data file if it doesn't exist yet or the data file has changed
+   * since it was created.
+   *
+   * @param directory    the directory holding the store
+   * @param userDataFile the JSON file to create the store from
+   * @throws IOException if the store can't be created or read
+   */
+  public DiskUserRepository(Path directory, String userDataFile) throws IOException {
+    String source = RecordStore.stamp(getClass().getResource(userDataFile));
+    if (!source.equals(RecordStore.sourceOf(directory, STORE_NAME))) {
+      try (JsonReader reader = new JsonReader(new InputStreamReader(getClass().getResourceAsStream(userDataFile)))) {
+        RecordStore.write(directory, STORE_NAME, new JsonArrayIterator<>(reader, User.class), CODEC, source);
+      }
+    }
+    store = RecordStore.open(directory, STORE_NAME, CODEC, CACHE_SIZE);
+  }
+
+  public int size() {
+    return store.size();
+  }
+
+  public User getUser(String id) {
+    return store.get(id);
+  }
+
+  /**
+   * Only the ID of each user is kept in memory for this, mapped from the
+   * user's name on the first call; the user itself is read from the store
+   * (and its cache) as usual.
+   */
+  public User getUserByName(String name) {
+    Map<String, String> ids = idsByName;
+    if (ids == null) {
+      ids = new HashMap<>();
+      for (User user : store) {
+        ids.putIfAbsent(user.name, user._id);
+      }
+      idsByName = ids;
+    }
+    String id = ids.get(name);
+    return id == null ? null : store.get(id);
+  }
+
+  public Iterator<User> exportUsers(String afterId) {
+    return afterId == null ? store.iterator() : store.iteratorAfter(afterId);
+  }
+
+  public User[] listUsers(Map<String, List<String>> queryParams) {
+    Predicate<User> filter = filterFor(queryParams);
+    Comparator<User> order = null;
+    if (queryParams.containsKey("orderBy")) {
+      order = UserDatabase.userOrder(UserDatabase.orderKeys(queryParams.get("orderBy").get(0)));
+    }
+    List<User> users = new ArrayList<>();
+    for (User user : store) {
+      if (filter.test(user)) {
+        users.add(user);
+      }
+    }
+    if (order != null) {
+      users.sort(order);
+    }
+    return users.toArray(new User[0]);
+  }
+
+  public int countUsers(Map<String, List<String>> queryParams) {
+    Predicate<User> filter = filterFor(queryParams);
+    int count = 0;
+    for (User user : store) {
+      if (filter.test(user)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public Map<String, Map<String, Integer>> facetUsers(Map<String, List<String>> queryParams, List<String> fields) {
+    Map<String, Map<String, Integer>> facets = new LinkedHashMap<>();
+    for (String field : fields) {
+      if (!UserDatabase.FIELDS.containsKey(field)) {
+        throw new BadRequestResponse("Can't group users by '" + field + "'");
+      }
+      facets.put(field, new LinkedHashMap<>());
+    }
+
+    Predicate<User> filter = filterFor(queryParams);
+    for (User user : store) {
+      if (filter.test(user)) {
+        for (String field : fields) {
+          facets.get(field).merge(UserDatabase.FIELDS.get(field).apply(user), 1, Integer::sum);
+        }
+      }
+    }
+    return facets;
+  }
+
+  /**
+   * The stored users never change, so each field's suggester is built from
+   * one pass over them the first time it's asked for, and then kept.
+   */
+  public List<Suggester.Suggestion> suggestUsers(String field, String prefix, int limit) {
+    if (!UserDatabase.FIELDS.containsKey(field)) {
+      throw new BadRequestResponse("Can't suggest values of '" + field + "'");
+    }
+    Suggester suggester = suggesters.computeIfAbsent(field,
+        key -> new Suggester(facetUsers(Collections.emptyMap(), Collections.singletonList(key)).get(key)));
+    return suggester.suggest(prefix, limit);
+  }
+
+  /**
+   * Build a test for the filters in the params, matching users the same way as
+   * `UserDatabase` does.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return a test for whether a user satisfies every filter
+   */
+  private static Predicate<User> filterFor(Map<String, List<String>> queryParams) {
+    Predicate<User> filter = user -> true;
+    for (Map.Entry<String, Function<User, String>> field : UserDatabase.FIELDS.entrySet()) {
+      if (queryParams.containsKey(field.getKey())) {
+        Predicate<String> matcher = UserDatabase.filterFor(field.getKey(), queryParams).matcher();
+        Function<User, String> getter = field.getValue();
+        filter = filter.and(user -> matcher.test(getter.apply(user)));
+      }
+    }
+    return filter;
+  }
+}
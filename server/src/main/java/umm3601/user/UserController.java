@@ -1,14 +1,43 @@
 package umm3601.user;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import io.javalin.http.BadRequestResponse;
 import io.javalin.http.Context;
 import io.javalin.http.NotFoundResponse;
+import umm3601.index.Suggester;
+import umm3601.json.JsonProjection;
+import umm3601.json.NdjsonExport;
+import umm3601.json.ResponseFormat;
+import umm3601.profiling.QueryDescription;
+import umm3601.profiling.SerializationEvent;
 
 /**
  * Controller that manages requests for info about users.
  */
 public class UserController {
 
-  private UserDatabase database;
+  /**
+   * The fields of a user that can be picked with the `fields` query parameter.
+   * Todos use it too, to write their owners when they're expanded.
+   */
+  public static final JsonProjection<User> PROJECTION = new JsonProjection<User>("user")
+      .field("_id", (json, user) -> json.writeString(user._id))
+      .field("name", (json, user) -> json.writeString(user.name))
+      .field("age", (json, user) -> json.writeNumber(user.age))
+      .field("company", (json, user) -> json.writeString(user.company))
+      .field("email", (json, user) -> json.writeString(user.email));
+
+  static final List<ResponseFormat> FORMATS = Arrays.asList(ResponseFormat.JSON, ResponseFormat.CBOR,
+      ResponseFormat.MESSAGE_PACK);
+
+  private UserRepository database;
 
   /**
    * Construct a controller for users.
@@ -17,9 +46,9 @@ public class UserController {
    * internally so that (subsets of) users can be returned in response to
    * requests.
    *
-   * @param database the `User` containing user data
+   * @param database the `UserRepository` containing user data
    */
-  public UserController(UserDatabase database) {
+  public UserController(UserRepository database) {
     this.database = database;
   }
 
@@ -41,12 +70,108 @@ public class UserController {
 
   /**
    * Get a JSON response with a list of all the users in the "database".
+   * <p>
+   * If the request has `orderBy`, e.g., `orderBy=company,-age`, the users are
+   * ordered by each of those fields in turn, descending if the field starts
+   * with `-`.
+   * <p>
+   * If the request has `fields`, e.g., `fields=name,company`, only those
+   * fields of each user are included in the response.
+   * <p>
+   * The response is JSON unless the request's `Accept` header prefers CBOR
+   * (`application/cbor`) or MessagePack (`application/x-msgpack`).
    *
    * @param ctx a Javalin HTTP context
    */
   public void getUsers(Context ctx) {
-    User[] users = database.listUsers(ctx.queryParamMap());
-    ctx.json(users);
+    Map<String, List<String>> queryParams = ctx.queryParamMap();
+    ResponseFormat format = ResponseFormat.negotiate(ctx.header("Accept"), FORMATS);
+    List<String> fields = null;
+    if (queryParams.containsKey("fields")) {
+      fields = PROJECTION.select(queryParams.get("fields").get(0));
+    }
+    User[] users = database.listUsers(queryParams);
+
+    SerializationEvent event = SerializationEvent.start();
+    if (format != ResponseFormat.JSON) {
+      ctx.contentType(format.contentType);
+      ctx.result(new ByteArrayInputStream(PROJECTION.encode(users, fields != null ? fields : PROJECTION.fields(),
+          format.factory)));
+    } else if (fields != null) {
+      ctx.contentType("application/json");
+      ctx.result(PROJECTION.toJson(users, fields));
+    } else {
+      ctx.json(users);
+    }
+    event.end("users", new QueryDescription(queryParams), format.contentType, fields, users.length);
+  }
+
+  /**
+   * Get a JSON response with the number of users satisfying the filters in the
+   * request, e.g., `{"count": 12}`.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void countUsers(Context ctx) {
+    int count = database.countUsers(ctx.queryParamMap());
+    ctx.json(Collections.singletonMap("count", count));
+  }
+
+  /**
+   * Get a JSON response with the number of users satisfying the filters in the
+   * request, grouped by each of the comma separated fields in the `by`
+   * parameter, e.g., `by=company,age`.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getUserFacets(Context ctx) {
+    Map<String, List<String>> queryParams = ctx.queryParamMap();
+    if (!queryParams.containsKey("by")) {
+      throw new BadRequestResponse("Specify the fields to group users by with the 'by' parameter");
+    }
+    List<String> fields = Arrays.asList(queryParams.get("by").get(0).split(","));
+    ctx.json(database.facetUsers(queryParams, fields));
+  }
+
+  /**
+   * Get a JSON response with the values of the `field` parameter starting with
+   * `prefix`, ignoring case, most common first, for autocompleting filter
+   * inputs, e.g., `field=company&prefix=oh` gives
+   * `[{"value": "...", "count": 2}, ...]`. `limit` is the most values to give,
+   * up to {@value Suggester#MAX_SUGGESTIONS}.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getUserSuggestions(Context ctx) {
+    Map<String, List<String>> queryParams = ctx.queryParamMap();
+    if (!queryParams.containsKey("field")) {
+      throw new BadRequestResponse("Specify the field to suggest values of with the 'field' parameter");
+    }
+    String prefix = queryParams.containsKey("prefix") ? queryParams.get("prefix").get(0) : "";
+    ctx.json(database.suggestUsers(queryParams.get("field").get(0), prefix, Suggester.requestedLimit(queryParams)));
+  }
+
+  /**
+   * Stream every user as newline-delimited JSON, gzip compressed if the client
+   * accepts it. With `after`, e.g., `after=588935f57546a2daea44de7c`, the export
+   * resumes after the user with that ID; `fields` picks the fields of each
+   * user.
+   *
+   * @param ctx a Javalin HTTP context
+   * @throws IOException if the response can't be written
+   */
+  public void exportUsers(Context ctx) throws IOException {
+    Map<String, List<String>> queryParams = ctx.queryParamMap();
+    List<String> fields = PROJECTION.fields();
+    if (queryParams.containsKey("fields")) {
+      fields = PROJECTION.select(queryParams.get("fields").get(0));
+    }
+    String after = queryParams.containsKey("after") ? queryParams.get("after").get(0) : null;
+    Iterator<User> users = database.exportUsers(after);
+    if (users == null) {
+      throw new NotFoundResponse("No user with id " + after + " was found.");
+    }
+    NdjsonExport.stream(ctx, users, PROJECTION, fields);
   }
 
 }
@@ -3,12 +3,30 @@ package umm3601.user;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 import com.google.gson.Gson;
 
 import io.javalin.http.BadRequestResponse;
+import umm3601.index.FieldIndex;
+import umm3601.index.RoaringBitmap;
+import umm3601.index.SortKey;
+import umm3601.index.StringDictionary;
+import umm3601.index.Suggester;
+import umm3601.index.TermIndex;
+import umm3601.index.ValueFilter;
+import umm3601.profiling.QueryDescription;
+import umm3601.profiling.QueryEvent;
+import umm3601.profiling.QueryStageEvent;
 
 /**
  * A fake "database" of user info
@@ -18,14 +36,72 @@ import io.javalin.http.BadRequestResponse;
  * then provide various database-like methods that allow the `UserController` to
  * "query" the "database".
  */
-public class UserDatabase {
+public class UserDatabase implements UserRepository {
+
+  /**
+   * The fields users can be indexed, counted and grouped by, along with how to
+   * get the value of that field from a user.
+   */
+  static final Map<String, Function<User, String>> FIELDS = new LinkedHashMap<>();
+  static {
+    FIELDS.put("company", user -> user.company);
+    FIELDS.put("age", user -> Integer.toString(user.age));
+  }
+
+  /**
+   * The fields users can be ordered by, along with how to order users by that
+   * field.
+   */
+  static final Map<String, Comparator<User>> ORDERS = new LinkedHashMap<>();
+  static {
+    ORDERS.put("name", Comparator.comparing(user -> user.name));
+    ORDERS.put("age", Comparator.comparingInt(user -> user.age));
+    ORDERS.put("company", Comparator.comparing(user -> user.company));
+    ORDERS.put("email", Comparator.comparing(user -> user.email));
+  }
+
+  // What users are called in profiling events
+  private static final String COLLECTION = "users";
 
   private User[] allUsers;
+  private Map<String, FieldIndex> indexes;
+  private Map<String, User> usersByName;
+  // For each field in `ORDERS`, the rank of each user's value, by position
+  private Map<String, int[]> ranks;
+  private Map<String, Integer> rankCounts;
+  private StringDictionary companies = new StringDictionary();
 
   public UserDatabase(String userDataFile) throws IOException {
     Gson gson = new Gson();
     InputStreamReader reader = new InputStreamReader(getClass().getResourceAsStream(userDataFile));
     allUsers = gson.fromJson(reader, User[].class);
+
+    // Share one copy of each company name between all its users
+    for (User user : allUsers) {
+      user.company = companies.intern(user.company);
+    }
+
+    indexes = new HashMap<>();
+    for (Map.Entry<String, Function<User, String>> field : FIELDS.entrySet()) {
+      indexes.put(field.getKey(), FieldIndex.build(field.getKey(), allUsers, field.getValue()));
+    }
+
+    // Users never change, so each one's place in each ordering is worked out
+    // once, and sorting them is a sort of packed ranks (see `SortKey`)
+    ranks = new HashMap<>();
+    rankCounts = new HashMap<>();
+    for (Map.Entry<String, Comparator<User>> order : ORDERS.entrySet()) {
+      int[] fieldRanks = SortKey.ranks(allUsers, order.getValue());
+      ranks.put(order.getKey(), fieldRanks);
+      rankCounts.put(order.getKey(), Arrays.stream(fieldRanks).max().orElse(-1) + 1);
+    }
+
+    // Built up front, so joining a page of todos to their owners is one hash
+    // lookup per todo rather than a scan of the users
+    usersByName = new HashMap<>();
+    for (User user : allUsers) {
+      usersByName.putIfAbsent(user.name, user);
+    }
   }
 
   public int size() {
@@ -43,35 +119,245 @@ public class UserDatabase {
     return Arrays.stream(allUsers).filter(x -> x._id.equals(id)).findFirst().orElse(null);
   }
 
+  /**
+   * Get the user with the given name, or the first of them if more than one
+   * user has it. Return `null` if there is no user with that name.
+   *
+   * @param name the name of the desired user
+   * @return the user with the given name, or null if there is no user with
+   *         that name
+   */
+  public User getUserByName(String name) {
+    return usersByName.get(name);
+  }
+
+  /**
+   * Get every user, in the order they are stored, for exporting.
+   *
+   * @param afterId the ID of the user to start after, or null to start at the
+   *                beginning
+   * @return the users, or null if there is no user with the given ID
+   */
+  public Iterator<User> exportUsers(String afterId) {
+    int start = 0;
+    if (afterId != null) {
+      while (start < allUsers.length && !allUsers[start]._id.equals(afterId)) {
+        start++;
+      }
+      if (start == allUsers.length) {
+        return null;
+      }
+      start++;
+    }
+    return Arrays.asList(allUsers).subList(start, allUsers.length).iterator();
+  }
+
   /**
    * Get an array of all the users satisfying the queries in the params.
+   * <p>
+   * Each filter may be given more than once, matching users with any of the
+   * values, and a value starting with `!` excludes users with it, e.g.,
+   * `company=OHMNET&company=!ZILLAN` (see `ValueFilter`). Every filter is
+   * answered from its field's index, and the filters are combined by
+   * intersecting their bitmaps.
+   * <p>
+   * If the params have `orderBy`, e.g., `orderBy=company,-age`, the users are
+   * ordered by each of the fields in turn, ascending or, starting with `-`,
+   * descending, and otherwise stay in the order they are stored.
    *
    * @param queryParams map of key-value pairs for the query
    * @return an array of all the users matching the given criteria
    */
   public User[] listUsers(Map<String, List<String>> queryParams) {
-    User[] filteredUsers = allUsers;
+    QueryEvent event = QueryEvent.start();
+    QueryDescription query = new QueryDescription(queryParams);
+    List<SortKey> orderBy = queryParams.containsKey("orderBy") ? orderKeys(queryParams.get("orderBy").get(0)) : null;
+    RoaringBitmap rows = matchingRows(queryParams, query);
+    int[] positions = rows == null ? null : rows.toArray();
 
-    // Filter age if defined
-    if (queryParams.containsKey("age")) {
-      String ageParam = queryParams.get("age").get(0);
-      try {
-        int targetAge = Integer.parseInt(ageParam);
-        filteredUsers = filterUsersByAge(filteredUsers, targetAge);
-      } catch (NumberFormatException e) {
-        throw new BadRequestResponse("Specified age '" + ageParam + "' can't be parsed to an integer");
-      }
+    // Order by desired order
+    if (orderBy != null) {
+      QueryStageEvent stage = QueryStageEvent.start();
+      positions = sortRows(positions != null ? positions : RoaringBitmap.range(allUsers.length).toArray(), orderBy);
+      stage.end(COLLECTION, query, QueryStageEvent.SORT, queryParams.get("orderBy").get(0), null, null,
+          positions.length, positions.length);
     }
-    // Filter company if defined
-    if (queryParams.containsKey("company")) {
-      String targetCompany = queryParams.get("company").get(0);
-      filteredUsers = filterUsersByCompany(filteredUsers, targetCompany);
+    User[] filteredUsers = allUsers;
+    if (positions != null) {
+      filteredUsers = Arrays.stream(positions).mapToObj(row -> allUsers[row]).toArray(User[]::new);
     }
     // Process other query parameters here...
 
+    event.end(COLLECTION, query, allUsers.length, filteredUsers.length);
     return filteredUsers;
   }
 
+  /**
+   * @param queryParams map of key-value pairs for the query
+   * @param query       the query, for profiling
+   * @return the positions of the users satisfying the filters in the params,
+   *         or null if there aren't any filters
+   */
+  private RoaringBitmap matchingRows(Map<String, List<String>> queryParams, QueryDescription query) {
+    RoaringBitmap rows = null;
+    for (String field : FIELDS.keySet()) {
+      if (!queryParams.containsKey(field)) {
+        continue;
+      }
+      QueryStageEvent stage = QueryStageEvent.start();
+      int rowsIn = rows == null ? allUsers.length : rows.cardinality();
+      ValueFilter filter = filterFor(field, queryParams);
+      RoaringBitmap matches = indexes.get(field).bitmap(filter);
+      rows = rows == null ? matches : rows.and(matches);
+      stage.end(COLLECTION, query, QueryStageEvent.FILTER, field, filter.toString(), QueryStageEvent.INDEX,
+          rowsIn, rows.cardinality());
+    }
+    return rows;
+  }
+
+  /**
+   * @param rows    the positions of the users to order, ascending
+   * @param orderBy the fields to order them by
+   * @return the positions in order
+   */
+  private int[] sortRows(int[] rows, List<SortKey> orderBy) {
+    int[][] keyRanks = new int[orderBy.size()][];
+    int[] sizes = new int[orderBy.size()];
+    for (int k = 0; k < keyRanks.length; k++) {
+      keyRanks[k] = ranks.get(orderBy.get(k).field);
+      sizes[k] = rankCounts.get(orderBy.get(k).field);
+    }
+    int[] order = SortKey.order(orderBy, sizes, rows.length, (key, i) -> keyRanks[key][rows[i]]);
+    if (order == null) {
+      // Too many distinct values to pack into a `long`
+      Comparator<User> comparator = userOrder(orderBy);
+      return Arrays.stream(rows).boxed()
+          .sorted((first, second) -> comparator.compare(allUsers[first], allUsers[second]))
+          .mapToInt(Integer::intValue).toArray();
+    }
+    int[] sorted = new int[rows.length];
+    for (int i = 0; i < sorted.length; i++) {
+      sorted[i] = rows[order[i]];
+    }
+    return sorted;
+  }
+
+  /**
+   * @param orderBy the fields to order by, e.g., `company,-age`
+   * @return the fields, checked
+   */
+  static List<SortKey> orderKeys(String orderBy) {
+    List<SortKey> keys = SortKey.parse(orderBy);
+    for (SortKey key : keys) {
+      if (!ORDERS.containsKey(key.field)) {
+        throw new BadRequestResponse("Can't order users by '" + key.field + "'");
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * @param orderBy the fields to order by
+   * @return the ordering of users by the fields
+   */
+  static Comparator<User> userOrder(List<SortKey> orderBy) {
+    Comparator<User> order = null;
+    for (SortKey key : orderBy) {
+      Comparator<User> byField = key.descending ? ORDERS.get(key.field).reversed() : ORDERS.get(key.field);
+      order = order == null ? byField : order.thenComparing(byField);
+    }
+    return order;
+  }
+
+  /**
+   * @param field       a field in `FIELDS`
+   * @param queryParams map of key-value pairs for the query, filtering by the
+   *                    field
+   * @return the values of the field the query accepts, in the form they are
+   *         indexed in
+   */
+  static ValueFilter filterFor(String field, Map<String, List<String>> queryParams) {
+    if (field.equals("age")) {
+      return new ValueFilter(queryParams.get(field), age -> Integer.toString(parseAge(age)));
+    }
+    return new ValueFilter(queryParams.get(field));
+  }
+
+  private static int parseAge(String ageParam) {
+    try {
+      return Integer.parseInt(ageParam);
+    } catch (NumberFormatException e) {
+      throw new BadRequestResponse("Specified age '" + ageParam + "' can't be parsed to an integer");
+    }
+  }
+
+  /**
+   * Count the users satisfying the filters in the params.
+   * <p>
+   * The count is the size of the intersection of the filters' bitmaps, without
+   * looking at any users.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the number of users matching the given criteria
+   */
+  public int countUsers(Map<String, List<String>> queryParams) {
+    RoaringBitmap rows = matchingRows(queryParams, new QueryDescription(queryParams));
+    return rows == null ? allUsers.length : rows.cardinality();
+  }
+
+  /**
+   * Count the users satisfying the filters in the params, grouped by the value
+   * of each of the given fields.
+   * <p>
+   * Without any filters the counts come straight from the sizes of the
+   * indexes' posting lists, without looking at any users.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @param fields      the fields to group by
+   * @return for each field, each of its values mapped to the number of matching
+   *         users with that value
+   */
+  public Map<String, Map<String, Integer>> facetUsers(Map<String, List<String>> queryParams, List<String> fields) {
+    for (String field : fields) {
+      if (!FIELDS.containsKey(field)) {
+        throw new BadRequestResponse("Can't group users by '" + field + "'");
+      }
+    }
+
+    boolean filtered = !Collections.disjoint(queryParams.keySet(), FIELDS.keySet());
+    User[] filteredUsers = filtered ? listUsers(queryParams) : null;
+
+    Map<String, Map<String, Integer>> facets = new LinkedHashMap<>();
+    for (String field : fields) {
+      if (filteredUsers == null) {
+        facets.put(field, indexes.get(field).frequencies());
+      } else {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (User user : filteredUsers) {
+          counts.merge(FIELDS.get(field).apply(user), 1, Integer::sum);
+        }
+        facets.put(field, counts);
+      }
+    }
+    return facets;
+  }
+
+  /**
+   * Suggest the values of a field starting with a prefix, ignoring case, most
+   * common first, using a suggester kept with the field's index.
+   *
+   * @param field  the field to suggest values of
+   * @param prefix the start of the values
+   * @param limit  the most values to suggest
+   * @return the suggested values, each with the number of users having it
+   */
+  public List<Suggester.Suggestion> suggestUsers(String field, String prefix, int limit) {
+    if (!FIELDS.containsKey(field)) {
+      throw new BadRequestResponse("Can't suggest values of '" + field + "'");
+    }
+    return indexes.get(field).suggester().suggest(prefix, limit);
+  }
+
   /**
    * Get an array of all the users having the target age.
    *
@@ -86,6 +372,11 @@ public class UserDatabase {
 
   /**
    * Get an array of all the users having the target company.
+   * <p>
+   * The users' companies are canonical copies from this database's dictionary,
+   * so they are compared by reference; the users must come from this database.
+   * A pattern like `ohm*` matches every company starting with `ohm`, ignoring
+   * case, using the company index to find them.
    *
    * @param users         the list of users to filter by company
    * @param targetCompany the target company to look for
@@ -93,7 +384,17 @@ public class UserDatabase {
    *         company
    */
   public User[] filterUsersByCompany(User[] users, String targetCompany) {
-    return Arrays.stream(users).filter(x -> x.company.equals(targetCompany)).toArray(User[]::new);
+    if (TermIndex.isPattern(targetCompany)) {
+      Set<String> matches = Collections.newSetFromMap(new IdentityHashMap<>());
+      matches.addAll(indexes.get("company").values(targetCompany));
+      return Arrays.stream(users).filter(x -> matches.contains(x.company)).toArray(User[]::new);
+    }
+    String company = companies.lookup(TermIndex.literal(targetCompany));
+    if (company == null) {
+      // No user in this database has that company
+      return new User[0];
+    }
+    return Arrays.stream(users).filter(x -> x.company == company).toArray(User[]::new);
   }
 
 }
@@ -0,0 +1,86 @@
+package umm3601.user;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import umm3601.index.Suggester;
+
+/**
+ * Somewhere users are kept and can be queried, either in memory
+ * (`UserDatabase`) or on disk (`DiskUserRepository`).
+ */
+public interface UserRepository {
+
+  /**
+   * @return the number of users
+   */
+  int size();
+
+  /**
+   * Get the single user specified by the given ID.
+   *
+   * @param id the ID of the desired user
+   * @return the user with the given ID, or null if there is no user with that ID
+   */
+  User getUser(String id);
+
+  /**
+   * Get the user with the given name, for joining todos to their owners. If
+   * more than one user has the name, the first of them is given.
+   *
+   * @param name the name of the desired user
+   * @return the user with the given name, or null if there is no user with
+   *         that name
+   */
+  User getUserByName(String name);
+
+  /**
+   * Get an array of all the users satisfying the queries in the params.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return an array of all the users matching the given criteria
+   */
+  User[] listUsers(Map<String, List<String>> queryParams);
+
+  /**
+   * Count the users satisfying the filters in the params.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the number of users matching the given criteria
+   */
+  int countUsers(Map<String, List<String>> queryParams);
+
+  /**
+   * Count the users satisfying the filters in the params, grouped by the value
+   * of each of the given fields.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @param fields      the fields to group by
+   * @return for each field, each of its values mapped to the number of matching
+   *         users with that value
+   */
+  Map<String, Map<String, Integer>> facetUsers(Map<String, List<String>> queryParams, List<String> fields);
+
+  /**
+   * Suggest the values of a field starting with a prefix, ignoring case, most
+   * common first.
+   *
+   * @param field  the field to suggest values of
+   * @param prefix the start of the values
+   * @param limit  the most values to suggest
+   * @return the suggested values, each with the number of users having it
+   */
+  List<Suggester.Suggestion> suggestUsers(String field, String prefix, int limit);
+
+  /**
+   * Get every user, in the order they are stored, for exporting. Users are read
+   * as the iterator is advanced rather than all at once.
+   *
+   * @param afterId the ID of the user to start after, to resume an earlier
+   *                export, or null to start at the beginning
+   * @return the users, or null if there is no user with the given ID
+   */
+  Iterator<User> exportUsers(String afterId);
+
+}
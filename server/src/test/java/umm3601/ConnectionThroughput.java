@@ -0,0 +1,79 @@
+package umm3601;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.javalin.Javalin;
+
+/**
+ * A small local load test comparing request throughput under different
+ * connection settings.
+ * <p>
+ * For each configuration this starts a server on its own port, has a number
+ * of client threads fire the same handful of API requests the client pages
+ * make for a fixed time, and prints the number of requests completed per
+ * second. The number of client threads and the number of seconds to run each
+ * configuration for can be given as arguments.
+ */
+public class ConnectionThroughput {
+
+  private static final String[] PATHS = {
+    "/api/todos?owner=Fry",
+    "/api/todos?status=complete&limit=20",
+    "/api/todos?category=homework&orderBy=owner",
+    "/api/users?company=OHMNET",
+  };
+
+  public static void main(String[] args) throws Exception {
+    int clients = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+    run("HTTP/1.1 without keep-alive", clients, seconds, HttpClient.Version.HTTP_1_1,
+        "--keep-alive", "false", "--h2c", "false");
+    run("HTTP/1.1 with keep-alive", clients, seconds, HttpClient.Version.HTTP_1_1,
+        "--h2c", "false");
+    run("HTTP/2 (h2c)", clients, seconds, HttpClient.Version.HTTP_2);
+  }
+
+  private static void run(String name, int clients, int seconds, HttpClient.Version version, String... args)
+      throws InterruptedException {
+    ServerSettings settings = ServerSettings.fromArgs(args);
+    settings.port = 0;
+    Javalin server = Server.start(settings);
+    String base = "http://localhost:" + server.port();
+
+    HttpClient client = HttpClient.newBuilder().version(version).build();
+    AtomicLong completed = new AtomicLong();
+    AtomicLong failed = new AtomicLong();
+    long end = System.nanoTime() + seconds * 1_000_000_000L;
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < clients; i++) {
+      int offset = i;
+      Thread thread = new Thread(() -> {
+        for (int n = offset; System.nanoTime() < end; n++) {
+          HttpRequest request = HttpRequest.newBuilder(URI.create(base + PATHS[n % PATHS.length])).build();
+          try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            (response.statusCode() == 200 ? completed : failed).incrementAndGet();
+          } catch (Exception e) {
+            failed.incrementAndGet();
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    server.stop();
+
+    System.out.printf("%-28s %10.1f requests/s (%d failed)%n", name, completed.get() / (double) seconds, failed.get());
+  }
+}
@@ -0,0 +1,364 @@
+package umm3601;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.gson.Gson;
+
+import io.javalin.Javalin;
+
+/**
+ * An end-to-end load test of the API, through the real Javalin and Jetty
+ * stack, that fails if latency or errors go over our targets.
+ * <p>
+ * This starts a server in-process on a free port, warms it up (see `Warmup`),
+ * and then sends a mix of todo list, todo lookup and user list requests at a
+ * fixed rate, spread over a number of HTTP clients, each with its own
+ * connections. The load is open-loop: each request is sent at its scheduled
+ * time whether or not earlier ones have been answered, and its latency is
+ * measured from that time. A stalled server is then charged for all the
+ * requests that queue up behind the stall, rather than the clients politely
+ * waiting and hiding it.
+ * <p>
+ * Throughput and the 50th, 99th and 99.9th percentile latencies are reported
+ * for each kind of request and overall; the run exits with status 1 if the
+ * overall figures miss the service level objectives. Run it with, e.g.,
+ * `./gradlew loadTest --args='--rate 2000 --seconds 30 --slo-p99 50'`.
+ * Options:
+ * <ul>
+ * <li>`--rate`: requests per second (default 1000)</li>
+ * <li>`--seconds`: how long to send requests for (default 20)</li>
+ * <li>`--clients`: the number of HTTP clients (default 32)</li>
+ * <li>`--mix`: the relative numbers of each kind of request (default
+ * `todos=6,todo=3,users=1`)</li>
+ * <li>`--warmup`: requests the server warms up with first (default 2000)</li>
+ * <li>`--slo-p50`, `--slo-p99`, `--slo-p999`: the most each percentile
+ * latency may be, in milliseconds (defaults 5, 50 and 200)</li>
+ * <li>`--slo-errors`: the largest fraction of requests that may fail (default
+ * 0.001)</li>
+ * </ul>
+ */
+public class LoadTest {
+
+  private static final String[] TODO_QUERIES = {
+    "/api/todos",
+    "/api/todos?owner=Fry",
+    "/api/todos?owner=Blanche&status=complete",
+    "/api/todos?status=complete&limit=20",
+    "/api/todos?category=homework&orderBy=owner",
+    "/api/todos?contains=sit&orderBy=body&limit=10",
+    "/api/todos?owner=b*&fields=_id,owner,status",
+  };
+
+  private static final String[] USER_QUERIES = {
+    "/api/users",
+    "/api/users?company=OHMNET",
+    "/api/users?age=25",
+    "/api/users?company=ohm*&fields=name,email",
+  };
+
+  int rate = 1000;
+  int seconds = 20;
+  int clients = 32;
+  Map<String, Integer> mix = new LinkedHashMap<>();
+  int warmup = 2000;
+  double sloP50 = 5;
+  double sloP99 = 50;
+  double sloP999 = 200;
+  double sloErrors = 0.001;
+
+  LoadTest() {
+    mix.put("todos", 6);
+    mix.put("todo", 3);
+    mix.put("users", 1);
+  }
+
+  public static void main(String[] args) throws Exception {
+    LoadTest test = fromArgs(args);
+    Javalin server = test.startServer();
+    try {
+      List<String> failures = test.run("http://localhost:" + server.port());
+      if (!failures.isEmpty()) {
+        failures.forEach(failure -> System.out.println("FAILED: " + failure));
+        System.exit(1);
+      }
+      System.out.println("All service level objectives met");
+    } finally {
+      server.stop();
+    }
+  }
+
+  /**
+   * Read the options for the test, each given as an option followed by its
+   * value.
+   *
+   * @param args the command line arguments
+   * @return the test
+   */
+  static LoadTest fromArgs(String[] args) {
+    LoadTest test = new LoadTest();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      String value = args[i + 1];
+      switch (args[i]) {
+        case "--rate":
+          test.rate = Integer.parseInt(value);
+          break;
+        case "--seconds":
+          test.seconds = Integer.parseInt(value);
+          break;
+        case "--clients":
+          test.clients = Integer.parseInt(value);
+          break;
+        case "--mix":
+          test.mix.clear();
+          for (String part : value.split(",")) {
+            String[] kindWeight = part.split("=");
+            test.mix.put(kindWeight[0], Integer.parseInt(kindWeight[1]));
+          }
+          break;
+        case "--warmup":
+          test.warmup = Integer.parseInt(value);
+          break;
+        case "--slo-p50":
+          test.sloP50 = Double.parseDouble(value);
+          break;
+        case "--slo-p99":
+          test.sloP99 = Double.parseDouble(value);
+          break;
+        case "--slo-p999":
+          test.sloP999 = Double.parseDouble(value);
+          break;
+        case "--slo-errors":
+          test.sloErrors = Double.parseDouble(value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[i]);
+      }
+    }
+    return test;
+  }
+
+  /**
+   * Start the server on a free port, and wait until it's warmed up.
+   *
+   * @return the running server
+   * @throws InterruptedException if interrupted while waiting
+   */
+  Javalin startServer() throws InterruptedException {
+    ServerSettings settings = new ServerSettings();
+    settings.port = 0;
+    settings.warmupRequests = warmup;
+    Javalin server = Server.start(settings);
+
+    HttpClient client = HttpClient.newHttpClient();
+    HttpRequest ready = HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + "/ready")).build();
+    while (true) {
+      try {
+        if (client.send(ready, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+          return server;
+        }
+      } catch (IOException e) {
+        // Not listening yet
+      }
+      Thread.sleep(100);
+    }
+  }
+
+  /**
+   * Build the list of requests to send: the kinds of request in proportion to
+   * their weights in the mix, and for each kind its paths in turn.
+   *
+   * @param count   the number of requests
+   * @param todoIds the IDs to look todos up by
+   * @param random  the source of the order of the requests
+   * @return the kind and path of each request
+   */
+  String[][] schedule(int count, List<String> todoIds, Random random) {
+    List<String> kinds = new ArrayList<>();
+    mix.forEach((kind, weight) -> {
+      for (int i = 0; i < weight; i++) {
+        kinds.add(kind);
+      }
+    });
+
+    String[][] requests = new String[count][];
+    for (int i = 0; i < count; i++) {
+      String kind = kinds.get(random.nextInt(kinds.size()));
+      String path;
+      switch (kind) {
+        case "todos":
+          path = TODO_QUERIES[i % TODO_QUERIES.length];
+          break;
+        case "todo":
+          path = "/api/todos/" + todoIds.get(random.nextInt(todoIds.size()));
+          break;
+        case "users":
+          path = USER_QUERIES[i % USER_QUERIES.length];
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown kind of request '" + kind + "'");
+      }
+      requests[i] = new String[] { kind, path };
+    }
+    return requests;
+  }
+
+  /**
+   * Send the requests at the configured rate and report on the results.
+   *
+   * @param base the URL of the server
+   * @return how the results missed the objectives, if they did
+   * @throws Exception if the todo IDs can't be fetched, or if interrupted
+   */
+  List<String> run(String base) throws Exception {
+    HttpClient[] httpClients = new HttpClient[clients];
+    for (int i = 0; i < clients; i++) {
+      httpClients[i] = HttpClient.newHttpClient();
+    }
+    String idsBody = httpClients[0].send(HttpRequest.newBuilder(URI.create(base + "/api/todos?fields=_id")).build(),
+        HttpResponse.BodyHandlers.ofString()).body();
+    List<String> todoIds = new ArrayList<>();
+    for (Object todo : new Gson().fromJson(idsBody, List.class)) {
+      todoIds.add((String) ((Map<?, ?>) todo).get("_id"));
+    }
+
+    int count = rate * seconds;
+    String[][] requests = schedule(count, todoIds, new Random(count));
+    long[] latencies = new long[count];
+    boolean[] failed = new boolean[count];
+    CountDownLatch answered = new CountDownLatch(count);
+    AtomicLong lateSends = new AtomicLong();
+
+    long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+    long start = System.nanoTime();
+    for (int i = 0; i < count; i++) {
+      long scheduled = start + i * interval;
+      long wait = scheduled - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+      } else if (wait < -interval) {
+        lateSends.incrementAndGet();
+      }
+
+      int request = i;
+      HttpRequest httpRequest = HttpRequest.newBuilder(URI.create(base + requests[i][1])).build();
+      httpClients[i % clients].sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray())
+          .whenComplete((response, error) -> {
+            latencies[request] = System.nanoTime() - scheduled;
+            failed[request] = error != null || response.statusCode() != 200;
+            answered.countDown();
+          });
+    }
+    if (!answered.await(seconds + 60, TimeUnit.SECONDS)) {
+      return Arrays.asList("Requests were still unanswered a minute after the last was sent");
+    }
+    double elapsed = (System.nanoTime() - start) / 1e9;
+
+    System.out.printf("%d requests at %d/s over %d clients; %.1f requests/s achieved%n", count, rate, clients,
+        count / elapsed);
+    if (lateSends.get() > 0) {
+      System.out.printf("(%d requests were sent late; the load generator couldn't keep up)%n", lateSends.get());
+    }
+    System.out.printf("%-8s %8s %8s %10s %10s %10s %10s%n", "", "requests", "errors", "p50 ms", "p99 ms", "p99.9 ms",
+        "max ms");
+    for (String kind : mix.keySet()) {
+      Results results = Results.of(requests, latencies, failed, kind);
+      if (results.count > 0) {
+        results.print(kind);
+      }
+    }
+    Results overall = Results.of(requests, latencies, failed, null);
+    overall.print("overall");
+    return overall.check(this);
+  }
+
+  /**
+   * The latencies and errors of some of the requests.
+   */
+  static class Results {
+    final int count;
+    final int errors;
+    final long[] sortedLatencies;
+
+    Results(long[] latencies, int errors) {
+      this.count = latencies.length;
+      this.errors = errors;
+      this.sortedLatencies = latencies.clone();
+      Arrays.sort(sortedLatencies);
+    }
+
+    /**
+     * @param requests  the kind and path of each request
+     * @param latencies the latency of each request, in nanoseconds
+     * @param failed    whether each request failed
+     * @param kind      the kind of requests to include, or null for all
+     * @return the results of the requests of that kind
+     */
+    static Results of(String[][] requests, long[] latencies, boolean[] failed, String kind) {
+      long[] included = new long[latencies.length];
+      int count = 0;
+      int errors = 0;
+      for (int i = 0; i < latencies.length; i++) {
+        if (kind == null || kind.equals(requests[i][0])) {
+          included[count++] = latencies[i];
+          errors += failed[i] ? 1 : 0;
+        }
+      }
+      return new Results(Arrays.copyOf(included, count), errors);
+    }
+
+    /**
+     * @param percentile the percentile, e.g., 99.9
+     * @return the latency that many percent of the requests were at or under,
+     *         in milliseconds
+     */
+    double percentile(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      // Allow for rounding, so 99.9% of 1000 is the 999th and not the 1000th
+      int rank = (int) Math.ceil(percentile * count / 100 - 1e-9);
+      return sortedLatencies[Math.max(0, Math.min(count, rank) - 1)] / 1e6;
+    }
+
+    void print(String name) {
+      System.out.printf("%-8s %8d %8d %10.2f %10.2f %10.2f %10.2f%n", name, count, errors, percentile(50),
+          percentile(99), percentile(99.9), percentile(100));
+    }
+
+    /**
+     * @param test the test, with the objectives
+     * @return the ways these results miss the objectives
+     */
+    List<String> check(LoadTest test) {
+      List<String> failures = new ArrayList<>();
+      checkLatency(failures, "p50", percentile(50), test.sloP50);
+      checkLatency(failures, "p99", percentile(99), test.sloP99);
+      checkLatency(failures, "p99.9", percentile(99.9), test.sloP999);
+      double errorRate = count == 0 ? 0 : (double) errors / count;
+      if (errorRate > test.sloErrors) {
+        failures.add(String.format("error rate %.4f is over %.4f", errorRate, test.sloErrors));
+      }
+      return failures;
+    }
+
+    private static void checkLatency(List<String> failures, String name, double latency, double objective) {
+      if (latency > objective) {
+        failures.add(String.format("%s latency %.2f ms is over %.2f ms", name, latency, objective));
+      }
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package umm3601;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the request scheduling and latency reporting of the LoadTest
+ */
+public class LoadTestSpec {
+
+  @Test
+  public void scheduleFollowsTheMix() {
+    LoadTest test = LoadTest.fromArgs(new String[] { "--mix", "todo=1,users=3" });
+    String[][] requests = test.schedule(4000, Arrays.asList("5889598528c4748a0292e014"), new Random(1));
+    int todos = 0;
+    for (String[] request : requests) {
+      if ("todo".equals(request[0])) {
+        todos++;
+        assertEquals("/api/todos/5889598528c4748a0292e014", request[1]);
+      } else {
+        assertTrue(request[1].startsWith("/api/users"));
+      }
+    }
+    assertTrue(todos > 800 && todos < 1200, "About a quarter of the requests should be for todos");
+  }
+
+  @Test
+  public void percentiles() {
+    long[] latencies = new long[1000];
+    for (int i = 0; i < latencies.length; i++) {
+      // 1 to 1000 ms, in a scrambled order
+      latencies[(i * 7) % 1000] = (i + 1) * 1_000_000L;
+    }
+    String[][] requests = new String[1000][];
+    Arrays.fill(requests, new String[] { "todos", "/api/todos" });
+
+    LoadTest.Results results = LoadTest.Results.of(requests, latencies, new boolean[1000], null);
+    assertEquals(500.0, results.percentile(50));
+    assertEquals(990.0, results.percentile(99));
+    assertEquals(999.0, results.percentile(99.9));
+    assertEquals(1000.0, results.percentile(100));
+    assertEquals(0, LoadTest.Results.of(requests, latencies, new boolean[1000], "users").count);
+  }
+
+  @Test
+  public void objectivesAreChecked() {
+    long[] latencies = { 1_000_000, 2_000_000, 3_000_000, 400_000_000 };
+    boolean[] failed = { false, false, true, false };
+    String[][] requests = new String[4][];
+    Arrays.fill(requests, new String[] { "users", "/api/users" });
+    LoadTest.Results results = LoadTest.Results.of(requests, latencies, failed, "users");
+
+    LoadTest test = LoadTest.fromArgs(new String[] { "--slo-p50", "5", "--slo-errors", "0.5" });
+    List<String> failures = results.check(test);
+    // p99 and p99.9 are the 400 ms request; one error in four is allowed
+    assertEquals(2, failures.size());
+    assertTrue(failures.get(0).startsWith("p99 latency 400.00 ms"));
+
+    test.sloErrors = 0.1;
+    assertEquals(3, results.check(test).size());
+  }
+}
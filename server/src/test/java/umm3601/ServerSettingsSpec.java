@@ -0,0 +1,52 @@
+package umm3601;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests reading ServerSettings from command line arguments
+ */
+public class ServerSettingsSpec {
+
+  @Test
+  public void defaults() {
+    ServerSettings settings = ServerSettings.fromArgs(new String[0]);
+    assertEquals(Server.DEFAULT_PORT, settings.port);
+    assertEquals(1, settings.shardCount);
+    assertNull(settings.shardUrls);
+    assertTrue(settings.http2);
+    assertTrue(settings.keepAlive);
+  }
+
+  @Test
+  public void connectionSettings() {
+    ServerSettings settings = ServerSettings.fromArgs(new String[] {
+      "--port", "4600", "--acceptors", "2", "--selectors", "4", "--idle-timeout", "5000",
+      "--keep-alive", "false", "--request-header-size", "16384", "--h2c", "false" });
+    assertEquals(4600, settings.port);
+    assertEquals(2, settings.acceptors);
+    assertEquals(4, settings.selectors);
+    assertEquals(5000, settings.idleTimeout);
+    assertFalse(settings.keepAlive);
+    assertEquals(16384, settings.requestHeaderSize);
+    assertEquals(8192, settings.responseHeaderSize);
+    assertFalse(settings.http2);
+  }
+
+  @Test
+  public void shardSettings() {
+    ServerSettings shard = ServerSettings.fromArgs(new String[] { "--shard", "1/3" });
+    assertEquals(1, shard.shard);
+    assertEquals(3, shard.shardCount);
+
+    ServerSettings router = ServerSettings.fromArgs(new String[] { "--router", "http://a:1,http://b:2" });
+    assertEquals(Arrays.asList("http://a:1", "http://b:2"), router.shardUrls);
+  }
+
+}
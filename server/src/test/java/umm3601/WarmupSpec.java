@@ -0,0 +1,89 @@
+package umm3601;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.Context;
+import io.javalin.http.ServiceUnavailableResponse;
+
+/**
+ * Tests the warm-up run before the server reports ready
+ */
+public class WarmupSpec {
+
+  private static Map<String, Map<String, Integer>> facets(String field, String... values) {
+    Map<String, Integer> counts = new LinkedHashMap<>();
+    for (String value : values) {
+      counts.put(value, 1);
+    }
+    return Collections.singletonMap(field, counts);
+  }
+
+  @Test
+  public void readyWithoutWarmup() {
+    Warmup warmup = new Warmup(0);
+    assertTrue(warmup.isReady());
+
+    Context ctx = mock(Context.class);
+    warmup.checkReady(ctx);
+    verify(ctx).json(Collections.singletonMap("ready", true));
+  }
+
+  @Test
+  public void notReadyUntilWarmedUp() {
+    Warmup warmup = new Warmup(10);
+    assertFalse(warmup.isReady());
+    Assertions.assertThrows(ServiceUnavailableResponse.class, () -> {
+      warmup.checkReady(mock(Context.class));
+    });
+
+    List<String> fetched = new ArrayList<>();
+    warmup.run((path, accept) -> {
+      fetched.add(path);
+      if (path.startsWith("/api/todos/_facets")) {
+        return "{\"owner\":{\"Fry\":61,\"Blanche\":43},\"category\":{\"video games\":71}}";
+      }
+      if (path.startsWith("/api/users/_facets")) {
+        return "{\"company\":{\"OHMNET\":1},\"age\":{\"25\":2}}";
+      }
+      return "[]";
+    });
+    assertTrue(warmup.isReady());
+    assertEquals(12, fetched.size());
+  }
+
+  @Test
+  public void readyEvenIfWarmupFails() {
+    Warmup warmup = new Warmup(10);
+    warmup.run((path, accept) -> {
+      throw new IOException("Connection refused");
+    });
+    assertTrue(warmup.isReady());
+  }
+
+  @Test
+  public void queryMixCoversTheData() {
+    List<String> paths = Warmup.queryMix(facets("category", "video games", "homework"),
+        facets("company", "OHMNET"), new Random(1));
+    assertTrue(paths.contains("/api/todos/_count?category=video+games"));
+    assertTrue(paths.contains("/api/todos/_count?category=homework"));
+    assertTrue(paths.stream().anyMatch(path -> path.startsWith("/api/todos?category=video+games")));
+    assertTrue(paths.stream().anyMatch(path -> path.startsWith("/api/users?company=OHMNET")));
+    // Two queries per todo value, one per user value and six others
+    assertEquals(11, paths.size());
+  }
+}
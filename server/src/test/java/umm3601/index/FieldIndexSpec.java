@@ -0,0 +1,72 @@
+package umm3601.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that a FieldIndex changed a record at a time agrees with one built
+ * over all the records, and only replaces what the change touches
+ */
+public class FieldIndexSpec {
+
+  private static void assertSameIndex(List<String> values, FieldIndex index) {
+    FieldIndex built = new FieldIndex("owner", values.toArray(new String[0]));
+    assertEquals(built.rowCount(), index.rowCount());
+    assertEquals(built.distinctValues(), index.distinctValues());
+    for (String value : built.frequencies().keySet()) {
+      assertArrayEquals(built.rows(value), index.rows(value), "Incorrect rows for " + value);
+    }
+    assertEquals(built.values("b*"), index.values("b*"));
+  }
+
+  @Test
+  public void changesMatchRebuilding() {
+    List<String> values = new ArrayList<>(Arrays.asList("Fry", "Blanche", "Fry", "Dawn", "blake", "Fry"));
+    FieldIndex index = new FieldIndex("owner", values.toArray(new String[0]));
+
+    values.add("Barry");
+    index = index.withAdded("Barry");
+    assertSameIndex(values, index);
+
+    values.set(3, "Fry");
+    index = index.withChanged(3, "Dawn", "Fry");
+    assertSameIndex(values, index);
+
+    values.remove(1);
+    index = index.withoutRow(1);
+    assertSameIndex(values, index);
+
+    values.remove(0);
+    index = index.withoutRow(0);
+    assertSameIndex(values, index);
+  }
+
+  @Test
+  public void changesShareWhatTheyDontTouch() {
+    FieldIndex index = new FieldIndex("owner", new String[] { "Fry", "Blanche", "Fry", "Dawn" });
+
+    FieldIndex added = index.withAdded("Fry");
+    assertSame(index.bitmap("Blanche"), added.bitmap("Blanche"), "Other owners' rows should be shared");
+    assertSame(index.bitmap("Dawn"), added.bitmap("Dawn"));
+    assertTrue(added.sameValuesAs(index), "No owner was added, so the terms should be shared");
+
+    FieldIndex changed = added.withChanged(0, "Fry", "Blanche");
+    assertSame(added.bitmap("Dawn"), changed.bitmap("Dawn"));
+    assertTrue(changed.sameValuesAs(added));
+    assertSame(changed, changed.withChanged(1, "Blanche", "Blanche"), "Nothing changed");
+
+    assertFalse(changed.withAdded("Leela").sameValuesAs(changed), "Leela is a new owner");
+    assertFalse(changed.withChanged(3, "Dawn", "Fry").sameValuesAs(changed), "Dawn has no todos left");
+    assertFalse(changed.withoutRow(3).sameValuesAs(changed), "Dawn has no todos left");
+    assertTrue(changed.withoutRow(1).sameValuesAs(changed));
+  }
+}
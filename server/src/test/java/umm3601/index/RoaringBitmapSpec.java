@@ -0,0 +1,126 @@
+package umm3601.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests combining sets of positions with a RoaringBitmap, against plain sets
+ */
+public class RoaringBitmapSpec {
+
+  private static int[] toArray(TreeSet<Integer> rows) {
+    return rows.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /**
+   * @param random   where to get the positions from
+   * @param limit    one past the largest position
+   * @param fraction roughly how many of the positions below the limit to pick
+   * @return the picked positions
+   */
+  private static TreeSet<Integer> randomRows(Random random, int limit, double fraction) {
+    TreeSet<Integer> rows = new TreeSet<>();
+    for (int row = 0; row < limit; row++) {
+      if (random.nextDouble() < fraction) {
+        rows.add(row);
+      }
+    }
+    return rows;
+  }
+
+  @Test
+  public void holdsItsPositions() {
+    RoaringBitmap bitmap = RoaringBitmap.of(1, 5, 70000, 200000);
+    assertEquals(4, bitmap.cardinality());
+    assertArrayEquals(new int[] { 1, 5, 70000, 200000 }, bitmap.toArray());
+    assertTrue(bitmap.contains(70000));
+    assertFalse(bitmap.contains(6));
+    assertFalse(bitmap.contains(65536 + 5));
+
+    assertEquals(0, RoaringBitmap.EMPTY.cardinality());
+    assertArrayEquals(new int[0], RoaringBitmap.of().toArray());
+  }
+
+  @Test
+  public void denseChunksBecomeBitmaps() {
+    int[] rows = IntStream.range(0, RoaringBitmap.ARRAY_MAX * 3).map(row -> row * 2).toArray();
+    RoaringBitmap bitmap = RoaringBitmap.of(rows);
+    assertEquals(rows.length, bitmap.cardinality());
+    assertArrayEquals(rows, bitmap.toArray());
+    assertTrue(bitmap.contains(4));
+    assertFalse(bitmap.contains(5));
+  }
+
+  @Test
+  public void range() {
+    assertArrayEquals(IntStream.range(0, 300).toArray(), RoaringBitmap.range(300).toArray());
+    assertArrayEquals(IntStream.range(0, 65536).toArray(), RoaringBitmap.range(65536).toArray());
+    assertEquals(150001, RoaringBitmap.range(150001).cardinality());
+    assertTrue(RoaringBitmap.range(150001).contains(150000));
+    assertFalse(RoaringBitmap.range(150001).contains(150001));
+    assertEquals(0, RoaringBitmap.range(0).cardinality());
+  }
+
+  @Test
+  public void combinesLikeSets() {
+    Random random = new Random(3601);
+    double[] fractions = { 0.001, 0.02, 0.3, 0.9 };
+    for (double first : fractions) {
+      for (double second : fractions) {
+        TreeSet<Integer> a = randomRows(random, 200000, first);
+        TreeSet<Integer> b = randomRows(random, 140000, second);
+        RoaringBitmap bitmapA = RoaringBitmap.of(toArray(a));
+        RoaringBitmap bitmapB = RoaringBitmap.of(toArray(b));
+
+        TreeSet<Integer> union = new TreeSet<>(a);
+        union.addAll(b);
+        TreeSet<Integer> intersection = new TreeSet<>(a);
+        intersection.retainAll(b);
+        TreeSet<Integer> difference = new TreeSet<>(a);
+        difference.removeAll(b);
+
+        String densities = first + " and " + second;
+        assertArrayEquals(toArray(union), bitmapA.or(bitmapB).toArray(), "Incorrect union of " + densities);
+        assertArrayEquals(toArray(intersection), bitmapA.and(bitmapB).toArray(),
+            "Incorrect intersection of " + densities);
+        assertArrayEquals(toArray(difference), bitmapA.andNot(bitmapB).toArray(),
+            "Incorrect difference of " + densities);
+        assertEquals(union.size(), bitmapA.or(bitmapB).cardinality());
+        assertEquals(intersection.size(), bitmapA.and(bitmapB).cardinality());
+        assertEquals(difference.size(), bitmapA.andNot(bitmapB).cardinality());
+      }
+    }
+  }
+
+  @Test
+  public void emptyResults() {
+    RoaringBitmap bitmap = RoaringBitmap.of(1, 2, 3);
+    assertEquals(0, bitmap.and(RoaringBitmap.of(4, 70000)).cardinality());
+    assertEquals(0, bitmap.andNot(RoaringBitmap.range(10)).cardinality());
+    assertArrayEquals(new int[] { 1, 2, 3 }, bitmap.or(RoaringBitmap.EMPTY).toArray());
+  }
+
+  @Test
+  public void removingARowClosesTheGap() {
+    Random random = new Random(5);
+    TreeSet<Integer> rows = randomRows(random, 200_000, 0.1);
+    RoaringBitmap bitmap = RoaringBitmap.of(toArray(rows));
+    for (int row : new int[] { rows.first(), rows.first() + 1, 70_000, rows.last(), 300_000 }) {
+      TreeSet<Integer> expected = new TreeSet<>();
+      for (int kept : rows) {
+        if (kept != row) {
+          expected.add(kept > row ? kept - 1 : kept);
+        }
+      }
+      assertArrayEquals(toArray(expected), bitmap.withoutRow(row).toArray(), "Incorrect rows without " + row);
+    }
+  }
+}
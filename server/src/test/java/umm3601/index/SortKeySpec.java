@@ -0,0 +1,77 @@
+package umm3601.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests parsing orderBy fields and ordering records by packed ranks with
+ * SortKey and ValueRanks
+ */
+public class SortKeySpec {
+
+  @Test
+  public void parse() {
+    List<SortKey> keys = SortKey.parse("owner,-status,category");
+    assertEquals(3, keys.size());
+    assertEquals("owner", keys.get(0).field);
+    assertFalse(keys.get(0).descending);
+    assertEquals("status", keys.get(1).field);
+    assertTrue(keys.get(1).descending);
+    assertEquals("-status", keys.get(1).toString());
+  }
+
+  @Test
+  public void valueRanks() {
+    ValueRanks ranks = new ValueRanks(Arrays.asList("Fry", "Blanche", "Dawn"), Comparator.naturalOrder());
+    assertEquals(0, ranks.rank("Blanche"));
+    assertEquals(1, ranks.rank("Dawn"));
+    assertEquals(2, ranks.rank("Fry"));
+    assertEquals(-1, ranks.rank("Roberta"));
+    assertEquals(3, ranks.size());
+
+    ValueRanks ignoringCase = new ValueRanks(Arrays.asList("a", "A", "b"), String.CASE_INSENSITIVE_ORDER);
+    assertEquals(ignoringCase.rank("a"), ignoringCase.rank("A"));
+    assertEquals(2, ignoringCase.size());
+  }
+
+  @Test
+  public void ranksOfRecords() {
+    Integer[] ages = { 33, 25, 40, 25 };
+    assertArrayEquals(new int[] { 1, 0, 2, 0 }, SortKey.ranks(ages, Comparator.naturalOrder()));
+  }
+
+  @Test
+  public void orderByPackedRanks() {
+    // Two fields per record, with ranks below 3 and 2
+    int[][] values = { { 2, 0 }, { 0, 1 }, { 1, 1 }, { 0, 1 }, { 2, 1 }, { 0, 0 } };
+    int[] ranks = { 3, 2 };
+
+    int[] ascending = SortKey.order(SortKey.parse("a,b"), ranks, values.length, (key, row) -> values[row][key]);
+    assertArrayEquals(new int[] { 5, 1, 3, 2, 0, 4 }, ascending, "Ties should keep their order");
+
+    int[] mixed = SortKey.order(SortKey.parse("-a,b"), ranks, values.length, (key, row) -> values[row][key]);
+    assertArrayEquals(new int[] { 0, 4, 2, 5, 1, 3 }, mixed);
+
+    int[] secondOnly = SortKey.order(SortKey.parse("-b"), new int[] { 2 }, values.length,
+        (key, row) -> values[row][1]);
+    assertArrayEquals(new int[] { 1, 2, 3, 4, 0, 5 }, secondOnly);
+  }
+
+  @Test
+  public void unpackableKeys() {
+    assertNull(SortKey.order(SortKey.parse("a,b"), new int[] { Integer.MAX_VALUE, Integer.MAX_VALUE }, 4,
+        (key, row) -> row), "Keys that don't fit in a long can't be packed");
+    assertNull(SortKey.order(SortKey.parse("a"), new int[] { 2 }, 4, (key, row) -> row == 3 ? -1 : 0),
+        "A value without a rank can't be packed");
+    assertArrayEquals(new int[0], SortKey.order(SortKey.parse("a"), new int[] { 0 }, 0, (key, row) -> 0));
+  }
+}
@@ -0,0 +1,37 @@
+package umm3601.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the logic of the StringDictionary
+ */
+public class StringDictionarySpec {
+
+  @Test
+  public void sharesOneCopyOfEachValue() {
+    StringDictionary dictionary = new StringDictionary();
+    String first = new String("Blanche");
+    String second = new String("Blanche");
+
+    assertSame(first, dictionary.intern(first));
+    assertSame(first, dictionary.intern(second), "The second copy should be replaced by the first");
+    assertSame(first, dictionary.intern(first), "Interning the canonical copy again isn't a duplicate");
+    assertSame(first, dictionary.lookup(new String("Blanche")));
+
+    assertEquals(1, dictionary.size());
+    assertEquals(1, dictionary.duplicates());
+    assertEquals(StringDictionary.STRING_OVERHEAD + "Blanche".length(), dictionary.duplicateBytes());
+  }
+
+  @Test
+  public void lookupDoesNotAdd() {
+    StringDictionary dictionary = new StringDictionary();
+    assertNull(dictionary.lookup("Fry"));
+    assertNull(dictionary.intern(null));
+    assertEquals(0, dictionary.size());
+  }
+}
@@ -0,0 +1,74 @@
+package umm3601.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.BadRequestResponse;
+
+/**
+ * Tests suggesting values with a Suggester
+ */
+public class SuggesterSpec {
+
+  private static Suggester suggester(Object... valueCounts) {
+    Map<String, Integer> frequencies = new LinkedHashMap<>();
+    for (int i = 0; i < valueCounts.length; i += 2) {
+      frequencies.put((String) valueCounts[i], (Integer) valueCounts[i + 1]);
+    }
+    return new Suggester(frequencies);
+  }
+
+  private static List<String> values(List<Suggester.Suggestion> suggestions) {
+    return suggestions.stream().map(suggestion -> suggestion.value + ":" + suggestion.count)
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void mostCommonFirst() {
+    Suggester owners = suggester("Fry", 61, "Blanche", 43, "Barry", 51, "Dawn", 50, "blake", 43);
+    assertEquals(Arrays.asList("Barry:51", "Blanche:43", "blake:43"), values(owners.suggest("b", 10)));
+    assertEquals(Arrays.asList("Blanche:43", "blake:43"), values(owners.suggest("BLA", 10)));
+    assertEquals(Arrays.asList("Blanche:43"), values(owners.suggest("blan", 10)));
+    assertEquals(Arrays.asList("Fry:61", "Barry:51"), values(owners.suggest("", 2)));
+    assertEquals(Arrays.asList(), values(owners.suggest("x", 10)));
+    assertEquals(Arrays.asList(), values(owners.suggest("Fryer", 10)));
+    assertEquals(Arrays.asList(), values(owners.suggest("b", -1)));
+  }
+
+  @Test
+  public void atMostMaxSuggestions() {
+    Map<String, Integer> frequencies = new LinkedHashMap<>();
+    for (int i = 0; i < 30; i++) {
+      frequencies.put("company" + i, i);
+    }
+    List<Suggester.Suggestion> suggestions = new Suggester(frequencies).suggest("comp", 100);
+    assertEquals(Suggester.MAX_SUGGESTIONS, suggestions.size());
+    assertEquals("company29", suggestions.get(0).value);
+  }
+
+  @Test
+  public void mergeAddsUpCounts() {
+    List<Suggester.Suggestion> first = Arrays.asList(new Suggester.Suggestion("homework", 30),
+        new Suggester.Suggestion("groceries", 20));
+    List<Suggester.Suggestion> second = Arrays.asList(new Suggester.Suggestion("groceries", 25),
+        new Suggester.Suggestion("software design", 10));
+    assertEquals(Arrays.asList("groceries:45", "homework:30"), values(Suggester.merge(Arrays.asList(first, second), 2)));
+  }
+
+  @Test
+  public void requestedLimit() {
+    assertEquals(Suggester.MAX_SUGGESTIONS, Suggester.requestedLimit(Collections.emptyMap()));
+    assertEquals(3, Suggester.requestedLimit(Collections.singletonMap("limit", Arrays.asList("3"))));
+    assertThrows(BadRequestResponse.class,
+        () -> Suggester.requestedLimit(Collections.singletonMap("limit", Arrays.asList("many"))));
+  }
+}
@@ -0,0 +1,80 @@
+package umm3601.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests matching prefix patterns with a TermIndex
+ */
+public class TermIndexSpec {
+
+  private final List<String> owners = Arrays.asList("Fry", "Blanche", "Barry", "blake", "Dawn", "Roberta");
+  private final TermIndex index = new TermIndex(owners);
+
+  @Test
+  public void patterns() {
+    assertTrue(TermIndex.isPattern("bla*"));
+    assertTrue(TermIndex.isPattern("*"));
+    assertFalse(TermIndex.isPattern("Blanche"));
+    assertEquals(6, index.size());
+  }
+
+  @Test
+  public void escapedValuesArentPatterns() {
+    assertFalse(TermIndex.isPattern("\\Fry*"));
+    assertEquals("Fry*", TermIndex.literal("\\Fry*"));
+    assertEquals("!Dawn", TermIndex.literal("\\!Dawn"));
+    assertEquals("\\Fry", TermIndex.literal("\\\\Fry"));
+    assertEquals("Fry", TermIndex.literal("Fry"));
+  }
+
+  @Test
+  public void prefixIgnoresCase() {
+    assertEquals(Arrays.asList("blake", "Blanche"), index.matching("BLA*"));
+    assertEquals(Arrays.asList("Barry", "blake", "Blanche"), index.matching("b*"));
+    assertEquals(Collections.singletonList("Fry"), index.matching("fry*"));
+    assertEquals(Collections.emptyList(), index.matching("z*"));
+    assertEquals(Collections.emptyList(), index.matching("Fryer*"));
+    assertEquals(6, index.matching("*").size());
+  }
+
+  @Test
+  public void caseVariantsShareATerm() {
+    TermIndex companies = new TermIndex(Arrays.asList("OHMNET", "Ohmnet", "VINCH"));
+    assertEquals(2, companies.size());
+    assertEquals(Arrays.asList("OHMNET", "Ohmnet"), companies.matching("ohm*"));
+  }
+
+  @Test
+  public void matcherAgreesWithIndex() {
+    for (String pattern : new String[] { "b*", "BLA*", "d*", "x*", "*" }) {
+      Predicate<String> matcher = TermIndex.matcher(pattern);
+      List<String> matches = index.matching(pattern);
+      for (String owner : owners) {
+        assertEquals(matches.contains(owner), matcher.test(owner), pattern + " against " + owner);
+      }
+    }
+  }
+
+  @Test
+  public void fieldIndexLooksUpPatterns() {
+    FieldIndex field = new FieldIndex("owner", new String[] { "Fry", "Barry", "Blanche", "Fry", "Barry" });
+    assertEquals(3, field.frequency("b*"));
+    assertEquals(2, field.frequency("FR*"));
+    assertEquals(Arrays.asList("Barry", "Blanche"), field.values("b*"));
+    assertEquals(Collections.singletonList("Fry"), field.values("Fry"));
+    assertEquals(Collections.emptyList(), field.values("fry"));
+
+    int[] rows = field.rows("b*");
+    assertEquals(Arrays.toString(new int[] { 1, 2, 4 }), Arrays.toString(rows));
+    assertEquals(0, field.rows("z*").length);
+  }
+}
@@ -0,0 +1,112 @@
+package umm3601.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests filters with several included and excluded values, both matched
+ * directly and answered from a FieldIndex
+ */
+public class ValueFilterSpec {
+
+  private final String[] owners = { "Fry", "Blanche", "Fry", "Dawn", "blake", "Roberta", "Dawn" };
+  private final FieldIndex index = new FieldIndex("owner", owners);
+
+  @Test
+  public void singleValue() {
+    assertEquals("Fry", new ValueFilter(Collections.singletonList("Fry")).singleValue());
+    assertNull(new ValueFilter(Arrays.asList("Fry", "Dawn")).singleValue());
+    assertNull(new ValueFilter(Collections.singletonList("!Fry")).singleValue());
+    assertNull(new ValueFilter(Collections.singletonList("bla*")).singleValue());
+    assertEquals("Fry,!Dawn", new ValueFilter(Arrays.asList("Fry", "!Dawn")).toString());
+  }
+
+  @Test
+  public void matcher() {
+    Predicate<String> anyOf = new ValueFilter(Arrays.asList("Fry", "Dawn")).matcher();
+    assertTrue(anyOf.test("Fry"));
+    assertTrue(anyOf.test("Dawn"));
+    assertFalse(anyOf.test("Blanche"));
+
+    Predicate<String> noneOf = new ValueFilter(Arrays.asList("!Fry", "!bla*")).matcher();
+    assertTrue(noneOf.test("Dawn"));
+    assertFalse(noneOf.test("Fry"));
+    assertFalse(noneOf.test("Blanche"));
+    assertFalse(noneOf.test("blake"));
+
+    Predicate<String> both = new ValueFilter(Arrays.asList("bla*", "!blake")).matcher();
+    assertTrue(both.test("Blanche"));
+    assertFalse(both.test("blake"));
+    assertFalse(both.test("Fry"));
+  }
+
+  @Test
+  public void keysValues() {
+    ValueFilter filter = new ValueFilter(Arrays.asList("true", "!false"),
+        value -> value.equals("true") ? "complete" : "incomplete");
+    assertEquals(Collections.singletonList("complete"), filter.included());
+    assertEquals(Collections.singletonList("incomplete"), filter.excluded());
+  }
+
+  @Test
+  public void indexAgreesWithMatcher() {
+    String[][] filters = {
+        { "Fry" }, { "Fry", "Dawn" }, { "!Fry" }, { "!Fry", "!Dawn" }, { "bla*", "!blake" }, { "Fry", "!Fry" },
+        { "Nobody" }, { "!Nobody" }, { "*" } };
+    for (String[] params : filters) {
+      ValueFilter filter = new ValueFilter(Arrays.asList(params));
+      Predicate<String> matcher = filter.matcher();
+      int[] expected = IntStream.range(0, owners.length)
+          .filter(row -> matcher.test(owners[row])).toArray();
+      assertArrayEquals(expected, index.bitmap(filter).toArray(), "Incorrect rows for " + filter);
+      assertEquals(expected.length, index.frequency(filter), "Incorrect frequency for " + filter);
+    }
+    assertEquals(Arrays.asList("Blanche", "Dawn"),
+        index.values(new ValueFilter(Arrays.asList("!Fry", "!blake", "!Roberta"))));
+  }
+
+  @Test
+  public void onlyPatternsIgnoreCase() {
+    Predicate<String> exact = new ValueFilter(Collections.singletonList("blanche")).matcher();
+    assertFalse(exact.test("Blanche"), "Exact values should match case and all");
+    assertEquals(0, index.frequency(new ValueFilter(Collections.singletonList("blanche"))));
+
+    Predicate<String> pattern = new ValueFilter(Collections.singletonList("blanche*")).matcher();
+    assertTrue(pattern.test("Blanche"));
+    assertEquals(1, index.frequency(new ValueFilter(Collections.singletonList("blanche*"))));
+  }
+
+  @Test
+  public void escapedValuesAreExact() {
+    String[] values = { "Fry*", "!Dawn", "Fry", "Dawn", "Fryer" };
+    FieldIndex escapedIndex = new FieldIndex("owner", values);
+
+    ValueFilter star = new ValueFilter(Collections.singletonList("\\Fry*"));
+    assertEquals("\\Fry*", star.singleValue());
+    assertTrue(star.matcher().test("Fry*"));
+    assertFalse(star.matcher().test("Fryer"));
+    assertArrayEquals(new int[] { 0 }, escapedIndex.bitmap(star).toArray());
+    assertEquals(Collections.singletonList("Fry*"), escapedIndex.values(star));
+
+    ValueFilter bang = new ValueFilter(Collections.singletonList("\\!Dawn"));
+    assertEquals(Collections.emptyList(), bang.excluded(), "An escaped ! shouldn't exclude anything");
+    assertTrue(bang.matcher().test("!Dawn"));
+    assertFalse(bang.matcher().test("Dawn"));
+    assertArrayEquals(new int[] { 1 }, escapedIndex.bitmap(bang).toArray());
+
+    ValueFilter notStar = new ValueFilter(Collections.singletonList("!\\Fry*"));
+    assertFalse(notStar.matcher().test("Fry*"));
+    assertTrue(notStar.matcher().test("Fryer"));
+    assertArrayEquals(new int[] { 1, 2, 3, 4 }, escapedIndex.bitmap(notStar).toArray());
+  }
+}
@@ -0,0 +1,53 @@
+package umm3601.json;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the layout written by ColumnBatch
+ */
+public class ColumnBatchSpec {
+
+  private ColumnBatch<JsonProjectionSpec.Point> batch = new ColumnBatch<JsonProjectionSpec.Point>()
+      .utf8("name", point -> point.name)
+      .dictionary("kind", point -> point.x > 0 ? "right" : "left")
+      .bool("visible", point -> point.visible);
+
+  private JsonProjectionSpec.Point[] points = {
+      new JsonProjectionSpec.Point("a", 1, true),
+      new JsonProjectionSpec.Point("b", -1, false),
+      new JsonProjectionSpec.Point("c", 2, true) };
+
+  private static String base64(int... bytes) {
+    byte[] buffer = new byte[bytes.length];
+    for (int i = 0; i < bytes.length; i++) {
+      buffer[i] = (byte) bytes[i];
+    }
+    return Base64.getEncoder().encodeToString(buffer);
+  }
+
+  @Test
+  public void writesColumns() {
+    String json = new String(batch.encode(points, batch.columns(), ResponseFormat.JSON.factory),
+        StandardCharsets.UTF_8);
+
+    assertEquals("{\"length\":3,\"columns\":["
+        + "{\"name\":\"name\",\"type\":\"utf8\",\"values\":[\"a\",\"b\",\"c\"]},"
+        + "{\"name\":\"kind\",\"type\":\"dictionary\",\"dictionary\":[\"right\",\"left\"],"
+        + "\"indices\":\"" + base64(0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0) + "\"},"
+        + "{\"name\":\"visible\",\"type\":\"bool\",\"bits\":\"" + base64(0b101) + "\"}]}", json);
+  }
+
+  @Test
+  public void writesSelectedColumns() {
+    String json = new String(batch.encode(points, Arrays.asList("visible"), ResponseFormat.JSON.factory),
+        StandardCharsets.UTF_8);
+    assertEquals("{\"length\":3,\"columns\":[{\"name\":\"visible\",\"type\":\"bool\",\"bits\":\"" + base64(0b101)
+        + "\"}]}", json);
+  }
+}
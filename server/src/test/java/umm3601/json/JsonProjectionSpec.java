@@ -0,0 +1,60 @@
+package umm3601.json;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.BadRequestResponse;
+
+/**
+ * Tests the logic of the JsonProjection
+ */
+public class JsonProjectionSpec {
+
+  static class Point {
+    String name;
+    int x;
+    boolean visible;
+
+    Point(String name, int x, boolean visible) {
+      this.name = name;
+      this.x = x;
+      this.visible = visible;
+    }
+  }
+
+  private JsonProjection<Point> projection = new JsonProjection<Point>("point")
+      .field("name", (json, point) -> json.writeString(point.name))
+      .field("x", (json, point) -> json.writeNumber(point.x))
+      .field("visible", (json, point) -> json.writeBoolean(point.visible));
+
+  @Test
+  public void selectKeepsRequestedOrder() {
+    List<String> fields = projection.select("visible,name,visible");
+    assertEquals(Arrays.asList("visible", "name"), fields);
+  }
+
+  @Test
+  public void selectUnknownField() {
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      projection.select("name,y");
+    });
+  }
+
+  @Test
+  public void writesOnlySelectedFields() {
+    Point[] points = { new Point("origin", 0, true), new Point("far \"away\"", 42, false) };
+    String json = projection.toJson(points, projection.select("name,x"));
+    assertEquals("[{\"name\":\"origin\",\"x\":0},{\"name\":\"far \\\"away\\\"\",\"x\":42}]", json);
+  }
+
+  @Test
+  public void writesEmptyArray() {
+    assertEquals("[]", projection.toJson(new Point[0], projection.select("x")));
+  }
+
+}
@@ -0,0 +1,117 @@
+package umm3601.json;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import umm3601.Server;
+import umm3601.user.User;
+import umm3601.user.UserController;
+import umm3601.user.UserDatabase;
+
+/**
+ * Tests the lines NdjsonExport writes, and when it compresses its responses
+ */
+public class NdjsonExportSpec {
+
+  private UserDatabase db;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    db = new UserDatabase(Server.USER_DATA_FILE);
+  }
+
+  private static byte[] export(Iterator<User> users, boolean gzip) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    NdjsonExport.write(NdjsonExport.open(buffer, gzip), users, UserController.PROJECTION,
+        UserController.PROJECTION.fields());
+    return buffer.toByteArray();
+  }
+
+  /**
+   * @return the line each of the users should be written as
+   */
+  private static List<String> expectedLines(List<User> users) {
+    List<String> lines = new ArrayList<>();
+    for (User user : users) {
+      String array = UserController.PROJECTION.toJson(new User[] { user }, UserController.PROJECTION.fields());
+      lines.add(array.substring(1, array.length() - 1) + "\n");
+    }
+    return lines;
+  }
+
+  private static List<String> lines(byte[] export) {
+    List<String> lines = new ArrayList<>();
+    for (String line : new String(export, StandardCharsets.UTF_8).split("(?<=\n)")) {
+      lines.add(line);
+    }
+    return lines;
+  }
+
+  private List<User> allUsers() {
+    List<User> users = new ArrayList<>();
+    db.exportUsers(null).forEachRemaining(users::add);
+    return users;
+  }
+
+  @Test
+  public void oneRecordPerLine() throws IOException {
+    List<User> users = allUsers();
+    List<String> lines = lines(export(users.iterator(), false));
+    assertEquals(expectedLines(users), lines);
+    for (String line : lines) {
+      assertTrue(line.startsWith("{"), "Line starts with a space or separator: " + line);
+    }
+  }
+
+  @Test
+  public void gzipHoldsTheSameLines() throws IOException {
+    List<User> users = allUsers();
+    byte[] compressed = export(users.iterator(), true);
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      assertTrue(Arrays.equals(export(users.iterator(), false), in.readAllBytes()));
+    }
+  }
+
+  @Test
+  public void resumesAfterARecord() throws IOException {
+    List<User> users = allUsers();
+    List<String> rest = lines(export(db.exportUsers(users.get(3)._id), false));
+    assertEquals(expectedLines(users.subList(4, users.size())), rest);
+  }
+
+  @Test
+  public void nothingAfterTheLastRecord() throws IOException {
+    List<User> users = allUsers();
+    assertEquals(0, export(db.exportUsers(users.get(users.size() - 1)._id), false).length);
+  }
+
+  @Test
+  public void gzipWhenAccepted() {
+    assertTrue(NdjsonExport.acceptsGzip("gzip"));
+    assertTrue(NdjsonExport.acceptsGzip("deflate, gzip;q=0.5, br"));
+    assertTrue(NdjsonExport.acceptsGzip("GZIP"));
+  }
+
+  @Test
+  public void noGzipWhenNotAccepted() {
+    assertFalse(NdjsonExport.acceptsGzip(null));
+    assertFalse(NdjsonExport.acceptsGzip("deflate, br"));
+    assertFalse(NdjsonExport.acceptsGzip("gzip;q=0"));
+    assertFalse(NdjsonExport.acceptsGzip("gzip; q=0.0"));
+  }
+}
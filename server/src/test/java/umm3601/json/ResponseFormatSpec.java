@@ -0,0 +1,44 @@
+package umm3601.json;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the content negotiation of ResponseFormat
+ */
+public class ResponseFormatSpec {
+
+  private List<ResponseFormat> offered = Arrays.asList(ResponseFormat.JSON, ResponseFormat.CBOR,
+      ResponseFormat.MESSAGE_PACK);
+
+  @Test
+  public void defaultsToFirstFormat() {
+    assertSame(ResponseFormat.JSON, ResponseFormat.negotiate(null, offered));
+    assertSame(ResponseFormat.JSON, ResponseFormat.negotiate("", offered));
+    assertSame(ResponseFormat.JSON, ResponseFormat.negotiate("*/*", offered));
+    assertSame(ResponseFormat.JSON, ResponseFormat.negotiate("text/html,application/xhtml+xml,*/*;q=0.8", offered));
+    assertSame(ResponseFormat.JSON, ResponseFormat.negotiate("text/csv", offered),
+        "An unacceptable request should still get the default");
+  }
+
+  @Test
+  public void picksPreferredFormat() {
+    assertSame(ResponseFormat.CBOR, ResponseFormat.negotiate("application/cbor", offered));
+    assertSame(ResponseFormat.MESSAGE_PACK,
+        ResponseFormat.negotiate("application/json;q=0.5, application/x-msgpack", offered));
+    assertSame(ResponseFormat.CBOR,
+        ResponseFormat.negotiate("application/*;q=0.2, application/cbor;q=0.9", offered));
+  }
+
+  @Test
+  public void mostSpecificRangeGivesQuality() {
+    assertEquals(0.0, ResponseFormat.quality("application/*, application/json;q=0", "application/json"));
+    assertEquals(1.0, ResponseFormat.quality("application/*, application/json;q=0", "application/cbor"));
+    assertEquals(0.3, ResponseFormat.quality("*/*;q=0.3", "application/cbor"));
+  }
+}
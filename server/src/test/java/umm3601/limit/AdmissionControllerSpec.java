@@ -0,0 +1,90 @@
+package umm3601.limit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+
+/**
+ * Tests the logic of the AdmissionController
+ */
+public class AdmissionControllerSpec {
+
+  private Context ctx = mock(Context.class);
+
+  @Test
+  public void admitsQueriesThatFit() throws Exception {
+    AdmissionController admission = new AdmissionController(100, 0, 0);
+    int[] runs = { 0 };
+    Handler handler = admission.admit(context -> 60, context -> {
+      assertEquals(60, admission.inUse(), "The query's cost should be in use while it runs");
+      runs[0]++;
+    });
+
+    handler.handle(ctx);
+    handler.handle(ctx);
+    assertEquals(2, runs[0], "Both queries should have run, one after the other");
+    assertEquals(0, admission.inUse(), "The cost should be released afterwards");
+  }
+
+  @Test
+  public void shedsQueriesWhenBusy() throws Exception {
+    AdmissionController admission = new AdmissionController(100, 0, 0);
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch finish = new CountDownLatch(1);
+
+    Thread busy = new Thread(() -> {
+      try {
+        admission.admit(context -> 80, context -> {
+          running.countDown();
+          finish.await();
+        }).handle(ctx);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    busy.start();
+    running.await();
+
+    Handler second = admission.admit(context -> 40, context -> { });
+    Assertions.assertThrows(TooManyRequestsResponse.class, () -> {
+      second.handle(ctx);
+    });
+
+    finish.countDown();
+    busy.join();
+    second.handle(ctx);
+    assertEquals(0, admission.inUse());
+  }
+
+  @Test
+  public void waitingQueryIsAdmittedWhenCapacityFrees() throws Exception {
+    AdmissionController admission = new AdmissionController(100, 1, 5000);
+    CountDownLatch running = new CountDownLatch(1);
+
+    Thread busy = new Thread(() -> {
+      try {
+        admission.admit(context -> 100, context -> {
+          running.countDown();
+          Thread.sleep(50);
+        }).handle(ctx);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    busy.start();
+    running.await();
+
+    int[] runs = { 0 };
+    admission.admit(context -> 100, context -> runs[0]++).handle(ctx);
+    busy.join();
+    assertEquals(1, runs[0], "The second query should have waited and then run");
+  }
+
+}
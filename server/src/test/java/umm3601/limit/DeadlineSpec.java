@@ -0,0 +1,100 @@
+package umm3601.limit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import io.javalin.http.ServiceUnavailableResponse;
+
+/**
+ * Tests the logic of Deadline
+ */
+public class DeadlineSpec {
+
+  private Context ctx = mock(Context.class);
+
+  @Test
+  public void timeoutDefaultsToTheServers() {
+    assertEquals(5000, Deadline.timeoutFor(new HashMap<>(), 5000));
+  }
+
+  @Test
+  public void timeoutCanOnlyBeShortened() {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("timeout", Arrays.asList(new String[] { "200" }));
+    assertEquals(200, Deadline.timeoutFor(queryParams, 5000));
+
+    queryParams.put("timeout", Arrays.asList(new String[] { "60000" }));
+    assertEquals(5000, Deadline.timeoutFor(queryParams, 5000));
+  }
+
+  @Test
+  public void illegalTimeout() {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("timeout", Arrays.asList(new String[] { "soon" }));
+    Assertions.assertThrows(BadRequestResponse.class, () -> Deadline.timeoutFor(queryParams, 5000));
+
+    queryParams.put("timeout", Arrays.asList(new String[] { "0" }));
+    Assertions.assertThrows(BadRequestResponse.class, () -> Deadline.timeoutFor(queryParams, 5000));
+  }
+
+  @Test
+  public void checkPassesBeforeTheDeadline() {
+    Deadline deadline = new Deadline(60000, () -> false);
+    for (int i = 0; i < 10 * Deadline.CHECK_INTERVAL; i++) {
+      deadline.check();
+    }
+  }
+
+  @Test
+  public void checkFailsAfterTheDeadline() throws InterruptedException {
+    Deadline deadline = new Deadline(1, () -> false);
+    Thread.sleep(5);
+    Assertions.assertThrows(ServiceUnavailableResponse.class, () -> {
+      for (int i = 0; i < Deadline.CHECK_INTERVAL; i++) {
+        deadline.check();
+      }
+    });
+  }
+
+  @Test
+  public void checkFailsOnceAbandoned() {
+    boolean[] gone = { false };
+    Deadline deadline = new Deadline(60000, () -> gone[0]);
+    for (int i = 0; i < Deadline.CHECK_INTERVAL; i++) {
+      deadline.check();
+    }
+    gone[0] = true;
+    Assertions.assertThrows(ServiceUnavailableResponse.class, () -> {
+      for (int i = 0; i < Deadline.CHECK_INTERVAL; i++) {
+        deadline.check();
+      }
+    });
+  }
+
+  @Test
+  public void noDeadlineNeverFails() throws InterruptedException {
+    for (int i = 0; i < 10 * Deadline.CHECK_INTERVAL; i++) {
+      Deadline.NONE.check();
+    }
+  }
+
+  @Test
+  public void enforceSetsTheCurrentDeadline() throws Exception {
+    Deadline[] seen = { null };
+    Deadline.enforce(5000, context -> seen[0] = Deadline.current()).handle(ctx);
+    assertNotSame(Deadline.NONE, seen[0], "The handler should have run with a deadline");
+    assertSame(Deadline.NONE, Deadline.current(), "The deadline should be cleared afterwards");
+  }
+}
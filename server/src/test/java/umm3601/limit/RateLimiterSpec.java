@@ -0,0 +1,37 @@
+package umm3601.limit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests how many clients a RateLimiter keeps track of
+ */
+public class RateLimiterSpec {
+
+  @Test
+  public void busyClientsAreKeptAndNewOnesWait() {
+    // Each bucket takes 5 seconds to fill again once emptied
+    RateLimiter limiter = new RateLimiter(1, 5);
+    long sweepInterval = TimeUnit.SECONDS.toNanos(5);
+    long start = System.nanoTime();
+    for (int i = 0; i < RateLimiter.MAX_CLIENTS; i++) {
+      assertEquals(0, limiter.tryAcquire("client " + i, start));
+    }
+
+    // Every tracked client is busy, so there's no room for another
+    long wait = limiter.tryAcquire("newcomer", start);
+    assertTrue(wait > 0, "A new client should wait while every tracked client is busy");
+    assertTrue(wait <= sweepInterval, "A new client should only wait until the next sweep");
+    assertEquals(RateLimiter.MAX_CLIENTS, limiter.clients());
+    assertEquals(0, limiter.tryAcquire("client 7", start), "A tracked client should still be let through");
+
+    // Once the buckets are full again they're dropped to make room
+    long later = start + 2 * sweepInterval;
+    assertEquals(0, limiter.tryAcquire("newcomer", later));
+    assertEquals(1, limiter.clients());
+  }
+}
@@ -0,0 +1,198 @@
+package umm3601.limit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.ServiceUnavailableResponse;
+
+/**
+ * Tests the logic of SingleFlight and the keys used by RequestCoalescer
+ */
+public class SingleFlightSpec {
+
+  @Test
+  public void concurrentCallsShareOneRun() throws Exception {
+    SingleFlight<String, String> flights = new SingleFlight<>();
+    AtomicInteger runs = new AtomicInteger();
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch finish = new CountDownLatch(1);
+    String[] results = new String[2];
+
+    Thread leader = new Thread(() -> {
+      try {
+        results[0] = flights.run("owner=Fry", () -> {
+          runs.incrementAndGet();
+          running.countDown();
+          finish.await();
+          return "Fry's todos";
+        });
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    leader.start();
+    running.await();
+
+    Thread follower = new Thread(() -> {
+      try {
+        results[1] = flights.run("owner=Fry", () -> {
+          runs.incrementAndGet();
+          return "Fry's todos, again";
+        });
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    follower.start();
+    // Give the follower time to start waiting on the leader
+    Thread.sleep(50);
+    finish.countDown();
+    leader.join();
+    follower.join();
+
+    assertEquals(1, runs.get(), "The work should only have been done once");
+    assertEquals("Fry's todos", results[0]);
+    assertEquals("Fry's todos", results[1]);
+    assertEquals(0, flights.inFlight(), "Nothing should be left in flight");
+  }
+
+  @Test
+  public void laterCallsRunAgain() throws Exception {
+    SingleFlight<String, Integer> flights = new SingleFlight<>();
+    AtomicInteger runs = new AtomicInteger();
+
+    assertEquals(Integer.valueOf(1), flights.run("owner=Fry", runs::incrementAndGet));
+    assertEquals(Integer.valueOf(2), flights.run("owner=Fry", runs::incrementAndGet), "Results shouldn't be cached");
+  }
+
+  @Test
+  public void exceptionsArePassedOn() {
+    SingleFlight<String, String> flights = new SingleFlight<>();
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      flights.run("limit=abc", () -> {
+        throw new BadRequestResponse("Specified limit 'abc' can't be parsed to an integer");
+      });
+    });
+    assertEquals(0, flights.inFlight());
+  }
+
+  @Test
+  public void keysIgnoreParameterOrder() {
+    Map<String, List<String>> first = new HashMap<>();
+    first.put("owner", Arrays.asList(new String[] { "Fry" }));
+    first.put("status", Arrays.asList(new String[] { "complete" }));
+    Map<String, List<String>> second = new LinkedHashMap<>();
+    second.put("status", Arrays.asList(new String[] { "complete" }));
+    second.put("owner", Arrays.asList(new String[] { "Fry" }));
+
+    assertEquals(RequestCoalescer.keyFor("/api/todos", first), RequestCoalescer.keyFor("/api/todos", second));
+    assertNotEquals(RequestCoalescer.keyFor("/api/todos", first), RequestCoalescer.keyFor("/api/todos/_count", first));
+
+    Map<String, List<String>> tricky = new HashMap<>();
+    tricky.put("owner", Arrays.asList(new String[] { "Fry&6:status=8:complete" }));
+    assertNotEquals(RequestCoalescer.keyFor("/api/todos", first), RequestCoalescer.keyFor("/api/todos", tricky));
+  }
+
+  @Test
+  public void headersArePassedOn() {
+    HttpServletResponse leader = mock(HttpServletResponse.class);
+    when(leader.getHeaderNames()).thenReturn(Arrays.asList(new String[] { "Retry-After", "Content-Type", "Vary" }));
+    when(leader.getHeaders("Retry-After")).thenReturn(Arrays.asList(new String[] { "3" }));
+    when(leader.getHeaders("Vary")).thenReturn(Arrays.asList(new String[] { "Accept", "Accept-Encoding" }));
+
+    Map<String, List<String>> headers = RequestCoalescer.headersOf(leader);
+    assertEquals(Arrays.asList(new String[] { "Retry-After", "Vary" }), new ArrayList<>(headers.keySet()),
+        "The content type should be left to Javalin");
+    assertEquals(Arrays.asList(new String[] { "3" }), headers.get("Retry-After"));
+    assertEquals(Arrays.asList(new String[] { "Accept", "Accept-Encoding" }), headers.get("Vary"));
+
+    HttpServletResponse follower = mock(HttpServletResponse.class);
+    RequestCoalescer.copyHeaders(headers, follower);
+    verify(follower).setHeader("Retry-After", "3");
+    verify(follower).setHeader("Vary", "Accept");
+    verify(follower).addHeader("Vary", "Accept-Encoding");
+  }
+
+  @Test
+  public void sharedRunOutlivesTheLeaderHangingUp() throws Exception {
+    SingleFlight<String, String> flights = new SingleFlight<>();
+    RequestCoalescer.Waiters waiters = new RequestCoalescer.Waiters();
+    boolean[] leaderGone = { false };
+    boolean[] followerGone = { false };
+    BooleanSupplier leaderClient = () -> leaderGone[0];
+    BooleanSupplier followerClient = () -> followerGone[0];
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch followerWaiting = new CountDownLatch(1);
+    Exception[] failures = new Exception[2];
+
+    waiters.add(leaderClient);
+    Thread leader = new Thread(() -> {
+      try {
+        flights.run("owner=Fry", () -> {
+          Deadline deadline = new Deadline(60000, waiters::allGone);
+          running.countDown();
+          followerWaiting.await();
+          // Give the follower time to start waiting on the leader
+          Thread.sleep(50);
+          leaderGone[0] = true;
+          for (int i = 0; i < 10 * Deadline.CHECK_INTERVAL; i++) {
+            deadline.check();
+          }
+          followerGone[0] = true;
+          for (int i = 0; i < 10 * Deadline.CHECK_INTERVAL; i++) {
+            deadline.check();
+          }
+          return "Fry's todos";
+        });
+      } catch (Exception e) {
+        failures[0] = e;
+      } finally {
+        waiters.remove(leaderClient);
+      }
+    });
+    leader.start();
+    running.await();
+
+    Thread follower = new Thread(() -> {
+      waiters.add(followerClient);
+      try {
+        followerWaiting.countDown();
+        flights.run("owner=Fry", () -> "Fry's todos, again");
+      } catch (Exception e) {
+        failures[1] = e;
+      } finally {
+        waiters.remove(followerClient);
+      }
+    });
+    follower.start();
+    leader.join();
+    follower.join();
+
+    // The run got through the checks made after the leader hung up, and only
+    // gave up once the follower had hung up as well
+    assertEquals(ServiceUnavailableResponse.class, failures[0].getClass());
+    assertEquals("The client has gone away", failures[0].getMessage());
+    assertEquals(ServiceUnavailableResponse.class, failures[1].getClass());
+    assertTrue(waiters.remove(followerClient), "Nobody should be left waiting");
+  }
+}
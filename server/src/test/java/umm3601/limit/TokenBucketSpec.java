@@ -0,0 +1,46 @@
+package umm3601.limit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the logic of the TokenBucket and RateLimiter
+ */
+public class TokenBucketSpec {
+
+  private static final long SECOND = 1_000_000_000L;
+
+  @Test
+  public void allowsBurstThenRate() {
+    TokenBucket bucket = new TokenBucket(10, 5);
+    long now = System.nanoTime() + SECOND;
+
+    for (int i = 0; i < 5; i++) {
+      assertEquals(0, bucket.tryTake(now), "The first 5 requests should be allowed");
+    }
+    long wait = bucket.tryTake(now);
+    assertTrue(wait > 0 && wait <= SECOND / 10, "The 6th should wait for the next token");
+
+    // A tenth of a second later there's one more token
+    assertEquals(0, bucket.tryTake(now + SECOND / 10));
+    assertTrue(bucket.tryTake(now + SECOND / 10) > 0);
+
+    assertFalse(bucket.isFull(now));
+    assertTrue(bucket.isFull(now + SECOND));
+  }
+
+  @Test
+  public void clientsHaveTheirOwnBuckets() {
+    RateLimiter limiter = new RateLimiter(1, 2);
+    long now = System.nanoTime() + SECOND;
+
+    assertEquals(0, limiter.tryAcquire("10.0.0.1", now));
+    assertEquals(0, limiter.tryAcquire("10.0.0.1", now));
+    assertTrue(limiter.tryAcquire("10.0.0.1", now) > 0, "10.0.0.1 has used up its burst");
+    assertEquals(0, limiter.tryAcquire("10.0.0.2", now), "10.0.0.2 shouldn't be limited by 10.0.0.1");
+  }
+
+}
@@ -0,0 +1,35 @@
+package umm3601.profiling;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests describing queries for profiling events
+ */
+public class QueryDescriptionSpec {
+
+  @Test
+  public void paramsInAlphabeticalOrder() {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("status", Arrays.asList("complete"));
+    queryParams.put("owner", Arrays.asList("Fry"));
+    queryParams.put("limit", Arrays.asList("5"));
+
+    QueryDescription query = new QueryDescription(queryParams);
+    assertEquals("limit=5&owner=Fry&status=complete", query.query());
+    assertEquals("limit=?&owner=?&status=?", query.shape());
+  }
+
+  @Test
+  public void emptyQuery() {
+    QueryDescription query = new QueryDescription(new HashMap<>());
+    assertEquals("", query.query());
+    assertEquals("", query.shape());
+  }
+}
@@ -0,0 +1,90 @@
+package umm3601.profiling;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import umm3601.todo.ToDoDatabase;
+import umm3601.user.UserDatabase;
+
+/**
+ * Tests that queries against umm3601.todo.ToDoDatabase and
+ * umm3601.user.UserDatabase are recorded by Java Flight Recorder
+ */
+public class QueryEventsFromDB {
+
+  private static List<RecordedEvent> record(Runnable queries) throws IOException {
+    Path file = Files.createTempFile("queries", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(QueryEvent.class);
+      recording.enable(QueryStageEvent.class);
+      recording.start();
+      queries.run();
+      recording.stop();
+      recording.dump(file);
+    }
+    List<RecordedEvent> events = new ArrayList<>(RecordingFile.readAllEvents(file));
+    Files.delete(file);
+    return events.stream().filter(event -> event.getEventType().getName().startsWith("umm3601."))
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void todoQueryStages() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList("Fry"));
+    queryParams.put("contains", Arrays.asList("sit"));
+    queryParams.put("orderBy", Arrays.asList("body"));
+    queryParams.put("limit", Arrays.asList("3"));
+
+    List<RecordedEvent> events = record(() -> db.listTodos(queryParams));
+    List<String> stages = new ArrayList<>();
+    for (RecordedEvent event : events) {
+      assertEquals("todos", event.getString("collection"));
+      assertEquals("contains=sit&limit=3&orderBy=body&owner=Fry", event.getString("query"));
+      if (event.getEventType().getName().equals("umm3601.QueryStage")) {
+        stages.add(event.getString("stage") + " " + event.getString("field"));
+      }
+    }
+    assertEquals(Arrays.asList("plan null", "filter owner", "filter contains", "sort body", "limit null"), stages);
+
+    RecordedEvent owner = events.get(1);
+    assertEquals("index", owner.getString("access"));
+    assertEquals(300, owner.getInt("rowsIn"));
+    assertEquals(61, owner.getInt("rowsOut"));
+
+    RecordedEvent query = events.get(events.size() - 1);
+    assertEquals("umm3601.Query", query.getEventType().getName());
+    assertEquals("contains=?&limit=?&orderBy=?&owner=?", query.getString("shape"));
+    assertEquals(3, query.getInt("rowsOut"));
+  }
+
+  @Test
+  public void userFilterStages() throws IOException {
+    UserDatabase db = new UserDatabase("/users.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("company", Arrays.asList("OHMNET"));
+
+    List<RecordedEvent> events = record(() -> db.listUsers(queryParams));
+    assertEquals(2, events.size());
+    assertEquals("company", events.get(0).getString("field"));
+    assertEquals("OHMNET", events.get(0).getString("value"));
+    assertEquals(2, events.get(0).getInt("rowsOut"));
+    assertTrue(events.get(1).getDuration().compareTo(events.get(0).getDuration()) >= 0);
+  }
+}
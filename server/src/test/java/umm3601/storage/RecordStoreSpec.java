@@ -0,0 +1,155 @@
+package umm3601.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests writing and reading a RecordStore
+ */
+public class RecordStoreSpec {
+
+  private static final RecordStore.Codec<String[]> CODEC = new RecordStore.Codec<String[]>() {
+    @Override
+    public String idOf(String[] record) {
+      return record[0];
+    }
+
+    @Override
+    public void write(DataOutput out, String[] record) throws IOException {
+      RecordStore.writeString(out, record[0]);
+      RecordStore.writeString(out, record[1]);
+    }
+
+    @Override
+    public String[] read(ByteBuffer in) {
+      return new String[] { RecordStore.readString(in), RecordStore.readString(in) };
+    }
+  };
+
+  private List<String[]> records(int count) {
+    List<String[]> records = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      // Write the IDs out of order so the index has to sort them
+      records.add(new String[] { "id" + ((i * 7) % count), i % 3 == 0 ? null : "value " + i });
+    }
+    return records;
+  }
+
+  @Test
+  public void recordsDontCrossSegments() throws IOException {
+    Path directory = Files.createTempDirectory("records");
+    List<String[]> records = records(50);
+    // Small enough segments that many records need padding in front of them
+    RecordStore.write(directory, "test", records.iterator(), CODEC, 64);
+    RecordStore<String[]> store = RecordStore.open(directory, "test", CODEC, 4);
+
+    assertEquals(50, store.size());
+    int i = 0;
+    for (String[] record : store) {
+      assertEquals(records.get(i)[0], record[0], "Records should be read back in order");
+      assertEquals(records.get(i)[1], record[1], "Records should be read back in order");
+      i++;
+    }
+    assertEquals(50, i, "Every record should be read back");
+
+    for (String[] record : records) {
+      assertEquals(record[1], store.get(record[0])[1], "Record " + record[0] + " should be found by ID");
+    }
+    assertNull(store.get("id50"));
+    assertNull(store.get("an ID that is longer than any ID could be"));
+  }
+
+  @Test
+  public void emptyStore() throws IOException {
+    Path directory = Files.createTempDirectory("records");
+    assertFalse(RecordStore.exists(directory, "empty"));
+
+    List<String[]> none = Collections.emptyList();
+    RecordStore.write(directory, "empty", none.iterator(), CODEC);
+    assertTrue(RecordStore.exists(directory, "empty"));
+
+    RecordStore<String[]> store = RecordStore.open(directory, "empty", CODEC, 4);
+    assertEquals(0, store.size());
+    assertFalse(store.iterator().hasNext());
+    assertNull(store.get("id0"));
+  }
+
+  @Test
+  public void resumeAfterRecord() throws IOException {
+    Path directory = Files.createTempDirectory("records");
+    List<String[]> records = records(50);
+    RecordStore.write(directory, "test", records.iterator(), CODEC, 64);
+    RecordStore<String[]> store = RecordStore.open(directory, "test", CODEC, 4);
+
+    for (int after : new int[] { 0, 17, 48, 49 }) {
+      Iterator<String[]> rest = store.iteratorAfter(records.get(after)[0]);
+      for (int i = after + 1; i < records.size(); i++) {
+        assertEquals(records.get(i)[0], rest.next()[0], "Records after " + after + " should be read in order");
+      }
+      assertFalse(rest.hasNext());
+    }
+    assertNull(store.iteratorAfter("id50"));
+  }
+
+  @Test
+  public void indexIsSortedInRuns() throws IOException {
+    Path directory = Files.createTempDirectory("records");
+    List<String[]> records = records(1000);
+    // Runs of 3 entries make more runs than can be merged at once
+    RecordStore.write(directory, "test", records.iterator(), CODEC, 64, 3, "");
+    RecordStore<String[]> store = RecordStore.open(directory, "test", CODEC, 4);
+
+    assertEquals(1000, store.size());
+    for (String[] record : records) {
+      assertEquals(record[1], store.get(record[0])[1], "Record " + record[0] + " should be found by ID");
+    }
+    assertNull(store.get("id1000"));
+    try (Stream<Path> files = Files.list(directory)) {
+      assertEquals(3, files.count(), "The sorted runs should have been deleted");
+    }
+  }
+
+  @Test
+  public void idsDifferingByTrailingZerosDontCollide() throws IOException {
+    Path directory = Files.createTempDirectory("records");
+    List<String[]> records = Arrays.asList(new String[] { "abc\0", "second" }, new String[] { "abc", "first" });
+    RecordStore.write(directory, "test", records.iterator(), CODEC);
+    RecordStore<String[]> store = RecordStore.open(directory, "test", CODEC, 4);
+
+    assertEquals("first", store.get("abc")[1]);
+    assertEquals("second", store.get("abc\0")[1]);
+    assertNull(store.get("abc\0\0"));
+
+    List<String[]> tooLong = Collections.singletonList(new String[] { "an ID that is longer than any ID could be", "" });
+    assertThrows(IOException.class, () -> RecordStore.write(directory, "long", tooLong.iterator(), CODEC));
+  }
+
+  @Test
+  public void sourceIsRecorded() throws IOException {
+    Path directory = Files.createTempDirectory("records");
+    assertNull(RecordStore.sourceOf(directory, "test"));
+    RecordStore.write(directory, "test", records(5).iterator(), CODEC, "users.json 100 1");
+    assertEquals("users.json 100 1", RecordStore.sourceOf(directory, "test"));
+
+    String stamp = RecordStore.stamp(getClass().getResource("/todos.json"));
+    assertEquals(stamp, RecordStore.stamp(getClass().getResource("/todos.json")));
+    assertFalse(stamp.equals(RecordStore.stamp(getClass().getResource("/users.json"))));
+  }
+}
@@ -0,0 +1,72 @@
+package umm3601.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests storing, searching and comparing strings in a TextArena
+ */
+public class TextArenaSpec {
+
+  @Test
+  public void storesStringsAcrossSegments() {
+    TextArena arena = new TextArena(64);
+    List<String> texts = new ArrayList<>();
+    List<Long> refs = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      String text = "todo number " + i + " é中";
+      texts.add(text);
+      refs.add(arena.add(text));
+    }
+    // Longer than a segment, so it gets one of its own
+    String longText = String.join(" ", texts);
+    long longRef = arena.add(longText);
+
+    for (int i = 0; i < texts.size(); i++) {
+      assertEquals(texts.get(i), arena.get(refs.get(i)));
+    }
+    assertEquals(longText, arena.get(longRef));
+    assertEquals("", arena.get(arena.add("")));
+  }
+
+  @Test
+  public void equalsMatchesWholeStrings() {
+    TextArena arena = new TextArena();
+    long ref = arena.add("588935f57546a2daea44de7c");
+    assertTrue(arena.equals(ref, TextArena.utf8("588935f57546a2daea44de7c")));
+    assertFalse(arena.equals(ref, TextArena.utf8("588935f57546a2daea44de7")));
+    assertFalse(arena.equals(ref, TextArena.utf8("588935f57546a2daea44de7d")));
+  }
+
+  @Test
+  public void containsMatchesLikeString() {
+    TextArena arena = new TextArena();
+    String text = "Ipsum esse est ulléamco magna";
+    long ref = arena.add(text);
+    for (String needle : new String[] { "", "Ipsum", "magna", "est ull", "éa", "ess e", "magnas", "ipsum", "a" }) {
+      assertEquals(text.contains(needle), arena.contains(ref, TextArena.utf8(needle)), needle);
+    }
+  }
+
+  @Test
+  public void compareMatchesString() {
+    TextArena arena = new TextArena();
+    String[] texts = { "Sunt", "sunt", "Sun", "Sunt ", "", "été", "et", "Z" };
+    long[] refs = new long[texts.length];
+    for (int i = 0; i < texts.length; i++) {
+      refs[i] = arena.add(texts[i]);
+    }
+    for (int i = 0; i < texts.length; i++) {
+      for (int j = 0; j < texts.length; j++) {
+        assertEquals(Integer.signum(texts[i].compareTo(texts[j])), Integer.signum(arena.compare(refs[i], refs[j])),
+            texts[i] + " vs " + texts[j]);
+      }
+    }
+  }
+}
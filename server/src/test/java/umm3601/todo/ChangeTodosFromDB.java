@@ -0,0 +1,143 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests umm3601.todo.ToDoDatabase addTodo, updateTodo and removeTodo, and the
+ * changes they send to subscribers
+ */
+public class ChangeTodosFromDB {
+
+  private static ToDo todo(String owner, String category, boolean status, String body) {
+    ToDo todo = new ToDo();
+    todo.owner = owner;
+    todo.category = category;
+    todo.status = status;
+    todo.body = body;
+    return todo;
+  }
+
+  private static Map<String, List<String>> query(String field, String value) {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put(field, Arrays.asList(new String[] { value }));
+    return queryParams;
+  }
+
+  @Test
+  public void addUpdateAndRemove() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    int fryTodos = db.countTodos(query("owner", "Fry"));
+
+    ToDo added = db.addTodo(todo(new String("Fry"), "groceries", false, "Buy more slurm"));
+    assertNotNull(added._id, "The added todo should have been given an ID");
+    assertEquals(301, db.size());
+    assertSame(added, db.getToDo(added._id));
+    assertEquals(fryTodos + 1, db.countTodos(query("owner", "Fry")), "The owner index should include the new todo");
+    assertEquals(fryTodos + 1, db.listTodos(query("owner", "Fry")).length);
+    assertEquals(1, db.listTodos(query("contains", "slurm")).length);
+
+    ToDo changed = todo("Leela", "groceries", true, "Buy more slurm");
+    changed._id = added._id;
+    assertSame(added, db.updateTodo(changed), "The old version should be returned");
+    assertEquals(fryTodos, db.countTodos(query("owner", "Fry")));
+    assertEquals(changed.owner, db.getToDo(added._id).owner);
+
+    assertSame(changed, db.removeTodo(added._id));
+    assertNull(db.getToDo(added._id));
+    assertEquals(300, db.size());
+
+    ToDo missing = todo("Fry", "groceries", false, "Nothing");
+    missing._id = "nonexistent";
+    assertNull(db.updateTodo(missing));
+    assertNull(db.removeTodo("nonexistent"));
+  }
+
+  @Test
+  public void indexesFollowManyChanges() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    String[] owners = { "Fry", "Leela", "Blanche", "Zoidberg" };
+    String[] categories = { "groceries", "homework", "delivery" };
+    Random random = new Random(7);
+    for (int i = 0; i < 500; i++) {
+      ToDo[] todos = db.listTodos(new HashMap<>());
+      ToDo todo = todo(owners[random.nextInt(owners.length)], categories[random.nextInt(categories.length)],
+          random.nextBoolean(), "Change " + i);
+      switch (random.nextInt(3)) {
+        case 0:
+          db.addTodo(todo);
+          break;
+        case 1:
+          todo._id = todos[random.nextInt(todos.length)]._id;
+          db.updateTodo(todo);
+          break;
+        default:
+          db.removeTodo(todos[random.nextInt(todos.length)]._id);
+          break;
+      }
+    }
+
+    // Every lookup agrees with filtering the todos one at a time
+    ToDo[] todos = db.listTodos(new HashMap<>());
+    for (String owner : new String[] { "Fry", "Leela", "Zoidberg", "Dawn" }) {
+      assertEquals(Arrays.stream(todos).filter(todo -> todo.owner.equals(owner)).count(),
+          db.countTodos(query("owner", owner)), "Incorrect count for " + owner);
+      assertEquals(Arrays.stream(todos).filter(todo -> todo.owner.equals(owner)).map(todo -> todo._id)
+          .collect(Collectors.toList()),
+          Arrays.stream(db.listTodos(query("owner", owner))).map(todo -> todo._id)
+          .collect(Collectors.toList()), "Incorrect todos for " + owner);
+    }
+    for (String category : categories) {
+      assertEquals(Arrays.stream(todos).filter(todo -> todo.category.equals(category)).count(),
+          db.countTodos(query("category", category)), "Incorrect count for " + category);
+    }
+    assertEquals(Arrays.stream(todos).filter(todo -> todo.status).count(),
+        db.countTodos(query("status", "complete")));
+
+    ToDo[] ordered = todos.clone();
+    Arrays.sort(ordered, ToDoDatabase.todoOrder("owner"));
+    assertEquals(Arrays.stream(ordered).map(todo -> todo._id).collect(Collectors.toList()),
+        Arrays.stream(db.listTodos(query("orderBy", "owner"))).map(todo -> todo._id)
+        .collect(Collectors.toList()), "Incorrect order by owner");
+  }
+
+  @Test
+  public void subscribersSeeMatchingChanges() throws Exception {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    BlockingQueue<ToDoChange> fryChanges = new LinkedBlockingQueue<>();
+    ToDoChangeFeed.Subscription subscription = db.changes().subscribe(query("owner", "Fry"), fryChanges::add);
+
+    ToDo added = db.addTodo(todo("Fry", "groceries", false, "Buy more slurm"));
+    ToDoChange change = fryChanges.poll(5, TimeUnit.SECONDS);
+    assertEquals(ToDoChange.ADD, change.type);
+    assertSame(added, change.todo);
+
+    // Giving the todo to someone else removes it from Fry's view
+    ToDo changed = todo("Leela", "groceries", false, "Buy more slurm");
+    changed._id = added._id;
+    db.updateTodo(changed);
+    change = fryChanges.poll(5, TimeUnit.SECONDS);
+    assertEquals(ToDoChange.REMOVE, change.type);
+    assertSame(added, change.todo, "A removal should carry the todo as Fry last saw it");
+
+    db.changes().unsubscribe(subscription);
+    assertEquals(0, db.changes().subscribers());
+    db.addTodo(todo("Fry", "groceries", false, "Buy even more slurm"));
+    assertNull(fryChanges.poll(100, TimeUnit.MILLISECONDS), "Unsubscribed subscribers shouldn't hear about changes");
+  }
+}
@@ -0,0 +1,73 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.BadRequestResponse;
+
+/**
+ * Tests umm3601.todo.ToDoDatabase countTodos and facetTodos
+ */
+public class CountTodosFromDB {
+
+  @Test
+  public void countAllTodos() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    assertEquals(300, db.countTodos(new HashMap<>()), "Incorrect total number of todos");
+  }
+
+  @Test
+  public void countMatchesListTodos() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+
+    queryParams.put("owner", Arrays.asList(new String[] { "Fry" }));
+    assertEquals(db.listTodos(queryParams).length, db.countTodos(queryParams), "Incorrect count for owner Fry");
+
+    queryParams.put("status", Arrays.asList(new String[] { "complete" }));
+    queryParams.put("contains", Arrays.asList(new String[] { "qu" }));
+    assertEquals(db.listTodos(queryParams).length, db.countTodos(queryParams), "Incorrect count for combined filters");
+  }
+
+  @Test
+  public void facetTodosByCategoryAndStatus() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    Map<String, Map<String, Integer>> facets = db.facetTodos(new HashMap<>(), Arrays.asList("category", "status"));
+
+    int categoryTotal = facets.get("category").values().stream().mapToInt(Integer::intValue).sum();
+    assertEquals(300, categoryTotal, "Category counts should cover every todo");
+
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("status", Arrays.asList(new String[] { "complete" }));
+    assertEquals(db.listTodos(queryParams).length, (int) facets.get("status").get("complete"),
+        "Incorrect number of complete todos");
+  }
+
+  @Test
+  public void facetFilteredTodos() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList(new String[] { "Blanche" }));
+
+    Map<String, Map<String, Integer>> facets = db.facetTodos(queryParams, Arrays.asList("owner"));
+    assertEquals(1, facets.get("owner").size(), "Only Blanche should be counted");
+    assertEquals(db.countTodos(queryParams), (int) facets.get("owner").get("Blanche"), "Incorrect count for Blanche");
+  }
+
+  @Test
+  public void facetByUnknownField() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      db.facetTodos(new HashMap<>(), Arrays.asList("body"));
+    });
+  }
+
+}
@@ -0,0 +1,172 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.BadRequestResponse;
+import umm3601.storage.RecordStore;
+
+/**
+ * Tests that umm3601.todo.DiskToDoRepository answers queries the same way as
+ * the in-memory ToDoDatabase
+ */
+public class DiskTodosFromDB {
+
+  private ToDoDatabase memory;
+  private DiskToDoRepository disk;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    memory = new ToDoDatabase("/todos.json");
+    disk = new DiskToDoRepository(Files.createTempDirectory("todos"), "/todos.json");
+  }
+
+  private void assertSameTodos(Map<String, List<String>> queryParams) {
+    assertArrayEquals(
+        Arrays.stream(memory.listTodos(queryParams)).map(todo -> todo._id).toArray(),
+        Arrays.stream(disk.listTodos(queryParams)).map(todo -> todo._id).toArray());
+    assertEquals(memory.countTodos(queryParams), disk.countTodos(queryParams));
+  }
+
+  @Test
+  public void getTodoById() {
+    assertEquals(300, disk.size(), "Incorrect total number of todos");
+    assertEquals("Roberta", disk.getToDo("58895985ee196f2401e8c52a").owner, "Incorrect owner");
+    assertEquals("Fry", disk.getToDo("588959852d1d1f8a823ab71e").owner, "Incorrect owner");
+    assertNull(disk.getToDo("nonexistent"));
+  }
+
+  @Test
+  public void filtersMatchMemory() {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    assertSameTodos(queryParams);
+
+    queryParams.put("owner", Arrays.asList(new String[] { "Fry" }));
+    queryParams.put("status", Arrays.asList(new String[] { "complete" }));
+    assertSameTodos(queryParams);
+
+    queryParams.put("owner", Arrays.asList(new String[] { "b*" }));
+    queryParams.put("category", Arrays.asList(new String[] { "Vid*" }));
+    assertSameTodos(queryParams);
+
+    queryParams.clear();
+    queryParams.put("contains", Arrays.asList(new String[] { "sint" }));
+    queryParams.put("limit", Arrays.asList(new String[] { "5" }));
+    assertSameTodos(queryParams);
+  }
+
+  @Test
+  public void orderAndLimitMatchMemory() {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("orderBy", Arrays.asList(new String[] { "owner" }));
+    assertSameTodos(queryParams);
+
+    queryParams.put("limit", Arrays.asList(new String[] { "12" }));
+    assertSameTodos(queryParams);
+
+    queryParams.put("orderBy", Arrays.asList(new String[] { "status" }));
+    queryParams.put("category", Arrays.asList(new String[] { "homework" }));
+    assertSameTodos(queryParams);
+  }
+
+  @Test
+  public void facetsMatchMemory() {
+    List<String> fields = Arrays.asList("owner", "status");
+    assertEquals(memory.facetTodos(new HashMap<>(), fields), disk.facetTodos(new HashMap<>(), fields));
+  }
+
+  @Test
+  public void suggestionsMatchMemory() {
+    for (String prefix : new String[] { "", "b", "Ro", "x" }) {
+      assertEquals(
+          memory.suggestTodos("owner", prefix, 3).stream().map(s -> s.value + s.count).collect(Collectors.toList()),
+          disk.suggestTodos("owner", prefix, 3).stream().map(s -> s.value + s.count).collect(Collectors.toList()));
+    }
+    assertEquals("video games", disk.suggestTodos("category", "v", 10).get(0).value);
+  }
+
+  @Test
+  public void illegalLimit() {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("limit", Arrays.asList(new String[] { "abc" }));
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      disk.listTodos(queryParams);
+    });
+  }
+
+  @Test
+  public void exportInStoredOrder() {
+    List<String> memoryIds = new ArrayList<>();
+    memory.exportTodos(null).forEachRemaining(todo -> memoryIds.add(todo._id));
+    List<String> diskIds = new ArrayList<>();
+    disk.exportTodos(null).forEachRemaining(todo -> diskIds.add(todo._id));
+    assertEquals(300, memoryIds.size());
+    assertEquals(memoryIds, diskIds);
+
+    // Resuming part way through gives the rest of the todos
+    String after = memoryIds.get(122);
+    List<String> rest = new ArrayList<>();
+    disk.exportTodos(after).forEachRemaining(todo -> rest.add(todo._id));
+    assertEquals(memoryIds.subList(123, 300), rest);
+    rest.clear();
+    memory.exportTodos(after).forEachRemaining(todo -> rest.add(todo._id));
+    assertEquals(memoryIds.subList(123, 300), rest);
+
+    assertNull(memory.exportTodos("nonexistent"));
+    assertNull(disk.exportTodos("nonexistent"));
+  }
+
+  @Test
+  public void staleStoreIsRebuilt() throws IOException {
+    Path directory = Files.createTempDirectory("todos");
+    // A store written from some other version of the data file
+    ToDo stale = new ToDo();
+    stale._id = "stale";
+    stale.owner = "Nobody";
+    stale.body = "";
+    stale.category = "homework";
+    RecordStore.write(directory, DiskToDoRepository.STORE_NAME,
+        Collections.singletonList(stale).iterator(), DiskToDoRepository.CODEC, "todos.json 1 1");
+
+    DiskToDoRepository rebuilt = new DiskToDoRepository(directory, "/todos.json");
+    assertEquals(300, rebuilt.size(), "The store should have been rebuilt from the data file");
+    assertNull(rebuilt.getToDo("stale"));
+  }
+
+  @Test
+  public void shardsHoldTheirOwnersTodos() throws IOException {
+    Path directory = Files.createTempDirectory("todos");
+    int total = 0;
+    for (int shard = 0; shard < 3; shard++) {
+      DiskToDoRepository part = new DiskToDoRepository(directory.resolve(Integer.toString(shard)), "/todos.json",
+          shard, 3);
+      ToDoDatabase expected = new ToDoDatabase("/todos.json", shard, 3);
+      assertEquals(expected.size(), part.size(), "Shard " + shard + " has the wrong number of todos");
+      for (ToDo todo : part.listTodos(new HashMap<>())) {
+        assertEquals(shard, ToDoDatabase.shardOf(todo.owner, 3), todo.owner + " is on the wrong shard");
+      }
+      total += part.size();
+    }
+    assertEquals(300, total, "Every todo should be on exactly one shard");
+
+    // A store built for a different shard is rebuilt
+    DiskToDoRepository whole = new DiskToDoRepository(directory.resolve("0"), "/todos.json");
+    assertEquals(300, whole.size());
+  }
+}
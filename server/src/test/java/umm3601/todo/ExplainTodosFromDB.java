@@ -0,0 +1,99 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests umm3601.todo.ToDoDatabase explainTodos and the plans chosen by the
+ * ToDoQueryPlanner
+ */
+public class ExplainTodosFromDB {
+
+  @Test
+  public void mostSelectiveFilterRunsFirstAsIndexLookup() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("status", Arrays.asList(new String[] { "complete" }));
+    queryParams.put("owner", Arrays.asList(new String[] { "Fry" }));
+    queryParams.put("contains", Arrays.asList(new String[] { "qu" }));
+
+    ToDoQueryPlan plan = db.explainTodos(queryParams);
+    assertEquals(3, plan.steps.size(), "Incorrect number of steps");
+    assertEquals("owner", plan.steps.get(0).field, "Owner is the most selective filter");
+    assertEquals(ToDoQueryPlan.INDEX_LOOKUP, plan.steps.get(0).access, "Owner should use the index");
+    assertEquals("status", plan.steps.get(1).field, "Status should come second");
+    assertEquals(ToDoQueryPlan.SCAN, plan.steps.get(1).access, "Status should be a scan");
+    assertEquals("contains", plan.steps.get(2).field, "Contains should always come last");
+
+    assertEquals(db.filterTodosByOwner(db.listTodos(new HashMap<>()), "Fry").length,
+        plan.steps.get(0).actualRows, "Incorrect actual rows for the owner lookup");
+    assertEquals(db.listTodos(queryParams).length, plan.actualRows, "Incorrect actual rows for the plan");
+  }
+
+  @Test
+  public void unselectiveFilterIsScanned() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("status", Arrays.asList(new String[] { "incomplete" }));
+
+    ToDoQueryPlan plan = db.explainTodos(queryParams);
+    ToDoQueryPlan.Step step = plan.steps.get(0);
+    assertEquals(ToDoQueryPlan.SCAN, step.access, "Status matches about half the todos, so it should be scanned");
+    assertEquals(step.actualRows, step.estimatedRows, "Estimate for a single equality filter should be exact");
+  }
+
+  @Test
+  public void explainReportsOrderAndLimit() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("orderBy", Arrays.asList(new String[] { "owner" }));
+    queryParams.put("limit", Arrays.asList(new String[] { "7" }));
+
+    ToDoQueryPlan plan = db.explainTodos(queryParams);
+    assertEquals(0, plan.steps.size(), "There should be no filter steps");
+    assertEquals("owner", plan.orderBy, "Incorrect orderBy");
+    assertEquals(7, plan.estimatedRows, "Incorrect estimated rows");
+    assertEquals(7, plan.actualRows, "Incorrect actual rows");
+  }
+
+  @Test
+  public void orderingDoesNotReorderTheDatabase() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("orderBy", Arrays.asList(new String[] { "owner" }));
+    db.listTodos(queryParams);
+
+    ToDo firstTodo = db.listTodos(new HashMap<>())[0];
+    assertEquals("Blanche", firstTodo.owner, "Ordering a query shouldn't change the stored order");
+    assertNull(db.explainTodos(new HashMap<>()).orderBy, "No orderBy was requested");
+  }
+
+  @Test
+  public void containsAndOrderingCostMore() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList(new String[] { "Fry" }));
+    long ownerCost = db.estimateCost(queryParams);
+
+    queryParams.clear();
+    queryParams.put("contains", Arrays.asList(new String[] { "sint" }));
+    long containsCost = db.estimateCost(queryParams);
+
+    queryParams.put("orderBy", Arrays.asList(new String[] { "body" }));
+    long orderedCost = db.estimateCost(queryParams);
+
+    assertTrue(ownerCost < containsCost, "An owner lookup should be cheaper than scanning bodies");
+    assertTrue(containsCost < orderedCost, "Ordering by body should add to the cost");
+    assertEquals(orderedCost, db.explainTodos(queryParams).estimatedCost, "Explain should report the cost");
+  }
+
+}
@@ -0,0 +1,183 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.Context;
+import umm3601.limit.Deadline;
+
+/**
+ * Tests umm3601.todo.ToDoDatabase listTodos and countTodos with repeated
+ * (any of) and `!` (none of) filter values, against filtering every todo
+ * directly
+ */
+public class FilterTodosByInAndNotFromDB {
+
+  private ToDoDatabase db;
+  private ToDo[] allTodos;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    db = new ToDoDatabase("/todos.json");
+    allTodos = db.listTodos(new HashMap<>());
+  }
+
+  /**
+   * @param queryParams filters on the fields in `ToDoDatabase.FIELDS`
+   * @return the IDs of the todos matching every filter, found one todo at a
+   *         time
+   */
+  private Object[] expectedIds(Map<String, List<String>> queryParams) {
+    Predicate<ToDo> matches = todo -> true;
+    for (Map.Entry<String, List<String>> filter : queryParams.entrySet()) {
+      String field = filter.getKey();
+      List<String> values = filter.getValue();
+      matches = matches.and(todo -> {
+        String value = ToDoDatabase.FIELDS.get(field).apply(todo);
+        boolean anyIncluded = false;
+        boolean included = false;
+        for (String param : values) {
+          boolean negated = param.startsWith("!");
+          String target = negated ? param.substring(1) : param;
+          if (field.equals("status")) {
+            target = ToDoQueryPlanner.statusKey(target);
+          }
+          if (negated && value.equals(target)) {
+            return false;
+          }
+          anyIncluded |= !negated;
+          included |= !negated && value.equals(target);
+        }
+        return included || !anyIncluded;
+      });
+    }
+    return Arrays.stream(allTodos).filter(matches).map(todo -> todo._id).toArray();
+  }
+
+  private void assertFiltered(Map<String, List<String>> queryParams) {
+    Object[] expected = expectedIds(queryParams);
+    assertArrayEquals(expected, Arrays.stream(db.listTodos(queryParams)).map(todo -> todo._id).toArray(),
+        "Incorrect todos for " + queryParams);
+    assertEquals(expected.length, db.countTodos(queryParams), "Incorrect count for " + queryParams);
+  }
+
+  @Test
+  public void anyOfSeveralOwners() {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList("Fry", "Blanche"));
+    assertFiltered(queryParams);
+
+    ToDoQueryPlan.Step step = db.explainTodos(queryParams).steps.get(0);
+    assertEquals(ToDoQueryPlan.INDEX_LOOKUP, step.access, "Two owners are selective enough to look up");
+    assertEquals("Fry,Blanche", step.value, "Incorrect value in the plan");
+    assertEquals(step.actualRows, step.estimatedRows, "Estimate for an any-of filter should be exact");
+  }
+
+  @Test
+  public void noneOfSomeOwners() {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList("!Fry"));
+    assertFiltered(queryParams);
+    assertEquals(ToDoQueryPlan.SCAN, db.explainTodos(queryParams).steps.get(0).access,
+        "Every owner but one matches most todos, so it should be scanned");
+
+    queryParams.put("owner", Arrays.asList("!Fry", "!Blanche", "!Dawn", "!Roberta"));
+    assertFiltered(queryParams);
+  }
+
+  @Test
+  public void combinedFilters() {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList("Fry", "Barry", "!Fry"));
+    queryParams.put("category", Arrays.asList("!homework"));
+    assertFiltered(queryParams);
+
+    queryParams.put("status", Arrays.asList("complete", "incomplete"));
+    assertFiltered(queryParams);
+
+    queryParams.put("status", Arrays.asList("!complete"));
+    queryParams.put("category", Arrays.asList("groceries", "video games"));
+    assertFiltered(queryParams);
+  }
+
+  @Test
+  public void patternsCanBeExcluded() {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList("!b*"));
+    assertEquals(allTodos.length - db.listTodos(singleFilter("owner", "b*")).length,
+        db.listTodos(queryParams).length, "Incorrect number of todos not owned by a b* owner");
+  }
+
+  @Test
+  public void diskRepositoryMatches() throws IOException {
+    DiskToDoRepository disk = new DiskToDoRepository(Files.createTempDirectory("todos"), "/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList("Fry", "Blanche", "!Blanche"));
+    queryParams.put("status", Arrays.asList("!complete"));
+    assertArrayEquals(expectedIds(queryParams),
+        Arrays.stream(disk.listTodos(queryParams)).map(todo -> todo._id).toArray());
+    assertEquals(expectedIds(queryParams).length, disk.countTodos(queryParams));
+  }
+
+  @Test
+  public void writesDuringAQueryDontChangeIt() throws Exception {
+    // Enough todos that the query's deadline is checked partway through its
+    // first filter, which is when the write is made
+    for (int i = 0; i < 1200; i++) {
+      ToDo todo = new ToDo();
+      todo.owner = "Fry";
+      todo.category = "groceries";
+      todo.body = "Buy slurm";
+      db.addTodo(todo);
+    }
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList("!Nobody"));
+    queryParams.put("category", Arrays.asList("!homework"));
+    ToDoQueryPlan plan = db.explainTodos(queryParams);
+    assertEquals("category", plan.steps.get(0).field);
+    assertEquals(ToDoQueryPlan.SCAN, plan.steps.get(1).access);
+    Object[] before = Arrays.stream(db.listTodos(queryParams)).map(todo -> todo._id).toArray();
+
+    // Removing all of Dawn's todos takes her out of the newer snapshots' indexes
+    Object[] dawnsIds = Arrays.stream(allTodos).filter(todo -> todo.owner.equals("Dawn"))
+        .map(todo -> todo._id).toArray();
+    boolean[] written = { false };
+    Context ctx = mock(Context.class);
+    when(ctx.<BooleanSupplier>attribute(Deadline.ABANDONED)).thenReturn(() -> {
+      if (!written[0]) {
+        written[0] = true;
+        for (Object id : dawnsIds) {
+          db.removeTodo((String) id);
+        }
+      }
+      return false;
+    });
+    ToDo[][] during = { null };
+    Deadline.enforce(60000, context -> during[0] = db.listTodos(queryParams)).handle(ctx);
+
+    assertTrue(written[0], "The todos should have been written to during the query");
+    assertArrayEquals(before, Arrays.stream(during[0]).map(todo -> todo._id).toArray(),
+        "The query should see the todos as they were when it started");
+  }
+
+  private static Map<String, List<String>> singleFilter(String field, String value) {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put(field, Arrays.asList(value));
+    return queryParams;
+  }
+}
@@ -0,0 +1,91 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests umm3601.todo.ToDoDatabase filterTodosByOwner and filterTodosByCategory,
+ * which compare the shared copies of owners and categories
+ */
+public class FilterTodosByOwnerFromDB {
+
+  @Test
+  public void filterTodosByOwner() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    ToDo[] allTodos = db.listTodos(new HashMap<>());
+
+    // A new copy of the name, not the one loaded with the todos
+    ToDo[] fryTodos = db.filterTodosByOwner(allTodos, new String("Fry"));
+    assertEquals(61, fryTodos.length, "Incorrect number of todos owned by Fry");
+    for (ToDo todo : fryTodos) {
+      assertSame(fryTodos[0].owner, todo.owner, "All of Fry's todos should share one copy of the name");
+    }
+
+    assertEquals(0, db.filterTodosByOwner(allTodos, "Nobody").length, "Nobody shouldn't own any todos");
+  }
+
+  @Test
+  public void filterTodosByCategory() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    ToDo[] allTodos = db.listTodos(new HashMap<>());
+
+    ToDo[] homeworkTodos = db.filterTodosByCategory(allTodos, new String("homework"));
+    for (ToDo todo : homeworkTodos) {
+      assertSame(homeworkTodos[0].category, todo.category);
+    }
+    assertEquals(0, db.filterTodosByCategory(allTodos, "chores").length);
+  }
+
+  @Test
+  public void filterTodosByOwnerPattern() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    ToDo[] allTodos = db.listTodos(new HashMap<>());
+
+    // Barry and Blanche
+    assertEquals(94, db.filterTodosByOwner(allTodos, "b*").length);
+    assertEquals(43, db.filterTodosByOwner(allTodos, "BLA*").length);
+    assertEquals(0, db.filterTodosByOwner(allTodos, "Blanchette*").length);
+
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList(new String[] { "b*" }));
+    assertEquals(94, db.listTodos(queryParams).length);
+    assertEquals(94, db.countTodos(queryParams));
+    assertEquals(ToDoQueryPlan.INDEX_LOOKUP, db.explainTodos(queryParams).steps.get(0).access);
+
+    queryParams.put("status", Arrays.asList(new String[] { "complete" }));
+    for (ToDo todo : db.listTodos(queryParams)) {
+      assertTrue(todo.status && todo.owner.startsWith("B"));
+    }
+
+    assertEquals(db.filterTodosByCategory(allTodos, "homework").length,
+        db.filterTodosByCategory(allTodos, "HOME*").length);
+  }
+
+  @Test
+  public void exactOwnersKeepTheirCase() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList(new String[] { "blanche" }));
+    assertEquals(0, db.listTodos(queryParams).length, "Only patterns ignore case");
+
+    queryParams.put("owner", Arrays.asList(new String[] { "blanche*" }));
+    assertEquals(43, db.listTodos(queryParams).length);
+
+    // Escaped, these are exact owners that nobody has, not a pattern or an exclusion
+    queryParams.put("owner", Arrays.asList(new String[] { "\\Blanche*" }));
+    assertEquals(0, db.listTodos(queryParams).length);
+    queryParams.put("owner", Arrays.asList(new String[] { "\\!Blanche" }));
+    assertEquals(0, db.listTodos(queryParams).length);
+    queryParams.put("owner", Arrays.asList(new String[] { "\\Blanche" }));
+    assertEquals(43, db.listTodos(queryParams).length);
+  }
+}
@@ -0,0 +1,134 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that umm3601.todo.ToDoDatabase answers queries the same way with its
+ * todos' text kept off the heap
+ */
+public class OffHeapTodosFromDB {
+
+  private ToDoDatabase onHeap;
+  private ToDoDatabase offHeap;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    onHeap = new ToDoDatabase("/todos.json");
+    offHeap = new ToDoDatabase("/todos.json", 0, 1, true);
+  }
+
+  private static String[] describe(ToDo[] todos) {
+    return Arrays.stream(todos).map(todo -> todo._id + " " + todo.owner + " " + todo.status + " " + todo.category
+        + " " + todo.body).toArray(String[]::new);
+  }
+
+  private void assertSameTodos(Map<String, List<String>> queryParams) {
+    assertArrayEquals(describe(onHeap.listTodos(queryParams)), describe(offHeap.listTodos(queryParams)));
+    assertEquals(onHeap.countTodos(queryParams), offHeap.countTodos(queryParams));
+  }
+
+  @Test
+  public void queriesMatchOnHeap() {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    assertSameTodos(queryParams);
+
+    queryParams.put("contains", Arrays.asList(new String[] { "sit" }));
+    assertSameTodos(queryParams);
+
+    queryParams.put("orderBy", Arrays.asList(new String[] { "body" }));
+    assertSameTodos(queryParams);
+
+    queryParams.put("owner", Arrays.asList(new String[] { "Fry" }));
+    queryParams.put("limit", Arrays.asList(new String[] { "5" }));
+    assertSameTodos(queryParams);
+
+    queryParams.clear();
+    queryParams.put("contains", Arrays.asList(new String[] { "no todo has this" }));
+    assertSameTodos(queryParams);
+  }
+
+  @Test
+  public void lookupsMatchOnHeap() {
+    ToDo todo = offHeap.getToDo("58895985a22c04e761776d54");
+    assertEquals(describe(new ToDo[] { onHeap.getToDo("58895985a22c04e761776d54") })[0],
+        describe(new ToDo[] { todo })[0]);
+    assertNull(offHeap.getToDo("nonexistent"));
+
+    List<ToDo> exported = new ArrayList<>();
+    for (Iterator<ToDo> todos = offHeap.exportTodos(todo._id); todos.hasNext();) {
+      exported.add(todos.next());
+    }
+    List<ToDo> expected = new ArrayList<>();
+    onHeap.exportTodos(todo._id).forEachRemaining(expected::add);
+    assertArrayEquals(describe(expected.toArray(new ToDo[0])), describe(exported.toArray(new ToDo[0])));
+  }
+
+  @Test
+  public void changesKeepTheirText() {
+    ToDo added = new ToDo();
+    added.owner = "Fry";
+    added.category = "homework";
+    added.body = "Deliver the éclairs";
+    offHeap.addTodo(added);
+    assertEquals("Deliver the éclairs", offHeap.getToDo(added._id).body);
+
+    ToDo updated = new ToDo();
+    updated._id = added._id;
+    updated.owner = "Fry";
+    updated.category = "homework";
+    updated.body = "Deliver the pizza";
+    assertEquals("Deliver the éclairs", offHeap.updateTodo(updated).body);
+
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("contains", Arrays.asList(new String[] { "the pizza" }));
+    assertEquals(added._id, offHeap.listTodos(queryParams)[0]._id);
+
+    assertEquals("Deliver the pizza", offHeap.removeTodo(added._id).body);
+    assertNull(offHeap.getToDo(added._id));
+  }
+
+  @Test
+  public void rewrittenTextIsReclaimed() {
+    long initial = offHeap.offHeapTextBytes();
+    ToDo todo = new ToDo();
+    todo.owner = "Fry";
+    todo.category = "homework";
+    todo.body = "Deliver the pizza";
+    offHeap.addTodo(todo);
+
+    // Far more text than the arena holds is written, and then left unused
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      body.append("Deliver the pizza. ");
+    }
+    for (int i = 0; i < 500; i++) {
+      todo.body = body + Integer.toString(i);
+      offHeap.updateTodo(todo);
+    }
+    assertTrue(offHeap.offHeapTextBytes() < 2 * (initial + OffHeapText.MIN_COMPACTION),
+        "Unused text should have been reclaimed, but " + offHeap.offHeapTextBytes() + " bytes are used");
+    assertEquals(body + "499", offHeap.getToDo(todo._id).body);
+    // The other todos' text was moved along with the rest
+    offHeap.removeTodo(todo._id);
+    assertSameTodos(new HashMap<>());
+    offHeap.addTodo(todo);
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("orderBy", Arrays.asList(new String[] { "body" }));
+    queryParams.put("contains", Arrays.asList(new String[] { "pizza" }));
+    assertEquals(todo._id, offHeap.listTodos(queryParams)[0]._id);
+  }
+}
@@ -0,0 +1,99 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.BadRequestResponse;
+
+/**
+ * Tests umm3601.todo.ToDoDatabase listTodos and sortTodosBy with several
+ * orderBy fields, against sorting with comparators
+ */
+public class OrderTodosFromDB {
+
+  private static Object[] ids(ToDo[] todos) {
+    return Arrays.stream(todos).map(todo -> todo._id).toArray();
+  }
+
+  private static Map<String, List<String>> orderBy(String orderBy) {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("orderBy", Arrays.asList(orderBy));
+    return queryParams;
+  }
+
+  @Test
+  public void severalFields() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    ToDo[] allTodos = db.listTodos(new HashMap<>());
+
+    Comparator<ToDo> expected = Comparator.comparing((ToDo todo) -> todo.owner)
+        .thenComparing(Comparator.comparing((ToDo todo) -> todo.status).reversed())
+        .thenComparing(todo -> todo.category);
+    ToDo[] sorted = allTodos.clone();
+    Arrays.sort(sorted, expected);
+    assertArrayEquals(ids(sorted), ids(db.listTodos(orderBy("owner,-status,category"))));
+
+    expected = Comparator.comparing((ToDo todo) -> todo.category).reversed();
+    sorted = allTodos.clone();
+    Arrays.sort(sorted, expected);
+    assertArrayEquals(ids(sorted), ids(db.listTodos(orderBy("-category"))),
+        "Todos in the same category should keep their stored order");
+  }
+
+  @Test
+  public void statusOrdersIncompleteFirst() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    ToDo[] todos = db.listTodos(orderBy("status"));
+    assertFalse(todos[0].status, "Incomplete todos should come first");
+    assertEquals(true, todos[todos.length - 1].status, "Complete todos should come last");
+  }
+
+  @Test
+  public void orderingWithFilters() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    Map<String, List<String>> queryParams = orderBy("category,-body");
+    queryParams.put("owner", Arrays.asList("Fry", "Blanche"));
+
+    ToDo[] filtered = db.filterTodosByOwner(db.listTodos(new HashMap<>()), "Fry");
+    ToDo[] sorted = db.listTodos(queryParams);
+    Comparator<ToDo> expected = Comparator.comparing((ToDo todo) -> todo.category)
+        .thenComparing(Comparator.comparing((ToDo todo) -> todo.body).reversed());
+    for (int i = 1; i < sorted.length; i++) {
+      assertFalse(expected.compare(sorted[i - 1], sorted[i]) > 0, "Todos out of order at " + i);
+    }
+    assertEquals(filtered.length + db.filterTodosByOwner(db.listTodos(new HashMap<>()), "Blanche").length,
+        sorted.length);
+  }
+
+  @Test
+  public void unknownFieldsAreRejected() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      db.listTodos(orderBy("owner,-priority"));
+    });
+  }
+
+  @Test
+  public void diskAndOffHeapMatch() throws IOException {
+    ToDoDatabase memory = new ToDoDatabase("/todos.json");
+    ToDoDatabase offHeap = new ToDoDatabase("/todos.json", 0, 1, true);
+    DiskToDoRepository disk = new DiskToDoRepository(Files.createTempDirectory("todos"), "/todos.json");
+    for (String orderBy : new String[] { "owner,-status,category", "-status,body", "-owner" }) {
+      Object[] expected = ids(memory.listTodos(orderBy(orderBy)));
+      assertArrayEquals(expected, ids(offHeap.listTodos(orderBy(orderBy))), "Off heap order differs for " + orderBy);
+      assertArrayEquals(expected, ids(disk.listTodos(orderBy(orderBy))), "Disk order differs for " + orderBy);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.Context;
+import io.javalin.http.ServiceUnavailableResponse;
+import umm3601.limit.Deadline;
+
+/**
+ * Tests that umm3601.todo.ToDoDatabase gives up on queries that overrun their
+ * deadline
+ */
+public class QueryDeadlinesFromDB {
+
+  private Context ctx = mock(Context.class);
+
+  @Test
+  public void overrunningSortIsAbandoned() throws Exception {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("orderBy", Arrays.asList(new String[] { "body" }));
+
+    Assertions.assertThrows(ServiceUnavailableResponse.class, () -> {
+      Deadline.enforce(1, context -> {
+        Thread.sleep(5);
+        db.listTodos(queryParams);
+      }).handle(ctx);
+    });
+  }
+
+  @Test
+  public void queryWithinDeadlineFinishes() throws Exception {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("orderBy", Arrays.asList(new String[] { "body" }));
+    queryParams.put("contains", Arrays.asList(new String[] { "sit" }));
+
+    ToDo[][] todos = { null };
+    Deadline.enforce(60000, context -> todos[0] = db.listTodos(queryParams)).handle(ctx);
+    assertEquals(db.listTodos(queryParams).length, todos[0].length);
+  }
+}
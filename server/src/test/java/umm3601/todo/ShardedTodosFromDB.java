@@ -0,0 +1,93 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests splitting umm3601.todo.ToDoDatabase into shards, and merging the
+ * results from each shard with ToDoShardRouter.merge
+ */
+public class ShardedTodosFromDB {
+
+  private static final int SHARDS = 3;
+
+  private List<ToDoDatabase> shards() throws IOException {
+    List<ToDoDatabase> shards = new ArrayList<>();
+    for (int shard = 0; shard < SHARDS; shard++) {
+      shards.add(new ToDoDatabase("/todos.json", shard, SHARDS));
+    }
+    return shards;
+  }
+
+  private ToDo[] mergedQuery(List<ToDoDatabase> shards, Map<String, List<String>> queryParams) {
+    List<ToDo[]> results = new ArrayList<>();
+    for (ToDoDatabase shard : shards) {
+      results.add(shard.listTodos(queryParams));
+    }
+    String orderBy = queryParams.containsKey("orderBy") ? queryParams.get("orderBy").get(0) : null;
+    Integer limit = queryParams.containsKey("limit") ? Integer.parseInt(queryParams.get("limit").get(0)) : null;
+    return ToDoShardRouter.merge(results, ToDoDatabase.todoOrder(orderBy), limit);
+  }
+
+  @Test
+  public void everyTodoIsInExactlyOneShard() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    Set<String> ids = new HashSet<>();
+    int total = 0;
+    for (ToDoDatabase shard : shards()) {
+      total += shard.size();
+      for (ToDo todo : shard.listTodos(new HashMap<>())) {
+        ids.add(todo._id);
+      }
+    }
+    assertEquals(db.size(), total, "Shards should hold every todo once");
+    assertEquals(db.size(), ids.size(), "Shards should hold every todo once");
+  }
+
+  @Test
+  public void ownerIsInASingleShard() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList(new String[] { "Fry" }));
+    int home = ToDoDatabase.shardOf("Fry", SHARDS);
+
+    List<ToDoDatabase> shards = shards();
+    for (int shard = 0; shard < SHARDS; shard++) {
+      int count = shards.get(shard).listTodos(queryParams).length;
+      assertTrue(shard == home ? count > 0 : count == 0, "Fry's todos should all be in shard " + home);
+    }
+  }
+
+  @Test
+  public void mergedOrderAndLimitMatchSingleDatabase() throws IOException {
+    ToDoDatabase db = new ToDoDatabase("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("orderBy", Arrays.asList(new String[] { "body" }));
+    queryParams.put("limit", Arrays.asList(new String[] { "25" }));
+    queryParams.put("status", Arrays.asList(new String[] { "complete" }));
+
+    ToDo[] expected = db.listTodos(queryParams);
+    ToDo[] merged = mergedQuery(shards(), queryParams);
+    assertArrayEquals(Arrays.stream(expected).map(todo -> todo.body).toArray(),
+        Arrays.stream(merged).map(todo -> todo.body).toArray());
+  }
+
+  @Test
+  public void mergeWithoutOrderHonorsLimit() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("limit", Arrays.asList(new String[] { "7" }));
+    assertEquals(7, mergedQuery(shards(), queryParams).length, "Incorrect number of todos listed, not 7");
+  }
+
+}
@@ -0,0 +1,126 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the logic of the ToDoChangeFeed
+ */
+public class ToDoChangeFeedSpec {
+
+  private ToDoChangeFeed feed = new ToDoChangeFeed(Runnable::run);
+
+  private static ToDo todo(String owner, String category, boolean status, String body) {
+    ToDo todo = new ToDo();
+    todo._id = "58895985a22c04e761776d54";
+    todo.owner = owner;
+    todo.category = category;
+    todo.status = status;
+    todo.body = body;
+    return todo;
+  }
+
+  private List<String> subscribe(String... filters) {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    for (int i = 0; i < filters.length; i += 2) {
+      queryParams.put(filters[i], Arrays.asList(new String[] { filters[i + 1] }));
+    }
+    List<String> changes = new ArrayList<>();
+    feed.subscribe(queryParams, change -> changes.add(change.type + " " + change.todo.owner));
+    return changes;
+  }
+
+  @Test
+  public void changesGoToMatchingSubscribers() {
+    List<String> fry = subscribe("owner", "Fry");
+    List<String> completeHomework = subscribe("category", "homework", "status", "complete");
+    List<String> slurm = subscribe("contains", "slurm");
+    List<String> everything = subscribe();
+    assertEquals(4, feed.subscribers());
+
+    ToDo first = todo("Fry", "homework", false, "Drink slurm");
+    feed.publish(null, first);
+    ToDo second = todo("Fry", "homework", true, "Drink slurm");
+    feed.publish(first, second);
+    ToDo third = todo("Leela", "homework", true, "Drink water");
+    feed.publish(second, third);
+    feed.publish(third, null);
+
+    assertEquals(Arrays.asList("add Fry", "update Fry", "remove Fry"), fry);
+    assertEquals(Arrays.asList("add Fry", "update Leela", "remove Leela"), completeHomework);
+    assertEquals(Arrays.asList("add Fry", "update Fry", "remove Fry"), slurm);
+    assertEquals(Arrays.asList("add Fry", "update Fry", "update Leela", "remove Leela"), everything);
+  }
+
+  @Test
+  public void otherOwnersArentTold() {
+    List<String> blanche = subscribe("owner", "Blanche");
+    feed.publish(null, todo("Fry", "homework", false, "Drink slurm"));
+    assertEquals(0, blanche.size());
+  }
+
+  @Test
+  public void ownerPatternsMatchManyOwners() {
+    List<String> fr = subscribe("owner", "FR*", "category", "homework");
+    feed.publish(null, todo("Fry", "homework", false, "Drink slurm"));
+    feed.publish(null, todo("Frida", "homework", false, "Paint"));
+    feed.publish(null, todo("Leela", "homework", false, "Fly"));
+    feed.publish(null, todo("Fry", "groceries", false, "Buy slurm"));
+    assertEquals(Arrays.asList("add Fry", "add Frida"), fr);
+  }
+
+  @Test
+  public void unsubscribingForgetsEmptyValues() {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList(new String[] { "Fry" }));
+    ToDoChangeFeed.Subscription first = feed.subscribe(queryParams, change -> {
+    });
+    ToDoChangeFeed.Subscription second = feed.subscribe(queryParams, change -> {
+    });
+    assertEquals(1, feed.anchorValues());
+
+    feed.unsubscribe(first);
+    assertEquals(1, feed.anchorValues(), "Fry still has a subscriber");
+    feed.unsubscribe(second);
+    assertEquals(0, feed.anchorValues(), "Nobody is subscribed to Fry any more");
+    assertEquals(0, feed.subscribers());
+  }
+
+  @Test
+  public void slowSubscribersAreDropped() {
+    // Sending only happens when the test says so, as if every subscriber were slow
+    List<Runnable> tasks = new ArrayList<>();
+    ToDoChangeFeed slowFeed = new ToDoChangeFeed(tasks::add, 2);
+    Map<String, List<String>> fryParams = new HashMap<>();
+    fryParams.put("owner", Arrays.asList(new String[] { "Fry" }));
+    Map<String, List<String>> leelaParams = new HashMap<>();
+    leelaParams.put("owner", Arrays.asList(new String[] { "Leela" }));
+    List<String> fry = new ArrayList<>();
+    List<String> leela = new ArrayList<>();
+    boolean[] fryDropped = { false };
+    slowFeed.subscribe(fryParams, change -> fry.add(change.type + " " + change.todo.body), () -> fryDropped[0] = true);
+    slowFeed.subscribe(leelaParams, change -> leela.add(change.type + " " + change.todo.body));
+
+    slowFeed.publish(null, todo("Fry", "homework", false, "Drink slurm"));
+    slowFeed.publish(null, todo("Leela", "homework", false, "Fly"));
+    slowFeed.publish(null, todo("Fry", "homework", false, "Eat"));
+    slowFeed.publish(null, todo("Fry", "homework", false, "Sleep"));
+    assertEquals(1, slowFeed.subscribers(), "Fry's backlog overflowed");
+    assertEquals(1, slowFeed.anchorValues(), "Only Leela should be left");
+
+    for (int i = 0; i < tasks.size(); i++) {
+      tasks.get(i).run();
+    }
+    assertTrue(fryDropped[0], "Fry should have been told it was dropped");
+    assertEquals(0, fry.size(), "Fry's backlog should have been thrown away");
+    assertEquals(Arrays.asList("add Fly"), leela);
+  }
+}
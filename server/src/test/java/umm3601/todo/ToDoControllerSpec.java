@@ -24,6 +24,9 @@ import io.javalin.http.Context;
 import io.javalin.http.NotFoundResponse;
 
 import umm3601.Server;
+import umm3601.index.Suggester;
+import umm3601.user.User;
+import umm3601.user.UserRepository;
 
 /**
  * Tests the logic of the ToDoController
@@ -36,6 +39,14 @@ public class ToDoControllerSpec {
   private ToDoController todoController;
   private static ToDoDatabase db;
 
+  /**
+   * @return a captor for arguments of a generic type, e.g., `Map<String, Integer>`
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> ArgumentCaptor<T> captorFor(Class<?> rawType) {
+    return (ArgumentCaptor<T>) ArgumentCaptor.forClass(rawType);
+  }
+
   @BeforeEach
   public void setUp() throws IOException {
     ctx.clearCookieStore();
@@ -243,4 +254,205 @@ public class ToDoControllerSpec {
     }
     }
 
+  @Test
+  public void GET_to_request_explain() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList(new String[] { "Fry" }));
+    queryParams.put("explain", Arrays.asList(new String[] { "true" }));
+
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    todoController.getTodos(ctx);
+
+    // Confirm that the plan, rather than the todos, was returned.
+    ArgumentCaptor<ToDoQueryPlan> argument = ArgumentCaptor.forClass(ToDoQueryPlan.class);
+    verify(ctx).json(argument.capture());
+    assertEquals("owner", argument.getValue().steps.get(0).field);
+    assertEquals(argument.getValue().steps.get(0).actualRows, argument.getValue().actualRows);
+  }
+
+  @Test
+  public void GET_to_request_todo_count() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList(new String[] { "Fry" }));
+
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    todoController.countTodos(ctx);
+
+    ArgumentCaptor<Map<String, Integer>> argument = captorFor(Map.class);
+    verify(ctx).json(argument.capture());
+    assertEquals(db.listTodos(queryParams).length, (int) argument.getValue().get("count"));
+  }
+
+  @Test
+  public void GET_to_request_todo_facets_without_by() throws IOException {
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      todoController.getTodoFacets(ctx);
+    });
+  }
+
+  @Test
+  public void GET_to_request_todo_suggestions() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("field", Arrays.asList(new String[] { "owner" }));
+    queryParams.put("prefix", Arrays.asList(new String[] { "b" }));
+
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    todoController.getTodoSuggestions(ctx);
+
+    // Barry has more todos than Blanche
+    ArgumentCaptor<List<Suggester.Suggestion>> argument = captorFor(List.class);
+    verify(ctx).json(argument.capture());
+    assertEquals(2, argument.getValue().size());
+    assertEquals("Barry", argument.getValue().get(0).value);
+    assertEquals(51, argument.getValue().get(0).count);
+    assertEquals("Blanche", argument.getValue().get(1).value);
+  }
+
+  @Test
+  public void GET_to_request_todo_suggestions_for_bad_field() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("field", Arrays.asList(new String[] { "body" }));
+
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      todoController.getTodoSuggestions(ctx);
+    });
+  }
+
+  @Test
+  public void GET_to_request_todos_with_fields() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList(new String[] { "Fry" }));
+    queryParams.put("limit", Arrays.asList(new String[] { "1" }));
+    queryParams.put("fields", Arrays.asList(new String[] { "owner,status" }));
+
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    todoController.getTodos(ctx);
+
+    // Confirm that only the owner and status were written.
+    ArgumentCaptor<String> argument = ArgumentCaptor.forClass(String.class);
+    verify(ctx).result(argument.capture());
+    ToDo todo = db.listTodos(queryParams)[0];
+    assertEquals("[{\"owner\":\"Fry\",\"status\":" + todo.status + "}]", argument.getValue());
+  }
+
+  @Test
+  public void GET_to_request_todos_with_illegal_fields() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("fields", Arrays.asList(new String[] { "owner,priority" }));
+
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      todoController.getTodos(ctx);
+    });
+  }
+
+  @Test
+  public void GET_to_request_todos_with_expanded_owner() throws IOException {
+    UserRepository users = mock(UserRepository.class);
+    User fry = new User();
+    fry._id = "5889";
+    fry.name = "Fry";
+    fry.age = 25;
+    fry.company = "PLANET EXPRESS";
+    fry.email = "fry@planetexpress.com";
+    when(users.getUserByName("Fry")).thenReturn(fry);
+    todoController = new ToDoController(db, users);
+
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList(new String[] { "Fry" }));
+    queryParams.put("limit", Arrays.asList(new String[] { "1" }));
+    queryParams.put("fields", Arrays.asList(new String[] { "owner,status" }));
+    queryParams.put("expand", Arrays.asList(new String[] { "owner" }));
+
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    todoController.getTodos(ctx);
+
+    // Confirm that the owner was written as the user with that name.
+    ArgumentCaptor<String> argument = ArgumentCaptor.forClass(String.class);
+    verify(ctx).result(argument.capture());
+    ToDo todo = db.listTodos(queryParams)[0];
+    assertEquals("[{\"owner\":{\"_id\":\"5889\",\"name\":\"Fry\",\"age\":25,"
+        + "\"company\":\"PLANET EXPRESS\",\"email\":\"fry@planetexpress.com\"},\"status\":" + todo.status + "}]",
+        argument.getValue());
+  }
+
+  @Test
+  public void GET_to_request_todos_with_unknown_expanded_owner() throws IOException {
+    todoController = new ToDoController(db, mock(UserRepository.class));
+
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList(new String[] { "Fry" }));
+    queryParams.put("limit", Arrays.asList(new String[] { "1" }));
+    queryParams.put("fields", Arrays.asList(new String[] { "owner" }));
+    queryParams.put("expand", Arrays.asList(new String[] { "owner" }));
+
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    todoController.getTodos(ctx);
+
+    // Confirm that an owner who isn't a user is still written as an object.
+    ArgumentCaptor<String> argument = ArgumentCaptor.forClass(String.class);
+    verify(ctx).result(argument.capture());
+    assertEquals("[{\"owner\":{\"name\":\"Fry\"}}]", argument.getValue());
+  }
+
+  @Test
+  public void GET_to_request_todos_with_illegal_expand() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("expand", Arrays.asList(new String[] { "owner" }));
+
+    // This controller has no users to expand owners from
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      todoController.getTodos(ctx);
+    });
+
+    queryParams.put("expand", Arrays.asList(new String[] { "category" }));
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      new ToDoController(db, mock(UserRepository.class)).getTodos(ctx);
+    });
+  }
+
+  @Test
+  public void POST_to_add_todo() throws IOException {
+    ToDo todo = new ToDo();
+    todo.owner = "Fry";
+    todo.category = "groceries";
+    todo.body = "Buy more slurm";
+
+    when(ctx.bodyAsClass(ToDo.class)).thenReturn(todo);
+    todoController.addTodo(ctx);
+
+    verify(ctx).status(201);
+    assertEquals(301, db.size());
+    assertEquals(todo, db.getToDo(todo._id));
+  }
+
+  @Test
+  public void POST_to_add_todo_without_body() throws IOException {
+    ToDo todo = new ToDo();
+    todo.owner = "Fry";
+    todo.category = "groceries";
+
+    when(ctx.bodyAsClass(ToDo.class)).thenReturn(todo);
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      todoController.addTodo(ctx);
+    });
+  }
+
+  @Test
+  public void DELETE_to_remove_todo_with_existent_id() throws IOException {
+    when(ctx.pathParam("id", String.class)).thenReturn(new Validator<String>("5889598520637f1dc4913e85", "", "id"));
+    todoController.deleteTodo(ctx);
+    assertEquals(299, db.size());
+  }
+
+  @Test
+  public void DELETE_to_remove_todo_with_nonexistent_id() throws IOException {
+    when(ctx.pathParam("id", String.class)).thenReturn(new Validator<String>("nonexistent", "", "id"));
+    Assertions.assertThrows(NotFoundResponse.class, () -> {
+      todoController.deleteTodo(ctx);
+    });
+  }
+
 }
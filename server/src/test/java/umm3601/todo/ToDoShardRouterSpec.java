@@ -0,0 +1,95 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.core.validation.Validator;
+import io.javalin.http.Context;
+import io.javalin.http.ServiceUnavailableResponse;
+import umm3601.limit.TooManyRequestsResponse;
+
+/**
+ * Tests how the ToDoShardRouter passes on shards that fail, using small
+ * stand-in shard servers that always answer with the same status
+ */
+public class ToDoShardRouterSpec {
+
+  private final List<HttpServer> shards = new ArrayList<>();
+
+  private String shard(int status, String retryAfter) throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", exchange -> {
+      byte[] body = "{\"title\":\"Too many requests; slow down\"}".getBytes(StandardCharsets.UTF_8);
+      if (retryAfter != null) {
+        exchange.getResponseHeaders().add("Retry-After", retryAfter);
+      }
+      exchange.sendResponseHeaders(status, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+    shards.add(server);
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  @AfterEach
+  public void stopShards() {
+    for (HttpServer server : shards) {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void busyShardIsPassedOn() throws IOException {
+    List<String> urls = new ArrayList<>();
+    urls.add(shard(200, null));
+    urls.add(shard(429, "7"));
+    ToDoShardRouter router = new ToDoShardRouter(urls);
+
+    Context ctx = mock(Context.class);
+    when(ctx.queryParamMap()).thenReturn(new HashMap<>());
+    assertThrows(TooManyRequestsResponse.class, () -> router.countTodos(ctx));
+    verify(ctx).header("Retry-After", "7");
+  }
+
+  @Test
+  public void busyShardIsPassedOnWhenLookingForATodo() throws IOException {
+    List<String> urls = new ArrayList<>();
+    urls.add(shard(404, null));
+    urls.add(shard(429, "3"));
+    ToDoShardRouter router = new ToDoShardRouter(urls);
+
+    Context ctx = mock(Context.class);
+    when(ctx.pathParam("id", String.class)).thenReturn(new Validator<String>("58895985a22c04e761776d54", "", "id"));
+    assertThrows(TooManyRequestsResponse.class, () -> router.getTodo(ctx));
+    verify(ctx).header("Retry-After", "3");
+  }
+
+  @Test
+  public void failingShardIsUnavailable() throws IOException {
+    List<String> urls = new ArrayList<>();
+    urls.add(shard(200, null));
+    urls.add(shard(500, null));
+    ToDoShardRouter router = new ToDoShardRouter(urls);
+
+    Context ctx = mock(Context.class);
+    when(ctx.queryParamMap()).thenReturn(new HashMap<>());
+    assertThrows(ServiceUnavailableResponse.class, () -> router.countTodos(ctx));
+  }
+}
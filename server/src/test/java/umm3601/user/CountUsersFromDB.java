@@ -0,0 +1,62 @@
+package umm3601.user;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.BadRequestResponse;
+
+/**
+ * Tests umm3601.user.UserDatabase countUsers and facetUsers
+ */
+public class CountUsersFromDB {
+
+  @Test
+  public void countUsers() throws IOException {
+    UserDatabase db = new UserDatabase("/users.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    assertEquals(db.size(), db.countUsers(queryParams), "Incorrect total number of users");
+
+    queryParams.put("age", Arrays.asList(new String[] { "27" }));
+    assertEquals(3, db.countUsers(queryParams), "Incorrect number of users with age 27");
+
+    queryParams.put("company", Arrays.asList(new String[] { "OHMNET" }));
+    assertEquals(db.listUsers(queryParams).length, db.countUsers(queryParams),
+        "Incorrect number of users with age 27 at OHMNET");
+  }
+
+  @Test
+  public void countUsersWithIllegalAge() throws IOException {
+    UserDatabase db = new UserDatabase("/users.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("age", Arrays.asList(new String[] { "abc" }));
+
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      db.countUsers(queryParams);
+    });
+  }
+
+  @Test
+  public void facetUsersByCompany() throws IOException {
+    UserDatabase db = new UserDatabase("/users.json");
+    Map<String, Map<String, Integer>> facets = db.facetUsers(new HashMap<>(), Arrays.asList("company"));
+
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("company", Arrays.asList(new String[] { "OHMNET" }));
+    assertEquals(db.listUsers(queryParams).length, (int) facets.get("company").get("OHMNET"),
+        "Incorrect number of users at OHMNET");
+
+    queryParams.clear();
+    queryParams.put("age", Arrays.asList(new String[] { "33" }));
+    facets = db.facetUsers(queryParams, Arrays.asList("age"));
+    assertEquals(1, (int) facets.get("age").get("33"), "Incorrect number of users with age 33");
+  }
+
+}
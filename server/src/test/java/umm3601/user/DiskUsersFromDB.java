@@ -0,0 +1,62 @@
+package umm3601.user;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that umm3601.user.DiskUserRepository answers queries the same way as
+ * the in-memory UserDatabase
+ */
+public class DiskUsersFromDB {
+
+  @Test
+  public void queriesMatchMemory() throws IOException {
+    UserDatabase memory = new UserDatabase("/users.json");
+    DiskUserRepository disk = new DiskUserRepository(Files.createTempDirectory("users"), "/users.json");
+    assertEquals(memory.size(), disk.size(), "Incorrect total number of users");
+
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("age", Arrays.asList(new String[] { "25" }));
+    queryParams.put("company", Arrays.asList(new String[] { "OHMNET" }));
+    assertArrayEquals(
+        Arrays.stream(memory.listUsers(queryParams)).map(user -> user._id).toArray(),
+        Arrays.stream(disk.listUsers(queryParams)).map(user -> user._id).toArray());
+    assertEquals(memory.countUsers(queryParams), disk.countUsers(queryParams));
+
+    queryParams.put("company", Arrays.asList(new String[] { "ohm*" }));
+    assertArrayEquals(
+        Arrays.stream(memory.listUsers(queryParams)).map(user -> user._id).toArray(),
+        Arrays.stream(disk.listUsers(queryParams)).map(user -> user._id).toArray());
+
+    assertEquals("OHMNET", disk.suggestUsers("company", "o", 5).get(0).value);
+    assertEquals(2, memory.suggestUsers("company", "O", 5).get(0).count);
+
+    User user = disk.getUser("588935f57546a2daea44de7c");
+    assertEquals("Connie Stewart", user.name, "Incorrect name");
+    assertEquals(25, user.age, "Incorrect age");
+  }
+
+  @Test
+  public void exportResumesAfterUser() throws IOException {
+    UserDatabase memory = new UserDatabase("/users.json");
+    DiskUserRepository disk = new DiskUserRepository(Files.createTempDirectory("users"), "/users.json");
+    List<String> ids = new ArrayList<>();
+    memory.exportUsers(null).forEachRemaining(user -> ids.add(user._id));
+    List<String> rest = new ArrayList<>();
+    disk.exportUsers(ids.get(3)).forEachRemaining(user -> rest.add(user._id));
+    assertEquals(ids.subList(4, ids.size()), rest);
+    assertNull(memory.exportUsers("nonexistent"));
+  }
+
+}
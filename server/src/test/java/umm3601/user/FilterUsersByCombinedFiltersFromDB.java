@@ -36,4 +36,22 @@ public class FilterUsersByCombinedFiltersFromDB {
     User[] ohmnetAge25Users = db.listUsers(queryParams);
     assertEquals(1, ohmnetAge25Users.length, "Incorrect number of users with company OHMNET and age 25");
   }
+
+  @Test
+  public void listUsersWithCompanyPattern() throws IOException {
+    UserDatabase db = new UserDatabase("/users.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+
+    queryParams.put("company", Arrays.asList(new String[] { "ohm*" }));
+    assertEquals(2, db.listUsers(queryParams).length, "Incorrect number of users with a company starting with ohm");
+    assertEquals(2, db.countUsers(queryParams));
+
+    queryParams.put("company", Arrays.asList(new String[] { "*" }));
+    assertEquals(db.size(), db.listUsers(queryParams).length);
+    queryParams.put("company", Arrays.asList(new String[] { "n*" }));
+    assertEquals(1, db.listUsers(queryParams).length);
+
+    queryParams.put("company", Arrays.asList(new String[] { "ohmnet" }));
+    assertEquals(0, db.listUsers(queryParams).length, "Companies without a * must match exactly");
+  }
 }
@@ -0,0 +1,77 @@
+package umm3601.user;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.BadRequestResponse;
+
+/**
+ * Tests umm3601.user.UserDatabase listUsers and countUsers with repeated (any
+ * of) and `!` (none of) filter values
+ */
+public class FilterUsersByInAndNotFromDB {
+
+  @Test
+  public void anyOfAndNoneOfAges() throws IOException {
+    UserDatabase db = new UserDatabase("/users.json");
+    User[] allUsers = db.listUsers(new HashMap<>());
+    Map<String, List<String>> queryParams = new HashMap<>();
+
+    queryParams.put("age", Arrays.asList("25", "27"));
+    assertEquals(5, db.listUsers(queryParams).length, "Incorrect number of users aged 25 or 27");
+    assertEquals(5, db.countUsers(queryParams), "Incorrect count of users aged 25 or 27");
+
+    queryParams.put("age", Arrays.asList("!27"));
+    User[] not27 = db.listUsers(queryParams);
+    assertEquals(allUsers.length - 3, not27.length, "Incorrect number of users not aged 27");
+    assertArrayEquals(Arrays.stream(allUsers).filter(user -> user.age != 27).toArray(), not27,
+        "Users should stay in the order they are stored");
+    assertEquals(not27.length, db.countUsers(queryParams), "Incorrect count of users not aged 27");
+  }
+
+  @Test
+  public void companiesCombineWithAges() throws IOException {
+    UserDatabase db = new UserDatabase("/users.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("company", Arrays.asList("OHMNET", "VINCH"));
+    assertEquals(3, db.listUsers(queryParams).length, "Incorrect number of users at OHMNET or VINCH");
+
+    queryParams.put("company", Arrays.asList("OHMNET", "!OHMNET"));
+    assertEquals(0, db.countUsers(queryParams), "A company can't be both included and excluded");
+
+    queryParams.put("company", Arrays.asList("!OHMNET"));
+    queryParams.put("age", Arrays.asList("25", "27"));
+    User[] users = db.listUsers(queryParams);
+    for (User user : users) {
+      assertEquals(true, !user.company.equals("OHMNET") && (user.age == 25 || user.age == 27),
+          "Incorrect user " + user.name);
+    }
+    assertEquals(users.length, db.countUsers(queryParams));
+
+    DiskUserRepository disk = new DiskUserRepository(Files.createTempDirectory("users"), "/users.json");
+    assertArrayEquals(
+        Arrays.stream(users).map(user -> user._id).toArray(),
+        Arrays.stream(disk.listUsers(queryParams)).map(user -> user._id).toArray());
+  }
+
+  @Test
+  public void everyAgeMustParse() throws IOException {
+    UserDatabase db = new UserDatabase("/users.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("age", Arrays.asList("27", "!abc"));
+
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      db.listUsers(queryParams);
+    });
+  }
+}
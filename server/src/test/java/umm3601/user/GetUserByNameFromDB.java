@@ -0,0 +1,37 @@
+package umm3601.user;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests umm3601.user.Database getUserByName functionality, in memory and on
+ * disk
+ */
+public class GetUserByNameFromDB {
+
+  @Test
+  public void getStokesClayton() throws IOException {
+    UserDatabase db = new UserDatabase("/users.json");
+    User user = db.getUserByName("Stokes Clayton");
+    assertEquals("588935f52787254123f71fed", user._id, "Incorrect id");
+  }
+
+  @Test
+  public void getNobody() throws IOException {
+    UserDatabase db = new UserDatabase("/users.json");
+    assertNull(db.getUserByName("Fry"));
+  }
+
+  @Test
+  public void diskMatchesMemory() throws IOException {
+    UserDatabase db = new UserDatabase("/users.json");
+    DiskUserRepository disk = new DiskUserRepository(Files.createTempDirectory("users"), "/users.json");
+    assertEquals(db.getUserByName("Bolton Monroe")._id, disk.getUserByName("Bolton Monroe")._id);
+    assertNull(disk.getUserByName("Fry"));
+  }
+}
@@ -0,0 +1,59 @@
+package umm3601.user;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.BadRequestResponse;
+
+/**
+ * Tests umm3601.user.UserDatabase listUsers with orderBy
+ */
+public class OrderUsersFromDB {
+
+  private static Object[] ids(User[] users) {
+    return Arrays.stream(users).map(user -> user._id).toArray();
+  }
+
+  @Test
+  public void orderBySeveralFields() throws IOException {
+    UserDatabase db = new UserDatabase("/users.json");
+    User[] allUsers = db.listUsers(new HashMap<>());
+    Map<String, List<String>> queryParams = new HashMap<>();
+
+    queryParams.put("orderBy", Arrays.asList("-age,name"));
+    User[] sorted = allUsers.clone();
+    Arrays.sort(sorted, Comparator.comparingInt((User user) -> user.age).reversed()
+        .thenComparing(user -> user.name));
+    assertArrayEquals(ids(sorted), ids(db.listUsers(queryParams)));
+
+    queryParams.put("orderBy", Arrays.asList("company"));
+    queryParams.put("age", Arrays.asList("!27"));
+    sorted = Arrays.stream(allUsers).filter(user -> user.age != 27)
+        .sorted(Comparator.comparing(user -> user.company)).toArray(User[]::new);
+    assertArrayEquals(ids(sorted), ids(db.listUsers(queryParams)));
+
+    DiskUserRepository disk = new DiskUserRepository(Files.createTempDirectory("users"), "/users.json");
+    assertArrayEquals(ids(sorted), ids(disk.listUsers(queryParams)));
+  }
+
+  @Test
+  public void unknownFieldsAreRejected() throws IOException {
+    UserDatabase db = new UserDatabase("/users.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("orderBy", Arrays.asList("height"));
+
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      db.listUsers(queryParams);
+    });
+  }
+}
@@ -35,6 +35,14 @@ public class UserControllerSpec {
   private UserController userController;
   private static UserDatabase db;
 
+  /**
+   * @return a captor for arguments of a generic type, e.g., `Map<String, Integer>`
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> ArgumentCaptor<T> captorFor(Class<?> rawType) {
+    return (ArgumentCaptor<T>) ArgumentCaptor.forClass(rawType);
+  }
+
   @BeforeEach
   public void setUp() throws IOException {
     ctx.clearCookieStore();
@@ -142,4 +150,47 @@ public class UserControllerSpec {
       userController.getUser(ctx);
     });
   }
+
+  @Test
+  public void GET_to_request_user_count() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("company", Arrays.asList(new String[] { "OHMNET" }));
+
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    userController.countUsers(ctx);
+
+    ArgumentCaptor<Map<String, Integer>> argument = captorFor(Map.class);
+    verify(ctx).json(argument.capture());
+    assertEquals(db.listUsers(queryParams).length, (int) argument.getValue().get("count"));
+  }
+
+  @Test
+  public void GET_to_request_user_facets() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("by", Arrays.asList(new String[] { "company,age" }));
+
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    userController.getUserFacets(ctx);
+
+    ArgumentCaptor<Map<String, Map<String, Integer>>> argument = captorFor(Map.class);
+    verify(ctx).json(argument.capture());
+    assertEquals(2, argument.getValue().size());
+  }
+
+  @Test
+  public void GET_to_request_users_with_fields() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("age", Arrays.asList(new String[] { "33" }));
+    queryParams.put("fields", Arrays.asList(new String[] { "age,company" }));
+
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    userController.getUsers(ctx);
+
+    // Confirm that only the age and company were written.
+    ArgumentCaptor<String> argument = ArgumentCaptor.forClass(String.class);
+    verify(ctx).result(argument.capture());
+    User user = db.listUsers(queryParams)[0];
+    assertEquals("[{\"age\":33,\"company\":\"" + user.company + "\"}]", argument.getValue());
+  }
+
 }